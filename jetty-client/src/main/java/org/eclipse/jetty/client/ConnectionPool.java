@@ -0,0 +1,420 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>The pool of the connections that a {@link HttpDestination} uses to send requests.</p>
+ * <p>Idle connections are reused LIFO: the connection released last, which is the most likely
+ * to be still warm, is reused first, while the connections at the bottom of the stack are left
+ * to idle timeout when the load decreases.</p>
+ * <p>{@link #preCreateConnections()} opens connections in advance up to {@link #getMinConnections()},
+ * so that a burst of requests after a quiet period does not pay the connection setup on the
+ * request path; the pool is replenished up to that minimum when connections are removed.</p>
+ * <p>Connections are closed rather than reused once they are older than {@link #getMaxLifetime()}
+ * or have sent {@link #getMaxUsage()} requests.</p>
+ * <p>New connections are passed to the {@code requester} promise, that makes them either idle
+ * via {@link #idle(Connection)} or active via {@link #activate(Connection)}.</p>
+ */
+@ManagedObject("The connection pool of a destination")
+public class ConnectionPool implements Closeable, Dumpable
+{
+    private static final Logger LOG = Log.getLogger(ConnectionPool.class);
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong closedCount = new AtomicLong();
+    private final ConcurrentMap<Connection, Usage> usages = new ConcurrentHashMap<>();
+    private final HttpDestination destination;
+    private final int maxConnections;
+    private final Promise<Connection> requester;
+    private final BlockingDeque<Connection> idleConnections;
+    private final BlockingQueue<Connection> activeConnections;
+    private volatile int minConnections;
+    private volatile long maxLifetime;
+    private volatile int maxUsage;
+
+    public ConnectionPool(HttpDestination destination, int maxConnections, Promise<Connection> requester)
+    {
+        this.destination = destination;
+        this.maxConnections = maxConnections;
+        this.requester = requester;
+        this.idleConnections = new LinkedBlockingDeque<>(maxConnections);
+        int capacity = Math.min(8, maxConnections);
+        this.activeConnections = new BlockingArrayQueue<>(capacity, capacity, maxConnections);
+    }
+
+    /**
+     * @return the connections that are available to send requests, the most recently released first
+     */
+    public BlockingDeque<Connection> getIdleConnections()
+    {
+        return idleConnections;
+    }
+
+    /**
+     * @return the connections that are sending requests
+     */
+    public BlockingQueue<Connection> getActiveConnections()
+    {
+        return activeConnections;
+    }
+
+    @ManagedAttribute("The max number of connections")
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    /**
+     * @return the number of connections that {@link #preCreateConnections()} keeps open
+     */
+    @ManagedAttribute("The number of connections opened in advance")
+    public int getMinConnections()
+    {
+        return minConnections;
+    }
+
+    /**
+     * @param minConnections the number of connections that {@link #preCreateConnections()} keeps open
+     */
+    public void setMinConnections(int minConnections)
+    {
+        this.minConnections = minConnections;
+    }
+
+    /**
+     * @return the time in ms after which connections are closed rather than reused, or 0 if connections never expire
+     */
+    @ManagedAttribute("The time in ms after which connections are closed rather than reused")
+    public long getMaxLifetime()
+    {
+        return maxLifetime;
+    }
+
+    /**
+     * @param maxLifetime the time in ms after which connections are closed rather than reused, or 0 if connections never expire
+     */
+    public void setMaxLifetime(long maxLifetime)
+    {
+        this.maxLifetime = maxLifetime;
+    }
+
+    /**
+     * @return the number of requests after which connections are closed rather than reused, or 0 for no limit
+     */
+    @ManagedAttribute("The number of requests after which connections are closed rather than reused")
+    public int getMaxUsage()
+    {
+        return maxUsage;
+    }
+
+    /**
+     * @param maxUsage the number of requests after which connections are closed rather than reused, or 0 for no limit
+     */
+    public void setMaxUsage(int maxUsage)
+    {
+        this.maxUsage = maxUsage;
+    }
+
+    @ManagedAttribute("The number of open or opening connections")
+    public int getConnectionCount()
+    {
+        return connectionCount.get();
+    }
+
+    @ManagedAttribute("The number of connections being opened")
+    public int getPendingConnectionCount()
+    {
+        return pendingCount.get();
+    }
+
+    @ManagedAttribute("The number of idle connections")
+    public int getIdleConnectionCount()
+    {
+        return idleConnections.size();
+    }
+
+    @ManagedAttribute("The number of active connections")
+    public int getActiveConnectionCount()
+    {
+        return activeConnections.size();
+    }
+
+    @ManagedAttribute("The number of connections opened since the statistics were reset")
+    public long getConnectionsCreated()
+    {
+        return createdCount.get();
+    }
+
+    @ManagedAttribute("The number of connections closed since the statistics were reset")
+    public long getConnectionsClosed()
+    {
+        return closedCount.get();
+    }
+
+    @ManagedOperation("Resets the statistics")
+    public void resetStatistics()
+    {
+        createdCount.set(0);
+        closedCount.set(0);
+    }
+
+    /**
+     * <p>Returns an idle connection, or starts opening a new connection if the max number of
+     * connections has not been reached.</p>
+     * <p>A new connection is passed to the requester when it is opened; meanwhile another
+     * connection may have been released, so the idle connections are tried again.</p>
+     *
+     * @return an idle connection, or null if none is available
+     */
+    public Connection acquire()
+    {
+        Connection connection = acquireIdle();
+        if (connection == null)
+        {
+            tryCreate();
+            // Try again the idle connections
+            connection = acquireIdle();
+        }
+        return connection;
+    }
+
+    /**
+     * @return the most recently released idle connection that has not expired, or null if none is available
+     */
+    public Connection acquireIdle()
+    {
+        boolean expired = false;
+        Connection connection;
+        while ((connection = idleConnections.pollFirst()) != null)
+        {
+            if (!isExpired(connection))
+                break;
+            LOG.debug("{} expired", connection);
+            // Remove it before closing it, so that the destination
+            // does not try to replace it while we are acquiring
+            remove(connection);
+            connection.close();
+            expired = true;
+        }
+        if (expired)
+            preCreateConnections();
+        return connection;
+    }
+
+    /**
+     * <p>Opens connections until there are at least {@link #getMinConnections()} open or
+     * opening connections.</p>
+     */
+    public void preCreateConnections()
+    {
+        while (connectionCount.get() < minConnections)
+        {
+            if (!tryCreate())
+                break;
+        }
+    }
+
+    private boolean tryCreate()
+    {
+        while (true)
+        {
+            int current = connectionCount.get();
+            final int next = current + 1;
+
+            if (next > maxConnections)
+            {
+                LOG.debug("Max connections per destination {} exceeded for {}", current, destination);
+                return false;
+            }
+
+            if (connectionCount.compareAndSet(current, next))
+            {
+                LOG.debug("Creating connection {}/{} for {}", next, maxConnections, destination);
+                pendingCount.incrementAndGet();
+
+                // Differently from the case where the connection is created explicitly by applications, here
+                // we need to do a bit more logging and keep track of the connection count in case of failures.
+                destination.newConnection(new Promise<Connection>()
+                {
+                    @Override
+                    public void succeeded(Connection connection)
+                    {
+                        LOG.debug("Created connection {}/{} {} for {}", next, maxConnections, connection, destination);
+                        usages.put(connection, new Usage());
+                        pendingCount.decrementAndGet();
+                        createdCount.incrementAndGet();
+                        requester.succeeded(connection);
+                    }
+
+                    @Override
+                    public void failed(Throwable x)
+                    {
+                        LOG.debug("Connection failed {} for {}", x, destination);
+                        pendingCount.decrementAndGet();
+                        connectionCount.decrementAndGet();
+                        requester.failed(x);
+                    }
+                });
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param connection the connection to make idle
+     * @return whether the connection could be made idle
+     */
+    public boolean idle(Connection connection)
+    {
+        return idleConnections.offerFirst(connection);
+    }
+
+    /**
+     * @param connection the connection that is going to send a request
+     * @return whether the connection could be made active
+     */
+    public boolean activate(Connection connection)
+    {
+        Usage usage = usages.get(connection);
+        if (usage != null)
+            usage.requests.incrementAndGet();
+        return activeConnections.offer(connection);
+    }
+
+    /**
+     * @param connection the connection that has completed a request
+     * @return whether the connection was active, false if the connection is not pooled
+     */
+    public boolean deactivate(Connection connection)
+    {
+        return activeConnections.remove(connection);
+    }
+
+    /**
+     * @param connection the pooled connection
+     * @return whether the connection is older than {@link #getMaxLifetime()}
+     * or has sent {@link #getMaxUsage()} requests
+     */
+    public boolean isExpired(Connection connection)
+    {
+        Usage usage = usages.get(connection);
+        if (usage == null)
+            return false;
+        int maxUsage = this.maxUsage;
+        if (maxUsage > 0 && usage.requests.get() >= maxUsage)
+            return true;
+        long maxLifetime = this.maxLifetime;
+        return maxLifetime > 0 && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - usage.created) >= maxLifetime;
+    }
+
+    /**
+     * @param connection the connection to remove from the pool
+     * @return whether the connection belonged to the pool
+     */
+    public boolean remove(Connection connection)
+    {
+        activeConnections.remove(connection);
+        idleConnections.remove(connection);
+        if (usages.remove(connection) == null)
+            return false;
+        int open = connectionCount.decrementAndGet();
+        closedCount.incrementAndGet();
+        LOG.debug("Removed connection {} for {} - open: {}", connection, destination, open);
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+        List<Connection> connections = new ArrayList<>();
+        idleConnections.drainTo(connections);
+        // A bit drastic, but we cannot wait for all requests to complete
+        connections.addAll(activeConnections);
+        activeConnections.clear();
+
+        closedCount.addAndGet(usages.size());
+        usages.clear();
+        connectionCount.set(0);
+
+        for (Connection connection : connections)
+            connection.close();
+    }
+
+    @Override
+    public String dump()
+    {
+        return ContainerLifeCycle.dump(this);
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        ContainerLifeCycle.dumpObject(out, this);
+        List<String> connections = new ArrayList<>();
+        for (Connection connection : idleConnections)
+            connections.add(connection + " - IDLE");
+        for (Connection connection : activeConnections)
+            connections.add(connection + " - ACTIVE");
+        ContainerLifeCycle.dump(out, indent, connections);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[c=%d/%d,p=%d,a=%d,i=%d]",
+                ConnectionPool.class.getSimpleName(),
+                connectionCount.get(),
+                maxConnections,
+                pendingCount.get(),
+                activeConnections.size(),
+                idleConnections.size());
+    }
+
+    private static class Usage
+    {
+        private final long created = System.nanoTime();
+        private final AtomicInteger requests = new AtomicInteger();
+    }
+}
@@ -40,6 +40,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import javax.net.ssl.SSLEngine;
 
@@ -64,6 +65,9 @@ import org.eclipse.jetty.util.Jetty;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.SocketAddressResolver;
 import org.eclipse.jetty.util.URIUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -106,6 +110,7 @@ import org.eclipse.jetty.util.thread.Scheduler;
  * });
  * </pre>
  */
+@ManagedObject("The HTTP client")
 public class HttpClient extends ContainerLifeCycle
 {
     private static final Logger LOG = Log.getLogger(HttpClient.class);
@@ -127,6 +132,9 @@ public class HttpClient extends ContainerLifeCycle
     private volatile HttpField agentField = new HttpField(HttpHeader.USER_AGENT, "Jetty/" + Jetty.VERSION);
     private volatile boolean followRedirects = true;
     private volatile int maxConnectionsPerDestination = 64;
+    private volatile int minConnectionsPerDestination;
+    private volatile long maxConnectionLifetime;
+    private volatile int maxConnectionUsage;
     private volatile int maxRequestsQueuedPerDestination = 1024;
     private volatile int requestBufferSize = 4096;
     private volatile int responseBufferSize = 4096;
@@ -137,6 +145,8 @@ public class HttpClient extends ContainerLifeCycle
     private volatile long idleTimeout;
     private volatile boolean tcpNoDelay = true;
     private volatile boolean dispatchIO = true;
+    private volatile SelectorManager.SelectStrategy selectStrategy = SelectorManager.SelectStrategy.EXECUTE;
+    private volatile long statisticsStarted = System.nanoTime();
     private volatile ProxyConfiguration proxyConfig;
     private volatile HttpField encodingField;
 
@@ -200,6 +210,7 @@ public class HttpClient extends ContainerLifeCycle
 
         selectorManager = newSelectorManager();
         selectorManager.setConnectTimeout(getConnectTimeout());
+        selectorManager.setSelectStrategy(getSelectStrategy());
         addBean(selectorManager);
 
         handlers.add(new ContinueProtocolHandler(this));
@@ -212,6 +223,8 @@ public class HttpClient extends ContainerLifeCycle
         cookieManager = newCookieManager();
         cookieStore = cookieManager.getCookieStore();
 
+        statisticsStarted = System.nanoTime();
+
         super.doStart();
     }
 
@@ -427,6 +440,10 @@ public class HttpClient extends ContainerLifeCycle
      * that will be outside {@link HttpClient}'s pooling mechanism, to explicitly
      * control the connection lifecycle (in particular their termination with
      * {@link Connection#close()}).
+     * <p />
+     * A new destination opens {@link #getMinConnectionsPerDestination()} connections
+     * in advance, so applications may call this method at startup to warm up the
+     * connections to the servers they are going to use.
      *
      * @param scheme the destination scheme
      * @param host the destination host
@@ -447,14 +464,19 @@ public class HttpClient extends ContainerLifeCycle
         HttpDestination destination = destinations.get(address);
         if (destination == null)
         {
-            destination = new HttpDestination(this, scheme, host, port);
+            destination = newHttpDestination(scheme, host, port);
             if (isRunning())
             {
                 HttpDestination existing = destinations.putIfAbsent(address, destination);
                 if (existing != null)
+                {
                     destination = existing;
+                }
                 else
+                {
                     LOG.debug("Created {}", destination);
+                    destination.getConnectionPool().preCreateConnections();
+                }
                 if (!isRunning())
                     destinations.remove(address);
             }
@@ -463,6 +485,11 @@ public class HttpClient extends ContainerLifeCycle
         return destination;
     }
 
+    protected HttpDestination newHttpDestination(String scheme, String host, int port)
+    {
+        return new HttpDestination(this, scheme, host, port);
+    }
+
     /**
      * @return the list of destinations known to this {@link HttpClient}.
      */
@@ -706,6 +733,9 @@ public class HttpClient extends ContainerLifeCycle
     }
 
     /**
+     * <p>The executor may be a {@link org.eclipse.jetty.util.thread.VirtualThreadPool}, in which case
+     * the selectors run in platform threads and the other jobs in virtual threads.</p>
+     *
      * @param executor the {@link Executor} of this {@link HttpClient}
      */
     public void setExecutor(Executor executor)
@@ -737,6 +767,7 @@ public class HttpClient extends ContainerLifeCycle
     /**
      * @return the max number of connections that this {@link HttpClient} opens to {@link Destination}s
      */
+    @ManagedAttribute("The max number of connections per destination")
     public int getMaxConnectionsPerDestination()
     {
         return maxConnectionsPerDestination;
@@ -758,6 +789,143 @@ public class HttpClient extends ContainerLifeCycle
         this.maxConnectionsPerDestination = maxConnectionsPerDestination;
     }
 
+    /**
+     * @return the number of connections that this {@link HttpClient} keeps open to each {@link Destination}
+     */
+    @ManagedAttribute("The number of connections opened in advance per destination")
+    public int getMinConnectionsPerDestination()
+    {
+        return minConnectionsPerDestination;
+    }
+
+    /**
+     * Sets the number of connections to open to each destination in advance.
+     * <p />
+     * These connections are opened when the destination is created, and are opened again
+     * when they are closed, so that a burst of requests after a quiet period does not
+     * pay the connection setup. Note that if the {@link #getIdleTimeout() idle timeout}
+     * is shorter than the quiet periods, these connections are closed and opened again
+     * at every idle timeout.
+     *
+     * @param minConnectionsPerDestination the number of connections to open to each destination in advance
+     */
+    public void setMinConnectionsPerDestination(int minConnectionsPerDestination)
+    {
+        this.minConnectionsPerDestination = minConnectionsPerDestination;
+    }
+
+    /**
+     * @return the time in ms after which pooled connections are closed rather than reused, or 0 if they never expire
+     */
+    @ManagedAttribute("The time in ms after which pooled connections are closed rather than reused")
+    public long getMaxConnectionLifetime()
+    {
+        return maxConnectionLifetime;
+    }
+
+    /**
+     * Sets the time after which pooled connections are closed rather than reused.
+     * <p />
+     * Limiting the lifetime of connections allows, for example, the requests to be spread
+     * again across the servers behind a load balancer or a DNS name that changed.
+     *
+     * @param maxConnectionLifetime the time in ms after which pooled connections are closed rather than reused,
+     * or 0 if they never expire
+     */
+    public void setMaxConnectionLifetime(long maxConnectionLifetime)
+    {
+        this.maxConnectionLifetime = maxConnectionLifetime;
+    }
+
+    /**
+     * @return the number of requests after which pooled connections are closed rather than reused, or 0 for no limit
+     */
+    @ManagedAttribute("The number of requests after which pooled connections are closed rather than reused")
+    public int getMaxConnectionUsage()
+    {
+        return maxConnectionUsage;
+    }
+
+    /**
+     * @param maxConnectionUsage the number of requests after which pooled connections are closed rather than reused,
+     * or 0 for no limit
+     */
+    public void setMaxConnectionUsage(int maxConnectionUsage)
+    {
+        this.maxConnectionUsage = maxConnectionUsage;
+    }
+
+    @ManagedAttribute("The number of connections being opened")
+    public int getPendingConnections()
+    {
+        int result = 0;
+        for (HttpDestination destination : destinations.values())
+            result += destination.getConnectionPool().getPendingConnectionCount();
+        return result;
+    }
+
+    @ManagedAttribute("The number of idle connections")
+    public int getIdleConnections()
+    {
+        int result = 0;
+        for (HttpDestination destination : destinations.values())
+            result += destination.getConnectionPool().getIdleConnectionCount();
+        return result;
+    }
+
+    @ManagedAttribute("The number of active connections")
+    public int getActiveConnections()
+    {
+        int result = 0;
+        for (HttpDestination destination : destinations.values())
+            result += destination.getConnectionPool().getActiveConnectionCount();
+        return result;
+    }
+
+    @ManagedAttribute("The number of connections opened since the statistics were reset")
+    public long getConnectionsCreated()
+    {
+        long result = 0;
+        for (HttpDestination destination : destinations.values())
+            result += destination.getConnectionPool().getConnectionsCreated();
+        return result;
+    }
+
+    @ManagedAttribute("The number of connections closed since the statistics were reset")
+    public long getConnectionsClosed()
+    {
+        long result = 0;
+        for (HttpDestination destination : destinations.values())
+            result += destination.getConnectionPool().getConnectionsClosed();
+        return result;
+    }
+
+    @ManagedAttribute("The mean number of connections opened per second since the statistics were reset")
+    public double getConnectionsCreatedRate()
+    {
+        return rate(getConnectionsCreated());
+    }
+
+    @ManagedAttribute("The mean number of connections closed per second since the statistics were reset")
+    public double getConnectionsClosedRate()
+    {
+        return rate(getConnectionsClosed());
+    }
+
+    private double rate(long count)
+    {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - statisticsStarted);
+        return elapsed > 0 ? count * 1000D / elapsed : 0;
+    }
+
+    @ManagedOperation("Resets the connection statistics")
+    public void resetStatistics()
+    {
+        for (HttpDestination destination : destinations.values())
+            destination.getConnectionPool().resetStatistics();
+        statisticsStarted = System.nanoTime();
+    }
+
     /**
      * @return the max number of requests that may be queued to a {@link Destination}.
      */
@@ -878,6 +1046,30 @@ public class HttpClient extends ContainerLifeCycle
         this.dispatchIO = dispatchIO;
     }
 
+    /**
+     * @return the strategy used by the selectors to run the I/O operations of selected keys
+     * @see #setSelectStrategy(SelectorManager.SelectStrategy)
+     */
+    public SelectorManager.SelectStrategy getSelectStrategy()
+    {
+        return selectStrategy;
+    }
+
+    /**
+     * The strategy used by the selectors to run the I/O operations of selected keys,
+     * when they are dispatched (see {@link #setDispatchIO(boolean)}).
+     *
+     * @param selectStrategy the strategy used by the selectors
+     * @see SelectorManager.SelectStrategy
+     */
+    public void setSelectStrategy(SelectorManager.SelectStrategy selectStrategy)
+    {
+        this.selectStrategy = selectStrategy;
+        SelectorManager selectorManager = this.selectorManager;
+        if (selectorManager != null)
+            selectorManager.setSelectStrategy(selectStrategy);
+    }
+
     /**
      * @return the forward proxy configuration
      */
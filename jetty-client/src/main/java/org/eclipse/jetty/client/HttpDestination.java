@@ -22,13 +22,12 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.channels.AsynchronousCloseException;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.api.Destination;
@@ -52,14 +51,12 @@ public class HttpDestination implements Destination, Closeable, Dumpable
 {
     private static final Logger LOG = Log.getLogger(HttpDestination.class);
 
-    private final AtomicInteger connectionCount = new AtomicInteger();
     private final HttpClient client;
     private final String scheme;
     private final String host;
     private final Address address;
     private final Queue<HttpExchange> exchanges;
-    private final BlockingQueue<Connection> idleConnections;
-    private final BlockingQueue<Connection> activeConnections;
+    private final ConnectionPool connectionPool;
     private final RequestNotifier requestNotifier;
     private final ResponseNotifier responseNotifier;
     private final Address proxyAddress;
@@ -76,10 +73,7 @@ public class HttpDestination implements Destination, Closeable, Dumpable
         int capacity = Math.min(32, maxRequestsQueued);
         this.exchanges = new BlockingArrayQueue<>(capacity, capacity, maxRequestsQueued);
 
-        int maxConnections = client.getMaxConnectionsPerDestination();
-        capacity = Math.min(8, maxConnections);
-        this.idleConnections = new BlockingArrayQueue<>(capacity, capacity, maxConnections);
-        this.activeConnections = new BlockingArrayQueue<>(capacity, capacity, maxConnections);
+        this.connectionPool = newConnectionPool(client);
 
         this.requestNotifier = new RequestNotifier(client);
         this.responseNotifier = new ResponseNotifier(client);
@@ -93,14 +87,57 @@ public class HttpDestination implements Destination, Closeable, Dumpable
         hostField = new HttpField(HttpHeader.HOST, host);
     }
 
+    /**
+     * <p>Creates the pool of the connections of this destination, configured from the
+     * {@link HttpClient} settings.</p>
+     *
+     * @param client the {@link HttpClient} that owns this destination
+     * @return the connection pool of this destination
+     */
+    protected ConnectionPool newConnectionPool(HttpClient client)
+    {
+        // This is the promise that is being called when a pooled connection (eventually proxied) succeeds or fails.
+        Promise<Connection> requester = new Promise<Connection>()
+        {
+            @Override
+            public void succeeded(Connection connection)
+            {
+                process(connection, true);
+            }
+
+            @Override
+            public void failed(final Throwable x)
+            {
+                HttpDestination.this.client.getExecutor().execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        abort(x);
+                    }
+                });
+            }
+        };
+        ConnectionPool connectionPool = new ConnectionPool(this, client.getMaxConnectionsPerDestination(), requester);
+        connectionPool.setMinConnections(client.getMinConnectionsPerDestination());
+        connectionPool.setMaxLifetime(client.getMaxConnectionLifetime());
+        connectionPool.setMaxUsage(client.getMaxConnectionUsage());
+        return connectionPool;
+    }
+
+    public ConnectionPool getConnectionPool()
+    {
+        return connectionPool;
+    }
+
     protected BlockingQueue<Connection> getIdleConnections()
     {
-        return idleConnections;
+        return connectionPool.getIdleConnections();
     }
 
     protected BlockingQueue<Connection> getActiveConnections()
     {
-        return activeConnections;
+        return connectionPool.getActiveConnections();
     }
 
     public RequestNotifier getRequestNotifier()
@@ -211,75 +248,7 @@ public class HttpDestination implements Destination, Closeable, Dumpable
 
     protected Connection acquire()
     {
-        Connection result = idleConnections.poll();
-        if (result != null)
-            return result;
-
-        final int maxConnections = client.getMaxConnectionsPerDestination();
-        while (true)
-        {
-            int current = connectionCount.get();
-            final int next = current + 1;
-
-            if (next > maxConnections)
-            {
-                LOG.debug("Max connections per destination {} exceeded for {}", current, this);
-                // Try again the idle connections
-                return idleConnections.poll();
-            }
-
-            if (connectionCount.compareAndSet(current, next))
-            {
-                LOG.debug("Creating connection {}/{} for {}", next, maxConnections, this);
-
-                // This is the promise that is being called when a connection (eventually proxied) succeeds or fails.
-                Promise<Connection> promise = new Promise<Connection>()
-                {
-                    @Override
-                    public void succeeded(Connection connection)
-                    {
-                        process(connection, true);
-                    }
-
-                    @Override
-                    public void failed(final Throwable x)
-                    {
-                        client.getExecutor().execute(new Runnable()
-                        {
-                            @Override
-                            public void run()
-                            {
-                                abort(x);
-                            }
-                        });
-                    }
-                };
-
-                // Create a new connection, and pass a ProxyPromise to establish a proxy tunnel, if needed.
-                // Differently from the case where the connection is created explicitly by applications, here
-                // we need to do a bit more logging and keep track of the connection count in case of failures.
-                createConnection(new ProxyPromise(promise)
-                {
-                    @Override
-                    public void succeeded(Connection connection)
-                    {
-                        LOG.debug("Created connection {}/{} {} for {}", next, maxConnections, connection, HttpDestination.this);
-                        super.succeeded(connection);
-                    }
-
-                    @Override
-                    public void failed(Throwable x)
-                    {
-                        LOG.debug("Connection failed {} for {}", x, HttpDestination.this);
-                        connectionCount.decrementAndGet();
-                        super.failed(x);
-                    }
-                });
-
-                // Try again the idle connections
-                return idleConnections.poll();
-            }
-        }
+        return connectionPool.acquire();
     }
 
     private void abort(Throwable cause)
@@ -308,7 +277,7 @@ public class HttpDestination implements Destination, Closeable, Dumpable
         if (exchange == null)
         {
             LOG.debug("{} idle", httpConnection);
-            if (!idleConnections.offer(httpConnection))
+            if (!connectionPool.idle(httpConnection))
             {
                 LOG.debug("{} idle overflow");
                 httpConnection.close();
@@ -332,7 +301,7 @@ public class HttpDestination implements Destination, Closeable, Dumpable
             else
             {
                 LOG.debug("{} active", httpConnection);
-                if (!activeConnections.offer(httpConnection))
+                if (!connectionPool.activate(httpConnection))
                 {
                     LOG.warn("{} active overflow");
                 }
@@ -360,11 +329,20 @@ public class HttpDestination implements Destination, Closeable, Dumpable
         LOG.debug("{} released", connection);
         if (client.isRunning())
         {
-            boolean removed = activeConnections.remove(connection);
-            if (removed)
-                process(connection, false);
-            else
+            boolean removed = connectionPool.deactivate(connection);
+            if (!removed)
+            {
                 LOG.debug("{} explicit", connection);
+            }
+            else if (connectionPool.isExpired(connection))
+            {
+                LOG.debug("{} expired", connection);
+                connection.close();
+            }
+            else
+            {
+                process(connection, false);
+            }
         }
         else
         {
@@ -376,40 +354,30 @@ public class HttpDestination implements Destination, Closeable, Dumpable
 
     public void remove(Connection connection)
     {
-        boolean removed = activeConnections.remove(connection);
-        removed |= idleConnections.remove(connection);
-        if (removed)
+        if (connectionPool.remove(connection))
         {
-            int open = connectionCount.decrementAndGet();
-            LOG.debug("Removed connection {} for {} - open: {}", connection, this, open);
-        }
-
-        // We need to execute queued requests even if this connection failed.
-        // We may create a connection that is not needed, but it will eventually
-        // idle timeout, so no worries
-        if (!exchanges.isEmpty())
-        {
-            connection = acquire();
-            if (connection != null)
-                process(connection, false);
+            // Replenish the connections opened in advance
+            if (client.isRunning())
+                connectionPool.preCreateConnections();
+
+            // We need to execute queued requests even if this connection failed.
+            // We may create a connection that is not needed, but it will eventually
+            // idle timeout, so no worries
+            if (!exchanges.isEmpty())
+            {
+                connection = acquire();
+                if (connection != null)
+                    process(connection, false);
+            }
         }
     }
 
     public void close()
     {
-        for (Connection connection : idleConnections)
-            connection.close();
-        idleConnections.clear();
-
-        // A bit drastic, but we cannot wait for all requests to complete
-        for (Connection connection : activeConnections)
-            connection.close();
-        activeConnections.clear();
+        connectionPool.close();
 
         abort(new AsynchronousCloseException());
 
-        connectionCount.set(0);
-
         LOG.debug("Closed {}", this);
     }
 
@@ -438,12 +406,7 @@ public class HttpDestination implements Destination, Closeable, Dumpable
     public void dump(Appendable out, String indent) throws IOException
     {
         ContainerLifeCycle.dumpObject(out, this + " - requests queued: " + exchanges.size());
-        List<String> connections = new ArrayList<>();
-        for (Connection connection : idleConnections)
-            connections.add(connection + " - IDLE");
-        for (Connection connection : activeConnections)
-            connections.add(connection + " - ACTIVE");
-        ContainerLifeCycle.dump(out, indent, connections);
+        ContainerLifeCycle.dump(out, indent, Collections.singletonList(connectionPool));
     }
 
     @Override
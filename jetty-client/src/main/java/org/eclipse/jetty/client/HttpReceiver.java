@@ -28,6 +28,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicMarkableReference;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -41,6 +42,7 @@ import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.EofException;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -52,6 +54,8 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
     private final HttpParser parser = new HttpParser(this);
     private final HttpConnection connection;
     private ContentDecoder decoder;
+    private ByteBuffer buffer;
+    private ContentCallback callback;
 
     public HttpReceiver(HttpConnection connection)
     {
@@ -64,15 +68,35 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
         HttpClient client = connection.getHttpClient();
         ByteBufferPool bufferPool = client.getByteBufferPool();
         ByteBuffer buffer = bufferPool.acquire(client.getResponseBufferSize(), true);
+        if (!process(buffer, false))
+            bufferPool.release(buffer);
+    }
+
+    /**
+     * Parses the given buffer and fills it until there is no more data to read.
+     *
+     * @param buffer the buffer to parse and fill
+     * @param parse whether to parse at least once, even if the buffer is empty
+     * @return true if the processing has been suspended by an asynchronous content listener,
+     * in which case the buffer must not be released, false otherwise
+     */
+    private boolean process(ByteBuffer buffer, boolean parse)
+    {
+        EndPoint endPoint = connection.getEndPoint();
+        this.buffer = buffer;
         try
         {
             while (true)
             {
+                if (parse(buffer, parse))
+                    return true;
+                parse = false;
+
                 int read = endPoint.fill(buffer);
                 LOG.debug("Read {} bytes from {}", read, connection);
                 if (read > 0)
                 {
-                    parse(buffer);
+                    continue;
                 }
                 else if (read == 0)
                 {
@@ -96,16 +120,44 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
             LOG.debug(x);
             failAndClose(x);
         }
-        finally
+        return false;
+    }
+
+    private boolean parse(ByteBuffer buffer, boolean parse)
+    {
+        parse |= buffer.hasRemaining();
+        while (parse)
         {
-            bufferPool.release(buffer);
+            parser.parseNext(buffer);
+            parse = buffer.hasRemaining();
+
+            ContentCallback callback = this.callback;
+            if (callback != null)
+            {
+                this.callback = null;
+                // Suspend only now that the parser has returned, so that
+                // the callback cannot resume the parsing while it is running
+                if (callback.suspend())
+                {
+                    LOG.debug("Suspended {}", connection);
+                    return true;
+                }
+                // The content has been consumed meanwhile, so parse at least once
+                // more, even if the buffer is empty, so that the parser can complete
+                parse = true;
+            }
         }
+        return false;
     }
 
-    private void parse(ByteBuffer buffer)
+    private void resume(ByteBuffer buffer)
     {
-        while (buffer.hasRemaining())
-            parser.parseNext(buffer);
+        LOG.debug("Resuming {}", connection);
+        // Parse at least once, even if the buffer is empty,
+        // so that the parser can complete the response
+        if (process(buffer, true))
+            return;
+        connection.getHttpClient().getByteBufferPool().release(buffer);
     }
 
     private void fillInterested()
@@ -281,8 +333,15 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
                     LOG.debug("{} {}: {} bytes", decoder, response, buffer.remaining());
                 }
 
+                ContentCallback callback = new ContentCallback();
                 ResponseNotifier notifier = connection.getDestination().getResponseNotifier();
-                notifier.notifyContent(conversation.getResponseListeners(), response, buffer);
+                notifier.notifyContent(conversation.getResponseListeners(), response, buffer, callback);
+                if (!callback.isCompleted())
+                {
+                    // Stop the parser, that is suspended by parse() if the content has not been consumed yet
+                    this.callback = callback;
+                    return true;
+                }
             }
         }
         return false;
@@ -418,4 +477,55 @@ public class HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
     {
         IDLE, RECEIVE, FAILURE
     }
+
+    /**
+     * The callback passed to {@link Response.AsyncContentListener}s, that resumes the
+     * parsing of the network buffer if it has been suspended waiting for the content
+     * to be consumed.
+     */
+    private class ContentCallback implements Callback
+    {
+        private static final int PENDING = 0;
+        private static final int SUSPENDED = 1;
+        private static final int COMPLETED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final ByteBuffer buffer;
+
+        private ContentCallback()
+        {
+            this.buffer = HttpReceiver.this.buffer;
+        }
+
+        private boolean isCompleted()
+        {
+            return state.get() == COMPLETED;
+        }
+
+        private boolean suspend()
+        {
+            return state.compareAndSet(PENDING, SUSPENDED);
+        }
+
+        @Override
+        public void succeeded()
+        {
+            if (state.compareAndSet(PENDING, COMPLETED))
+                return;
+            if (state.compareAndSet(SUSPENDED, COMPLETED))
+                resume(buffer);
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            int previous = state.getAndSet(COMPLETED);
+            if (previous == COMPLETED)
+                return;
+            failAndClose(x);
+            // If suspended, the parser has returned and the buffer is no longer used
+            if (previous == SUSPENDED)
+                connection.getHttpClient().getByteBufferPool().release(buffer);
+        }
+    }
 }
@@ -21,12 +21,14 @@ package org.eclipse.jetty.client;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -114,13 +116,57 @@ public class ResponseNotifier
 
     public void notifyContent(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer)
     {
+        notifyContent(listeners, response, buffer, new Callback.Adapter());
+    }
+
+    /**
+     * Notifies the content to the listeners.
+     *
+     * @param listeners the listeners to notify
+     * @param response the response
+     * @param buffer the content
+     * @param callback the callback completed when all the listeners have consumed the content,
+     * which is immediately if there are no {@link Response.AsyncContentListener}s
+     */
+    public void notifyContent(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer, Callback callback)
+    {
+        int asyncListeners = 0;
         // Optimized to avoid allocations of iterator instances
         for (int i = 0; i < listeners.size(); ++i)
         {
             Response.ResponseListener listener = listeners.get(i);
-            if (listener instanceof Response.ContentListener)
+            if (listener instanceof Response.AsyncContentListener)
+                ++asyncListeners;
+            else if (listener instanceof Response.ContentListener)
                 notifyContent((Response.ContentListener)listener, response, buffer);
         }
+
+        if (asyncListeners == 0)
+        {
+            callback.succeeded();
+            return;
+        }
+
+        Callback counting = asyncListeners == 1 ? callback : new CountingCallback(callback, asyncListeners);
+        for (int i = 0; i < listeners.size(); ++i)
+        {
+            Response.ResponseListener listener = listeners.get(i);
+            if (listener instanceof Response.AsyncContentListener)
+                notifyContent((Response.AsyncContentListener)listener, response, buffer.slice(), counting);
+        }
+    }
+
+    private void notifyContent(Response.AsyncContentListener listener, Response response, ByteBuffer buffer, Callback callback)
+    {
+        try
+        {
+            listener.onContent(response, buffer, callback);
+        }
+        catch (Exception x)
+        {
+            LOG.info("Exception while notifying listener " + listener, x);
+            callback.failed(x);
+        }
     }
 
     private void notifyContent(Response.ContentListener listener, Response response, ByteBuffer buffer)
@@ -249,4 +295,45 @@ public class ResponseNotifier
         conversation.complete();
         notifyComplete(listeners, new Result(request, requestFailure, response, responseFailure));
     }
+
+    /**
+     * Completes the wrapped callback when all the listeners have completed,
+     * or as soon as one of them fails.
+     */
+    private static class CountingCallback implements Callback
+    {
+        private final Callback callback;
+        private final AtomicInteger count;
+
+        private CountingCallback(Callback callback, int count)
+        {
+            this.callback = callback;
+            this.count = new AtomicInteger(count);
+        }
+
+        @Override
+        public void succeeded()
+        {
+            while (true)
+            {
+                int current = count.get();
+                // Already completed ?
+                if (current == 0)
+                    return;
+                if (count.compareAndSet(current, current - 1))
+                {
+                    if (current == 1)
+                        callback.succeeded();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            if (count.getAndSet(0) > 0)
+                callback.failed(x);
+        }
+    }
 }
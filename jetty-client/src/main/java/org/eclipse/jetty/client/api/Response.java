@@ -26,6 +26,7 @@ import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.Callback;
 
 /**
  * <p>{@link Response} represents a HTTP response and offers methods to retrieve status code, HTTP version
@@ -145,6 +146,30 @@ public interface Response
         public void onContent(Response response, ByteBuffer content);
     }
 
+    /**
+     * Listener for the response content events, that may consume the content asynchronously.
+     * <p/>
+     * The reading and parsing of the response is suspended until the {@code callback} is completed,
+     * so that a slow consumer applies back-pressure to the server rather than having the content
+     * buffered in memory.
+     * If a listener implements both this interface and {@link ContentListener}, only this interface
+     * is notified.
+     */
+    public interface AsyncContentListener extends ResponseListener
+    {
+        /**
+         * Callback method invoked when the response content has been received.
+         * This method may be invoked multiple times, and the {@code content} buffer must not be
+         * used after the {@code callback} has been completed.
+         *
+         * @param response the response containing the response line data and the headers
+         * @param content the content bytes received
+         * @param callback the callback to succeed when the content has been consumed, or to fail
+         * to abort the response
+         */
+        public void onContent(Response response, ByteBuffer content, Callback callback);
+    }
+
     /**
      * Listener for the response succeeded event.
      */
@@ -135,6 +135,49 @@ public class HttpDestinationTest extends AbstractHttpClientServerTest
         Assert.assertSame(connection1, connection2);
     }
 
+    @Test
+    public void test_IdleConnections_AreReused_LIFO() throws Exception
+    {
+        client.setMinConnectionsPerDestination(2);
+        HttpDestination destination = (HttpDestination)client.getDestination(scheme, "localhost", connector.getLocalPort());
+
+        // The destination opens the connections in advance
+        long start = System.nanoTime();
+        while (destination.getIdleConnections().size() < 2 && TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5)
+            TimeUnit.MILLISECONDS.sleep(50);
+        Assert.assertEquals(2, destination.getIdleConnections().size());
+
+        Connection connection = destination.getIdleConnections().peek();
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .send();
+            Assert.assertEquals(200, response.getStatus());
+            // The last released connection is reused first
+            Assert.assertSame(connection, destination.getIdleConnections().peek());
+        }
+        Assert.assertEquals(2, client.getConnectionsCreated());
+    }
+
+    @Test
+    public void test_Connection_MaxUsage_ClosesConnection() throws Exception
+    {
+        client.setMaxConnectionUsage(2);
+
+        for (int i = 0; i < 4; ++i)
+        {
+            ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .send();
+            Assert.assertEquals(200, response.getStatus());
+        }
+
+        Assert.assertEquals(2, client.getConnectionsCreated());
+        Assert.assertEquals(2, client.getConnectionsClosed());
+        Assert.assertEquals(0, client.getIdleConnections());
+    }
+
     @Slow
     @Test
     public void test_IdleConnection_IdleTimeout() throws Exception
@@ -22,9 +22,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeoutException;
 import java.util.zip.GZIPOutputStream;
 
@@ -36,6 +39,7 @@ import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.ByteArrayEndPoint;
 import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.eclipse.jetty.util.Callback;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -130,6 +134,106 @@ public class HttpReceiverTest
         Assert.assertEquals(content, received);
     }
 
+    @Test
+    public void test_Receive_ResponseContent_AsyncContentListener() throws Exception
+    {
+        String content1 = "0123456789";
+        String content2 = "ABCDEF";
+        endPoint.setInput("" +
+                "HTTP/1.1 200 OK\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                Integer.toHexString(content1.length()) + "\r\n" +
+                content1 + "\r\n" +
+                Integer.toHexString(content2.length()) + "\r\n" +
+                content2 + "\r\n" +
+                "0\r\n" +
+                "\r\n");
+
+        HttpRequest request = new HttpRequest(client, URI.create("http://localhost"));
+        FutureResponseListener listener = new FutureResponseListener(request);
+        final BlockingQueue<Callback> callbacks = new LinkedBlockingQueue<>();
+        Response.AsyncContentListener asyncListener = new Response.AsyncContentListener()
+        {
+            @Override
+            public void onContent(Response response, ByteBuffer content, Callback callback)
+            {
+                callbacks.offer(callback);
+            }
+        };
+        HttpExchange exchange = new HttpExchange(conversation, destination, request, Arrays.<Response.ResponseListener>asList(listener, asyncListener));
+        conversation.getExchanges().offer(exchange);
+        connection.associate(exchange);
+        exchange.requestComplete(null);
+        exchange.terminateRequest();
+        connection.receive();
+
+        // The parsing is suspended until the content is consumed
+        Callback callback = callbacks.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(callback);
+        Assert.assertTrue(callbacks.isEmpty());
+        Assert.assertFalse(listener.isDone());
+
+        callback.succeeded();
+        callback = callbacks.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(callback);
+        Assert.assertFalse(listener.isDone());
+
+        callback.succeeded();
+        Response response = listener.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(content1 + content2, listener.getContentAsString("UTF-8"));
+    }
+
+    @Test
+    public void test_Receive_ResponseContent_AsyncContentListener_CompletedByOtherThread() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        StringBuilder chunks = new StringBuilder();
+        for (int i = 0; i < 64; ++i)
+        {
+            String chunk = "chunk" + i;
+            content.append(chunk);
+            chunks.append(Integer.toHexString(chunk.length())).append("\r\n").append(chunk).append("\r\n");
+        }
+        endPoint.setInput("" +
+                "HTTP/1.1 200 OK\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                chunks +
+                "0\r\n" +
+                "\r\n");
+
+        HttpRequest request = new HttpRequest(client, URI.create("http://localhost"));
+        FutureResponseListener listener = new FutureResponseListener(request);
+        Response.AsyncContentListener asyncListener = new Response.AsyncContentListener()
+        {
+            @Override
+            public void onContent(Response response, ByteBuffer content, final Callback callback)
+            {
+                // Races the completion with the parser returning
+                client.getExecutor().execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        callback.succeeded();
+                    }
+                });
+            }
+        };
+        HttpExchange exchange = new HttpExchange(conversation, destination, request, Arrays.<Response.ResponseListener>asList(listener, asyncListener));
+        conversation.getExchanges().offer(exchange);
+        connection.associate(exchange);
+        exchange.requestComplete(null);
+        exchange.terminateRequest();
+        connection.receive();
+
+        Response response = listener.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(content.toString(), listener.getContentAsString("UTF-8"));
+    }
+
     @Test
     public void test_Receive_ResponseContent_EarlyEOF() throws Exception
     {
@@ -0,0 +1,174 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.util.TimerTask;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.DateCache;
+
+/* ------------------------------------------------------------ */
+/** A shared cache of the current HTTP date.
+ * <p>
+ * While the cache is {@link #acquire() acquired}, the date of the current second is formatted once,
+ * by a task of the {@link DateCache#getTimer()} timer that runs at the start of every second, and is
+ * published with a single volatile reference as a String, a pre-encoded "Date" {@link HttpField} and
+ * a ByteBuffer.  Readers neither lock nor format nor allocate.
+ * <p>
+ * The acquisitions are counted, so that the timer task is cancelled once the last user, typically a
+ * {@link org.eclipse.jetty.server.Server}, has released the cache.  When the cache is not acquired,
+ * the date is formatted by the readers, once per second.
+ */
+public class DateFieldCache
+{
+    private static final Object __lock = new Object();
+    private static volatile Tick __tick;
+    private static volatile TimerTask __task;
+    private static int __users;
+
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    private static class Tick
+    {
+        final long _seconds;
+        final String _date;
+        final HttpField _field;
+        final ByteBuffer _buffer;
+
+        Tick(long seconds, String date)
+        {
+            _seconds=seconds;
+            _date=date;
+            _field=new HttpField.CachedHttpField(HttpHeader.DATE,date);
+            _buffer=BufferUtil.toBuffer(date).asReadOnlyBuffer();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private DateFieldCache()
+    {
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Acquire the cache, scheduling the task that formats the date every second
+     * if this is the first acquisition.
+     * Each call must be matched by a call to {@link #release()}.
+     */
+    public static void acquire()
+    {
+        synchronized (__lock)
+        {
+            if (__users++==0)
+            {
+                final HttpFields.DateGenerator generator = new HttpFields.DateGenerator();
+                long now=System.currentTimeMillis();
+                __tick=new Tick(now/1000,generator.formatDate(now));
+
+                TimerTask task=new TimerTask()
+                {
+                    @Override
+                    public void run()
+                    {
+                        long now=System.currentTimeMillis();
+                        __tick=new Tick(now/1000,generator.formatDate(now));
+                    }
+                };
+                DateCache.getTimer().scheduleAtFixedRate(task,1000-now%1000,1000);
+                __task=task;
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Release the cache, cancelling the task that formats the date every second
+     * if this is the last acquisition.
+     */
+    public static void release()
+    {
+        synchronized (__lock)
+        {
+            if (__users>0 && --__users==0)
+            {
+                __task.cancel();
+                __task=null;
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private static Tick tick()
+    {
+        Tick tick=__tick;
+        if (__task==null)
+        {
+            // Not updated by the timer task, so check that it is the current second
+            long now=System.currentTimeMillis();
+            if (tick==null || tick._seconds!=now/1000)
+            {
+                tick=new Tick(now/1000,new HttpFields.DateGenerator().formatDate(now));
+                __tick=tick;
+            }
+        }
+        return tick;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The pre-encoded "Date" field of the current second
+     */
+    public static HttpField getDateField()
+    {
+        return tick()._field;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The HTTP date of the current second
+     */
+    public static String getDate()
+    {
+        return tick()._date;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return A read only buffer of the ISO-8859-1 bytes of the HTTP date of the current second.
+     * The buffer is shared, so its position must not be changed.
+     */
+    public static ByteBuffer getDateBuffer()
+    {
+        return tick()._buffer;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param date The date in ms since the epoch
+     * @return The cached HTTP date if the date is within the cached second, else null.
+     */
+    public static String getCachedDate(long date)
+    {
+        Tick tick=__tick;
+        if (tick!=null && tick._seconds==date/1000)
+            return tick._date;
+        return null;
+    }
+}
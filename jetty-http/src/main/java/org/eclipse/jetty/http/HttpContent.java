@@ -43,6 +43,19 @@ public interface HttpContent
     ReadableByteChannel getReadableByteChannel() throws IOException;
     void release();
 
+    /**
+     * @return the gzip content encoded variant of this content, with its own ETag,
+     * or null if no such variant is (yet) available
+     */
+    HttpContent getGzipContent();
+
+    /**
+     * @return the Content-Type, Last-Modified and ETag fields of this content, pre-encoded
+     * so that they are copied verbatim into the response header, or null if the fields
+     * are not pre-encoded
+     */
+    HttpField[] getPreEncodedFields();
+
     /* ------------------------------------------------------------ */
     /* ------------------------------------------------------------ */
     /* ------------------------------------------------------------ */
@@ -173,5 +186,19 @@ public interface HttpContent
         {
             _resource.close();
         }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public HttpContent getGzipContent()
+        {
+            return null;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public HttpField[] getPreEncodedFields()
+        {
+            return null;
+        }
     }
 }
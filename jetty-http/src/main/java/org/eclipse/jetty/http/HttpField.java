@@ -146,13 +146,14 @@ public class HttpField
 
     public boolean contains(String value)
     {
-        if (_value==null)
+        String v = getValue();
+        if (v==null)
             return false;
 
-        if (value.equalsIgnoreCase(_value))
+        if (value.equalsIgnoreCase(v))
             return true;
 
-        String[] split = _value.split("\\s*,\\s*");
+        String[] split = v.split("\\s*,\\s*");
         for (String s : split)
         {
             if (value.equalsIgnoreCase(s))
@@ -165,12 +166,12 @@ public class HttpField
 
     public int getIntValue()
     {
-        return StringUtil.toInt(_value);
+        return StringUtil.toInt(getValue());
     }
 
     public long getLongValue()
     {
-        return StringUtil.toLong(_value);
+        return StringUtil.toLong(getValue());
     }
     
     private static byte[] toSanitisedName(String s)
@@ -206,16 +207,17 @@ public class HttpField
 
     public void putTo(ByteBuffer bufferInFillMode)
     {
-        if (_header!=null)
+        HttpHeader header=getHeader();
+        if (header!=null)
         {
-            bufferInFillMode.put(_header.getBytesColonSpace());
-            bufferInFillMode.put(toSanitisedValue(_value));
+            bufferInFillMode.put(header.getBytesColonSpace());
+            putValueTo(bufferInFillMode);
         }
         else
         {
-            bufferInFillMode.put(toSanitisedName(_name));
+            bufferInFillMode.put(toSanitisedName(getName()));
             bufferInFillMode.put(__colon_space);
-            bufferInFillMode.put(toSanitisedValue(_value));
+            putValueTo(bufferInFillMode);
         }
 
         BufferUtil.putCRLF(bufferInFillMode);
@@ -223,7 +225,7 @@ public class HttpField
 
     public void putValueTo(ByteBuffer buffer)
     {
-        buffer.put(toSanitisedValue(_value));
+        buffer.put(toSanitisedValue(getValue()));
     }
 
     @Override
@@ -239,9 +241,10 @@ public class HttpField
             return false;
         if (field==this)
             return true;
-        if (_header!=null && _header==field.getHeader())
+        HttpHeader header=getHeader();
+        if (header!=null && header==field.getHeader())
             return true;
-        if (_name.equalsIgnoreCase(field.getName()))
+        if (getName().equalsIgnoreCase(field.getName()))
             return true;
         return false;
     }
@@ -249,6 +252,8 @@ public class HttpField
     
     /* ------------------------------------------------------------ */
     /** A HTTP Field optimised to be reused.
+     * The field is encoded once, when it is created, and then copied verbatim
+     * into every header it is put to.
      */
     public static class CachedHttpField extends HttpField
     {
@@ -0,0 +1,328 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.ArrayTernaryTrie;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+
+/* ------------------------------------------------------------ */
+/** A learned cache of {@link HttpField}s shared between parsers.
+ * <p>Where the static {@link HttpField#CACHE} only knows a few common fields and the
+ * per connection field cache of the {@link HttpParser} starts empty for every connection,
+ * this cache is intended to be shared by all the parsers of a connector so that the
+ * fields sent by many clients (eg User-Agent, Accept-*, custom X- headers) are
+ * looked up rather than reparsed and reallocated for every new connection.
+ * </p>
+ * <p>A field parsed by the slow path of the parser is offered to the cache with {@link #learn(HttpHeader, String, String)},
+ * or with {@link #learn(HttpHeader, String, ByteBuffer, int, int)} if its value is passed to a
+ * {@link HttpParser.BufferedFieldHandler}, and it is admitted once it has been seen {@link #getAdmitThreshold()} times. Candidates are counted in a
+ * bounded map that is reset when full.  Admitted fields are held in a case sensitive {@link ArrayTernaryTrie}
+ * that is copied on write, so that lookups are lock free.  When the trie is full, it is reset to hold only
+ * the field being admitted, so that the cache keeps learning as the fields sent by clients change; the fields
+ * that are still popular are admitted again once they have been seen {@link #getAdmitThreshold()} times.
+ * </p>
+ * <p>Fields that are unlikely to be shared (eg Content-Length) or that carry credentials (eg Cookie, Authorization)
+ * are never cached.</p>
+ */
+@ManagedObject("Shared learned HTTP field cache")
+public class HttpFieldCache
+{
+    private final int _capacity;
+    private final int _admitThreshold;
+    private final int _maxCandidates;
+    private final int _maxFieldLength;
+    private final ConcurrentMap<String,AtomicInteger> _candidates=new ConcurrentHashMap<>();
+    private final AtomicLong _hits=new AtomicLong();
+    private final AtomicLong _misses=new AtomicLong();
+    private volatile ArrayTernaryTrie<HttpField> _trie;
+    private volatile int _size;
+    private volatile long _resets;
+
+    /* ------------------------------------------------------------ */
+    public HttpFieldCache()
+    {
+        this(4096);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param capacity The capacity of the cache in trie nodes (roughly characters)
+     */
+    public HttpFieldCache(@Name("capacity") int capacity)
+    {
+        this(capacity,3,1024,256);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param capacity The capacity of the cache in trie nodes (roughly characters)
+     * @param admitThreshold The number of times a field must be seen before it is cached
+     * @param maxCandidates The maximum number of candidate fields counted before the counts are reset
+     * @param maxFieldLength The maximum length of a field (name and value) that may be cached
+     */
+    public HttpFieldCache(
+        @Name("capacity") int capacity,
+        @Name("admitThreshold") int admitThreshold,
+        @Name("maxCandidates") int maxCandidates,
+        @Name("maxFieldLength") int maxFieldLength)
+    {
+        if (capacity<=0 || capacity>Character.MAX_VALUE)
+            throw new IllegalArgumentException("capacity="+capacity);
+        _capacity=capacity;
+        _admitThreshold=Math.max(1,admitThreshold);
+        _maxCandidates=maxCandidates;
+        _maxFieldLength=maxFieldLength;
+        _trie=new ArrayTernaryTrie<>(false,capacity);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Look ahead in a buffer for a cached field.
+     * @param buffer The buffer to look in
+     * @param offset The offset relative to the buffer position
+     * @param length The maximum length to look at
+     * @return The best cached field matching the buffer, or null
+     * @see org.eclipse.jetty.util.Trie#getBest(ByteBuffer, int, int)
+     */
+    public HttpField getBest(ByteBuffer buffer, int offset, int length)
+    {
+        if (_size==0)
+            return null;
+        return _trie.getBest(buffer,offset,length);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Get a cached field
+     * @param field The field as a string as formatted by {@link HttpField#toString()}
+     * @return The cached field or null
+     */
+    public HttpField get(String field)
+    {
+        return _trie.get(field);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Offer a field that was not found in any cache.
+     * @param header The header as enum if of a known type, or null
+     * @param name The header name as received
+     * @param value The header value
+     */
+    public void learn(HttpHeader header, String name, String value)
+    {
+        if (value==null || name==null || !isCacheable(header))
+            return;
+        if (name.length()+value.length()+2>_maxFieldLength)
+            return;
+
+        _misses.incrementAndGet();
+
+        String key=name+": "+value;
+        AtomicInteger count=_candidates.get(key);
+        if (count==null)
+        {
+            if (_candidates.size()>=_maxCandidates)
+                _candidates.clear();
+            count=new AtomicInteger();
+            AtomicInteger existing=_candidates.putIfAbsent(key,count);
+            if (existing!=null)
+                count=existing;
+        }
+
+        if (count.incrementAndGet()==_admitThreshold)
+            admit(key,new HttpField(header,name,value));
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Offer a field that was not found in any cache, with its value in a buffer.
+     * <p>The value is converted to a String only if the field may be admitted.</p>
+     * @param header The header as enum if of a known type, or null
+     * @param name The header name as received
+     * @param buffer The buffer holding the header value
+     * @param offset The absolute index of the value in the buffer
+     * @param length The length of the value in bytes
+     */
+    public void learn(HttpHeader header, String name, ByteBuffer buffer, int offset, int length)
+    {
+        if (name==null || !isCacheable(header))
+            return;
+        if (name.length()+length+2>_maxFieldLength)
+            return;
+        learn(header,name,BufferUtil.toString(buffer,offset,length,StringUtil.__ISO_8859_1_CHARSET));
+    }
+
+    /* ------------------------------------------------------------ */
+    private synchronized void admit(String key, HttpField field)
+    {
+        _candidates.remove(key);
+        if (_trie.get(key)!=null)
+            return;
+
+        int size=_size+1;
+        ArrayTernaryTrie<HttpField> trie=null;
+        if (!_trie.isFull())
+        {
+            trie=new ArrayTernaryTrie<>(_trie,1.0);
+            if (!trie.put(key,field))
+                trie=null;
+        }
+
+        if (trie==null)
+        {
+            // The trie is full: start again from this field, so that the fields
+            // that are no longer received are evicted and the others relearnt
+            trie=new ArrayTernaryTrie<>(false,_capacity);
+            if (!trie.put(key,field))
+                return;
+            size=1;
+            _resets++;
+        }
+        _trie=trie;
+        _size=size;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Record hits found by a parser.
+     * <p>Parsers accumulate their hits and report them once per message,
+     * so that the counter is not contended for every field.</p>
+     * @param hits The number of hits
+     */
+    void onHits(int hits)
+    {
+        _hits.addAndGet(hits);
+    }
+
+    /* ------------------------------------------------------------ */
+    protected boolean isCacheable(HttpHeader header)
+    {
+        if (header==null)
+            return true;
+        switch (header)
+        {
+            case CONTENT_LENGTH:
+            case CONTENT_MD5:
+            case COOKIE:
+            case SET_COOKIE:
+            case SET_COOKIE2:
+            case AUTHORIZATION:
+            case PROXY_AUTHORIZATION:
+            case IF_MODIFIED_SINCE:
+            case IF_NONE_MATCH:
+            case DATE:
+            case ETAG:
+            case LAST_MODIFIED:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedOperation("Clear the cache and its statistics")
+    public synchronized void clear()
+    {
+        _trie=new ArrayTernaryTrie<>(false,_capacity);
+        _size=0;
+        _resets=0;
+        _candidates.clear();
+        _hits.set(0);
+        _misses.set(0);
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The capacity of the cache in trie nodes")
+    public int getCapacity()
+    {
+        return _capacity;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The number of times a field must be seen before it is cached")
+    public int getAdmitThreshold()
+    {
+        return _admitThreshold;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The maximum length of a cached field")
+    public int getMaxFieldLength()
+    {
+        return _maxFieldLength;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The number of cached fields")
+    public int getSize()
+    {
+        return _size;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The number of fields counted for admission")
+    public int getCandidates()
+    {
+        return _candidates.size();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The number of times the cache was reset because it was full")
+    public long getResets()
+    {
+        return _resets;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The number of fields found in the cache")
+    public long getHits()
+    {
+        return _hits.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The number of cacheable fields not found in the cache")
+    public long getMisses()
+    {
+        return _misses.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The ratio of hits to lookups of cacheable fields")
+    public double getHitRate()
+    {
+        long hits=_hits.get();
+        long total=hits+_misses.get();
+        return total==0?0.0:((double)hits)/total;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d,capacity=%d,hits=%d,misses=%d}",getClass().getSimpleName(),hashCode(),_size,_capacity,getHits(),getMisses());
+    }
+}
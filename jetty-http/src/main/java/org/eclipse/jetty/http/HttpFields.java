@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -57,6 +58,11 @@ import org.eclipse.jetty.util.log.Logger;
  * <p>This class is not synchronized as it is expected that modifications will only be performed by a
  * single thread.
  *
+ * <p>Fields may be added from a buffer with {@link #add(HttpHeader, String, ByteBuffer, int, int)}, in
+ * which case the value bytes are copied into storage owned by this instance and a String is only created
+ * if the value is asked for. That storage is reused after {@link #clear()}, so such fields must not be
+ * retained after the fields have been cleared.
+ *
  */
 public class HttpFields implements Iterable<HttpField>
 {
@@ -177,6 +183,9 @@ public class HttpFields implements Iterable<HttpField>
      */
     public static String formatDate(long date)
     {
+        String cached=DateFieldCache.getCachedDate(date);
+        if (cached!=null)
+            return cached;
         return __dateGenerator.get().formatDate(date);
     }
 
@@ -277,6 +286,8 @@ public class HttpFields implements Iterable<HttpField>
     public final static ByteBuffer __01Jan1970_BUFFER=BufferUtil.toBuffer(__01Jan1970);
     public final static String __01Jan1970_COOKIE = formatCookieDate(0).trim();
     private final ArrayList<HttpField> _fields = new ArrayList<>(20);
+    private byte[] _bytes;
+    private int _bytesLength;
 
     /**
      * Constructor.
@@ -335,7 +346,8 @@ public class HttpFields implements Iterable<HttpField>
         for (int i=0;i<_fields.size();i++)
         {
             HttpField f=_fields.get(i);
-            if (f.getHeader()==header)
+            HttpHeader h=f.getHeader();
+            if (h==header || h==null && header.asString().equalsIgnoreCase(f.getName()))
                 return f;
         }
         return null;
@@ -387,12 +399,13 @@ public class HttpFields implements Iterable<HttpField>
 
     public String getStringField(HttpHeader header)
     {
-        return getStringField(header.asString());
+        HttpField field = getField(header);
+        return field==null?null:field.getValue();
     }
 
     public String get(HttpHeader header)
     {
-        return getStringField(header.asString());
+        return getStringField(header);
     }
 
     public String get(String header)
@@ -942,6 +955,7 @@ public class HttpFields implements Iterable<HttpField>
     public void clear()
     {
         _fields.clear();
+        _bytesLength=0;
     }
 
     public void add(HttpField field)
@@ -949,6 +963,38 @@ public class HttpFields implements Iterable<HttpField>
         _fields.add(field);
     }
 
+    /**
+     * Add a field whose value is held in a buffer.
+     * <p>The value bytes are copied, so the buffer may be reused once this method returns.
+     * No String is created for the value until {@link HttpField#getValue()} is called,
+     * and {@link HttpField#putTo(ByteBuffer)} copies the value bytes directly.
+     *
+     * @param header the header of the field, or null if it is not a known header
+     * @param name the name of the field
+     * @param buffer the buffer holding the value, which must not contain CR or LF characters
+     * @param offset the absolute index of the value in the buffer
+     * @param length the length in bytes of the value
+     */
+    public void add(HttpHeader header, String name, ByteBuffer buffer, int offset, int length)
+    {
+        if (_bytes==null)
+            _bytes=new byte[Math.max(256,length)];
+        else if (_bytesLength+length>_bytes.length)
+            _bytes=Arrays.copyOf(_bytes,Math.max(_bytes.length*2,_bytesLength+length));
+
+        if (buffer.hasArray())
+            System.arraycopy(buffer.array(),buffer.arrayOffset()+offset,_bytes,_bytesLength,length);
+        else
+        {
+            ByteBuffer slice=buffer.duplicate();
+            slice.limit(offset+length).position(offset);
+            slice.get(_bytes,_bytesLength,length);
+        }
+
+        _fields.add(new BufferedHttpField(header,name,_bytesLength,length));
+        _bytesLength+=length;
+    }
+
     
     
     /**
@@ -1122,5 +1168,35 @@ public class HttpFields implements Iterable<HttpField>
         return vl;
     }
 
+    /**
+     * A {@link HttpField} whose value is held in the byte storage of its {@link HttpFields}.
+     */
+    private class BufferedHttpField extends HttpField
+    {
+        private final int _offset;
+        private final int _length;
+        private String _decoded;
+
+        private BufferedHttpField(HttpHeader header, String name, int offset, int length)
+        {
+            super(header,name,null);
+            _offset=offset;
+            _length=length;
+        }
+
+        @Override
+        public String getValue()
+        {
+            if (_decoded==null)
+                _decoded=new String(_bytes,_offset,_length,StringUtil.__ISO_8859_1_CHARSET);
+            return _decoded;
+        }
 
+        @Override
+        public void putValueTo(ByteBuffer buffer)
+        {
+            // The bytes are known not to contain CR or LF, so they do not need to be sanitised
+            buffer.put(_bytes,_offset,_length);
+        }
+    }
 }
@@ -61,7 +61,9 @@ import org.eclipse.jetty.util.log.Logger;
  * (eg. "Connection: close"), or just header names (eg. "Connection:" ).
  * For headers who's value is not known statically (eg. Host, COOKIE) then a
  * per parser dynamic Trie of {@link HttpFields} from previous parsed messages
- * is used to help the parsing of subsequent messages.
+ * is used to help the parsing of subsequent messages.  An optional {@link HttpFieldCache}
+ * may also be shared between parsers (eg all those of a connector), so that fields
+ * learned from previous connections are found by new connections.
  * </p>
  */
 public class HttpParser
@@ -100,6 +102,7 @@ public class HttpParser
     private final HttpHandler<ByteBuffer> _handler;
     private final RequestHandler<ByteBuffer> _requestHandler;
     private final ResponseHandler<ByteBuffer> _responseHandler;
+    private final BufferedFieldHandler _bufferedHandler;
     private final int _maxHeaderBytes;
     private HttpField _field;
     private HttpHeader _header;
@@ -125,6 +128,8 @@ public class HttpParser
     private boolean _cr;
     private ByteBuffer _contentChunk;
     private Trie<HttpField> _connectionFields;
+    private HttpFieldCache _sharedFields;
+    private int _sharedFieldHits;
 
     private int _length;
     private final StringBuilder _string=new StringBuilder();
@@ -147,6 +152,7 @@ public class HttpParser
         _handler=handler;
         _requestHandler=handler;
         _responseHandler=null;
+        _bufferedHandler=handler instanceof BufferedFieldHandler?(BufferedFieldHandler)handler:null;
         _maxHeaderBytes=maxHeaderBytes;
     }
 
@@ -156,6 +162,7 @@ public class HttpParser
         _handler=handler;
         _requestHandler=null;
         _responseHandler=handler;
+        _bufferedHandler=handler instanceof BufferedFieldHandler?(BufferedFieldHandler)handler:null;
         _maxHeaderBytes=maxHeaderBytes;
     }
 
@@ -391,6 +398,50 @@ public class HttpParser
         return s;
     }
 
+    /* ------------------------------------------------------------------------------- */
+    private void growURI(int needed)
+    {
+        ByteBuffer uri = ByteBuffer.allocate(Math.max(_uri.capacity()*2,_uri.position()+needed));
+        _uri.flip();
+        uri.put(_uri);
+        _uri=uri;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /* Append any run of value characters (up to the next space or control character)
+     * from the buffer to the string, a word at a time.
+     * Returns the number of characters appended.
+     */
+    private int takeValueRun(ByteBuffer buffer)
+    {
+        int position=buffer.position();
+        int end=HttpTokenScanner.indexOfStop(buffer,position,buffer.limit());
+        int length=end-position;
+        if (length==0)
+            return 0;
+
+        if (_maxHeaderBytes>0 && (_headerBytes+=length)>_maxHeaderBytes)
+        {
+            LOG.warn("Header is too large >"+_maxHeaderBytes);
+            throw new BadMessage(HttpStatus.REQUEST_ENTITY_TOO_LARGE_413);
+        }
+
+        if (buffer.hasArray())
+        {
+            byte[] array=buffer.array();
+            int offset=buffer.arrayOffset();
+            for (int i=offset+position;i<offset+end;i++)
+                _string.append((char)array[i]);
+        }
+        else
+        {
+            for (int i=position;i<end;i++)
+                _string.append((char)buffer.get(i));
+        }
+        buffer.position(end);
+        return length;
+    }
+
     /* ------------------------------------------------------------------------------- */
     /* Parse a request or response line
      */
@@ -551,13 +602,25 @@ public class HttpParser
                     else
                     {
                         if (!_uri.hasRemaining())
+                            growURI(1);
+                        _uri.put(ch);
+
+                        // Copy the rest of the URI in bulk
+                        int length=HttpTokenScanner.indexOfStop(buffer,buffer.position(),buffer.limit())-buffer.position();
+                        if (length>0)
                         {
-                            ByteBuffer uri = ByteBuffer.allocate(_uri.capacity()*2);
-                            _uri.flip();
-                            uri.put(_uri);
-                            _uri=uri;
+                            if (_maxHeaderBytes>0 && (_headerBytes+=length)>_maxHeaderBytes)
+                            {
+                                LOG.warn("URI is too large >"+_maxHeaderBytes);
+                                throw new BadMessage(HttpStatus.REQUEST_URI_TOO_LONG_414);
+                            }
+                            if (_uri.remaining()<length)
+                                growURI(length);
+                            int limit=buffer.limit();
+                            buffer.limit(buffer.position()+length);
+                            _uri.put(buffer);
+                            buffer.limit(limit);
                         }
-                        _uri.put(ch);
                     }
                     break;
 
@@ -795,6 +858,73 @@ public class HttpParser
     }
     
     
+    /* ------------------------------------------------------------------------------- */
+    /* Can the value of the header be passed to a BufferedFieldHandler, or does the
+     * parser need it as a String?
+     */
+    private boolean isBufferable(HttpHeader header)
+    {
+        if (header==null)
+            return true;
+        switch (header)
+        {
+            case CONTENT_LENGTH:
+            case TRANSFER_ENCODING:
+            case HOST:
+            case CONNECTION:
+                return false;
+
+            case AUTHORIZATION:
+            case ACCEPT:
+            case ACCEPT_CHARSET:
+            case ACCEPT_ENCODING:
+            case ACCEPT_LANGUAGE:
+            case COOKIE:
+            case CACHE_CONTROL:
+            case USER_AGENT:
+                return _connectionFields==null;
+
+            default:
+                return !HttpHeaderValue.hasKnownValues(header);
+        }
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /* Quick look ahead for the end of a header value that has been started, so that
+     * the value can be passed to a BufferedFieldHandler as a region of the buffer.
+     * Returns the index after the terminating LF, or -1 if the value is not followed
+     * by a complete EOL and the first byte of the next line (which may be a
+     * continuation) in this buffer, or if the value contains illegal characters.
+     */
+    private int scanBufferedValue(ByteBuffer buffer)
+    {
+        int limit=buffer.limit();
+        for (int i=buffer.position();i<limit;i++)
+        {
+            byte b=buffer.get(i);
+            if (b>=HttpTokens.SPACE || b<0 || b==HttpTokens.TAB)
+                continue;
+
+            int lf=i;
+            if (b==HttpTokens.CARRIAGE_RETURN)
+            {
+                lf=i+1;
+                if (lf>=limit || buffer.get(lf)!=HttpTokens.LINE_FEED)
+                    return -1;
+            }
+            else if (b!=HttpTokens.LINE_FEED)
+                return -1;
+
+            if (lf+1>=limit)
+                return -1;
+            byte n=buffer.get(lf+1);
+            if (n==HttpTokens.SPACE || n==HttpTokens.TAB)
+                return -1;
+            return lf+1;
+        }
+        return -1;
+    }
+
     /* ------------------------------------------------------------------------------- */
     /*
      * Parse the message headers and return true if the handler has signaled for a return
@@ -846,15 +976,22 @@ public class HttpParser
                             // handler last header if any.  Delayed to here just in case there was a continuation line (above)
                             if (_headerString!=null || _valueString!=null)
                             {
+                                // Was the field not found in any cache?
+                                boolean learn=_field==null && _sharedFields!=null;
+
                                 // Handle known headers
                                 if (_header!=null && handleKnownHeaders(buffer))
                                 {
+                                    if (learn)
+                                        _sharedFields.learn(_header,_headerString,_valueString);
                                     _headerString=_valueString=null;
                                     _header=null;
                                     _value=null;
                                     _field=null;
                                     return true;
                                 }
+                                if (learn)
+                                    _sharedFields.learn(_header,_headerString,_valueString);
                                 return_from_parse=_handler.parsedHeader(_field!=null?_field:new HttpField(_header,_headerString,_valueString))||return_from_parse;
                             }
                             _headerString=_valueString=null;
@@ -868,6 +1005,11 @@ public class HttpParser
                                 _contentPosition=0;
 
                                 // End of headers!
+                                if (_sharedFieldHits>0)
+                                {
+                                    _sharedFields.onHits(_sharedFieldHits);
+                                    _sharedFieldHits=0;
+                                }
 
                                 // Was there a required host header?
                                 if (!_host && _version!=HttpVersion.HTTP_1_0 && _requestHandler!=null)
@@ -925,6 +1067,12 @@ public class HttpParser
                                 {
                                     // Try a look ahead for the known header name and value.
                                     HttpField field=_connectionFields==null?null:_connectionFields.getBest(buffer,-1,buffer.remaining());
+                                    boolean shared=false;
+                                    if (field==null && _sharedFields!=null)
+                                    {
+                                        field=_sharedFields.getBest(buffer,-1,buffer.remaining());
+                                        shared=field!=null;
+                                    }
                                     if (field==null)
                                         field=HttpField.CACHE.getBest(buffer,-1,buffer.remaining());
                                         
@@ -952,6 +1100,8 @@ public class HttpParser
 
                                             if (b==HttpTokens.CARRIAGE_RETURN || b==HttpTokens.LINE_FEED)
                                             {                     
+                                                if (shared)
+                                                    _sharedFieldHits++;
                                                 _field=field;
                                                 _header=_field.getHeader();
                                                 _headerString=n;
@@ -1093,7 +1243,38 @@ public class HttpParser
                             break;
                         default:
                         {
+                            // Can the whole value be passed from the buffer?
+                            if (_bufferedHandler!=null && _headerString!=null && _valueString==null && _string.length()==0 && isBufferable(_header) && _bufferedHandler.isBufferingHeaderValues())
+                            {
+                                int start=buffer.position()-1;
+                                int next=scanBufferedValue(buffer);
+                                if (next>0)
+                                {
+                                    int end=next-(buffer.get(next-2)==HttpTokens.CARRIAGE_RETURN?2:1);
+                                    while (end>start && (buffer.get(end-1)==HttpTokens.SPACE || buffer.get(end-1)==HttpTokens.TAB))
+                                        end--;
+
+                                    if (_maxHeaderBytes>0 && (_headerBytes+=next-buffer.position())>_maxHeaderBytes)
+                                    {
+                                        LOG.warn("Header is too large >"+_maxHeaderBytes);
+                                        throw new BadMessage(HttpStatus.REQUEST_ENTITY_TOO_LARGE_413);
+                                    }
+
+                                    buffer.position(next);
+                                    if (_field==null && _sharedFields!=null)
+                                        _sharedFields.learn(_header,_headerString,buffer,start,end-start);
+                                    return_from_parse=_bufferedHandler.parsedHeader(_header,_headerString,buffer,start,end-start)||return_from_parse;
+                                    _headerString=null;
+                                    _header=null;
+                                    _value=null;
+                                    _field=null;
+                                    setState(State.HEADER);
+                                    break;
+                                }
+                            }
+
                             _string.append((char)ch);
+                            takeValueRun(buffer);
                             _length=_string.length();
                             setState(State.HEADER_IN_VALUE);
                         }
@@ -1143,7 +1324,7 @@ public class HttpParser
                                 _field=null;
                             }
                             _string.append((char)ch);
-                            _length++;
+                            _length+=1+takeValueRun(buffer);
                     }
                     break;
 
@@ -1581,9 +1762,54 @@ public class HttpParser
         public abstract boolean startResponse(HttpVersion version, int status, String reason);
     }
 
+    /**
+     * An optional interface for {@link HttpHandler}s that can take header values directly from the parsed buffer.
+     * <p>If the handler passed to the parser implements this interface, then the values of headers that
+     * are not interpreted by the parser itself, and that are found complete in a single buffer, are passed
+     * as a region of that buffer rather than as an {@link HttpField} with a String value, for as long as
+     * {@link #isBufferingHeaderValues()} returns true.</p>
+     */
+    public interface BufferedFieldHandler
+    {
+        /**
+         * @return True if header values should be passed to {@link #parsedHeader(HttpHeader, String, ByteBuffer, int, int)},
+         * false if they should be passed as {@link HttpField}s to {@link HttpHandler#parsedHeader(HttpField)}
+         */
+        public boolean isBufferingHeaderValues();
+
+        /**
+         * This is the method called by parser when a HTTP Header name and value is found in the parsed buffer
+         * @param header The header as enum if of a known type, or null
+         * @param name The header name
+         * @param buffer The parsed buffer, whose content must not be retained after the call returns
+         * @param offset The absolute index of the value in the buffer
+         * @param length The length of the value in bytes
+         * @return True if the parser should return to its caller
+         */
+        public boolean parsedHeader(HttpHeader header, String name, ByteBuffer buffer, int offset, int length);
+    }
+
     public Trie<HttpField> getFieldCache()
     {
         return _connectionFields;
     }
 
+    /* ------------------------------------------------------------------------------- */
+    public HttpFieldCache getSharedFieldCache()
+    {
+        return _sharedFields;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /** Set a field cache shared with other parsers.
+     * <p>The shared cache is looked up after the per connection field cache and before the
+     * static {@link HttpField#CACHE}. Fields parsed without a hit in any cache are offered
+     * to the shared cache to learn.</p>
+     * @param cache The shared cache or null for none
+     */
+    public void setSharedFieldCache(HttpFieldCache cache)
+    {
+        _sharedFields=cache;
+    }
+
 }
@@ -0,0 +1,97 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/* ------------------------------------------------------------ */
+/** Word at a time scanning of HTTP tokens.
+ * <p>The {@link HttpParser} only needs to look at the individual bytes of a URI or a header
+ * value to find the next space or control character.  This class finds them 8 bytes at a
+ * time by reading the buffer as longs and testing all the bytes of a word with a few
+ * arithmetic operations, so that long URIs and header values can be copied in bulk.
+ * </p>
+ * <p>A stop byte is any byte that the parser must see individually: a control
+ * character (0x00-0x1F, including CR, LF and TAB), a SPACE, or 0xFF which
+ * {@link HttpParser} treats specially. All other bytes (including DEL and
+ * non ASCII bytes) are accepted by the parser as part of a token.
+ * </p>
+ */
+public class HttpTokenScanner
+{
+    private static final long HIGH_BITS=0x8080808080808080L;
+    private static final long LOW_BITS=0x7F7F7F7F7F7F7F7FL;
+    private static final long SPACES=0x2020202020202020L;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param b a byte
+     * @return True if the byte is a control character, a SPACE or 0xFF
+     */
+    public static boolean isStop(byte b)
+    {
+        return (b>=0 && b<=HttpTokens.SPACE) || b==-1;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Find the next stop byte in a buffer.
+     * @param buffer The buffer to scan, which is not modified.
+     * @param index The absolute index to scan from
+     * @param limit The absolute index to scan to
+     * @return The absolute index of the first stop byte, or limit if there is none.
+     */
+    public static int indexOfStop(ByteBuffer buffer, int index, int limit)
+    {
+        boolean bigEndian=buffer.order()==ByteOrder.BIG_ENDIAN;
+        while (index+8<=limit)
+        {
+            long stops=stops(buffer.getLong(index));
+            if (stops!=0)
+                return index+((bigEndian?Long.numberOfLeadingZeros(stops):Long.numberOfTrailingZeros(stops))>>>3);
+            index+=8;
+        }
+
+        while (index<limit && !isStop(buffer.get(index)))
+            index++;
+        return index;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Find the stop bytes in a word.
+     * <p>The tests are exact, as no carry can propagate between the bytes of the word.</p>
+     * @param word 8 bytes
+     * @return A word with the high bit of each stop byte set and all other bits clear
+     */
+    static long stops(long word)
+    {
+        // The high bit is set for bytes with any of their top three bits set, ie not control characters
+        long notControl=(word|(word<<1)|(word<<2))&HIGH_BITS;
+
+        // The high bit is set for bytes that are not SPACE
+        long spaces=word^SPACES;
+        long notSpace=(((spaces&LOW_BITS)+LOW_BITS)|spaces)&HIGH_BITS;
+
+        // The high bit is set for bytes that are not 0xFF
+        long ffs=~word;
+        long notFF=(((ffs&LOW_BITS)+LOW_BITS)|ffs)&HIGH_BITS;
+
+        return ~(notControl&notSpace&notFF)&HIGH_BITS;
+    }
+}
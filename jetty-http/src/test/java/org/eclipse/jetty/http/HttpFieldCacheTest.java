@@ -0,0 +1,114 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.Test;
+
+public class HttpFieldCacheTest
+{
+    @Test
+    public void testAdmission() throws Exception
+    {
+        HttpFieldCache cache = new HttpFieldCache(1024,2,16,256);
+
+        cache.learn(null,"X-Test","value");
+        assertNull(cache.get("X-Test: value"));
+        assertEquals(1,cache.getCandidates());
+
+        cache.learn(null,"X-Test","value");
+        HttpField field=cache.get("X-Test: value");
+        assertEquals("X-Test",field.getName());
+        assertEquals("value",field.getValue());
+        assertEquals(1,cache.getSize());
+        assertEquals(0,cache.getCandidates());
+
+        // Case sensitive
+        assertNull(cache.get("x-test: value"));
+        assertNull(cache.get("X-Test: VALUE"));
+
+        ByteBuffer buffer=BufferUtil.toBuffer("X-Test: value\r\n");
+        assertTrue(field==cache.getBest(buffer,0,buffer.remaining()));
+        buffer=BufferUtil.toBuffer("X-Test: other\r\n");
+        assertNull(cache.getBest(buffer,0,buffer.remaining()));
+    }
+
+    @Test
+    public void testNotCacheable() throws Exception
+    {
+        HttpFieldCache cache = new HttpFieldCache(1024,1,16,32);
+
+        cache.learn(HttpHeader.COOKIE,"Cookie","name=value");
+        cache.learn(HttpHeader.AUTHORIZATION,"Authorization","Basic secret");
+        cache.learn(HttpHeader.CONTENT_LENGTH,"Content-Length","10");
+        cache.learn(null,"X-Long","01234567890123456789012345678901234567890123456789");
+        assertEquals(0,cache.getSize());
+        assertEquals(0,cache.getMisses());
+
+        cache.learn(HttpHeader.USER_AGENT,"User-Agent","Test");
+        assertEquals(1,cache.getSize());
+        assertEquals(1,cache.getMisses());
+    }
+
+    @Test
+    public void testBoundedCandidates() throws Exception
+    {
+        HttpFieldCache cache = new HttpFieldCache(1024,2,4,256);
+
+        for (int i=0;i<10;i++)
+            cache.learn(null,"X-Test","value"+i);
+        assertTrue(cache.getCandidates()<=4);
+        assertEquals(0,cache.getSize());
+    }
+
+    @Test
+    public void testFullResets() throws Exception
+    {
+        HttpFieldCache cache = new HttpFieldCache(32,1,16,256);
+
+        cache.learn(null,"X-Test","value");
+        cache.learn(null,"X-Other","value");
+        assertEquals(0,cache.getResets());
+        assertEquals(2,cache.getSize());
+
+        // The cache keeps learning once full, starting again from the new field
+        cache.learn(null,"X-Another","value");
+        assertEquals(1,cache.getResets());
+        assertEquals(1,cache.getSize());
+        assertNotNull(cache.get("X-Another: value"));
+        assertNull(cache.get("X-Test: value"));
+
+        cache.learn(null,"X-Test","value");
+        assertNotNull(cache.get("X-Test: value"));
+        assertEquals(2,cache.getSize());
+
+        cache.clear();
+        assertEquals(0,cache.getResets());
+        assertEquals(0,cache.getSize());
+        cache.learn(null,"X-Another","value");
+        assertEquals(1,cache.getSize());
+    }
+}
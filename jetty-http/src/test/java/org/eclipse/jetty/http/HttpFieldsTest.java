@@ -92,6 +92,39 @@ public class HttpFieldsTest
         assertThat(result,Matchers.containsString("name1: value:B"));
     }
 
+    @Test
+    public void testBufferedFields() throws Exception
+    {
+        HttpFields header = new HttpFields();
+        ByteBuffer buffer = BufferUtil.toBuffer("xxxvalue0xxxvalue1xxx");
+
+        header.add(null,"name0",buffer,3,6);
+        header.add(HttpHeader.REFERER,HttpHeader.REFERER.asString(),buffer,12,6);
+        // The buffer may be reused once the fields have been added
+        BufferUtil.clear(buffer);
+
+        assertEquals(2,header.size());
+        assertEquals("value0",header.get("name0"));
+        assertEquals("value1",header.get(HttpHeader.REFERER));
+        assertEquals("value1",header.get("referer"));
+        assertTrue(header.containsKey("Referer"));
+
+        ByteBuffer out = BufferUtil.allocate(1024);
+        BufferUtil.clearToFill(out);
+        header.putTo(out);
+        BufferUtil.flipToFlush(out,0);
+        assertEquals("name0: value0\r\nReferer: value1\r\n\r\n",BufferUtil.toString(out));
+
+        header.clear();
+        assertEquals(0,header.size());
+
+        // The storage of cleared fields is reused
+        header.add(HttpHeader.USER_AGENT,HttpHeader.USER_AGENT.asString(),BufferUtil.toBuffer("agent"),0,5);
+        assertEquals(HttpHeader.USER_AGENT,header.getField(0).getHeader());
+        assertEquals("agent",header.get(HttpHeader.USER_AGENT));
+        assertNull(header.get("name0"));
+    }
+
     @Test
     public void testGet() throws Exception
     {
@@ -430,6 +463,55 @@ public class HttpFieldsTest
         assertEquals("Fri, 31 Dec 1999 23:59:59 GMT",fields.getStringField("D2"));
     }
 
+    @Test
+    public void testCachedDateField() throws Exception
+    {
+        HttpField field = DateFieldCache.getDateField();
+        assertEquals(HttpHeader.DATE,field.getHeader());
+        assertEquals(DateFieldCache.getDate(),field.getValue());
+        assertEquals(DateFieldCache.getDate(),BufferUtil.toString(DateFieldCache.getDateBuffer()));
+
+        // The cached second and other seconds are formatted the same
+        long now = System.currentTimeMillis();
+        assertEquals(new HttpFields.DateGenerator().formatDate(now),HttpFields.formatDate(now));
+        assertEquals("Fri, 31 Dec 1999 23:59:59 GMT",HttpFields.formatDate(946684799000L));
+        assertNull(DateFieldCache.getCachedDate(946684799000L));
+    }
+
+    @Test
+    public void testCachedDateFieldAcquired() throws Exception
+    {
+        DateFieldCache.acquire();
+        try
+        {
+            DateFieldCache.acquire();
+            DateFieldCache.release();
+
+            // Still updated by the timer after a nested release
+            HttpField field = DateFieldCache.getDateField();
+            assertEquals(DateFieldCache.getDate(),field.getValue());
+            Thread.sleep(2100);
+            assertCurrentDate(DateFieldCache.getDate());
+        }
+        finally
+        {
+            DateFieldCache.release();
+        }
+
+        // Formatted by the readers once released
+        Thread.sleep(2100);
+        assertCurrentDate(DateFieldCache.getDate());
+    }
+
+    private void assertCurrentDate(String date)
+    {
+        // The date may be of the previous second, until the timer task has run
+        long now = System.currentTimeMillis();
+        HttpFields.DateGenerator generator = new HttpFields.DateGenerator();
+        if (!date.equals(generator.formatDate(now)))
+            assertEquals(generator.formatDate(now-1000),date);
+    }
+
     @Test
     public void testNegDateFields() throws Exception
     {
@@ -20,6 +20,8 @@ package org.eclipse.jetty.http;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
@@ -370,6 +372,134 @@ public class HttpParserTest
     }
 
 
+    @Test
+    public void testBufferedHeaderParse() throws Exception
+    {
+        ByteBuffer b0= BufferUtil.toBuffer(
+                "GET / HTTP/1.0\015\012" +
+                        "Host: localhost\015\012" +
+                        "Header1: value1\015\012" +
+                        "Header 2  :   value 2a  \015\012" +
+                        "    value 2b  \015\012" +
+                        "Header3: \015\012" +
+                        "Header4 \015\012" +
+                        "  value4\015\012" +
+                        "Referer:  http://localhost/  \015\012" +
+                        "X-Forwarded-For: 10.0.0.1\012" +
+                        "Connection: close\015\012" +
+                        "Accept: unknown\015\012" +
+                "\015\012");
+
+        for (boolean direct : new boolean[]{false,true})
+        {
+            ByteBuffer buffer = direct?BufferUtil.allocateDirect(b0.capacity()):BufferUtil.allocate(b0.capacity());
+            int pos=BufferUtil.flipToFill(buffer);
+            BufferUtil.put(b0.duplicate(),buffer);
+            BufferUtil.flipToFlush(buffer,pos);
+
+            BufferedHandler handler  = new BufferedHandler();
+            HttpParser parser= new HttpParser((HttpParser.RequestHandler<ByteBuffer>)handler);
+            parseAll(parser,buffer);
+
+            assertEquals("GET", _methodOrVersion);
+            assertEquals("Host", _hdr[0]);
+            assertEquals("localhost", _val[0]);
+            assertEquals("Header1", _hdr[1]);
+            assertEquals("value1", _val[1]);
+            assertEquals("Header 2", _hdr[2]);
+            assertEquals("value 2a value 2b", _val[2]);
+            assertEquals("Header3", _hdr[3]);
+            assertEquals(null, _val[3]);
+            assertEquals("Header4", _hdr[4]);
+            assertEquals("value4", _val[4]);
+            assertEquals("Referer", _hdr[5]);
+            assertEquals("http://localhost/", _val[5]);
+            assertEquals("X-Forwarded-For", _hdr[6]);
+            assertEquals("10.0.0.1", _val[6]);
+            assertEquals("Connection", _hdr[7]);
+            assertEquals("close", _val[7]);
+            assertEquals("Accept", _hdr[8]);
+            assertEquals("unknown", _val[8]);
+            assertEquals(8, _h);
+            // Header1, Header4, Referer, X-Forwarded-For and Accept are passed from the buffer
+            assertEquals(5, handler.buffered);
+        }
+    }
+
+    @Test
+    public void testBufferedHeaderParseNotBuffering() throws Exception
+    {
+        ByteBuffer buffer= BufferUtil.toBuffer(
+                "GET / HTTP/1.0\015\012" +
+                        "Host: localhost\015\012" +
+                        "Header1: value1\015\012" +
+                        "Accept: unknown\015\012" +
+                "\015\012");
+
+        BufferedHandler handler  = new BufferedHandler();
+        handler.buffering=false;
+        HttpParser parser= new HttpParser((HttpParser.RequestHandler<ByteBuffer>)handler);
+        parseAll(parser,buffer);
+
+        assertEquals("GET", _methodOrVersion);
+        assertEquals("Header1", _hdr[1]);
+        assertEquals("value1", _val[1]);
+        assertEquals("Accept", _hdr[2]);
+        assertEquals("unknown", _val[2]);
+        assertEquals(2, _h);
+        // All the values are passed as HttpFields
+        assertEquals(0, handler.buffered);
+    }
+
+    @Test
+    public void testSplitBufferedHeaderParse() throws Exception
+    {
+        ByteBuffer buffer= BufferUtil.toBuffer(
+                "XXXXSPLIT / HTTP/1.0\015\012" +
+                    "Host: localhost\015\012" +
+                    "Header1: value1\015\012" +
+                    "Header2  :   value 2a  \015\012" +
+                    "                    value 2b  \015\012" +
+                    "Header3: \015\012" +
+                    "Server5: notServer \015\012" +
+                    "\015\012ZZZZ");
+        buffer.position(2);
+        buffer.limit(buffer.capacity()-2);
+        buffer=buffer.slice();
+
+        for (int i=0;i<buffer.capacity()-4;i++)
+        {
+            HttpParser.RequestHandler<ByteBuffer> handler  = new BufferedHandler();
+            HttpParser parser= new HttpParser(handler);
+
+            buffer.position(2);
+            buffer.limit(2+i);
+
+            if (!parser.parseNext(buffer))
+            {
+                // consumed all
+                assertEquals(0,buffer.remaining());
+
+                // parse the rest
+                buffer.limit(buffer.capacity()-2);
+                parser.parseNext(buffer);
+            }
+
+            assertEquals("SPLIT", _methodOrVersion);
+            assertEquals("Host", _hdr[0]);
+            assertEquals("localhost", _val[0]);
+            assertEquals("Header1", _hdr[1]);
+            assertEquals("value1", _val[1]);
+            assertEquals("Header2", _hdr[2]);
+            assertEquals("value 2a value 2b", _val[2]);
+            assertEquals("Header3", _hdr[3]);
+            assertEquals(null, _val[3]);
+            assertEquals("Server5", _hdr[4]);
+            assertEquals("notServer", _val[4]);
+            assertEquals(4, _h);
+        }
+    }
+
     @Test
     public void testChunkParse() throws Exception
     {
@@ -1015,6 +1145,90 @@ public class HttpParserTest
         
     }
 
+    @Test
+    public void testSharedFieldCache() throws Exception
+    {
+        ByteBuffer buffer= BufferUtil.toBuffer(
+            "GET / HTTP/1.1\r\n"+
+            "Host: localhost\r\n"+
+            "User-Agent: Test/1.0\r\n"+
+            "x-custom: Value\r\n"+
+            "Cookie: secret\r\n"+
+            "Connection: close\r\n"+
+            "\r\n");
+
+        HttpFieldCache cache = new HttpFieldCache(1024,3,16,256);
+
+        // Each parser is a new connection
+        for (int i=0;i<3;i++)
+        {
+            HttpParser parser= new HttpParser((HttpParser.RequestHandler<ByteBuffer>)new Handler());
+            parser.setSharedFieldCache(cache);
+            buffer.position(0);
+            parseAll(parser,buffer);
+            assertEquals("Value",_val[2]);
+        }
+        assertEquals(3,cache.getSize());
+        assertEquals(0,cache.getHits());
+        assertNull(cache.get("Cookie: secret"));
+
+        HttpParser parser= new HttpParser((HttpParser.RequestHandler<ByteBuffer>)new Handler());
+        parser.setSharedFieldCache(cache);
+        buffer.position(0);
+        parseAll(parser,buffer);
+        assertEquals("localhost",_host);
+        assertTrue(cache.get("Host: localhost")==_fields.get(0));
+        assertTrue(cache.get("User-Agent: Test/1.0")==_fields.get(1));
+        assertTrue(cache.get("x-custom: Value")==_fields.get(2));
+        assertEquals("Value",_val[2]);
+        assertEquals("secret",_val[3]);
+        assertEquals(3,cache.getHits());
+        assertEquals(0.25,cache.getHitRate(),0.01);
+    }
+
+    @Test
+    public void testSharedFieldCacheWithBufferedFieldHandler() throws Exception
+    {
+        ByteBuffer buffer= BufferUtil.toBuffer(
+            "GET / HTTP/1.1\r\n"+
+            "Host: localhost\r\n"+
+            "User-Agent: Test/1.0\r\n"+
+            "x-custom: Value\r\n"+
+            "Cookie: secret\r\n"+
+            "Connection: close\r\n"+
+            "\r\n");
+
+        HttpFieldCache cache = new HttpFieldCache(1024,3,16,256);
+
+        // Each parser is a new connection
+        for (int i=0;i<3;i++)
+        {
+            BufferedHandler handler = new BufferedHandler();
+            HttpParser parser= new HttpParser((HttpParser.RequestHandler<ByteBuffer>)handler);
+            parser.setSharedFieldCache(cache);
+            buffer.position(0);
+            parseAll(parser,buffer);
+            assertEquals("Value",_val[2]);
+            // The custom header is passed from the buffer
+            assertEquals(1,handler.buffered);
+        }
+        // The custom header is learned from the buffered path too
+        assertEquals(3,cache.getSize());
+        assertNotNull(cache.get("x-custom: Value"));
+        assertNull(cache.get("Cookie: secret"));
+
+        BufferedHandler handler = new BufferedHandler();
+        HttpParser parser= new HttpParser((HttpParser.RequestHandler<ByteBuffer>)handler);
+        parser.setSharedFieldCache(cache);
+        buffer.position(0);
+        parseAll(parser,buffer);
+        assertTrue(cache.get("x-custom: Value")==_fields.get(2));
+        assertEquals("secret",_val[3]);
+        // The custom header is now found in the cache
+        assertEquals(0,handler.buffered);
+        assertEquals(3,cache.getHits());
+    }
+
     @Before
     public void init()
     {
@@ -1157,4 +1371,25 @@ public class HttpParserTest
             return 512;
         }
     }
+
+    private class BufferedHandler extends Handler implements HttpParser.BufferedFieldHandler
+    {
+        private boolean buffering=true;
+        private int buffered;
+
+        @Override
+        public boolean isBufferingHeaderValues()
+        {
+            return buffering;
+        }
+
+        @Override
+        public boolean parsedHeader(HttpHeader header, String name, ByteBuffer buffer, int offset, int length)
+        {
+            buffered++;
+            HttpFields fields=new HttpFields();
+            fields.add(header,name,buffer,offset,length);
+            return parsedHeader(fields.getField(0));
+        }
+    }
 }
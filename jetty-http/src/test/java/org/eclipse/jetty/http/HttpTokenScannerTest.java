@@ -0,0 +1,96 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.Test;
+
+public class HttpTokenScannerTest
+{
+    private static int indexOfStop(ByteBuffer buffer, int index, int limit)
+    {
+        while (index<limit && !HttpTokenScanner.isStop(buffer.get(index)))
+            index++;
+        return index;
+    }
+
+    @Test
+    public void testEveryByte() throws Exception
+    {
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(32),ByteBuffer.allocateDirect(32)})
+        {
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN,ByteOrder.LITTLE_ENDIAN})
+            {
+                buffer.order(order);
+                for (int b=0;b<256;b++)
+                {
+                    for (int p=0;p<buffer.capacity();p++)
+                    {
+                        for (int i=0;i<buffer.capacity();i++)
+                            buffer.put(i,(byte)'x');
+                        buffer.put(p,(byte)b);
+                        boolean stop=b<=0x20 || b==0xff;
+                        for (int index=0;index<4;index++)
+                        {
+                            int expected=stop&&p>=index?p:buffer.capacity();
+                            assertEquals(expected,HttpTokenScanner.indexOfStop(buffer,index,buffer.capacity()));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesBytewise() throws Exception
+    {
+        String[] values = {
+            "/path/to/some/resource.html?query=value&other=something%20else",
+            "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8",
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/28.0.1500.71",
+            "gzip,deflate\r\n",
+            "tab\tseparatedéÿ",
+            "",
+            "short"
+        };
+
+        for (String value : values)
+        {
+            ByteBuffer heap=BufferUtil.toBuffer(value);
+            ByteBuffer direct=BufferUtil.allocateDirect(heap.remaining());
+            BufferUtil.flipToFill(direct);
+            direct.put(heap.duplicate());
+            direct.flip();
+
+            for (ByteBuffer buffer : new ByteBuffer[]{heap,direct})
+            {
+                for (int index=0;index<buffer.limit();index++)
+                {
+                    int expected=indexOfStop(buffer,index,buffer.limit());
+                    assertEquals(value,expected,HttpTokenScanner.indexOfStop(buffer,index,buffer.limit()));
+                }
+            }
+        }
+    }
+}
@@ -404,7 +404,7 @@ public abstract class AbstractConnection implements Connection
         public void succeeded()
         {
             if (_executeOnfillable)
-                _executor.execute(this);
+                SelectorManager.dispatch(_executor,this);
             else
                 run();
         }
@@ -23,10 +23,13 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.WritePendingException;
 
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.Scheduler;
@@ -196,6 +199,50 @@ public class ChannelEndPoint extends AbstractEndPoint implements SocketBased
         return true;
     }
 
+    /**
+     * <p>Transfers a region of a file to the channel of this endpoint without copying it
+     * through buffers, as {@link #flush(ByteBuffer...)} does for buffers.</p>
+     *
+     * @param file the file to transfer from
+     * @param position the position in the file of the region
+     * @param count the length of the region
+     * @return the number of bytes transferred, which may be 0 if the channel is not writable
+     * @throws IOException if the transfer fails
+     */
+    public long transfer(FileChannel file, long position, long count) throws IOException
+    {
+        long transferred;
+        try
+        {
+            transferred=file.transferTo(position,count,_channel);
+            LOG.debug("transferred {} {}", transferred, this);
+        }
+        catch (IOException e)
+        {
+            throw new EofException(e);
+        }
+
+        if (transferred>0)
+            notIdle();
+        return transferred;
+    }
+
+    /**
+     * <p>Transfers a region of a file to the channel of this endpoint without copying it
+     * through buffers, as {@link #write(Callback, ByteBuffer...)} does for buffers.</p>
+     *
+     * @param callback the callback to call when the region has been transferred, or the transfer failed
+     * @param file the file to transfer from
+     * @param position the position in the file of the region
+     * @param count the length of the region
+     * @throws WritePendingException if another write operation is concurrent
+     * @see WriteFlusher#transfer(Callback, FileChannel, long, long)
+     */
+    public void transfer(Callback callback, FileChannel file, long position, long count) throws WritePendingException
+    {
+        getWriteFlusher().transfer(callback,file,position,count);
+    }
+
     public ByteChannel getChannel()
     {
         return _channel;
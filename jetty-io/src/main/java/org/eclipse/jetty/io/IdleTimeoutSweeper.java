@@ -0,0 +1,205 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * Checks the idle timeouts of many {@link IdleTimeout}s with a single periodic task.
+ * <p/>
+ * Rather than each {@link IdleTimeout} scheduling its own check, which is rescheduled
+ * whenever it fires before the idle timeout has expired, an {@link IdleTimeout} only
+ * records the timestamp of its last activity, and is held in a bucket of this sweeper
+ * for the period in which its idle timeout would expire if no further activity took place.
+ * <p/>
+ * Every period, the sweeper checks only the {@link IdleTimeout}s in the buckets of the
+ * periods that have elapsed: those that have expired are notified via
+ * {@link IdleTimeout#checkIdleTimeout()}, and those that have had activity in the meantime
+ * are moved to the bucket of their new expiry. The cost of idle timeouts is then one check
+ * per idle timeout per {@link IdleTimeout}, whatever the activity, at the price of a
+ * precision of one period.
+ */
+public class IdleTimeoutSweeper implements Runnable
+{
+    private static final Logger LOG = Log.getLogger(IdleTimeoutSweeper.class);
+
+    private final Map<IdleTimeout, Long> _slots = new HashMap<>();
+    private final List<Set<IdleTimeout>> _buckets;
+    private final Scheduler _scheduler;
+    private final long _period;
+    private long _swept;
+    private Scheduler.Task _task;
+
+    /**
+     * @param scheduler the scheduler of the periodic sweeps
+     * @param period the period in ms of the sweeps
+     * @param buckets the number of buckets, each covering one period
+     */
+    public IdleTimeoutSweeper(Scheduler scheduler, long period, int buckets)
+    {
+        if (period <= 0)
+            throw new IllegalArgumentException("period must be positive: " + period);
+        _scheduler = scheduler;
+        _period = period;
+        _buckets = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; ++i)
+            _buckets.add(new HashSet<IdleTimeout>());
+    }
+
+    public long getPeriod()
+    {
+        return _period;
+    }
+
+    /**
+     * @return the number of {@link IdleTimeout}s checked by this sweeper
+     */
+    public synchronized int getSize()
+    {
+        return _slots.size();
+    }
+
+    public synchronized void start()
+    {
+        _swept = slot(System.currentTimeMillis()) - 1;
+        _task = _scheduler.schedule(this, _period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop()
+    {
+        if (_task != null)
+            _task.cancel();
+        _task = null;
+        _slots.clear();
+        for (Set<IdleTimeout> bucket : _buckets)
+            bucket.clear();
+    }
+
+    /**
+     * Adds an {@link IdleTimeout}, or moves it to the bucket of its current expiry.
+     *
+     * @param idleTimeout the {@link IdleTimeout} to check
+     */
+    public void add(IdleTimeout idleTimeout)
+    {
+        long timeout = idleTimeout.getIdleTimeout();
+        if (timeout <= 0)
+        {
+            remove(idleTimeout);
+            return;
+        }
+        long expiry = idleTimeout.getIdleTimestamp() + timeout;
+        synchronized (this)
+        {
+            if (_task == null)
+                return;
+            Long old = _slots.get(idleTimeout);
+            long slot = Math.max(slot(expiry), _swept + 1);
+            if (old != null)
+            {
+                if (old <= slot)
+                    return;
+                _buckets.get(bucket(old)).remove(idleTimeout);
+            }
+            _slots.put(idleTimeout, slot);
+            _buckets.get(bucket(slot)).add(idleTimeout);
+        }
+    }
+
+    /**
+     * @param idleTimeout the {@link IdleTimeout} to no longer check
+     */
+    public synchronized void remove(IdleTimeout idleTimeout)
+    {
+        Long slot = _slots.remove(idleTimeout);
+        if (slot != null)
+            _buckets.get(bucket(slot)).remove(idleTimeout);
+    }
+
+    @Override
+    public void run()
+    {
+        List<IdleTimeout> candidates = new ArrayList<>();
+        synchronized (this)
+        {
+            if (_task == null)
+                return;
+            long now = slot(System.currentTimeMillis());
+            long from = Math.max(_swept + 1, now - _buckets.size() + 1);
+            for (long slot = from; slot <= now; ++slot)
+            {
+                Set<IdleTimeout> bucket = _buckets.get(bucket(slot));
+                for (IdleTimeout idleTimeout : bucket)
+                {
+                    // Buckets are reused by later periods
+                    if (_slots.get(idleTimeout) <= now)
+                        candidates.add(idleTimeout);
+                }
+            }
+            for (IdleTimeout idleTimeout : candidates)
+                remove(idleTimeout);
+            _swept = now;
+        }
+
+        for (IdleTimeout idleTimeout : candidates)
+        {
+            try
+            {
+                if (idleTimeout.checkIdleTimeout() >= 0)
+                    add(idleTimeout);
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Exception while checking idle timeout of " + idleTimeout, x);
+            }
+        }
+
+        synchronized (this)
+        {
+            if (_task != null)
+                _task = _scheduler.schedule(this, _period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long slot(long time)
+    {
+        return time / _period;
+    }
+
+    private int bucket(long slot)
+    {
+        return (int)(slot % _buckets.size());
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("%s@%x{period=%dms,size=%d}", getClass().getSimpleName(), hashCode(), _period, _slots.size());
+    }
+}
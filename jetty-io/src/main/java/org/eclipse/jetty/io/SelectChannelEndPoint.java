@@ -75,14 +75,34 @@ public class SelectChannelEndPoint extends ChannelEndPoint implements SelectorMa
      */
     private final AtomicInteger _interestOps = new AtomicInteger();
 
+    /**
+     * The sweeper of the idle timeout, or null if the idle timeout is checked by the scheduler
+     */
+    private final IdleTimeoutSweeper _sweeper;
+
     public SelectChannelEndPoint(SocketChannel channel, ManagedSelector selector, SelectionKey key, Scheduler scheduler, long idleTimeout)
     {
-        super(scheduler,channel);
+        this(channel, selector, key, scheduler, idleTimeout, selector == null ? null : selector.getIdleTimeoutSweeper());
+    }
+
+    private SelectChannelEndPoint(SocketChannel channel, ManagedSelector selector, SelectionKey key, Scheduler scheduler, long idleTimeout, IdleTimeoutSweeper sweeper)
+    {
+        // If the idle timeout is swept, do not schedule checks
+        super(sweeper == null ? scheduler : null, channel);
         _selector = selector;
         _key = key;
+        _sweeper = sweeper;
         setIdleTimeout(idleTimeout);
     }
 
+    @Override
+    public void setIdleTimeout(long idleTimeout)
+    {
+        super.setIdleTimeout(idleTimeout);
+        if (_sweeper != null && isOpen())
+            _sweeper.add(this);
+    }
+
     @Override
     protected boolean needsFill()
     {
@@ -163,6 +183,8 @@ public class SelectChannelEndPoint extends ChannelEndPoint implements SelectorMa
         if (_open.compareAndSet(true, false))
         {
             super.close();
+            if (_sweeper != null)
+                _sweeper.remove(this);
             _selector.destroyEndPoint(this);
         }
     }
@@ -180,7 +202,11 @@ public class SelectChannelEndPoint extends ChannelEndPoint implements SelectorMa
     public void onOpen()
     {
         if (_open.compareAndSet(false, true))
+        {
             super.onOpen();
+            if (_sweeper != null)
+                _sweeper.add(this);
+        }
     }
 
     @Override
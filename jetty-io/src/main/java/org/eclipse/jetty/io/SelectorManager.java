@@ -37,24 +37,32 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.jetty.util.ConcurrentArrayQueue;
 import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.util.thread.VirtualThreadPool;
 
 /**
  * <p>{@link SelectorManager} manages a number of {@link ManagedSelector}s that
  * simplify the non-blocking primitives provided by the JVM via the {@code java.nio} package.</p>
  * <p>{@link SelectorManager} subclasses implement methods to return protocol-specific
  * {@link EndPoint}s and {@link Connection}s.</p>
+ * <p>The tasks dispatched by endpoints while their selected keys are processed
+ * (see {@link #dispatch(Executor, Runnable)}) are run according to a {@link SelectStrategy}.</p>
  */
+@ManagedObject("Manager of the NIO Selectors")
 public abstract class SelectorManager extends AbstractLifeCycle implements Dumpable
 {
     protected static final Logger LOG = Log.getLogger(SelectorManager.class);
@@ -63,11 +71,41 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
      */
     public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
 
+    private static final ThreadLocal<ManagedSelector> __selecting = new ThreadLocal<>();
+
+    /**
+     * <p>The strategies a {@link ManagedSelector} may use to run the tasks
+     * dispatched for the keys selected by a wakeup of its selector.</p>
+     */
+    public enum SelectStrategy
+    {
+        /**
+         * Every task is executed by the executor, so each selected key costs a thread hand-off.
+         */
+        EXECUTE,
+        /**
+         * The tasks are executed by the executor, except the last one.  The selector thread
+         * hands off the select loop to another thread and runs the last task itself, so that
+         * the task is run without a hand-off by a thread with a hot cache.
+         * A free thread is needed to continue selecting, which may be delayed if the
+         * executor is exhausted.
+         */
+        EXECUTE_PRODUCE_CONSUME,
+        /**
+         * The tasks of a wakeup are executed by the executor as a single job that runs
+         * them in turn, so there is one thread hand-off per wakeup.  Suitable only if
+         * the tasks do not block.
+         */
+        BATCH
+    }
+
     private final Executor executor;
     private final Scheduler scheduler;
     private final ManagedSelector[] _selectors;
     private long _connectTimeout = DEFAULT_CONNECT_TIMEOUT;
     private long _selectorIndex;
+    private volatile SelectStrategy _selectStrategy = SelectStrategy.EXECUTE;
+    private long _idleTimeoutSweepPeriod;
 
     protected SelectorManager(Executor executor, Scheduler scheduler)
     {
@@ -111,6 +149,52 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
         _connectTimeout = milliseconds;
     }
 
+    /**
+     * @return the period in ms of the sweeps of the idle timeouts of the endpoints of each selector,
+     * or 0 if each endpoint schedules its own idle timeout checks
+     * @see #setIdleTimeoutSweepPeriod(long)
+     */
+    @ManagedAttribute("The period in ms of the idle timeout sweeps, or 0 if endpoints schedule their own checks")
+    public long getIdleTimeoutSweepPeriod()
+    {
+        return _idleTimeoutSweepPeriod;
+    }
+
+    /**
+     * <p>Sets the period of the sweeps of idle timeouts.</p>
+     * <p>If positive, each selector checks the idle timeouts of its endpoints with an
+     * {@link IdleTimeoutSweeper}, rather than each endpoint scheduling its own checks,
+     * so that endpoints only record the timestamp of their last activity.
+     * Idle timeouts then expire up to one period late.</p>
+     *
+     * @param period the period in ms of the sweeps, or 0 if each endpoint schedules its own checks
+     */
+    public void setIdleTimeoutSweepPeriod(long period)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _idleTimeoutSweepPeriod = period;
+    }
+
+    /**
+     * @return the strategy used to run the tasks dispatched for selected keys
+     */
+    @ManagedAttribute("The strategy used to run the tasks of selected keys")
+    public SelectStrategy getSelectStrategy()
+    {
+        return _selectStrategy;
+    }
+
+    /**
+     * @param strategy the strategy used to run the tasks dispatched for selected keys
+     */
+    public void setSelectStrategy(SelectStrategy strategy)
+    {
+        if (strategy == null)
+            throw new IllegalArgumentException();
+        _selectStrategy = strategy;
+    }
+
     /**
      * Executes the given task in a different thread.
      *
@@ -121,14 +205,101 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
         executor.execute(task);
     }
 
+    /**
+     * <p>Dispatches a task to an executor, unless the calling thread is a selector
+     * thread processing selected keys with a {@link SelectStrategy} other than
+     * {@link SelectStrategy#EXECUTE}, in which case the task is run according to
+     * that strategy once all the selected keys have been processed.</p>
+     *
+     * @param executor the executor to use if the task is not run by a select strategy
+     * @param task the task to dispatch
+     */
+    public static void dispatch(Executor executor, Runnable task)
+    {
+        ManagedSelector selector = __selecting.get();
+        if (selector == null || !selector.offer(task))
+            executor.execute(task);
+    }
+
     /**
      * @return the number of selectors in use
      */
+    @ManagedAttribute("The number of selectors")
     public int getSelectorCount()
     {
         return _selectors.length;
     }
 
+    @ManagedAttribute("The number of wakeups of the selectors")
+    public long getSelects()
+    {
+        long selects = 0;
+        for (ManagedSelector selector : _selectors)
+            if (selector != null)
+                selects += selector.getSelects();
+        return selects;
+    }
+
+    @ManagedAttribute("The average number of keys selected per wakeup")
+    public double getSelectedKeysMean()
+    {
+        long selects = 0;
+        long keys = 0;
+        for (ManagedSelector selector : _selectors)
+        {
+            if (selector != null)
+            {
+                selects += selector.getSelects();
+                keys += selector.getSelectedKeys();
+            }
+        }
+        return selects == 0 ? 0.0 : (double)keys / selects;
+    }
+
+    @ManagedAttribute("The maximum number of keys selected by a wakeup")
+    public int getSelectedKeysMax()
+    {
+        int max = 0;
+        for (ManagedSelector selector : _selectors)
+            if (selector != null)
+                max = Math.max(max, selector.getSelectedKeysMax());
+        return max;
+    }
+
+    @ManagedAttribute("The average time in ns to process the keys of a wakeup")
+    public long getSelectLatencyMean()
+    {
+        long selects = 0;
+        long nanos = 0;
+        for (ManagedSelector selector : _selectors)
+        {
+            if (selector != null)
+            {
+                selects += selector.getSelects();
+                nanos += selector.getSelectLatencyTotal();
+            }
+        }
+        return selects == 0 ? 0 : nanos / selects;
+    }
+
+    @ManagedAttribute("The maximum time in ns to process the keys of a wakeup")
+    public long getSelectLatencyMax()
+    {
+        long max = 0;
+        for (ManagedSelector selector : _selectors)
+            if (selector != null)
+                max = Math.max(max, selector.getSelectLatencyMax());
+        return max;
+    }
+
+    @ManagedOperation("Resets the selector statistics")
+    public void resetStats()
+    {
+        for (ManagedSelector selector : _selectors)
+            if (selector != null)
+                selector.resetStats();
+    }
+
     private ManagedSelector chooseSelector()
     {
         // The ++ increment here is not atomic, but it does not matter,
@@ -314,16 +485,27 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
      * <p>{@link ManagedSelector} runs the select loop, which waits on {@link Selector#select()} until events
      * happen for registered channels. When events happen, it notifies the {@link EndPoint} associated
      * with the channel.</p>
+     * <p>{@link ManagedSelector} is a {@link VirtualThreadPool.Platform} job, so the select loop
+     * runs in a platform thread even if the executor runs other jobs in virtual threads.</p>
      */
-    public class ManagedSelector extends AbstractLifeCycle implements Runnable, Dumpable
+    public class ManagedSelector extends AbstractLifeCycle implements Runnable, Dumpable, VirtualThreadPool.Platform
     {
         private final Queue<Runnable> _changes = new ConcurrentArrayQueue<>();
 
+        private final List<Runnable> _tasks = new ArrayList<>();
         private final int _id;
         private Selector _selector;
         private volatile Thread _thread;
         private boolean _needsWakeup = true;
         private boolean _runningChanges = false;
+        private boolean _processingKeys = false;
+        private SelectStrategy _strategy = SelectStrategy.EXECUTE;
+        private IdleTimeoutSweeper _sweeper;
+        private volatile long _selects;
+        private volatile long _selectedKeys;
+        private volatile int _selectedKeysMax;
+        private volatile long _selectLatencyTotal;
+        private volatile long _selectLatencyMax;
 
         public ManagedSelector(int id)
         {
@@ -336,6 +518,13 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
         {
             super.doStart();
             _selector = Selector.open();
+            long period = getIdleTimeoutSweepPeriod();
+            if (period > 0)
+            {
+                // Enough buckets to cover the default idle timeouts of one minute
+                _sweeper = new IdleTimeoutSweeper(getScheduler(), period, (int)Math.max(16, 60000 / period + 1));
+                _sweeper.start();
+            }
         }
 
         @Override
@@ -345,9 +534,22 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
             Stop stop = new Stop();
             submit(stop);
             stop.await(getStopTimeout());
+            if (_sweeper != null)
+                _sweeper.stop();
+            _sweeper = null;
             LOG.debug("Stopped {}", this);
         }
 
+        /**
+         * @return the sweeper of the idle timeouts of the endpoints of this selector,
+         * or null if endpoints schedule their own idle timeout checks
+         * @see SelectorManager#setIdleTimeoutSweepPeriod(long)
+         */
+        public IdleTimeoutSweeper getIdleTimeoutSweeper()
+        {
+            return _sweeper;
+        }
+
         /**
          * <p>Submits a change to be executed in the selector thread.</p>
          * <p>Changes may be submitted from any thread, and the selector thread woken up
@@ -409,21 +611,61 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
 
         @Override
         public void run()
+        {
+            while (true)
+            {
+                Runnable task = produce();
+                if (task == null)
+                    return;
+
+                // Hand off the select loop to another thread and consume the task in this one
+                try
+                {
+                    execute(this);
+                }
+                catch (RejectedExecutionException x)
+                {
+                    // No other thread to select, so run the task and keep selecting in this one
+                    LOG.debug(x);
+                    runTask(task);
+                    continue;
+                }
+                task.run();
+                return;
+            }
+        }
+
+        /**
+         * <p>Runs the select loop until this selector is stopped, or until a task is
+         * to be consumed by this thread while another thread continues selecting.</p>
+         *
+         * @return a task to run after the select loop has been handed off, or null if stopped
+         */
+        private Runnable produce()
         {
             _thread = Thread.currentThread();
             String name = _thread.getName();
             try
             {
                 _thread.setName(name + "-selector-" + _id);
+                __selecting.set(this);
                 LOG.debug("Starting {} on {}", _thread, this);
                 while (isRunning())
+                {
                     select();
+                    Runnable task = runTasks();
+                    if (task != null)
+                        return task;
+                }
                 processChanges();
+                return null;
             }
             finally
             {
                 LOG.debug("Stopped {} on {}", _thread, this);
+                __selecting.remove();
                 _thread.setName(name);
+                _thread = null;
             }
         }
 
@@ -445,25 +687,38 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
                 if (debug)
                     LOG.debug("Selector loop woken up from select, {}/{} selected", selected, _selector.keys().size());
 
+                long start = System.nanoTime();
                 _needsWakeup = false;
+                _strategy = getSelectStrategy();
 
                 Set<SelectionKey> selectedKeys = _selector.selectedKeys();
-                for (SelectionKey key : selectedKeys)
+                int keys = selectedKeys.size();
+                _processingKeys = true;
+                try
                 {
-                    if (key.isValid())
-                    {
-                        processKey(key);
-                    }
-                    else
+                    for (SelectionKey key : selectedKeys)
                     {
-                        if (debug)
-                            LOG.debug("Selector loop ignoring invalid key for channel {}", key.channel());
-                        Object attachment = key.attachment();
-                        if (attachment instanceof EndPoint)
-                            ((EndPoint)attachment).close();
+                        if (key.isValid())
+                        {
+                            processKey(key);
+                        }
+                        else
+                        {
+                            if (debug)
+                                LOG.debug("Selector loop ignoring invalid key for channel {}", key.channel());
+                            Object attachment = key.attachment();
+                            if (attachment instanceof EndPoint)
+                                ((EndPoint)attachment).close();
+                        }
                     }
+                    selectedKeys.clear();
+                }
+                finally
+                {
+                    _processingKeys = false;
                 }
-                selectedKeys.clear();
+
+                updateStats(keys, System.nanoTime() - start);
             }
             catch (Exception x)
             {
@@ -474,6 +729,138 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
             }
         }
 
+        /**
+         * <p>Offers a task dispatched while processing selected keys.</p>
+         *
+         * @param task the task to run according to the {@link SelectStrategy}
+         * @return true if the task was accepted, false if it must be executed by the caller
+         */
+        protected boolean offer(Runnable task)
+        {
+            if (!_processingKeys || _strategy == SelectStrategy.EXECUTE || _thread != Thread.currentThread())
+                return false;
+            _tasks.add(task);
+            return true;
+        }
+
+        /**
+         * <p>Runs the tasks offered while processing the selected keys.</p>
+         *
+         * @return a task to be consumed by this thread after handing off the select loop, or null
+         */
+        private Runnable runTasks()
+        {
+            int size = _tasks.size();
+            if (size == 0)
+                return null;
+
+            try
+            {
+                switch (_strategy)
+                {
+                    case EXECUTE_PRODUCE_CONSUME:
+                    {
+                        for (int i = 0; i < size - 1; ++i)
+                            executeTask(_tasks.get(i));
+                        Runnable last = _tasks.get(size - 1);
+                        if (isRunning())
+                            return last;
+                        executeTask(last);
+                        return null;
+                    }
+
+                    case BATCH:
+                    {
+                        executeTask(size == 1 ? _tasks.get(0) : new Batch(new ArrayList<>(_tasks)));
+                        return null;
+                    }
+
+                    default:
+                    {
+                        for (Runnable task : _tasks)
+                            executeTask(task);
+                        return null;
+                    }
+                }
+            }
+            finally
+            {
+                _tasks.clear();
+            }
+        }
+
+        private void executeTask(Runnable task)
+        {
+            try
+            {
+                execute(task);
+            }
+            catch (RejectedExecutionException x)
+            {
+                // The task has already been accepted from the endpoint, so it must be run
+                LOG.warn("Running rejected task in selector thread " + task, x);
+                runTask(task);
+            }
+        }
+
+        private void runTask(Runnable task)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn(x);
+            }
+        }
+
+        private void updateStats(int keys, long nanos)
+        {
+            // Only the thread running the select loop updates the statistics
+            _selects = _selects + 1;
+            _selectedKeys = _selectedKeys + keys;
+            if (keys > _selectedKeysMax)
+                _selectedKeysMax = keys;
+            _selectLatencyTotal = _selectLatencyTotal + nanos;
+            if (nanos > _selectLatencyMax)
+                _selectLatencyMax = nanos;
+        }
+
+        public long getSelects()
+        {
+            return _selects;
+        }
+
+        public long getSelectedKeys()
+        {
+            return _selectedKeys;
+        }
+
+        public int getSelectedKeysMax()
+        {
+            return _selectedKeysMax;
+        }
+
+        public long getSelectLatencyTotal()
+        {
+            return _selectLatencyTotal;
+        }
+
+        public long getSelectLatencyMax()
+        {
+            return _selectLatencyMax;
+        }
+
+        public void resetStats()
+        {
+            _selects = 0;
+            _selectedKeys = 0;
+            _selectedKeysMax = 0;
+            _selectLatencyTotal = 0;
+            _selectLatencyMax = 0;
+        }
+
         private void processChanges()
         {
             runChanges();
@@ -597,7 +984,15 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
         @Override
         public void dump(Appendable out, String indent) throws IOException
         {
-            out.append(String.valueOf(this)).append(" id=").append(String.valueOf(_id)).append("\n");
+            long selects = _selects;
+            out.append(String.valueOf(this)).append(" id=").append(String.valueOf(_id))
+                .append(String.format(" selects=%d keys/select=%.2f/%d latency=%d/%dns",
+                    selects,
+                    selects == 0 ? 0.0 : (double)_selectedKeys / selects,
+                    _selectedKeysMax,
+                    selects == 0 ? 0 : _selectLatencyTotal / selects,
+                    _selectLatencyMax))
+                .append("\n");
 
             Thread selecting = _thread;
 
@@ -651,6 +1046,29 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
                     selector != null && selector.isOpen() ? selector.selectedKeys().size() : -1);
         }
 
+        private class Batch implements Runnable
+        {
+            private final List<Runnable> _batch;
+
+            private Batch(List<Runnable> batch)
+            {
+                _batch = batch;
+            }
+
+            @Override
+            public void run()
+            {
+                for (Runnable task : _batch)
+                    runTask(task);
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format("%s@%x%s", getClass().getSimpleName(), hashCode(), _batch);
+            }
+        }
+
         private class DumpKeys implements Runnable
         {
             private final CountDownLatch latch = new CountDownLatch(1);
@@ -0,0 +1,457 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+
+/**
+ * <p>A {@link ByteBufferPool} with bounded retention, designed for a large number of
+ * concurrent acquirers and releasers.</p>
+ * <p>Buffers are grouped in size buckets like {@link ArrayByteBufferPool}. Each thread
+ * keeps a small, unsynchronized magazine of buffers per bucket, so that the common
+ * acquire/release cycle on the same thread does not touch shared state.
+ * Magazines overflow to (and are refilled from) shared buckets, which are striped
+ * over several lock-free queues to spread contention between threads.</p>
+ * <p>Retention is bounded: each shared bucket holds at most {@link #getMaxBucketBuffers()}
+ * buffers, all shared buckets together hold at most {@link #getMaxRetainedBytes()} bytes
+ * and each thread magazine holds at most {@link #getMaxThreadCacheBytes()} bytes.
+ * Buffers released beyond these limits are dropped and left to the garbage collector.
+ * Shared buckets that have not been used for {@link #getIdleTimeout()} milliseconds
+ * are emptied, so that memory retained after a traffic spike is eventually given back.</p>
+ */
+@ManagedObject("A bounded ByteBufferPool with per-thread caches")
+public class StripedByteBufferPool implements ByteBufferPool
+{
+    private final int _min;
+    private final int _inc;
+    private final Bucket[] _direct;
+    private final Bucket[] _indirect;
+    private final int _maxBucketBuffers;
+    private final long _maxRetainedBytes;
+    private final int _maxThreadCacheBytes;
+    private final long _idleTimeout;
+    private final AtomicLong _retained = new AtomicLong();
+    private final AtomicLong _allocated = new AtomicLong();
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _lastSweep = new AtomicLong(System.nanoTime());
+    private final AtomicInteger _generation = new AtomicInteger();
+    private final ThreadLocal<Magazine> _magazine = new ThreadLocal<Magazine>()
+    {
+        @Override
+        protected Magazine initialValue()
+        {
+            return new Magazine(_direct.length);
+        }
+    };
+
+    public StripedByteBufferPool()
+    {
+        this(64,2048,64*1024);
+    }
+
+    public StripedByteBufferPool(int minSize, int increment, int maxSize)
+    {
+        this(minSize,increment,maxSize,1024,64*1024*1024,128*1024,60000);
+    }
+
+    /**
+     * @param minSize the size at or below which buffers are not pooled
+     * @param increment the size increment between buckets
+     * @param maxSize the size above which buffers are not pooled
+     * @param maxBucketBuffers the max number of buffers retained by each shared bucket
+     * @param maxRetainedBytes the max number of bytes retained by all shared buckets
+     * @param maxThreadCacheBytes the max number of bytes retained by each thread, or 0 to disable thread caching
+     * @param idleTimeout the time in milliseconds after which an unused shared bucket is emptied, or 0 to never empty buckets
+     */
+    public StripedByteBufferPool(
+            @Name("minSize") int minSize,
+            @Name("increment") int increment,
+            @Name("maxSize") int maxSize,
+            @Name("maxBucketBuffers") int maxBucketBuffers,
+            @Name("maxRetainedBytes") long maxRetainedBytes,
+            @Name("maxThreadCacheBytes") int maxThreadCacheBytes,
+            @Name("idleTimeout") long idleTimeout)
+    {
+        if (minSize>=increment)
+            throw new IllegalArgumentException("minSize >= increment");
+        if ((maxSize%increment)!=0 || increment>=maxSize)
+            throw new IllegalArgumentException("increment must be a divisor of maxSize");
+        _min=minSize;
+        _inc=increment;
+        _maxBucketBuffers=maxBucketBuffers;
+        _maxRetainedBytes=maxRetainedBytes;
+        _maxThreadCacheBytes=maxThreadCacheBytes;
+        _idleTimeout=idleTimeout;
+
+        int stripes=Integer.highestOneBit(Math.max(1,Runtime.getRuntime().availableProcessors())*2-1);
+        _direct=new Bucket[maxSize/increment];
+        _indirect=new Bucket[maxSize/increment];
+
+        int size=0;
+        for (int i=0;i<_direct.length;i++)
+        {
+            size+=_inc;
+            _direct[i]=new Bucket(size,stripes,maxBucketBuffers);
+            _indirect[i]=new Bucket(size,stripes,maxBucketBuffers);
+        }
+    }
+
+    @Override
+    public ByteBuffer acquire(int size, boolean direct)
+    {
+        int b=bucketIndexFor(size);
+        if (b<0)
+            return direct?BufferUtil.allocateDirect(size):BufferUtil.allocate(size);
+
+        ByteBuffer buffer=null;
+        if (_maxThreadCacheBytes>0)
+            buffer=magazine().take(b,direct);
+
+        if (buffer==null)
+        {
+            Bucket bucket=direct?_direct[b]:_indirect[b];
+            buffer=bucket.poll();
+            if (buffer==null)
+            {
+                _allocated.incrementAndGet();
+                buffer=direct?BufferUtil.allocateDirect(bucket._size):BufferUtil.allocate(bucket._size);
+            }
+            else
+                _retained.addAndGet(-bucket._size);
+        }
+
+        sweep();
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer==null)
+            return;
+
+        int capacity=buffer.capacity();
+        int b=bucketIndexFor(capacity);
+        if (b<0)
+            return;
+
+        Bucket bucket=buffer.isDirect()?_direct[b]:_indirect[b];
+        // Only buffers with the exact bucket capacity are pooled,
+        // so that acquirers always get the capacity they expect.
+        if (bucket._size!=capacity)
+            return;
+
+        BufferUtil.clear(buffer);
+
+        if (_maxThreadCacheBytes>0 && magazine().put(b,buffer,capacity))
+            return;
+
+        if (_retained.addAndGet(capacity)>_maxRetainedBytes || !bucket.offer(buffer))
+        {
+            _retained.addAndGet(-capacity);
+            _dropped.incrementAndGet();
+        }
+
+        sweep();
+    }
+
+    /**
+     * <p>Empties all shared buckets and invalidates all thread magazines.</p>
+     * <p>Thread magazines are emptied lazily, the next time their thread uses this pool.</p>
+     */
+    @ManagedOperation("Empties the pool")
+    public void clear()
+    {
+        _generation.incrementAndGet();
+        for (int i=0;i<_direct.length;i++)
+        {
+            _retained.addAndGet(-_direct[i].clear());
+            _retained.addAndGet(-_indirect[i].clear());
+        }
+    }
+
+    /**
+     * <p>Empties the shared buckets that have not been used for longer than the idle timeout.</p>
+     */
+    @ManagedOperation("Empties the idle buckets")
+    public void shrink()
+    {
+        if (_idleTimeout<=0)
+            return;
+        long now=System.nanoTime();
+        long idle=TimeUnit.MILLISECONDS.toNanos(_idleTimeout);
+        for (int i=0;i<_direct.length;i++)
+        {
+            if (now-_direct[i]._lastUsed>idle)
+                _retained.addAndGet(-_direct[i].clear());
+            if (now-_indirect[i]._lastUsed>idle)
+                _retained.addAndGet(-_indirect[i].clear());
+        }
+    }
+
+    @ManagedAttribute("The number of bytes retained by the shared buckets")
+    public long getRetainedBytes()
+    {
+        return _retained.get();
+    }
+
+    @ManagedAttribute("The max number of bytes retained by the shared buckets")
+    public long getMaxRetainedBytes()
+    {
+        return _maxRetainedBytes;
+    }
+
+    @ManagedAttribute("The max number of buffers retained by each shared bucket")
+    public int getMaxBucketBuffers()
+    {
+        return _maxBucketBuffers;
+    }
+
+    @ManagedAttribute("The max number of bytes retained by each thread")
+    public int getMaxThreadCacheBytes()
+    {
+        return _maxThreadCacheBytes;
+    }
+
+    @ManagedAttribute("The time in ms after which unused buckets are emptied")
+    public long getIdleTimeout()
+    {
+        return _idleTimeout;
+    }
+
+    @ManagedAttribute("The number of pooled buffers allocated")
+    public long getAllocatedBuffers()
+    {
+        return _allocated.get();
+    }
+
+    @ManagedAttribute("The number of released buffers dropped because the pool was full")
+    public long getDroppedBuffers()
+    {
+        return _dropped.get();
+    }
+
+    private Magazine magazine()
+    {
+        Magazine magazine=_magazine.get();
+        int generation=_generation.get();
+        if (magazine._epoch!=generation)
+        {
+            magazine.clear();
+            magazine._epoch=generation;
+        }
+        return magazine;
+    }
+
+    private void sweep()
+    {
+        if (_idleTimeout<=0)
+            return;
+        long now=System.nanoTime();
+        long last=_lastSweep.get();
+        if (now-last>TimeUnit.MILLISECONDS.toNanos(_idleTimeout)/2 && _lastSweep.compareAndSet(last,now))
+            shrink();
+    }
+
+    private int bucketIndexFor(int size)
+    {
+        if (size<=_min)
+            return -1;
+        int b=(size-1)/_inc;
+        if (b>=_direct.length)
+            return -1;
+        return b;
+    }
+
+    // Package local for testing
+    Bucket[] bucketsFor(boolean direct)
+    {
+        return direct?_direct:_indirect;
+    }
+
+    static class Bucket
+    {
+        final int _size;
+        private final Stripe[] _stripes;
+        private final int _maxStripeBuffers;
+        private volatile long _lastUsed=System.nanoTime();
+
+        Bucket(int size, int stripes, int maxBuffers)
+        {
+            _size=size;
+            _stripes=new Stripe[stripes];
+            for (int i=0;i<stripes;i++)
+                _stripes[i]=new Stripe();
+            _maxStripeBuffers=Math.max(1,maxBuffers/stripes);
+        }
+
+        ByteBuffer poll()
+        {
+            _lastUsed=System.nanoTime();
+            int s=stripe();
+            for (int i=0;i<_stripes.length;i++)
+            {
+                Stripe stripe=_stripes[(s+i)&(_stripes.length-1)];
+                ByteBuffer buffer=stripe._queue.poll();
+                if (buffer!=null)
+                {
+                    stripe._size.decrementAndGet();
+                    return buffer;
+                }
+            }
+            return null;
+        }
+
+        boolean offer(ByteBuffer buffer)
+        {
+            _lastUsed=System.nanoTime();
+            Stripe stripe=_stripes[stripe()];
+            if (stripe._size.incrementAndGet()>_maxStripeBuffers)
+            {
+                stripe._size.decrementAndGet();
+                return false;
+            }
+            stripe._queue.offer(buffer);
+            return true;
+        }
+
+        int size()
+        {
+            int size=0;
+            for (Stripe stripe : _stripes)
+                size+=stripe._size.get();
+            return size;
+        }
+
+        /**
+         * @return the number of bytes removed from this bucket
+         */
+        long clear()
+        {
+            long cleared=0;
+            for (Stripe stripe : _stripes)
+            {
+                while (stripe._queue.poll()!=null)
+                {
+                    stripe._size.decrementAndGet();
+                    cleared+=_size;
+                }
+            }
+            return cleared;
+        }
+
+        private int stripe()
+        {
+            return (int)Thread.currentThread().getId()&(_stripes.length-1);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Bucket@%x{%d,%d}",hashCode(),_size,size());
+        }
+    }
+
+    private static class Stripe
+    {
+        private final Queue<ByteBuffer> _queue=new ConcurrentLinkedQueue<>();
+        private final AtomicInteger _size=new AtomicInteger();
+    }
+
+    /**
+     * <p>A per-thread stack of buffers for each bucket, accessed without synchronization.</p>
+     */
+    private class Magazine
+    {
+        private final ByteBuffer[][] _direct;
+        private final ByteBuffer[][] _indirect;
+        private final int[] _directCount;
+        private final int[] _indirectCount;
+        private int _bytes;
+        private int _epoch=_generation.get();
+
+        private Magazine(int buckets)
+        {
+            _direct=new ByteBuffer[buckets][];
+            _indirect=new ByteBuffer[buckets][];
+            _directCount=new int[buckets];
+            _indirectCount=new int[buckets];
+        }
+
+        private ByteBuffer take(int bucket, boolean direct)
+        {
+            ByteBuffer[] stack=direct?_direct[bucket]:_indirect[bucket];
+            int[] counts=direct?_directCount:_indirectCount;
+            int count=counts[bucket];
+            if (count==0)
+                return null;
+            ByteBuffer buffer=stack[--count];
+            stack[count]=null;
+            counts[bucket]=count;
+            _bytes-=buffer.capacity();
+            return buffer;
+        }
+
+        private boolean put(int bucket, ByteBuffer buffer, int capacity)
+        {
+            if (_bytes+capacity>_maxThreadCacheBytes)
+                return false;
+
+            boolean direct=buffer.isDirect();
+            ByteBuffer[][] stacks=direct?_direct:_indirect;
+            int[] counts=direct?_directCount:_indirectCount;
+            ByteBuffer[] stack=stacks[bucket];
+            int count=counts[bucket];
+            if (stack==null)
+                stack=stacks[bucket]=new ByteBuffer[Math.max(1,_maxThreadCacheBytes/capacity)];
+            if (count==stack.length)
+                return false;
+            stack[count]=buffer;
+            counts[bucket]=count+1;
+            _bytes+=capacity;
+            return true;
+        }
+
+        private void clear()
+        {
+            for (int i=0;i<_direct.length;i++)
+            {
+                if (_direct[i]!=null)
+                    Arrays.fill(_direct[i],null);
+                if (_indirect[i]!=null)
+                    Arrays.fill(_indirect[i],null);
+                _directCount[i]=0;
+                _indirectCount[i]=0;
+            }
+            _bytes=0;
+        }
+    }
+}
@@ -18,9 +18,11 @@
 
 package org.eclipse.jetty.io;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritePendingException;
 import java.util.EnumMap;
 import java.util.EnumSet;
@@ -40,6 +42,8 @@ import org.eclipse.jetty.util.log.Logger;
  * flush and should organise for the {@link #completeWrite()} method to be called when a subsequent call to flush
  * should  be able to make more progress.
  * <p>
+ * File content may also be transferred without copying to a {@link ChannelEndPoint}, via
+ * {@link #transfer(Callback, FileChannel, long, long)}, which completes in the same way.
  */
 abstract public class WriteFlusher
 {
@@ -240,11 +244,13 @@ abstract public class WriteFlusher
     {
         private final Callback _callback;
         private final ByteBuffer[] _buffers;
+        private final Transfer _transfer;
 
-        private PendingState(ByteBuffer[] buffers, Callback callback)
+        private PendingState(ByteBuffer[] buffers, Transfer transfer, Callback callback)
         {
             super(StateType.PENDING);
             _buffers = compact(buffers);
+            _transfer = transfer;
             _callback = callback;
         }
 
@@ -253,6 +259,11 @@ abstract public class WriteFlusher
             return _buffers;
         }
 
+        public Transfer getTransfer()
+        {
+            return _transfer;
+        }
+
         protected void fail(Throwable cause)
         {
             if (_callback!=null)
@@ -304,6 +315,50 @@ abstract public class WriteFlusher
         }
     }
 
+    /**
+     * A region of a file that is transferred to a {@link ChannelEndPoint} after the buffers.
+     */
+    private static class Transfer
+    {
+        private final FileChannel _file;
+        private long _position;
+        private long _remaining;
+
+        private Transfer(FileChannel file, long position, long count)
+        {
+            _file = file;
+            _position = position;
+            _remaining = count;
+        }
+
+        /**
+         * @param endPoint the endpoint to transfer to
+         * @return true if all of the region has been transferred
+         */
+        private boolean transfer(ChannelEndPoint endPoint) throws IOException
+        {
+            while (_remaining > 0)
+            {
+                long transferred = endPoint.transfer(_file, _position, _remaining);
+                if (transferred <= 0)
+                {
+                    if (_position >= _file.size())
+                        throw new EOFException("transfer beyond end of file");
+                    return false;
+                }
+                _position += transferred;
+                _remaining -= transferred;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d+%d", _position, _remaining);
+        }
+    }
+
     /**
      * Abstract call to be implemented by specific WriteFlushers. It should schedule a call to {@link #completeWrite()}
      * or {@link #onFail(Throwable)} when appropriate.
@@ -326,28 +381,45 @@ abstract public class WriteFlusher
     {
         if (DEBUG)
             LOG.debug("write: {} {}", this, BufferUtil.toDetailString(buffers));
+        write(callback, buffers, null);
+    }
+
+    /**
+     * Transfers a region of a file to the {@link ChannelEndPoint} of this flusher without copying
+     * it through buffers, using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+     * As for {@link #write(Callback, ByteBuffer...)}, if the region cannot be transferred in one go,
+     * {@link #onIncompleteFlushed()} is called and the transfer is resumed by {@link #completeWrite()}.
+     *
+     * @param callback the callback to call on either failed or complete
+     * @param file the file to transfer from
+     * @param position the position in the file of the region
+     * @param count the length of the region
+     */
+    public void transfer(Callback callback, FileChannel file, long position, long count) throws WritePendingException
+    {
+        if (!(_endPoint instanceof ChannelEndPoint))
+            throw new UnsupportedOperationException("transfer to " + _endPoint);
+        if (DEBUG)
+            LOG.debug("transfer: {} {}+{}", this, position, count);
+        write(callback, EMPTY_BUFFERS, new Transfer(file, position, count));
+    }
 
+    private void write(Callback callback, ByteBuffer[] buffers, Transfer transfer) throws WritePendingException
+    {
         if (!updateState(__IDLE,__WRITING))
             throw new WritePendingException();
 
         try
         {
-            boolean flushed=_endPoint.flush(buffers);
-            if (DEBUG)
-                LOG.debug("flushed {}", flushed);
-
             // Are we complete?
-            for (ByteBuffer b : buffers)
+            if (!flush(buffers, transfer))
             {
-                if (!flushed||BufferUtil.hasContent(b))
-                {
-                    PendingState pending=new PendingState(buffers, callback);
-                    if (updateState(__WRITING,pending))
-                        onIncompleteFlushed();
-                    else
-                        fail(pending);
-                    return;
-                }
+                PendingState pending=new PendingState(buffers, transfer, callback);
+                if (updateState(__WRITING,pending))
+                    onIncompleteFlushed();
+                else
+                    fail(pending);
+                return;
             }
 
             // If updateState didn't succeed, we don't care as our buffers have been written
@@ -366,8 +438,33 @@ abstract public class WriteFlusher
                     callback.failed(e);
             }
             else
-                fail(new PendingState(buffers, callback));
+                fail(new PendingState(buffers, transfer, callback));
+        }
+    }
+
+    /**
+     * @param buffers the buffers to flush
+     * @param transfer the file region to transfer after the buffers, or null
+     * @return true if all the buffers and the file region have been written
+     */
+    private boolean flush(ByteBuffer[] buffers, Transfer transfer) throws IOException
+    {
+        boolean flushed=_endPoint.flush(buffers);
+        if (DEBUG)
+            LOG.debug("flushed {}", flushed);
+
+        for (ByteBuffer b : buffers)
+        {
+            if (!flushed || BufferUtil.hasContent(b))
+                return false;
         }
+
+        if (transfer == null)
+            return true;
+        boolean transferred = transfer.transfer((ChannelEndPoint)_endPoint);
+        if (DEBUG)
+            LOG.debug("transferred {} {}", transferred, transfer);
+        return transferred;
     }
 
 
@@ -395,23 +492,14 @@ abstract public class WriteFlusher
 
         try
         {
-            ByteBuffer[] buffers = pending.getBuffers();
-
-            boolean flushed=_endPoint.flush(buffers);
-            if (DEBUG)
-                LOG.debug("flushed {}", flushed);
-
             // Are we complete?
-            for (ByteBuffer b : buffers)
+            if (!flush(pending.getBuffers(), pending.getTransfer()))
             {
-                if (!flushed || BufferUtil.hasContent(b))
-                {
-                    if (updateState(__COMPLETING,pending))
-                        onIncompleteFlushed();
-                    else
-                        fail(pending);
-                    return;
-                }
+                if (updateState(__COMPLETING,pending))
+                    onIncompleteFlushed();
+                else
+                    fail(pending);
+                return;
             }
 
             // If updateState didn't succeed, we don't care as our buffers have been written
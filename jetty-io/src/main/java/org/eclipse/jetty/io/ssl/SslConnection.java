@@ -22,8 +22,13 @@ import java.io.IOException;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
@@ -45,6 +50,7 @@ import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
 
 /**
  * A Connection that acts as an interceptor between an EndPoint providing SSL encrypted data
@@ -75,7 +81,13 @@ import org.eclipse.jetty.util.log.Logger;
  * MOST IMPORTANTLY, the encrypted callbacks from the active methods (#onFillable() and WriteFlusher#completeWrite()) do no filling or flushing
  * themselves.  Instead they simple make the callbacks to the decrypted callbacks, so that the passive encrypted fill/flush will
  * be called again and make another best effort attempt to progress the connection.
- *
+ * <p>
+ * The fill side (unwrap, the encrypted input and decrypted input buffers) and the flush side (wrap and the encrypted output
+ * buffer) are guarded by separate locks, so that a thread reading and a thread writing the same connection can unwrap and wrap
+ * concurrently, as allowed by {@link SSLEngine}.  When the handshake requires one side to make progress on behalf of the
+ * other, it only ever tries the other side's lock: if that side is busy, a flag records that the fill requires a flush (or
+ * the flush requires a fill) to progress, and the busy side wakes up the waiting side once it has released its lock.
+ * No callbacks are ever invoked while holding either lock.
  */
 public class SslConnection extends AbstractConnection
 {
@@ -83,6 +95,7 @@ public class SslConnection extends AbstractConnection
     private static final boolean DEBUG = LOG.isDebugEnabled(); // Easy for the compiler to remove the code if DEBUG==false
     private static final ByteBuffer __FILL_CALLED_FLUSH= BufferUtil.allocate(0);
     private static final ByteBuffer __FLUSH_CALLED_FILL= BufferUtil.allocate(0);
+    private static final ByteBuffer __HANDSHAKE_FILL= BufferUtil.allocate(0);
     private final ByteBufferPool _bufferPool;
     private final SSLEngine _sslEngine;
     private final DecryptedEndPoint _decryptedEndPoint;
@@ -99,7 +112,30 @@ public class SslConnection extends AbstractConnection
             _decryptedEndPoint.getWriteFlusher().completeWrite();
         }
     };
+    private final Runnable _runFillable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            _decryptedEndPoint.getFillInterest().fillable();
+        }
+    };
+    private final Runnable _runHandshake = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            _decryptedEndPoint.handshake();
+        }
+    };
     private boolean _renegotiationAllowed;
+    private SslHandshakeExecutor _handshakeExecutor;
+    private final List<SslHandshakeListener> _handshakeListeners = new ArrayList<>();
+    private final AtomicBoolean _notifyHandshake = new AtomicBoolean();
+    private long _handshakeStarted;
+    private long _handshakeStartedMillis;
+    private int _maxFlushRecords = 1;
+    private SampleStatistic _flushRecordsStatistic;
 
     public SslConnection(ByteBufferPool byteBufferPool, Executor executor, EndPoint endPoint, SSLEngine sslEngine)
     {
@@ -148,12 +184,64 @@ public class SslConnection extends AbstractConnection
         this._renegotiationAllowed = renegotiationAllowed;
     }
 
+    public void addHandshakeListener(SslHandshakeListener listener)
+    {
+        _handshakeListeners.add(listener);
+    }
+
+    public boolean removeHandshakeListener(SslHandshakeListener listener)
+    {
+        return _handshakeListeners.remove(listener);
+    }
+
+    public int getMaxFlushRecords()
+    {
+        return _maxFlushRecords;
+    }
+
+    /**
+     * @param maxFlushRecords the maximum number of TLS records that a flush wraps before writing them
+     * to the encrypted end point with a single write. The default of 1 writes every record as soon
+     * as it is wrapped; larger values coalesce the application buffers of a flush into fewer writes.
+     */
+    public void setMaxFlushRecords(int maxFlushRecords)
+    {
+        if (maxFlushRecords < 1)
+            throw new IllegalArgumentException("maxFlushRecords=" + maxFlushRecords);
+        _maxFlushRecords = maxFlushRecords;
+    }
+
+    /**
+     * @param flushRecordsStatistic the statistic sampling the number of TLS records written to the
+     * encrypted end point by each write, or null
+     */
+    public void setFlushRecordsStatistic(SampleStatistic flushRecordsStatistic)
+    {
+        _flushRecordsStatistic = flushRecordsStatistic;
+    }
+
+    public SslHandshakeExecutor getHandshakeExecutor()
+    {
+        return _handshakeExecutor;
+    }
+
+    /**
+     * @param handshakeExecutor the executor that runs the initial handshake of this connection,
+     * or null to run the handshake inline with the filling and flushing of the application.
+     */
+    public void setHandshakeExecutor(SslHandshakeExecutor handshakeExecutor)
+    {
+        _handshakeExecutor = handshakeExecutor;
+    }
+
     @Override
     public void onOpen()
     {
         try
         {
             // Begin the handshake
+            _handshakeStarted = System.nanoTime();
+            _handshakeStartedMillis = System.currentTimeMillis();
             _sslEngine.beginHandshake();
             super.onOpen();
             getDecryptedEndPoint().getConnection().onOpen();
@@ -193,23 +281,75 @@ public class SslConnection extends AbstractConnection
         // We have received a close handshake, close the end point to send FIN.
         if (_decryptedEndPoint.isInputShutdown())
             getEndPoint().close();
-            
+
+        // If the initial handshake is not done, let the handshake executor progress it
+        if (_handshakeExecutor != null && !_decryptedEndPoint._handshaken && dispatchHandshake())
+        {
+            if (DEBUG)
+                LOG.debug("onFillable handshake {}", getEndPoint());
+            return;
+        }
+
         // wake up whoever is doing the fill or the flush so they can
         // do all the filling, unwrapping, wrapping and flushing
         _decryptedEndPoint.getFillInterest().fillable();
 
         // If we are handshaking, then wake up any waiting write as well as it may have been blocked on the read
-        synchronized(_decryptedEndPoint)
+        if (_decryptedEndPoint._flushRequiresFillToProgress.compareAndSet(true,false))
+            getExecutor().execute(_runCompletWrite);
+
+        if (DEBUG)
+            LOG.debug("onFillable exit {}", getEndPoint());
+    }
+
+    private boolean dispatchHandshake()
+    {
+        try
+        {
+            _handshakeExecutor.execute(_runHandshake);
+            return true;
+        }
+        catch (RejectedExecutionException x)
+        {
+            if (_handshakeExecutor.getRejectionPolicy() == SslHandshakeExecutor.RejectionPolicy.INLINE)
+                return false;
+            // Close the connection and let the application see it when it fills
+            LOG.debug("Handshake rejected, closing {}", getEndPoint());
+            getEndPoint().close();
+            return false;
+        }
+    }
+
+    private void handshakeCompleted()
+    {
+        SslHandshakeExecutor handshakeExecutor = _handshakeExecutor;
+        if (handshakeExecutor != null)
+            handshakeExecutor.handshakeCompleted(System.nanoTime() - _handshakeStarted);
+
+        // The listeners are notified once the fill or flush lock is released
+        if (!_handshakeListeners.isEmpty())
+            _notifyHandshake.set(true);
+    }
+
+    private void notifyHandshakeSucceeded()
+    {
+        if (_notifyHandshake.compareAndSet(true, false))
         {
-            if (_decryptedEndPoint._flushRequiresFillToProgress)
+            // A resumed session was created by an earlier handshake
+            boolean resumed = _sslEngine.getSession().getCreationTime() < _handshakeStartedMillis;
+            SslHandshakeListener.Event event = new SslHandshakeListener.Event(_sslEngine, resumed);
+            for (SslHandshakeListener listener : _handshakeListeners)
             {
-                _decryptedEndPoint._flushRequiresFillToProgress = false;
-                getExecutor().execute(_runCompletWrite);
+                try
+                {
+                    listener.handshakeSucceeded(event);
+                }
+                catch (Throwable x)
+                {
+                    LOG.info("Exception while notifying listener " + listener, x);
+                }
             }
         }
-
-        if (DEBUG)
-            LOG.debug("onFillable exit {}", getEndPoint());
     }
 
     @Override
@@ -222,16 +362,7 @@ public class SslConnection extends AbstractConnection
         // handle the cause.
         _decryptedEndPoint.getFillInterest().onFail(cause);
 
-        boolean failFlusher = false;
-        synchronized(_decryptedEndPoint)
-        {
-            if (_decryptedEndPoint._flushRequiresFillToProgress)
-            {
-                _decryptedEndPoint._flushRequiresFillToProgress = false;
-                failFlusher = true;
-            }
-        }
-        if (failFlusher)
+        if (_decryptedEndPoint._flushRequiresFillToProgress.compareAndSet(true,false))
             _decryptedEndPoint.getWriteFlusher().onFail(cause);
     }
 
@@ -254,11 +385,14 @@ public class SslConnection extends AbstractConnection
 
     public class DecryptedEndPoint extends AbstractEndPoint
     {
-        private boolean _fillRequiresFlushToProgress;
-        private boolean _flushRequiresFillToProgress;
-        private boolean _cannotAcceptMoreAppDataToFlush;
-        private boolean _handshaken;
-        private boolean _underFlown;
+        private final ReentrantLock _fillLock = new ReentrantLock();
+        private final ReentrantLock _flushLock = new ReentrantLock();
+        private final AtomicBoolean _fillRequiresFlushToProgress = new AtomicBoolean();
+        private final AtomicBoolean _flushRequiresFillToProgress = new AtomicBoolean();
+        private boolean _cannotAcceptMoreAppDataToFlush; // guarded by _flushLock
+        private boolean _writing; // guarded by _flushLock, true while _encryptedOutput is owned by an encrypted write
+        private boolean _underFlown; // guarded by _fillLock
+        private volatile boolean _handshaken;
 
         private final Callback _writeCallback = new Callback()
         {
@@ -268,23 +402,22 @@ public class SslConnection extends AbstractConnection
                 // This means that a write of encrypted data has completed.  Writes are done
                 // only if there is a pending writeflusher or a read needed to write
                 // data.  In either case the appropriate callback is passed on.
-                boolean fillable = false;
-                synchronized (DecryptedEndPoint.this)
+                _flushLock.lock();
+                try
                 {
                     if (DEBUG)
                         LOG.debug("write.complete {}", SslConnection.this.getEndPoint());
 
-                    releaseEncryptedOutputBuffer();
-
+                    _writing = false;
                     _cannotAcceptMoreAppDataToFlush = false;
 
-                    if (_fillRequiresFlushToProgress)
-                    {
-                        _fillRequiresFlushToProgress = false;
-                        fillable = true;
-                    }
+                    releaseEncryptedOutputBuffer();
+                }
+                finally
+                {
+                    _flushLock.unlock();
                 }
-                if (fillable)
+                if (_fillRequiresFlushToProgress.compareAndSet(true,false))
                     getFillInterest().fillable();
                 getExecutor().execute(_runCompletWrite);
             }
@@ -295,23 +428,22 @@ public class SslConnection extends AbstractConnection
                 // This means that a write of data has failed.  Writes are done
                 // only if there is an active writeflusher or a read needed to write
                 // data.  In either case the appropriate callback is passed on.
-                boolean failFiller = false;
-                synchronized (DecryptedEndPoint.this)
+                _flushLock.lock();
+                try
                 {
                     if (DEBUG)
                         LOG.debug("{} write.failed", SslConnection.this, x);
                     BufferUtil.clear(_encryptedOutput);
-                    releaseEncryptedOutputBuffer();
-
+                    _writing = false;
                     _cannotAcceptMoreAppDataToFlush = false;
 
-                    if (_fillRequiresFlushToProgress)
-                    {
-                        _fillRequiresFlushToProgress = false;
-                        failFiller = true;
-                    }
+                    releaseEncryptedOutputBuffer();
+                }
+                finally
+                {
+                    _flushLock.unlock();
                 }
-                if (failFiller)
+                if (_fillRequiresFlushToProgress.compareAndSet(true,false))
                     getFillInterest().onFail(x);
                 getWriteFlusher().onFail(x);
             }
@@ -349,31 +481,44 @@ public class SslConnection extends AbstractConnection
             // all data could be wrapped. So either we need to write some encrypted data,
             // OR if we are handshaking we need to read some encrypted data OR
             // if neither then we should just try the flush again.
+            boolean write = false;
+            boolean fillInterested = false;
             boolean flush = false;
-            synchronized (DecryptedEndPoint.this)
+            _flushLock.lock();
+            try
             {
                 if (DEBUG)
                     LOG.debug("onIncompleteFlush {}", getEndPoint());
                 // If we have pending output data,
                 if (BufferUtil.hasContent(_encryptedOutput))
                 {
-                    // write it
-                    _cannotAcceptMoreAppDataToFlush = true;
-                    getEndPoint().write(_writeCallback, _encryptedOutput);
+                    // write it, unless it is already being written, in which case
+                    // the write callback will complete the write
+                    if (!_writing)
+                        write = _writing = _cannotAcceptMoreAppDataToFlush = true;
                 }
                 // If we are handshaking and need to read,
                 else if (_sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP)
                 {
                     // check if we are actually read blocked in order to write
-                    _flushRequiresFillToProgress = true;
-                    SslConnection.this.fillInterested();
+                    _flushRequiresFillToProgress.set(true);
+                    fillInterested = true;
                 }
                 else
                 {
                     flush = true;
                 }
             }
-            if (flush)
+            finally
+            {
+                _flushLock.unlock();
+            }
+
+            if (write)
+                getEndPoint().write(_writeCallback, _encryptedOutput);
+            else if (fillInterested)
+                SslConnection.this.fillInterested();
+            else if (flush)
             {
                 // If the output is closed,
                 if (isOutputShutdown())
@@ -398,51 +543,66 @@ public class SslConnection extends AbstractConnection
             // decrypted data to be filled or what callbacks to setup to be told when there
             // might be more encrypted data available to attempt another call to fill
 
-            synchronized (DecryptedEndPoint.this)
+            boolean write = false;
+            _fillLock.lock();
+            try
             {
                 // Do we already have some app data, then app can fill now so return true
                 if (BufferUtil.hasContent(_decryptedInput))
                     return true;
 
-                // If we have no encrypted data to decrypt OR we have some, but it is not enough
-                if (BufferUtil.isEmpty(_encryptedInput) || _underFlown)
+                // Are we actually write blocked?
+                // This is checked before any encrypted data, which cannot be
+                // decrypted until the handshake data has been flushed.
+                if (_fillRequiresFlushToProgress.get())
                 {
-                    // We are not ready to read data
-
-                    // Are we actually write blocked?
-                    if (_fillRequiresFlushToProgress)
+                    // we must be blocked trying to write before we can read.
+                    // If a flush is in progress, it will wake us up when done.
+                    if (!_flushLock.tryLock())
+                        return false;
+                    try
                     {
-                        // we must be blocked trying to write before we can read
-
                         // Do we have data to write
                         if (BufferUtil.hasContent(_encryptedOutput))
                         {
-                            // write it
-                            _cannotAcceptMoreAppDataToFlush = true;
-                            getEndPoint().write(_writeCallback, _encryptedOutput);
-                        }
-                        else
-                        {
-                            // we have already written the net data
-                            // pretend we are readable so the wrap is done by next readable callback
-                            _fillRequiresFlushToProgress = false;
-                            return true;
+                            // write it, unless it is already being written,
+                            // in which case the write callback will wake us up
+                            if (!_writing)
+                                write = _writing = _cannotAcceptMoreAppDataToFlush = true;
+                            return false;
                         }
                     }
-                    else
+                    finally
                     {
-                        // Normal readable callback
-                        // Get called back on onfillable when then is more data to fill
-                        SslConnection.this.fillInterested();
+                        _flushLock.unlock();
                     }
 
-                    return false;
-                }
-                else
-                {
-                    // We are ready to read data
+                    // we have already written the net data
+                    // pretend we are readable so the wrap is done by next readable callback
+                    _fillRequiresFlushToProgress.set(false);
                     return true;
                 }
+
+                // If we have some encrypted data to decrypt, we are ready to read data
+                if (BufferUtil.hasContent(_encryptedInput) && !_underFlown)
+                    return true;
+
+                // We are not ready to read data
+
+                // Does the handshake need a wrap that nobody is doing?
+                if (_sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP && !_sslEngine.isOutboundDone())
+                    return true;
+
+                // Normal readable callback
+                // Get called back on onfillable when then is more data to fill
+                SslConnection.this.fillInterested();
+                return false;
+            }
+            finally
+            {
+                _fillLock.unlock();
+                if (write)
+                    getEndPoint().write(_writeCallback, _encryptedOutput);
             }
         }
 
@@ -464,8 +624,9 @@ public class SslConnection extends AbstractConnection
         }
 
         @Override
-        public synchronized int fill(ByteBuffer buffer) throws IOException
+        public int fill(ByteBuffer buffer) throws IOException
         {
+            _fillLock.lock();
             if (DEBUG)
                 LOG.debug("{} fill enter", SslConnection.this);
             try
@@ -544,6 +705,7 @@ public class SslConnection extends AbstractConnection
                             if (unwrapHandshakeStatus == HandshakeStatus.FINISHED && !_handshaken)
                             {
                                 _handshaken = true;
+                                handshakeCompleted();
                                 if (DEBUG)
                                     LOG.debug("{} handshake completed client-side", SslConnection.this);
                             }
@@ -594,12 +756,9 @@ public class SslConnection extends AbstractConnection
                                     if (buffer == __FLUSH_CALLED_FILL)
                                         return 0; // let it do the wrapping
 
-                                    _fillRequiresFlushToProgress = true;
-                                    flush(__FILL_CALLED_FLUSH);
-                                    if (BufferUtil.isEmpty(_encryptedOutput))
+                                    if (flushFromFill())
                                     {
                                         // the flush completed so continue
-                                        _fillRequiresFlushToProgress = false;
                                         continue;
                                     }
                                     return 0;
@@ -647,13 +806,6 @@ public class SslConnection extends AbstractConnection
             }
             finally
             {
-                // If we are handshaking, then wake up any waiting write as well as it may have been blocked on the read
-                if (_flushRequiresFillToProgress)
-                {
-                    _flushRequiresFillToProgress = false;
-                    getExecutor().execute(_runCompletWrite);
-                }
-
                 if (_encryptedInput != null && !_encryptedInput.hasRemaining())
                 {
                     _bufferPool.release(_encryptedInput);
@@ -666,6 +818,75 @@ public class SslConnection extends AbstractConnection
                 }
                 if (DEBUG)
                     LOG.debug("{} fill exit", SslConnection.this);
+                _fillLock.unlock();
+
+                if (!_fillLock.isHeldByCurrentThread() && !_flushLock.isHeldByCurrentThread())
+                    notifyHandshakeSucceeded();
+
+                // If we are handshaking, then wake up any waiting write as well as it may have been blocked on the read
+                if (!_fillLock.isHeldByCurrentThread() && _flushRequiresFillToProgress.compareAndSet(true,false))
+                    getExecutor().execute(_runCompletWrite);
+            }
+        }
+
+        /**
+         * Progresses the initial handshake from a thread of the handshake executor.
+         * <p>
+         * The handshake unwraps, wraps and delegated tasks are all run by a fill that produces no
+         * application data for the caller. If the handshake needs more encrypted data, fill interest
+         * is registered to dispatch the handshake again; otherwise the application is woken up to fill.
+         */
+        private void handshake()
+        {
+            try
+            {
+                int filled = fill(__HANDSHAKE_FILL);
+                if (DEBUG)
+                    LOG.debug("{} handshake filled {} {}", SslConnection.this, filled, _sslEngine.getHandshakeStatus());
+                if (filled == 0 && !_handshaken && BufferUtil.isEmpty(_decryptedInput) && !_fillRequiresFlushToProgress.get() &&
+                        _sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP)
+                {
+                    SslConnection.this.fillInterested();
+                    return;
+                }
+            }
+            catch (IOException x)
+            {
+                LOG.debug(x);
+            }
+
+            // The handshake is done, has failed or needs the flush side to progress:
+            // wake up the application, which will see the outcome when it fills
+            getFillInterest().fillable();
+        }
+
+        /**
+         * Wraps and flushes handshake data on behalf of a fill.
+         * <p>
+         * Only tries the flush lock, so that a fill never waits for a concurrent flush (that
+         * may itself be waiting for a fill).  If the flush side is busy, it will wake up the
+         * fill interest once it is done.
+         * @return true if the handshake data was flushed and the fill can continue
+         * @throws IOException if the flush failed
+         */
+        private boolean flushFromFill() throws IOException
+        {
+            _fillRequiresFlushToProgress.set(true);
+            if (!_flushLock.tryLock())
+                return false;
+            try
+            {
+                flush(__FILL_CALLED_FLUSH);
+                if (BufferUtil.isEmpty(_encryptedOutput))
+                {
+                    _fillRequiresFlushToProgress.set(false);
+                    return true;
+                }
+                return false;
+            }
+            finally
+            {
+                _flushLock.unlock();
             }
         }
 
@@ -682,7 +903,7 @@ public class SslConnection extends AbstractConnection
         }
 
         @Override
-        public synchronized boolean flush(ByteBuffer... appOuts) throws IOException
+        public boolean flush(ByteBuffer... appOuts) throws IOException
         {
             // The contract for flush does not require that all appOuts bytes are written
             // or even that any appOut bytes are written!  If the connection is write block
@@ -691,9 +912,11 @@ public class SslConnection extends AbstractConnection
             // it is the applications responsibility to call flush again - either in a busy loop
             // or better yet by using EndPoint#write to do the flushing.
 
+            _flushLock.lock();
             if (DEBUG)
                 LOG.debug("{} flush enter {}", SslConnection.this, Arrays.toString(appOuts));
             int consumed=0;
+            int records=0;
             try
             {
                 if (_cannotAcceptMoreAppDataToFlush)
@@ -703,9 +926,10 @@ public class SslConnection extends AbstractConnection
                     return false;
                 }
 
-                // We will need a network buffer
+                // We will need a network buffer, big enough for the records we may coalesce
+                int packetBufferSize = _sslEngine.getSession().getPacketBufferSize();
                 if (_encryptedOutput == null)
-                    _encryptedOutput = _bufferPool.acquire(_sslEngine.getSession().getPacketBufferSize(), _encryptedDirectBuffers);
+                    _encryptedOutput = _bufferPool.acquire(packetBufferSize * _maxFlushRecords, _encryptedDirectBuffers);
 
                 while (true)
                 {
@@ -718,6 +942,8 @@ public class SslConnection extends AbstractConnection
                     BufferUtil.flipToFlush(_encryptedOutput, pos);
                     if (wrapResult.bytesConsumed()>0)
                         consumed+=wrapResult.bytesConsumed();
+                    if (wrapResult.bytesProduced()>0)
+                        records++;
 
                     boolean allConsumed=true;
                     // clear empty buffers to prevent position creeping up the buffer
@@ -765,6 +991,7 @@ public class SslConnection extends AbstractConnection
                             if (wrapResult.getHandshakeStatus() == HandshakeStatus.FINISHED && !_handshaken)
                             {
                                 _handshaken = true;
+                                handshakeCompleted();
                                 if (DEBUG)
                                     LOG.debug("{} handshake completed server-side", SslConnection.this);
                             }
@@ -780,9 +1007,20 @@ public class SslConnection extends AbstractConnection
                                 return allConsumed;
                             }
 
+                            // if there is more application data and room for another record, wrap it
+                            // before flushing, so that the records are written with a single write
+                            if (handshakeStatus == HandshakeStatus.NOT_HANDSHAKING && wrapResultStatus == Status.OK &&
+                                    !allConsumed && records < _maxFlushRecords && BufferUtil.space(_encryptedOutput) >= packetBufferSize)
+                                continue;
+
                             // if we have net bytes, let's try to flush them
                             if (BufferUtil.hasContent(_encryptedOutput))
+                            {
+                                if (_flushRecordsStatistic != null && records > 0)
+                                    _flushRecordsStatistic.set(records);
+                                records=0;
                                 getEndPoint().flush(_encryptedOutput);
+                            }
 
                             // But we also might have more to do for the handshaking state.
                             switch (handshakeStatus)
@@ -806,11 +1044,25 @@ public class SslConnection extends AbstractConnection
                                     if (appOuts[0]!=__FILL_CALLED_FLUSH && !getFillInterest().isInterested())
                                     {
                                         // Tell the onFillable method that there might be a write to complete
-                                        _flushRequiresFillToProgress = true;
-                                        fill(__FLUSH_CALLED_FILL);
-                                        // Check if after the fill() we need to wrap again
-                                        if (handshakeStatus == HandshakeStatus.NEED_WRAP)
-                                            continue;
+                                        _flushRequiresFillToProgress.set(true);
+                                        // Only try the fill lock, as a concurrent fill will wake us up when done
+                                        if (_fillLock.tryLock())
+                                        {
+                                            try
+                                            {
+                                                fill(__FLUSH_CALLED_FILL);
+                                            }
+                                            finally
+                                            {
+                                                _fillLock.unlock();
+                                            }
+                                            // Check if after the fill() we need to wrap again
+                                            if (_sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP)
+                                            {
+                                                _flushRequiresFillToProgress.set(false);
+                                                continue;
+                                            }
+                                        }
                                     }
                                     return allConsumed&&BufferUtil.isEmpty(_encryptedOutput);
 
@@ -830,14 +1082,22 @@ public class SslConnection extends AbstractConnection
                 if (DEBUG)
                     LOG.debug("{} flush exit, consumed {}", SslConnection.this, consumed);
                 releaseEncryptedOutputBuffer();
+                _flushLock.unlock();
+
+                if (!_fillLock.isHeldByCurrentThread() && !_flushLock.isHeldByCurrentThread())
+                    notifyHandshakeSucceeded();
+
+                // If a fill could not progress because we were flushing, wake it up
+                if (!_flushLock.isHeldByCurrentThread() && _fillRequiresFlushToProgress.get())
+                    getExecutor().execute(_runFillable);
             }
         }
 
         private void releaseEncryptedOutputBuffer()
         {
-            if (!Thread.holdsLock(DecryptedEndPoint.this))
+            if (!_flushLock.isHeldByCurrentThread())
                 throw new IllegalStateException();
-            if (_encryptedOutput != null && !_encryptedOutput.hasRemaining())
+            if (_encryptedOutput != null && !_writing && !_encryptedOutput.hasRemaining())
             {
                 _bufferPool.release(_encryptedOutput);
                 _encryptedOutput = null;
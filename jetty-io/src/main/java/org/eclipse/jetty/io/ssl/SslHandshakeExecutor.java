@@ -0,0 +1,216 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io.ssl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/* ------------------------------------------------------------ */
+/** A bounded executor for TLS handshakes.
+ * <p>
+ * When set on a {@link SslConnection}, the unwraps and the {@link javax.net.ssl.SSLEngine}
+ * delegated tasks of the initial handshake are run by the threads of this executor rather
+ * than inline by the threads of the connection executor, so that a burst of handshakes
+ * cannot starve the requests of established connections.
+ * <p>
+ * At most {@link #getThreads()} handshakes are run concurrently and at most
+ * {@link #getQueueSize()} handshakes wait for a thread.  Further handshakes are rejected and
+ * handled according to the {@link RejectionPolicy}.
+ */
+@ManagedObject("Executor of TLS handshakes")
+public class SslHandshakeExecutor extends ContainerLifeCycle implements Executor
+{
+    private static final Logger LOG = Log.getLogger(SslHandshakeExecutor.class);
+
+    public enum RejectionPolicy
+    {
+        /** Close the connection, so that the client may retry later or elsewhere */
+        CLOSE,
+        /** Run the handshake inline with the connection executor, as if no handshake executor was set */
+        INLINE
+    }
+
+    private final CounterStatistic _queued = new CounterStatistic();
+    private final CounterStatistic _rejected = new CounterStatistic();
+    private final SampleStatistic _latency = new SampleStatistic();
+    private final QueuedThreadPool _threadPool;
+    private final int _queueSize;
+    private RejectionPolicy _rejectionPolicy = RejectionPolicy.CLOSE;
+
+    public SslHandshakeExecutor()
+    {
+        this(Runtime.getRuntime().availableProcessors(),1024);
+    }
+
+    public SslHandshakeExecutor(@Name("threads") int threads, @Name("queueSize") int queueSize)
+    {
+        if (threads<=0)
+            throw new IllegalArgumentException("threads="+threads);
+        _queueSize=queueSize;
+        _threadPool=new QueuedThreadPool(threads,threads);
+        _threadPool.setName("ssl-handshake-"+hashCode());
+        _threadPool.setReservedThreads(0);
+        addBean(_threadPool);
+    }
+
+    @ManagedAttribute("maximum number of concurrent handshakes")
+    public int getThreads()
+    {
+        return _threadPool.getMaxThreads();
+    }
+
+    @ManagedAttribute("capacity of the queue of handshakes waiting for a thread")
+    public int getQueueSize()
+    {
+        return _queueSize;
+    }
+
+    @ManagedAttribute("policy applied to handshakes rejected by a full queue")
+    public RejectionPolicy getRejectionPolicy()
+    {
+        return _rejectionPolicy;
+    }
+
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy)
+    {
+        _rejectionPolicy=rejectionPolicy;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        resetStatistics();
+        super.doStart();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param job the handshake job to run
+     * @throws RejectedExecutionException if the queue is full or the executor is not running
+     */
+    @Override
+    public void execute(final Runnable job)
+    {
+        if (!isRunning() || _queued.getCurrent()>=_queueSize)
+        {
+            _rejected.increment();
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} rejected {}",this,job);
+            throw new RejectedExecutionException(job.toString());
+        }
+
+        _queued.increment();
+        try
+        {
+            _threadPool.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    _queued.decrement();
+                    job.run();
+                }
+            });
+        }
+        catch (RejectedExecutionException x)
+        {
+            _queued.decrement();
+            _rejected.increment();
+            throw x;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Records the duration of a completed handshake.
+     * @param nanos the handshake duration in nanoseconds
+     */
+    public void handshakeCompleted(long nanos)
+    {
+        _latency.set(nanos);
+    }
+
+    @ManagedAttribute("number of handshakes waiting for a thread")
+    public long getHandshakesQueued()
+    {
+        return _queued.getCurrent();
+    }
+
+    @ManagedAttribute("maximum number of handshakes waiting for a thread")
+    public long getHandshakesQueuedMax()
+    {
+        return _queued.getMax();
+    }
+
+    @ManagedAttribute("number of handshakes rejected because the queue was full")
+    public long getHandshakesRejected()
+    {
+        return _rejected.getTotal();
+    }
+
+    @ManagedAttribute("number of completed handshakes")
+    public long getHandshakes()
+    {
+        return _latency.getCount();
+    }
+
+    @ManagedAttribute("mean handshake duration in ms")
+    public double getHandshakeTimeMean()
+    {
+        return _latency.getMean()/TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @ManagedAttribute("maximum handshake duration in ms")
+    public long getHandshakeTimeMax()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_latency.getMax());
+    }
+
+    @ManagedAttribute("standard deviation of the handshake duration in ms")
+    public double getHandshakeTimeStdDev()
+    {
+        return _latency.getStdDev()/TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @ManagedOperation("reset the handshake statistics")
+    public void resetStatistics()
+    {
+        _queued.reset(_queued.getCurrent());
+        _rejected.reset();
+        _latency.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%d/%d,q=%d}",getClass().getSimpleName(),hashCode(),_threadPool.getThreads(),getThreads(),_queued.getCurrent());
+    }
+}
@@ -0,0 +1,79 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io.ssl;
+
+import java.util.EventListener;
+import java.util.EventObject;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+
+/**
+ * <p>Implementations of this interface are notified of the completion of the TLS handshakes
+ * of a {@link SslConnection}.</p>
+ */
+public interface SslHandshakeListener extends EventListener
+{
+    /**
+     * <p>Callback method invoked when the TLS handshake succeeds.</p>
+     *
+     * @param event the event object carrying information about the TLS handshake event
+     */
+    public void handshakeSucceeded(Event event);
+
+    /**
+     * <p>The event object carrying information about TLS handshake events.</p>
+     */
+    public static class Event extends EventObject
+    {
+        private static final long serialVersionUID = 7870070431549555693L;
+
+        private final boolean resumed;
+
+        public Event(SSLEngine sslEngine, boolean resumed)
+        {
+            super(sslEngine);
+            this.resumed = resumed;
+        }
+
+        /**
+         * @return the SSLEngine associated to the TLS handshake event
+         */
+        public SSLEngine getSSLEngine()
+        {
+            return (SSLEngine)getSource();
+        }
+
+        /**
+         * @return the SSLSession established by the TLS handshake
+         */
+        public SSLSession getSSLSession()
+        {
+            return getSSLEngine().getSession();
+        }
+
+        /**
+         * @return whether the handshake resumed a previously established session
+         * rather than performing a full handshake
+         */
+        public boolean isResumed()
+        {
+            return resumed;
+        }
+    }
+}
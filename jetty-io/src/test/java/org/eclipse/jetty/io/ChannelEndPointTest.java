@@ -18,11 +18,21 @@
 
 package org.eclipse.jetty.io;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.FutureCallback;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 public class ChannelEndPointTest extends EndPointTest<ChannelEndPoint>
 {
@@ -57,4 +67,35 @@ public class ChannelEndPointTest extends EndPointTest<ChannelEndPoint>
     {
         super.testClientServerExchange();
     }
+
+    @Test
+    public void testTransfer() throws Exception
+    {
+        File file = File.createTempFile("transfer",".bin");
+        file.deleteOnExit();
+        byte[] content = new byte[100000];
+        for (int i=0;i<content.length;i++)
+            content[i]=(byte)('a'+i%26);
+        try (FileOutputStream out = new FileOutputStream(file))
+        {
+            out.write(content);
+        }
+
+        EndPointPair<ChannelEndPoint> c = newConnection();
+        try (FileChannel channel = FileChannel.open(file.toPath(),StandardOpenOption.READ))
+        {
+            FutureCallback callback = new FutureCallback();
+            c.server.transfer(callback,channel,10,content.length-10);
+            callback.get(5,TimeUnit.SECONDS);
+        }
+        c.server.shutdownOutput();
+
+        ByteBuffer buffer = BufferUtil.allocate(content.length);
+        while (c.client.fill(buffer)>=0)
+            Thread.yield();
+        Assert.assertEquals(content.length-10,buffer.remaining());
+        Assert.assertEquals(new String(content,10,content.length-10,"ISO-8859-1"),BufferUtil.toString(buffer));
+        c.client.close();
+        c.server.close();
+    }
 }
@@ -0,0 +1,46 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SelectChannelEndPointExecuteProduceConsumeTest extends SelectChannelEndPointTest
+{
+    @Before
+    @Override
+    public void startManager() throws Exception
+    {
+        _manager.setSelectStrategy(SelectorManager.SelectStrategy.EXECUTE_PRODUCE_CONSUME);
+        super.startManager();
+    }
+
+    @Test
+    public void testSelectStatistics() throws Exception
+    {
+        testEcho();
+        assertThat(_manager.getSelects(), greaterThan(0L));
+        assertThat(_manager.getSelectedKeysMax(), greaterThan(0));
+        assertTrue(_manager.dump().contains("keys/select="));
+    }
+}
@@ -21,12 +21,15 @@ package org.eclipse.jetty.io;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -34,11 +37,14 @@ import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSocket;
 
 import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.io.ssl.SslHandshakeExecutor;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
 import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.FutureCallback;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.util.thread.TimerScheduler;
@@ -57,6 +63,17 @@ public class SslConnectionTest
     protected volatile EndPoint _lastEndp;
     private volatile boolean _testFill=true;
     private volatile FutureCallback _writeCallback;
+    private volatile SslHandshakeExecutor _handshakeExecutor;
+    private volatile int _maxFlushRecords;
+    private volatile ByteBuffer _connectContent;
+    private final SampleStatistic _flushRecords = new SampleStatistic();
+    private volatile SslHandshakeListener _handshakeListener;
+    private volatile TestConnection _lastConnection;
+    private volatile boolean _blockFill;
+    private volatile boolean _blockFlush;
+    private final CountDownLatch _blocked = new CountDownLatch(1);
+    private final CountDownLatch _unblock = new CountDownLatch(1);
+    private final CountDownLatch _filled = new CountDownLatch(1);
     protected ServerSocketChannel _connector;
     final AtomicInteger _dispatches = new AtomicInteger();
     protected QueuedThreadPool _threadPool = new QueuedThreadPool()
@@ -80,15 +97,46 @@ public class SslConnectionTest
             engine.setUseClientMode(false);
             SslConnection sslConnection = new SslConnection(__byteBufferPool, getExecutor(), endpoint, engine);
             sslConnection.setRenegotiationAllowed(__sslCtxFactory.isRenegotiationAllowed());
-            Connection appConnection = new TestConnection(sslConnection.getDecryptedEndPoint());
+            sslConnection.setHandshakeExecutor(_handshakeExecutor);
+            sslConnection.setMaxFlushRecords(_maxFlushRecords);
+            sslConnection.setFlushRecordsStatistic(_flushRecords);
+            if (_handshakeListener!=null)
+                sslConnection.addHandshakeListener(_handshakeListener);
+            TestConnection appConnection = new TestConnection(sslConnection.getDecryptedEndPoint());
             sslConnection.getDecryptedEndPoint().setConnection(appConnection);
+            _lastConnection=appConnection;
             return sslConnection;
         }
 
         @Override
         protected SelectChannelEndPoint newEndPoint(SocketChannel channel, ManagedSelector selectSet, SelectionKey selectionKey) throws IOException
         {
-            SelectChannelEndPoint endp = new SelectChannelEndPoint(channel,selectSet, selectionKey, getScheduler(), 60000);
+            SelectChannelEndPoint endp = new SelectChannelEndPoint(channel,selectSet, selectionKey, getScheduler(), 60000)
+            {
+                @Override
+                public int fill(ByteBuffer buffer) throws IOException
+                {
+                    int filled=super.fill(buffer);
+                    if (filled>0 && _blockFill)
+                    {
+                        _blockFill=false;
+                        block();
+                    }
+                    return filled;
+                }
+
+                @Override
+                public boolean flush(ByteBuffer... buffers) throws IOException
+                {
+                    boolean flushed=super.flush(buffers);
+                    if (_blockFlush)
+                    {
+                        _blockFlush=false;
+                        block();
+                    }
+                    return flushed;
+                }
+            };
             _lastEndp=endp;
             return endp;
         }
@@ -112,7 +160,15 @@ public class SslConnectionTest
     {
         _testFill=true;
         _writeCallback=null;
+        _handshakeExecutor=null;
+        _maxFlushRecords=1;
+        _connectContent=BufferUtil.toBuffer("Hello Client");
+        _flushRecords.reset();
+        _handshakeListener=null;
         _lastEndp=null;
+        _lastConnection=null;
+        _blockFill=false;
+        _blockFlush=false;
         _connector = ServerSocketChannel.open();
         _connector.socket().bind(null);
         _threadPool.start();
@@ -124,6 +180,7 @@ public class SslConnectionTest
     @After
     public void stopManager() throws Exception
     {
+        _unblock.countDown();
         if (_lastEndp.isOpen())
             _lastEndp.close();
         _manager.stop();
@@ -155,7 +212,7 @@ public class SslConnectionTest
                     @Override
                     public void run()
                     {
-                        getEndPoint().write(_writeCallback,BufferUtil.toBuffer("Hello Client"));
+                        getEndPoint().write(_writeCallback,_connectContent);
                     }
                 });
             }
@@ -214,9 +271,28 @@ public class SslConnectionTest
             {
                 if (endp.isOpen())
                     fillInterested();
+                _filled.countDown();
             }
         }
     }
+
+    /**
+     * Blocks a network fill or flush, while the SslConnection holds its fill or flush lock,
+     * until the test unblocks it.
+     */
+    private void block() throws IOException
+    {
+        _blocked.countDown();
+        try
+        {
+            _unblock.await(10,TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            throw new InterruptedIOException();
+        }
+    }
+
     protected Socket newClient() throws IOException
     {
         SSLSocket socket = __sslCtxFactory.newSslSocket();
@@ -251,6 +327,74 @@ public class SslConnectionTest
     }
 
 
+    @Test
+    public void testHandshakeExecutor() throws Exception
+    {
+        _handshakeExecutor = new SslHandshakeExecutor(1,4);
+        _handshakeExecutor.start();
+        try
+        {
+            Socket client = newClient();
+            client.setSoTimeout(60000);
+
+            SocketChannel server = _connector.accept();
+            server.configureBlocking(false);
+            _manager.accept(server);
+
+            client.getOutputStream().write("Hello".getBytes("UTF-8"));
+            byte[] buffer = new byte[1024];
+            int len=client.getInputStream().read(buffer);
+            Assert.assertEquals(5, len);
+            Assert.assertEquals("Hello",new String(buffer,0,len,StringUtil.__UTF8_CHARSET));
+            Assert.assertEquals(1, _handshakeExecutor.getHandshakes());
+            Assert.assertEquals(0, _handshakeExecutor.getHandshakesRejected());
+            Assert.assertEquals(0, _handshakeExecutor.getHandshakesQueued());
+
+            client.close();
+        }
+        finally
+        {
+            _handshakeExecutor.stop();
+        }
+    }
+
+    @Test
+    public void testHandshakeListenerResumed() throws Exception
+    {
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger resumed = new AtomicInteger();
+        _handshakeListener = new SslHandshakeListener()
+        {
+            @Override
+            public void handshakeSucceeded(Event event)
+            {
+                if (event.isResumed())
+                    resumed.incrementAndGet();
+                else
+                    created.incrementAndGet();
+            }
+        };
+
+        for (int i=0;i<2;i++)
+        {
+            Socket client = newClient();
+            client.setSoTimeout(60000);
+
+            SocketChannel server = _connector.accept();
+            server.configureBlocking(false);
+            _manager.accept(server);
+
+            client.getOutputStream().write("Hello".getBytes("UTF-8"));
+            byte[] buffer = new byte[1024];
+            int len=client.getInputStream().read(buffer);
+            Assert.assertEquals(5, len);
+            client.close();
+        }
+
+        Assert.assertEquals(1, created.get());
+        Assert.assertEquals(1, resumed.get());
+    }
+
     @Test
     public void testWriteOnConnect() throws Exception
     {
@@ -271,6 +415,139 @@ public class SslConnectionTest
         client.close();
     }
 
+    @Test
+    public void testCoalescedFlush() throws Exception
+    {
+        _testFill=false;
+        _maxFlushRecords=4;
+        byte[] content = new byte[256*1024];
+        Arrays.fill(content,(byte)'x');
+        _connectContent=BufferUtil.toBuffer(content);
+
+        _writeCallback = new FutureCallback();
+        Socket client = newClient();
+        client.setSoTimeout(10000);
+
+        SocketChannel server = _connector.accept();
+        server.configureBlocking(false);
+        _manager.accept(server);
+
+        InputStream in = client.getInputStream();
+        byte[] buffer = new byte[8192];
+        int total=0;
+        while (total<content.length)
+        {
+            int len=in.read(buffer);
+            Assert.assertTrue(len>0);
+            total+=len;
+        }
+        Assert.assertEquals(content.length,total);
+        Assert.assertEquals(null,_writeCallback.get(1,TimeUnit.SECONDS));
+        Assert.assertEquals(4,_flushRecords.getMax());
+        client.close();
+    }
+
+    @Test
+    public void testFillBlockedOnFlush() throws Exception
+    {
+        // The write on connect unwraps the ClientHello, then blocks flushing the server handshake
+        // holding the flush lock, so the fill of the client handshake cannot wrap the reply
+        _testFill=false;
+        _blockFlush=true;
+
+        _writeCallback = new FutureCallback();
+        final Socket client = newClient();
+        client.setSoTimeout(10000);
+
+        SocketChannel server = _connector.accept();
+        server.configureBlocking(false);
+        _manager.accept(server);
+
+        final CountDownLatch read = new CountDownLatch(1);
+        final byte[] buffer = new byte[1024];
+        final AtomicInteger len = new AtomicInteger();
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    len.set(client.getInputStream().read(buffer));
+                    read.countDown();
+                }
+                catch(IOException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+
+        Assert.assertTrue(_blocked.await(10,TimeUnit.SECONDS));
+        _lastConnection.fillInterested();
+        Assert.assertTrue(_filled.await(10,TimeUnit.SECONDS));
+        Assert.assertFalse(_writeCallback.isDone());
+
+        // The flush wakes up the fill once it releases the flush lock
+        _unblock.countDown();
+        Assert.assertTrue(read.await(10,TimeUnit.SECONDS));
+        Assert.assertEquals("Hello Client",new String(buffer,0,len.get(),StringUtil.__UTF8_CHARSET));
+        Assert.assertEquals(null,_writeCallback.get(1,TimeUnit.SECONDS));
+
+        // The connection still echoes once the handshake has completed
+        client.getOutputStream().write("Hello".getBytes("UTF-8"));
+        int l=client.getInputStream().read(buffer);
+        Assert.assertEquals("Hello",new String(buffer,0,l,StringUtil.__UTF8_CHARSET));
+        client.close();
+    }
+
+    @Test
+    public void testFlushBlockedOnFill() throws Exception
+    {
+        // The fill blocks reading the ClientHello holding the fill lock,
+        // so the write cannot unwrap the client handshake
+        _blockFill=true;
+
+        final Socket client = newClient();
+        client.setSoTimeout(10000);
+
+        SocketChannel server = _connector.accept();
+        server.configureBlocking(false);
+        _manager.accept(server);
+
+        final CountDownLatch read = new CountDownLatch(1);
+        final byte[] buffer = new byte[1024];
+        final AtomicInteger len = new AtomicInteger();
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    len.set(client.getInputStream().read(buffer));
+                    read.countDown();
+                }
+                catch(IOException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+
+        Assert.assertTrue(_blocked.await(10,TimeUnit.SECONDS));
+        FutureCallback writeCallback = new FutureCallback();
+        _lastConnection.getEndPoint().write(writeCallback,BufferUtil.toBuffer("Hello Client"));
+        Assert.assertFalse(writeCallback.isDone());
+
+        // The fill wakes up the flush once it releases the fill lock
+        _unblock.countDown();
+        Assert.assertTrue(read.await(10,TimeUnit.SECONDS));
+        Assert.assertEquals("Hello Client",new String(buffer,0,len.get(),StringUtil.__UTF8_CHARSET));
+        Assert.assertEquals(null,writeCallback.get(1,TimeUnit.SECONDS));
+        client.close();
+    }
+
     @Test
     public void testManyLines() throws Exception
     {
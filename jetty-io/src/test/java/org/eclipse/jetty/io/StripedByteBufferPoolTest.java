@@ -0,0 +1,166 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class StripedByteBufferPoolTest
+{
+    @Test
+    public void testMinimumRelease() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000);
+
+        for (int size=1;size<=10;size++)
+        {
+            ByteBuffer buffer = bufferPool.acquire(size, true);
+            assertTrue(buffer.isDirect());
+            assertEquals(size,buffer.capacity());
+            bufferPool.release(buffer);
+            assertNotSame(buffer,bufferPool.acquire(size, true));
+        }
+        assertEquals(0,bufferPool.getAllocatedBuffers());
+    }
+
+    @Test
+    public void testAcquireReleaseAcquireSameThread() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000);
+
+        for (int size=390;size<=510;size++)
+        {
+            bufferPool.clear();
+            ByteBuffer buffer1 = bufferPool.acquire(size, true);
+            assertThat(buffer1.capacity(), greaterThanOrEqualTo(size));
+            bufferPool.release(buffer1);
+            ByteBuffer buffer2 = bufferPool.acquire(size, true);
+            bufferPool.release(buffer2);
+            ByteBuffer buffer3 = bufferPool.acquire(size, false);
+            bufferPool.release(buffer3);
+
+            assertSame(buffer1,buffer2);
+            assertNotSame(buffer1,buffer3);
+            assertTrue(!buffer3.isDirect());
+            // Released buffers are held by the thread magazine
+            assertEquals(0,bufferPool.getRetainedBytes());
+        }
+    }
+
+    @Test
+    public void testSharedBuckets() throws Exception
+    {
+        // No thread caching, so that all buffers go to the shared buckets
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000,16,1000000,0,0);
+        StripedByteBufferPool.Bucket[] buckets = bufferPool.bucketsFor(true);
+
+        ByteBuffer buffer = bufferPool.acquire(450, true);
+        assertEquals(500,buffer.capacity());
+        bufferPool.release(buffer);
+        assertEquals(500,bufferPool.getRetainedBytes());
+        assertEquals(1,buckets[4].size());
+
+        assertSame(buffer,bufferPool.acquire(450, true));
+        assertEquals(0,bufferPool.getRetainedBytes());
+        assertEquals(0,buckets[4].size());
+    }
+
+    @Test
+    public void testBoundedRetention() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000,1000,2000,0,0);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i=0;i<10;i++)
+            buffers.add(bufferPool.acquire(500, false));
+        for (ByteBuffer buffer : buffers)
+            bufferPool.release(buffer);
+
+        assertEquals(2000,bufferPool.getRetainedBytes());
+        assertEquals(6,bufferPool.getDroppedBuffers());
+
+        bufferPool.clear();
+        assertEquals(0,bufferPool.getRetainedBytes());
+    }
+
+    @Test
+    public void testBoundedThreadCache() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000,1000,1000000,1000,0);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i=0;i<5;i++)
+            buffers.add(bufferPool.acquire(500, false));
+        for (ByteBuffer buffer : buffers)
+            bufferPool.release(buffer);
+
+        // Two buffers fit in the thread magazine, the others overflow to the shared buckets
+        assertEquals(1500,bufferPool.getRetainedBytes());
+    }
+
+    @Test
+    public void testIdleShrink() throws Exception
+    {
+        StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000,1000,1000000,0,100);
+
+        bufferPool.release(bufferPool.acquire(500, true));
+        assertEquals(500,bufferPool.getRetainedBytes());
+
+        TimeUnit.MILLISECONDS.sleep(200);
+        bufferPool.shrink();
+        assertEquals(0,bufferPool.getRetainedBytes());
+    }
+
+    @Test
+    public void testReleaseFromOtherThread() throws Exception
+    {
+        final StripedByteBufferPool bufferPool = new StripedByteBufferPool(10,100,1000,1000,1000000,1000,0);
+        final ByteBuffer buffer = bufferPool.acquire(500, true);
+        final CountDownLatch latch = new CountDownLatch(1);
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                // Fill the magazine of this thread so that the buffer overflows to the shared buckets
+                ByteBuffer buffer1 = bufferPool.acquire(500, true);
+                ByteBuffer buffer2 = bufferPool.acquire(500, true);
+                bufferPool.release(buffer1);
+                bufferPool.release(buffer2);
+                bufferPool.release(buffer);
+                latch.countDown();
+            }
+        }.start();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        assertSame(buffer,bufferPool.acquire(500, true));
+    }
+}
@@ -0,0 +1,66 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HttpFieldsBenchmark
+{
+    private final HttpFields _fields = new HttpFields();
+
+    @Benchmark
+    public void testPutGet(Blackhole blackhole)
+    {
+        HttpFields fields = _fields;
+        fields.clear();
+        fields.put(HttpHeader.HOST,"www.example.com");
+        fields.put(HttpHeader.CONNECTION,"keep-alive");
+        fields.put(HttpHeader.ACCEPT,"text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+        fields.put(HttpHeader.ACCEPT_ENCODING,"gzip,deflate,sdch");
+        fields.put(HttpHeader.ACCEPT_LANGUAGE,"en-US,en;q=0.8");
+        fields.put(HttpHeader.USER_AGENT,"Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko)");
+        fields.put(HttpHeader.COOKIE,"JSESSIONID=1mn5u8zqd0v6k1xq9n3ckb0gyu");
+        fields.put("X-Requested-With","XMLHttpRequest");
+
+        blackhole.consume(fields.get(HttpHeader.HOST));
+        blackhole.consume(fields.get(HttpHeader.CONTENT_LENGTH));
+        blackhole.consume(fields.get(HttpHeader.COOKIE));
+        blackhole.consume(fields.get("Accept-Encoding"));
+        blackhole.consume(fields.get("X-Requested-With"));
+    }
+}
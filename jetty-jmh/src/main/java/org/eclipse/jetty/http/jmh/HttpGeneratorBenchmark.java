@@ -0,0 +1,126 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpGenerator;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HttpGeneratorBenchmark
+{
+    @Param({"content-length","chunked"})
+    public String framing;
+
+    @Param({"1024"})
+    public int size;
+
+    private final HttpGenerator _generator = new HttpGenerator();
+    private final ByteBuffer _header = BufferUtil.allocate(4096);
+    private final ByteBuffer _chunk = BufferUtil.allocate(HttpGenerator.CHUNK_SIZE);
+    private ByteBuffer _content;
+    private HttpGenerator.ResponseInfo _info;
+
+    @Setup
+    public void setup()
+    {
+        HttpFields fields = new HttpFields();
+        fields.put(HttpHeader.CONTENT_TYPE,"text/html;charset=utf-8");
+        fields.put(HttpHeader.LAST_MODIFIED,"Tue, 25 Jun 2013 12:00:00 GMT");
+        fields.put(HttpHeader.ETAG,"W/\"e3b0c44298fc1c149afbf4c8996fb924\"");
+        fields.put(HttpHeader.CACHE_CONTROL,"max-age=3600");
+        fields.put("X-Powered-By","Jetty");
+
+        boolean chunked = "chunked".equals(framing);
+        _info = new HttpGenerator.ResponseInfo(HttpVersion.HTTP_1_1,fields,chunked?-1:size,200,null,false);
+        _content = BufferUtil.allocate(size);
+        BufferUtil.flipToFill(_content);
+        while (_content.hasRemaining())
+            _content.put((byte)'x');
+        BufferUtil.flipToFlush(_content,0);
+    }
+
+    @Benchmark
+    public void testGenerateResponse(Blackhole blackhole) throws IOException
+    {
+        _generator.reset();
+        // A content-length response is generated in a single call with last=true,
+        // while a chunked response writes the content before completing.
+        boolean chunked = _info.getContentLength()<0;
+        generate(blackhole,_content.duplicate(),!chunked);
+        if (chunked)
+            generate(blackhole,null,true);
+    }
+
+    private void generate(Blackhole blackhole, ByteBuffer content, boolean last) throws IOException
+    {
+        ByteBuffer chunk=null;
+        while (true)
+        {
+            HttpGenerator.Result result = _generator.generateResponse(_info,_header,chunk,content,last);
+            switch (result)
+            {
+                case NEED_CHUNK:
+                    chunk=_chunk;
+                    break;
+                case FLUSH:
+                    blackhole.consume(_header.remaining());
+                    BufferUtil.clear(_header);
+                    if (chunk!=null)
+                    {
+                        blackhole.consume(chunk.remaining());
+                        BufferUtil.clear(chunk);
+                    }
+                    if (content!=null)
+                        content.position(content.limit());
+                    break;
+                case CONTINUE:
+                    break;
+                case DONE:
+                case SHUTDOWN_OUT:
+                    return;
+                default:
+                    throw new IllegalStateException(result.toString());
+            }
+        }
+    }
+}
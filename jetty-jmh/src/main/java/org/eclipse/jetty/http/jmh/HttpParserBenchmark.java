@@ -0,0 +1,161 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http.jmh;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpParser;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HttpParserBenchmark
+{
+    public static final String SIMPLE_REQUEST =
+        "GET /index.html HTTP/1.1\r\n" +
+        "Host: localhost\r\n" +
+        "\r\n";
+
+    public static final String BROWSER_REQUEST =
+        "GET /static/js/application.min.js?v=20130625&amp;locale=en_US HTTP/1.1\r\n" +
+        "Host: www.example.com\r\n" +
+        "Connection: keep-alive\r\n" +
+        "Cache-Control: max-age=0\r\n" +
+        "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8\r\n" +
+        "User-Agent: Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/28.0.1500.72 Safari/537.36\r\n" +
+        "Referer: http://www.example.com/products/catalog/index.html?category=books&sort=price\r\n" +
+        "Accept-Encoding: gzip,deflate,sdch\r\n" +
+        "Accept-Language: en-US,en;q=0.8,fr;q=0.6\r\n" +
+        "Cookie: JSESSIONID=1mn5u8zqd0v6k1xq9n3ckb0gyu; _ga=GA1.2.1264792380.1372158112; prefs=compact%3Dtrue%26theme%3Ddark\r\n" +
+        "X-Requested-With: XMLHttpRequest\r\n" +
+        "\r\n";
+
+    @Param({"simple","browser"})
+    public String request;
+
+    @Param({"heap","direct"})
+    public String buffer;
+
+    private ByteBuffer _request;
+    private HttpParser _parser;
+    private Handler _handler;
+
+    @Setup
+    public void setup()
+    {
+        byte[] bytes = ("simple".equals(request)?SIMPLE_REQUEST:BROWSER_REQUEST).getBytes(StandardCharsets.ISO_8859_1);
+        _request = "direct".equals(buffer)?BufferUtil.allocateDirect(bytes.length):BufferUtil.allocate(bytes.length);
+        BufferUtil.append(_request,bytes,0,bytes.length);
+        _handler = new Handler();
+        _parser = new HttpParser(_handler);
+    }
+
+    @Benchmark
+    public void testParseRequest(Blackhole blackhole)
+    {
+        ByteBuffer buffer = _request.duplicate();
+        _handler._blackhole=blackhole;
+        while (!_parser.isState(HttpParser.State.END) && buffer.hasRemaining())
+            _parser.parseNext(buffer);
+        if (!_parser.isState(HttpParser.State.END))
+            throw new IllegalStateException(_parser.toString());
+        _parser.reset();
+    }
+
+    private static class Handler implements HttpParser.RequestHandler<ByteBuffer>
+    {
+        private Blackhole _blackhole;
+
+        @Override
+        public boolean content(ByteBuffer item)
+        {
+            return false;
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean messageComplete()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean parsedHeader(HttpField field)
+        {
+            _blackhole.consume(field);
+            return false;
+        }
+
+        @Override
+        public void earlyEOF()
+        {
+        }
+
+        @Override
+        public void badMessage(int status, String reason)
+        {
+            throw new IllegalStateException(status+" "+reason);
+        }
+
+        @Override
+        public int getHeaderCacheSize()
+        {
+            return 512;
+        }
+
+        @Override
+        public boolean startRequest(HttpMethod method, String methodString, ByteBuffer uri, HttpVersion version)
+        {
+            _blackhole.consume(uri);
+            return false;
+        }
+
+        @Override
+        public boolean parsedHostHeader(String host, int port)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http.jmh;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpTokenScanner;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares scanning the tokens of the {@link HttpParserBenchmark#BROWSER_REQUEST}
+ * a byte at a time (as the parser did) and a word at a time with {@link HttpTokenScanner}.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HttpTokenScannerBenchmark
+{
+    @Param({"heap","direct"})
+    public String buffer;
+
+    private ByteBuffer _request;
+
+    @Setup
+    public void setup()
+    {
+        byte[] bytes = HttpParserBenchmark.BROWSER_REQUEST.getBytes(StandardCharsets.ISO_8859_1);
+        _request = "direct".equals(buffer)?BufferUtil.allocateDirect(bytes.length):BufferUtil.allocate(bytes.length);
+        BufferUtil.append(_request,bytes,0,bytes.length);
+    }
+
+    @Benchmark
+    public int testScanBytes()
+    {
+        int tokens=0;
+        int limit=_request.limit();
+        for (int i=_request.position();i<limit;i++)
+        {
+            int end=i;
+            while (end<limit && !HttpTokenScanner.isStop(_request.get(end)))
+                end++;
+            tokens+=end-i;
+            i=end;
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public int testScanWords()
+    {
+        int tokens=0;
+        int limit=_request.limit();
+        for (int i=_request.position();i<limit;i++)
+        {
+            int end=HttpTokenScanner.indexOfStop(_request,i,limit);
+            tokens+=end-i;
+            i=end;
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,100 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.io.StripedByteBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ByteBufferPoolBenchmark
+{
+    @Param({"array","mapped","striped"})
+    public String pool;
+
+    @Param({"true","false"})
+    public boolean direct;
+
+    @Param({"4096"})
+    public int size;
+
+    private ByteBufferPool _pool;
+
+    @Setup
+    public void setup()
+    {
+        switch (pool)
+        {
+            case "array":
+                _pool = new ArrayByteBufferPool();
+                break;
+            case "mapped":
+                _pool = new MappedByteBufferPool();
+                break;
+            case "striped":
+                _pool = new StripedByteBufferPool();
+                break;
+            default:
+                throw new IllegalArgumentException(pool);
+        }
+    }
+
+    @Benchmark
+    public void testAcquireRelease(Blackhole blackhole)
+    {
+        ByteBuffer buffer = _pool.acquire(size,direct);
+        blackhole.consume(buffer);
+        _pool.release(buffer);
+    }
+
+    @Benchmark
+    public void testAcquireAcquireReleaseRelease(Blackhole blackhole)
+    {
+        // Simulates a connection holding an input and an output buffer at the same time
+        ByteBuffer input = _pool.acquire(size,direct);
+        ByteBuffer output = _pool.acquire(size,direct);
+        blackhole.consume(input);
+        blackhole.consume(output);
+        _pool.release(output);
+        _pool.release(input);
+    }
+}
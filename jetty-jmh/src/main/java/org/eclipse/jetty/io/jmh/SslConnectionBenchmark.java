@@ -0,0 +1,207 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io.jmh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLSocket;
+
+import org.eclipse.jetty.io.ChannelEndPoint;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the duplex throughput of a single TLS connection: one thread fills
+ * decrypted data from the {@link SslConnection.DecryptedEndPoint} while another
+ * thread flushes to it.  The peer is a blocking {@link SSLSocket} that writes
+ * and reads continuously from two threads of its own.
+ */
+@State(Scope.Group)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SslConnectionBenchmark
+{
+    private static final Logger LOG = Log.getLogger(SslConnectionBenchmark.class);
+
+    @Param({"1024","16384"})
+    public int size;
+
+    private SslContextFactory _sslContextFactory;
+    private ExecutorService _executor;
+    private ServerSocketChannel _server;
+    private SSLSocket _client;
+    private EndPoint _endPoint;
+    private ByteBuffer _input;
+    private ByteBuffer _output;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        _sslContextFactory = new SslContextFactory(true);
+        _sslContextFactory.setKeyStorePath(SslConnectionBenchmark.class.getResource("/keystore").toString());
+        _sslContextFactory.setKeyStorePassword("storepwd");
+        _sslContextFactory.setKeyManagerPassword("keypwd");
+        _sslContextFactory.start();
+
+        _executor = Executors.newCachedThreadPool();
+
+        _server = ServerSocketChannel.open();
+        _server.bind(new InetSocketAddress("localhost",0));
+        _client = _sslContextFactory.newSslSocket();
+        _client.connect(_server.getLocalAddress());
+        final SSLSocket client = _client;
+        _executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    client.startHandshake();
+                }
+                catch (IOException x)
+                {
+                    LOG.warn(x);
+                }
+            }
+        });
+
+        // The encrypted end point is blocking, so the filling thread
+        // waits for the peer while holding the fill side of the connection
+        SocketChannel channel = _server.accept();
+        SSLEngine engine = _sslContextFactory.newSSLEngine();
+        engine.setUseClientMode(false);
+        SslConnection connection = new SslConnection(new MappedByteBufferPool(),_executor,new ChannelEndPoint(null,channel),engine);
+        _endPoint = connection.getDecryptedEndPoint();
+
+        _input = BufferUtil.allocate(engine.getSession().getApplicationBufferSize());
+        while (engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING)
+        {
+            _endPoint.flush(BufferUtil.EMPTY_BUFFER);
+            if (engine.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP)
+                _endPoint.fill(_input);
+        }
+        BufferUtil.clear(_input);
+        _output = BufferUtil.allocate(size);
+
+        _executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                byte[] bytes = new byte[size];
+                try (OutputStream out = client.getOutputStream())
+                {
+                    while (true)
+                        out.write(bytes);
+                }
+                catch (IOException x)
+                {
+                    // The connection was closed by the tear down
+                    LOG.ignore(x);
+                }
+            }
+        });
+        _executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                byte[] bytes = new byte[size];
+                try (InputStream in = client.getInputStream())
+                {
+                    while (in.read(bytes) >= 0)
+                        ;
+                }
+                catch (IOException x)
+                {
+                    // The connection was closed by the tear down
+                    LOG.ignore(x);
+                }
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        _endPoint.close();
+        _client.close();
+        _server.close();
+        _executor.shutdownNow();
+        _sslContextFactory.stop();
+    }
+
+    @Benchmark
+    @Group("duplex")
+    @GroupThreads(1)
+    public int testFill() throws IOException
+    {
+        BufferUtil.clear(_input);
+        return _endPoint.fill(_input);
+    }
+
+    @Benchmark
+    @Group("duplex")
+    @GroupThreads(1)
+    public int testFlush() throws IOException
+    {
+        _output.clear();
+        int flushed = 0;
+        while (_output.hasRemaining())
+        {
+            int remaining = _output.remaining();
+            _endPoint.flush(_output);
+            flushed += remaining - _output.remaining();
+        }
+        return flushed;
+    }
+}
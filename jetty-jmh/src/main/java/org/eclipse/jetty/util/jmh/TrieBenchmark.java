@@ -0,0 +1,87 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.ArrayTernaryTrie;
+import org.eclipse.jetty.util.ArrayTrie;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Trie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TrieBenchmark
+{
+    private static final String[] KEYS = new String[]
+    {
+        "Host","Connection","Accept","Accept-Encoding","Accept-Language","Accept-Charset",
+        "User-Agent","Referer","Cookie","Cache-Control","Content-Type","Content-Length",
+        "If-Modified-Since","If-None-Match","Authorization","X-Forwarded-For"
+    };
+
+    @Param({"ArrayTrie","ArrayTernaryTrie"})
+    public String type;
+
+    private Trie<String> _trie;
+    private ByteBuffer[] _buffers;
+
+    @Setup
+    public void setup()
+    {
+        _trie = "ArrayTrie".equals(type)?new ArrayTrie<String>(512):new ArrayTernaryTrie<String>(512);
+        _buffers = new ByteBuffer[KEYS.length];
+        for (int i=0;i<KEYS.length;i++)
+        {
+            _trie.put(KEYS[i],KEYS[i]);
+            _buffers[i] = BufferUtil.toBuffer(KEYS[i].toLowerCase()+": value\r\n");
+        }
+    }
+
+    @Benchmark
+    public void testGetString(Blackhole blackhole)
+    {
+        for (String key : KEYS)
+            blackhole.consume(_trie.get(key));
+    }
+
+    @Benchmark
+    public void testGetBestByteBuffer(Blackhole blackhole)
+    {
+        for (ByteBuffer buffer : _buffers)
+            blackhole.consume(_trie.getBest(buffer,0,buffer.remaining()));
+    }
+}
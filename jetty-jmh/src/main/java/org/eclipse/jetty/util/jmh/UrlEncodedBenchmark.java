@@ -0,0 +1,64 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.jmh;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.MultiMap;
+import org.eclipse.jetty.util.UrlEncoded;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UrlEncodedBenchmark
+{
+    private static final String QUERY = "q=jetty+http+server&lang=en_US&page=3&sort=relevance" +
+        "&filter=%22date%3E2013-01-01%22&name=J%C3%BCrgen+M%C3%BCller&empty=&flag";
+    private static final byte[] QUERY_BYTES = QUERY.getBytes(StandardCharsets.ISO_8859_1);
+
+    @Benchmark
+    public void testDecodeString(Blackhole blackhole)
+    {
+        MultiMap<String> map = new MultiMap<>();
+        UrlEncoded.decodeTo(QUERY,map,StandardCharsets.UTF_8,-1);
+        blackhole.consume(map);
+    }
+
+    @Benchmark
+    public void testDecodeUtf8Bytes(Blackhole blackhole)
+    {
+        MultiMap<String> map = new MultiMap<>();
+        UrlEncoded.decodeUtf8To(QUERY_BYTES,0,QUERY_BYTES.length,map);
+        blackhole.consume(map);
+    }
+}
@@ -18,23 +18,78 @@
 
 package org.eclipse.jetty.proxy;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.UnavailableException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
-
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Loader;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * A {@link ProxyServlet} that balances the requests over a set of balancer members.
+ * <p/>
+ * The following init parameters may be used to configure the servlet, in addition to those of
+ * {@link ProxyServlet}:
+ * <ul>
+ * <li>balancerMember.&lt;name&gt;.proxyTo - the URI of the balancer member called &lt;name&gt;</li>
+ * <li>balancerMember.&lt;name&gt;.weight - the weight of the member for the weighted strategy, by default 1</li>
+ * <li>stickySessions - whether the requests of a session are sent to the member that created the session</li>
+ * <li>proxyPassReverse - whether the backend URIs in the response headers are rewritten</li>
+ * <li>strategy - one of roundRobin (the default), leastRequests, latency, weighted
+ * or the class name of a {@link Strategy}</li>
+ * <li>maxFailures - the number of consecutive failures after which a member is ejected, by default 3</li>
+ * <li>ejectionTime - the time in ms a member stays ejected, by default 30000</li>
+ * <li>recoveryTime - the time in ms over which the traffic to a readmitted member is gradually
+ * increased back to its full share, by default 30000</li>
+ * <li>healthCheckPath - the path that is periodically requested from each member to actively check
+ * its health, by default none</li>
+ * <li>healthCheckInterval - the interval in ms between health checks, by default 10000</li>
+ * </ul>
+ * <p/>
+ * A request fails if it cannot be proxied or if the member responds with a 5xx status.
+ * The requests that fail because the client aborted them or could not be written to
+ * are not counted against the member.
+ * A successful health check readmits an ejected member, while a failed one ejects it.
+ * <p/>
+ * To facilitate JMX monitoring, each {@link BalancerMember} is set as context attribute, named
+ * with the servlet's name followed by ".BalancerMember." and the member name, so that it can
+ * be exposed by the mechanism provided by
+ * {@link org.eclipse.jetty.server.handler.ContextHandler#MANAGED_ATTRIBUTES}.
+ */
 public class BalancerServlet extends ProxyServlet
 {
     private static final String BALANCER_MEMBER_PREFIX = "balancerMember.";
+    private static final String BALANCER_MEMBER_ATTRIBUTE = BalancerServlet.class.getName() + ".balancerMember";
+    private static final String REQUEST_START_ATTRIBUTE = BalancerServlet.class.getName() + ".requestStart";
+    private static final String DOWNSTREAM_FAILURE_ATTRIBUTE = BalancerServlet.class.getName() + ".downstreamFailure";
     private static final List<String> FORBIDDEN_CONFIG_PARAMETERS;
 
     static
@@ -61,9 +116,12 @@ public class BalancerServlet extends ProxyServlet
     private static final String JSESSIONID_URL_PREFIX = JSESSIONID + "=";
 
     private final List<BalancerMember> _balancerMembers = new ArrayList<>();
-    private final AtomicLong counter = new AtomicLong();
     private boolean _stickySessions;
     private boolean _proxyPassReverse;
+    private Strategy _strategy;
+    private String _healthCheckPath;
+    private long _healthCheckInterval = 10000;
+    private volatile Scheduler.Task _healthCheckTask;
 
     @Override
     public void init() throws ServletException
@@ -71,8 +129,19 @@ public class BalancerServlet extends ProxyServlet
         validateConfig();
         super.init();
         initStickySessions();
+        initStrategy();
         initBalancers();
         initProxyPassReverse();
+        initHealthCheck();
+    }
+
+    @Override
+    public void destroy()
+    {
+        Scheduler.Task task = _healthCheckTask;
+        if (task != null)
+            task.cancel();
+        super.destroy();
     }
 
     private void validateConfig() throws ServletException
@@ -91,18 +160,81 @@ public class BalancerServlet extends ProxyServlet
         _stickySessions = Boolean.parseBoolean(getServletConfig().getInitParameter("stickySessions"));
     }
 
+    private void initStrategy() throws ServletException
+    {
+        String strategy = getServletConfig().getInitParameter("strategy");
+        if (strategy == null || "roundRobin".equals(strategy))
+            _strategy = new RoundRobinStrategy();
+        else if ("leastRequests".equals(strategy))
+            _strategy = new LeastRequestsStrategy();
+        else if ("latency".equals(strategy))
+            _strategy = new LatencyStrategy();
+        else if ("weighted".equals(strategy))
+            _strategy = new WeightedStrategy();
+        else
+        {
+            try
+            {
+                _strategy = (Strategy)Loader.loadClass(getClass(), strategy).newInstance();
+            }
+            catch (Exception x)
+            {
+                throw new UnavailableException("Invalid strategy " + strategy + ": " + x);
+            }
+        }
+    }
+
     private void initBalancers() throws ServletException
     {
+        ServletConfig config = getServletConfig();
+        int maxFailures = getIntInitParameter("maxFailures", 3);
+        long ejectionTime = getIntInitParameter("ejectionTime", 30000);
+        long recoveryTime = getIntInitParameter("recoveryTime", 30000);
+
         Set<BalancerMember> members = new HashSet<>();
         for (String balancerName : getBalancerNames())
         {
             String memberProxyToParam = BALANCER_MEMBER_PREFIX + balancerName + ".proxyTo";
-            String proxyTo = getServletConfig().getInitParameter(memberProxyToParam);
+            String proxyTo = config.getInitParameter(memberProxyToParam);
             if (proxyTo == null || proxyTo.trim().length() == 0)
                 throw new UnavailableException(memberProxyToParam + " parameter is empty.");
-            members.add(new BalancerMember(balancerName, proxyTo));
+            int weight = getIntInitParameter(BALANCER_MEMBER_PREFIX + balancerName + ".weight", 1);
+            if (weight < 1)
+                throw new UnavailableException(BALANCER_MEMBER_PREFIX + balancerName + ".weight parameter must be positive.");
+            BalancerMember member = new BalancerMember(balancerName, proxyTo, weight);
+            member.setMaxFailures(maxFailures);
+            member.setEjectionTime(ejectionTime);
+            member.setRecoveryTime(recoveryTime);
+            members.add(member);
         }
         _balancerMembers.addAll(members);
+
+        // Put the members in the context to leverage ContextHandler.MANAGED_ATTRIBUTES
+        for (BalancerMember member : _balancerMembers)
+            getServletContext().setAttribute(config.getServletName() + ".BalancerMember." + member.getName(), member);
+    }
+
+    private void initHealthCheck() throws ServletException
+    {
+        _healthCheckPath = getServletConfig().getInitParameter("healthCheckPath");
+        _healthCheckInterval = getIntInitParameter("healthCheckInterval", 10000);
+        if (_healthCheckPath != null)
+            scheduleHealthCheck();
+    }
+
+    private int getIntInitParameter(String name, int defaultValue) throws ServletException
+    {
+        String value = getServletConfig().getInitParameter(name);
+        if (value == null)
+            return defaultValue;
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException x)
+        {
+            throw new UnavailableException(name + " parameter is not a number.");
+        }
     }
 
     private void initProxyPassReverse()
@@ -127,11 +259,29 @@ public class BalancerServlet extends ProxyServlet
         return names;
     }
 
+    public Strategy getStrategy()
+    {
+        return _strategy;
+    }
+
+    public void setStrategy(Strategy strategy)
+    {
+        _strategy = strategy;
+    }
+
+    public List<BalancerMember> getBalancerMembers()
+    {
+        return Collections.unmodifiableList(_balancerMembers);
+    }
+
     @Override
     protected URI rewriteURI(HttpServletRequest request)
     {
         BalancerMember balancerMember = selectBalancerMember(request);
         _log.debug("Selected {}", balancerMember);
+        balancerMember.begin();
+        request.setAttribute(BALANCER_MEMBER_ATTRIBUTE, balancerMember);
+        request.setAttribute(REQUEST_START_ATTRIBUTE, System.nanoTime());
         String path = request.getRequestURI();
         String query = request.getQueryString();
         if (query != null)
@@ -141,18 +291,165 @@ public class BalancerServlet extends ProxyServlet
 
     private BalancerMember selectBalancerMember(HttpServletRequest request)
     {
+        long now = System.nanoTime();
         if (_stickySessions)
         {
             String name = getBalancerMemberNameFromSessionId(request);
             if (name != null)
             {
                 BalancerMember balancerMember = findBalancerMemberByName(name);
-                if (balancerMember != null)
+                if (balancerMember != null && !balancerMember.isEjected(now))
                     return balancerMember;
             }
         }
-        int index = (int)(counter.getAndIncrement() % _balancerMembers.size());
-        return _balancerMembers.get(index);
+        return _strategy.select(getAdmittedBalancerMembers(now), request);
+    }
+
+    /**
+     * @return the members that may receive the request; the members being readmitted are admitted
+     * with a probability that increases over their recovery time, and if no member is admitted
+     * then all of them are, as failing all the requests is never better
+     */
+    private List<BalancerMember> getAdmittedBalancerMembers(long now)
+    {
+        List<BalancerMember> admitted = null;
+        for (int i = 0; i < _balancerMembers.size(); ++i)
+        {
+            BalancerMember balancerMember = _balancerMembers.get(i);
+            double admission = balancerMember.getAdmission(now);
+            boolean admit = admission >= 1 || admission > 0 && ThreadLocalRandom.current().nextDouble() < admission;
+            if (admit)
+            {
+                if (admitted != null)
+                    admitted.add(balancerMember);
+            }
+            else if (admitted == null)
+            {
+                admitted = new ArrayList<>(_balancerMembers.subList(0, i));
+            }
+        }
+        if (admitted == null || admitted.isEmpty())
+            return _balancerMembers;
+        return admitted;
+    }
+
+    @Override
+    protected void customizeProxyRequest(Request proxyRequest, HttpServletRequest request)
+    {
+        super.customizeProxyRequest(proxyRequest, request);
+        ContentProvider content = proxyRequest.getContent();
+        if (content != null)
+            proxyRequest.content(new DownstreamContentProvider(request, content));
+    }
+
+    @Override
+    protected void onResponseContent(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, byte[] buffer, int offset, int length) throws IOException
+    {
+        try
+        {
+            super.onResponseContent(request, response, proxyResponse, buffer, offset, length);
+        }
+        catch (IOException x)
+        {
+            request.setAttribute(DOWNSTREAM_FAILURE_ATTRIBUTE, x);
+            throw x;
+        }
+    }
+
+    @Override
+    protected void onResponseContent(final HttpServletRequest request, HttpServletResponse response, Response proxyResponse, ByteBuffer content, final Callback callback)
+    {
+        super.onResponseContent(request, response, proxyResponse, content, new Callback()
+        {
+            @Override
+            public void succeeded()
+            {
+                callback.succeeded();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                request.setAttribute(DOWNSTREAM_FAILURE_ATTRIBUTE, x);
+                callback.failed(x);
+            }
+        });
+    }
+
+    @Override
+    protected void onResponseSuccess(HttpServletRequest request, HttpServletResponse response, Response proxyResponse)
+    {
+        complete(request, proxyResponse.getStatus() < HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        super.onResponseSuccess(request, response, proxyResponse);
+    }
+
+    @Override
+    protected void onResponseFailure(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, Throwable failure)
+    {
+        // Only the failures to connect to the member, to send it the
+        // request or to receive its response are counted against it
+        if (request.getAttribute(DOWNSTREAM_FAILURE_ATTRIBUTE) != null)
+            abort(request);
+        else
+            complete(request, false);
+        super.onResponseFailure(request, response, proxyResponse, failure);
+    }
+
+    private void complete(HttpServletRequest request, boolean success)
+    {
+        BalancerMember balancerMember = (BalancerMember)request.getAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        if (balancerMember == null)
+            return;
+        request.removeAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        long start = (Long)request.getAttribute(REQUEST_START_ATTRIBUTE);
+        balancerMember.complete(System.nanoTime() - start, success);
+        _log.debug("Completed {} {}", success ? "successful" : "failed", balancerMember);
+    }
+
+    private void abort(HttpServletRequest request)
+    {
+        BalancerMember balancerMember = (BalancerMember)request.getAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        if (balancerMember == null)
+            return;
+        request.removeAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        balancerMember.aborted();
+        _log.debug("Aborted downstream {}", balancerMember);
+    }
+
+    private void scheduleHealthCheck()
+    {
+        HttpClient client = getHttpClient();
+        if (!client.isRunning())
+            return;
+        _healthCheckTask = client.getScheduler().schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                checkHealth();
+                scheduleHealthCheck();
+            }
+        }, _healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkHealth()
+    {
+        for (final BalancerMember balancerMember : _balancerMembers)
+        {
+            getHttpClient().newRequest(balancerMember.getProxyTo() + _healthCheckPath)
+                    .timeout(_healthCheckInterval, TimeUnit.MILLISECONDS)
+                    .send(new Response.CompleteListener()
+                    {
+                        @Override
+                        public void onComplete(Result result)
+                        {
+                            boolean healthy = result.isSucceeded() &&
+                                    result.getResponse().getStatus() < HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                            _log.debug("Health check {} {}", healthy ? "succeeded" : "failed", balancerMember);
+                            balancerMember.checked(healthy);
+                        }
+                    });
+        }
     }
 
     private BalancerMember findBalancerMemberByName(String name)
@@ -252,24 +549,216 @@ public class BalancerServlet extends ProxyServlet
         return true;
     }
 
-    private static class BalancerMember
+    /**
+     * A strategy that selects the member to which a request is proxied.
+     */
+    public interface Strategy
+    {
+        /**
+         * @param balancerMembers the non empty list of members admitted to receive the request
+         * @param request the request to proxy
+         * @return the selected member
+         */
+        public BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request);
+    }
+
+    /**
+     * Selects the members in turn.
+     */
+    public static class RoundRobinStrategy implements Strategy
+    {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request)
+        {
+            int index = (int)(counter.getAndIncrement() % balancerMembers.size());
+            return balancerMembers.get(index);
+        }
+    }
+
+    /**
+     * Selects the member with the least requests in flight, starting the search
+     * from a different member each time so that the ties are broken in turn.
+     */
+    public static class LeastRequestsStrategy implements Strategy
+    {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request)
+        {
+            int size = balancerMembers.size();
+            int start = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+            BalancerMember result = null;
+            for (int i = 0; i < size; ++i)
+            {
+                BalancerMember balancerMember = balancerMembers.get((start + i) % size);
+                if (result == null || balancerMember.getRequestsInFlight() < result.getRequestsInFlight())
+                    result = balancerMember;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Selects, among two members chosen at random, the one with the lowest
+     * moving average of the latency weighted by the requests in flight.
+     */
+    public static class LatencyStrategy implements Strategy
     {
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request)
+        {
+            int size = balancerMembers.size();
+            if (size == 1)
+                return balancerMembers.get(0);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int index1 = random.nextInt(size);
+            int index2 = random.nextInt(size - 1);
+            if (index2 >= index1)
+                ++index2;
+            BalancerMember balancerMember1 = balancerMembers.get(index1);
+            BalancerMember balancerMember2 = balancerMembers.get(index2);
+            return cost(balancerMember1) <= cost(balancerMember2) ? balancerMember1 : balancerMember2;
+        }
+
+        private double cost(BalancerMember balancerMember)
+        {
+            return (balancerMember.getLatencyNanos() + 1) * (balancerMember.getRequestsInFlight() + 1);
+        }
+    }
+
+    /**
+     * Selects the members at random, in proportion to their weight.
+     */
+    public static class WeightedStrategy implements Strategy
+    {
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request)
+        {
+            int total = 0;
+            for (int i = 0; i < balancerMembers.size(); ++i)
+                total += balancerMembers.get(i).getWeight();
+            int weight = ThreadLocalRandom.current().nextInt(total);
+            for (int i = 0; i < balancerMembers.size(); ++i)
+            {
+                BalancerMember balancerMember = balancerMembers.get(i);
+                weight -= balancerMember.getWeight();
+                if (weight < 0)
+                    return balancerMember;
+            }
+            return balancerMembers.get(balancerMembers.size() - 1);
+        }
+    }
+
+    /**
+     * Marks the request as failed downstream when its content cannot be read from the client.
+     */
+    private static class DownstreamContentProvider implements ContentProvider
+    {
+        private final HttpServletRequest _request;
+        private final ContentProvider _content;
+
+        private DownstreamContentProvider(HttpServletRequest request, ContentProvider content)
+        {
+            _request = request;
+            _content = content;
+        }
+
+        @Override
+        public long getLength()
+        {
+            return _content.getLength();
+        }
+
+        @Override
+        public Iterator<ByteBuffer> iterator()
+        {
+            final Iterator<ByteBuffer> iterator = _content.iterator();
+            return new Iterator<ByteBuffer>()
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public ByteBuffer next()
+                {
+                    try
+                    {
+                        return iterator.next();
+                    }
+                    catch (NoSuchElementException x)
+                    {
+                        // The client content could not be read
+                        if (x.getCause() != null)
+                            _request.setAttribute(DOWNSTREAM_FAILURE_ATTRIBUTE, x.getCause());
+                        throw x;
+                    }
+                }
+
+                @Override
+                public void remove()
+                {
+                    iterator.remove();
+                }
+            };
+        }
+    }
+
+    /**
+     * A backend server, with the statistics and the health state used to balance the requests.
+     * <p/>
+     * A member is ejected after {@link #getMaxFailures()} consecutive failed requests, and is readmitted
+     * after {@link #getEjectionTime()} ms or after a successful health check. A readmitted member
+     * receives a share of the traffic that increases linearly over {@link #getRecoveryTime()} ms,
+     * and is ejected again by any failure in the meantime.
+     */
+    @ManagedObject("Balancer member")
+    public static class BalancerMember
+    {
+        private static final long NEVER = Long.MIN_VALUE;
+        private static final double LATENCY_WEIGHT = 0.2;
+        private static final double MIN_ADMISSION = 0.1;
+
         private final String _name;
         private final String _proxyTo;
         private final URI _backendURI;
+        private final int _weight;
+        private final AtomicInteger _inFlight = new AtomicInteger();
+        private final AtomicLong _requests = new AtomicLong();
+        private final AtomicLong _failures = new AtomicLong();
+        private final AtomicLong _ejections = new AtomicLong();
+        private final AtomicInteger _consecutiveFailures = new AtomicInteger();
+        private final AtomicLong _latency = new AtomicLong(Double.doubleToLongBits(0));
+        private final AtomicLong _ejectionEnd = new AtomicLong(NEVER);
+        private volatile int _maxFailures = 3;
+        private volatile long _ejectionTime = 30000;
+        private volatile long _recoveryTime = 30000;
 
         public BalancerMember(String name, String proxyTo)
+        {
+            this(name, proxyTo, 1);
+        }
+
+        public BalancerMember(String name, String proxyTo, int weight)
         {
             _name = name;
             _proxyTo = proxyTo;
             _backendURI = URI.create(_proxyTo).normalize();
+            _weight = weight;
         }
 
+        @ManagedAttribute("The name of the member")
         public String getName()
         {
             return _name;
         }
 
+        @ManagedAttribute("The URI requests are proxied to")
         public String getProxyTo()
         {
             return _proxyTo;
@@ -280,10 +769,186 @@ public class BalancerServlet extends ProxyServlet
             return _backendURI;
         }
 
+        @ManagedAttribute("The weight of the member")
+        public int getWeight()
+        {
+            return _weight;
+        }
+
+        @ManagedAttribute("The number of consecutive failures after which the member is ejected")
+        public int getMaxFailures()
+        {
+            return _maxFailures;
+        }
+
+        public void setMaxFailures(int maxFailures)
+        {
+            _maxFailures = maxFailures;
+        }
+
+        @ManagedAttribute("The time in ms the member stays ejected")
+        public long getEjectionTime()
+        {
+            return _ejectionTime;
+        }
+
+        public void setEjectionTime(long ejectionTime)
+        {
+            _ejectionTime = ejectionTime;
+        }
+
+        @ManagedAttribute("The time in ms over which a readmitted member recovers its full share of the requests")
+        public long getRecoveryTime()
+        {
+            return _recoveryTime;
+        }
+
+        public void setRecoveryTime(long recoveryTime)
+        {
+            _recoveryTime = recoveryTime;
+        }
+
+        @ManagedAttribute("The number of requests in flight")
+        public int getRequestsInFlight()
+        {
+            return _inFlight.get();
+        }
+
+        @ManagedAttribute("The number of requests")
+        public long getRequests()
+        {
+            return _requests.get();
+        }
+
+        @ManagedAttribute("The number of failed requests")
+        public long getFailures()
+        {
+            return _failures.get();
+        }
+
+        @ManagedAttribute("The number of times the member has been ejected")
+        public long getEjections()
+        {
+            return _ejections.get();
+        }
+
+        public double getLatencyNanos()
+        {
+            return Double.longBitsToDouble(_latency.get());
+        }
+
+        @ManagedAttribute("The moving average of the request latency in ms")
+        public double getLatency()
+        {
+            return getLatencyNanos() / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @ManagedAttribute("The health state of the member: healthy, ejected or recovering")
+        public String getState()
+        {
+            double admission = getAdmission(System.nanoTime());
+            return admission <= 0 ? "ejected" : admission < 1 ? "recovering" : "healthy";
+        }
+
+        public boolean isEjected(long now)
+        {
+            return getAdmission(now) <= 0;
+        }
+
+        /**
+         * @param now the current {@link System#nanoTime()}
+         * @return 0 if the member is ejected, 1 if it is healthy, or the fraction
+         * of its share of the requests that a recovering member may receive
+         */
+        public double getAdmission(long now)
+        {
+            long end = _ejectionEnd.get();
+            if (end == NEVER)
+                return 1;
+            long elapsed = now - end;
+            if (elapsed < 0)
+                return 0;
+            long recovery = TimeUnit.MILLISECONDS.toNanos(_recoveryTime);
+            if (elapsed >= recovery)
+            {
+                _ejectionEnd.compareAndSet(end, NEVER);
+                return 1;
+            }
+            return Math.max(MIN_ADMISSION, (double)elapsed / recovery);
+        }
+
+        @ManagedOperation("Ejects the member")
+        public void eject()
+        {
+            _consecutiveFailures.set(0);
+            _ejections.incrementAndGet();
+            _ejectionEnd.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_ejectionTime));
+        }
+
+        @ManagedOperation("Readmits the member, so that it starts recovering")
+        public void readmit()
+        {
+            _consecutiveFailures.set(0);
+            long end = _ejectionEnd.get();
+            long now = System.nanoTime();
+            if (end != NEVER && end - now > 0)
+                _ejectionEnd.compareAndSet(end, now);
+        }
+
+        protected void begin()
+        {
+            _inFlight.incrementAndGet();
+            _requests.incrementAndGet();
+        }
+
+        protected void complete(long latency, boolean success)
+        {
+            _inFlight.decrementAndGet();
+
+            if (success)
+            {
+                // Failures may be immediate or time out, so their latency is not the member's
+                while (true)
+                {
+                    long bits = _latency.get();
+                    double current = Double.longBitsToDouble(bits);
+                    double average = current == 0 ? latency : current + LATENCY_WEIGHT * (latency - current);
+                    if (_latency.compareAndSet(bits, Double.doubleToLongBits(average)))
+                        break;
+                }
+                _consecutiveFailures.set(0);
+            }
+            else
+            {
+                _failures.incrementAndGet();
+                double admission = getAdmission(System.nanoTime());
+                // Requests sent before the ejection do not extend it
+                if (admission > 0 && (admission < 1 || _consecutiveFailures.incrementAndGet() >= _maxFailures))
+                    eject();
+            }
+        }
+
+        /**
+         * Completes a request that failed because of the client, which tells nothing of the member.
+         */
+        protected void aborted()
+        {
+            _inFlight.decrementAndGet();
+        }
+
+        protected void checked(boolean healthy)
+        {
+            if (healthy)
+                readmit();
+            else if (!isEjected(System.nanoTime()))
+                eject();
+        }
+
         @Override
         public String toString()
         {
-            return String.format("%s[name=%s,proxyTo=%s]", getClass().getSimpleName(), _name, _proxyTo);
+            return String.format("%s[name=%s,proxyTo=%s,inFlight=%d,latency=%.3fms,state=%s]",
+                    getClass().getSimpleName(), _name, _proxyTo, getRequestsInFlight(), getLatency(), getState());
         }
 
         @Override
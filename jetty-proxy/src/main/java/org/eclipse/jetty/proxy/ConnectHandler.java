@@ -28,6 +28,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -49,20 +50,34 @@ import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
  * <p>Implementation of a {@link Handler} that supports HTTP CONNECT.</p>
+ * <p>The tunnels relay the bytes in each direction with a {@link ProxyConnection}, whose buffers
+ * start at {@link #getBufferSize()} bytes and grow up to {@link #getMaxBufferSize()} bytes for
+ * bulk transfers, and are retained for the lifetime of the tunnel if {@link #isRetainBuffers()}
+ * is true.</p>
  */
+@ManagedObject("CONNECT tunnel handler")
 public class ConnectHandler extends HandlerWrapper
 {
     protected static final Logger LOG = Log.getLogger(ConnectHandler.class);
 
     private final Set<String> whiteList = new HashSet<>();
     private final Set<String> blackList = new HashSet<>();
+    private final CounterStatistic tunnelStats = new CounterStatistic();
+    private final SampleStatistic throughputStats = new SampleStatistic();
+    private final AtomicLong bytesUpstream = new AtomicLong();
+    private final AtomicLong bytesDownstream = new AtomicLong();
     private Executor executor;
     private Scheduler scheduler;
     private ByteBufferPool bufferPool;
@@ -70,6 +85,8 @@ public class ConnectHandler extends HandlerWrapper
     private long connectTimeout = 15000;
     private long idleTimeout = 30000;
     private int bufferSize = 4096;
+    private int maxBufferSize;
+    private boolean retainBuffers;
 
     public ConnectHandler()
     {
@@ -143,6 +160,7 @@ public class ConnectHandler extends HandlerWrapper
         this.idleTimeout = idleTimeout;
     }
 
+    @ManagedAttribute("The initial size in bytes of the tunnel buffers")
     public int getBufferSize()
     {
         return bufferSize;
@@ -153,6 +171,94 @@ public class ConnectHandler extends HandlerWrapper
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * @return the size in bytes the tunnel buffers may grow to when the reads fill them
+     */
+    @ManagedAttribute("The size in bytes the tunnel buffers may grow to")
+    public int getMaxBufferSize()
+    {
+        return maxBufferSize;
+    }
+
+    /**
+     * @param maxBufferSize the size in bytes the tunnel buffers may grow to when the reads fill them,
+     * or a size not greater than {@link #getBufferSize()} for the buffers not to grow
+     */
+    public void setMaxBufferSize(int maxBufferSize)
+    {
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * @return whether each direction of a tunnel keeps its buffer rather than releasing it to the
+     * pool after each write
+     */
+    @ManagedAttribute("Whether the tunnels keep their buffers between reads")
+    public boolean isRetainBuffers()
+    {
+        return retainBuffers;
+    }
+
+    /**
+     * @param retainBuffers whether each direction of a tunnel keeps its buffer rather than releasing
+     * it to the pool after each write, trading the memory of idle tunnels for fewer pool operations
+     */
+    public void setRetainBuffers(boolean retainBuffers)
+    {
+        this.retainBuffers = retainBuffers;
+    }
+
+    @ManagedAttribute("The number of open tunnels")
+    public long getTunnels()
+    {
+        return tunnelStats.getCurrent();
+    }
+
+    @ManagedAttribute("The maximum number of open tunnels")
+    public long getTunnelsMax()
+    {
+        return tunnelStats.getMax();
+    }
+
+    @ManagedAttribute("The total number of tunnels")
+    public long getTunnelsTotal()
+    {
+        return tunnelStats.getTotal();
+    }
+
+    @ManagedAttribute("The number of bytes relayed to the servers by the closed tunnels")
+    public long getBytesUpstream()
+    {
+        return bytesUpstream.get();
+    }
+
+    @ManagedAttribute("The number of bytes relayed to the clients by the closed tunnels")
+    public long getBytesDownstream()
+    {
+        return bytesDownstream.get();
+    }
+
+    @ManagedAttribute("The mean throughput in bytes/s of the closed tunnels")
+    public double getTunnelThroughputMean()
+    {
+        return throughputStats.getMean();
+    }
+
+    @ManagedAttribute("The maximum throughput in bytes/s of the closed tunnels")
+    public long getTunnelThroughputMax()
+    {
+        return throughputStats.getMax();
+    }
+
+    @ManagedOperation("Resets the statistics")
+    public void resetStatistics()
+    {
+        tunnelStats.reset(tunnelStats.getCurrent());
+        throughputStats.reset();
+        bytesUpstream.set(0);
+        bytesDownstream.set(0);
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -282,7 +388,7 @@ public class ConnectHandler extends HandlerWrapper
 
         EndPoint downstreamEndPoint = httpConnection.getEndPoint();
         DownstreamConnection downstreamConnection = newDownstreamConnection(downstreamEndPoint, context, buffer);
-        downstreamConnection.setInputBufferSize(getBufferSize());
+        configureConnection(downstreamConnection);
 
         upstreamConnection.setConnection(downstreamConnection);
         downstreamConnection.setConnection(upstreamConnection);
@@ -343,6 +449,30 @@ public class ConnectHandler extends HandlerWrapper
         return new UpstreamConnection(endPoint, getExecutor(), getByteBufferPool(), connectContext);
     }
 
+    protected void configureConnection(ProxyConnection connection)
+    {
+        connection.setInputBufferSize(getBufferSize());
+        connection.setMaxInputBufferSize(getMaxBufferSize());
+        connection.setRetainBuffer(isRetainBuffers());
+    }
+
+    /**
+     * <p>Records the statistics of a tunnel when its connection to the server is closed.</p>
+     *
+     * @param upstreamConnection the connection to the server
+     */
+    protected void onTunnelClosed(UpstreamConnection upstreamConnection)
+    {
+        tunnelStats.decrement();
+        long downstream = upstreamConnection.getBytesIn();
+        long upstream = upstreamConnection.getBytesOut();
+        bytesDownstream.addAndGet(downstream);
+        bytesUpstream.addAndGet(upstream);
+        long duration = System.currentTimeMillis() - upstreamConnection.getCreatedTimeStamp();
+        throughputStats.set((upstream + downstream) * 1000 / Math.max(1, duration));
+        LOG.debug("Tunnel closed {}: {} bytes upstream, {} bytes downstream in {} ms", upstreamConnection, upstream, downstream, duration);
+    }
+
     protected void prepareContext(HttpServletRequest request, ConcurrentMap<String, Object> context)
     {
     }
@@ -449,7 +579,7 @@ public class ConnectHandler extends HandlerWrapper
             ConnectHandler.LOG.debug("Connected to {}", channel.getRemoteAddress());
             ConnectContext connectContext = (ConnectContext)attachment;
             UpstreamConnection connection = newUpstreamConnection(endpoint, connectContext);
-            connection.setInputBufferSize(getBufferSize());
+            configureConnection(connection);
             return connection;
         }
 
@@ -517,10 +647,18 @@ public class ConnectHandler extends HandlerWrapper
         public void onOpen()
         {
             super.onOpen();
+            tunnelStats.increment();
             onConnectSuccess(connectContext, this);
             fillInterested();
         }
 
+        @Override
+        public void onClose()
+        {
+            super.onClose();
+            onTunnelClosed(this);
+        }
+
         @Override
         protected int read(EndPoint endPoint, ByteBuffer buffer) throws IOException
         {
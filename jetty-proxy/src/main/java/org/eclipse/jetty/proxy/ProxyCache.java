@@ -0,0 +1,1206 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * A shared HTTP cache of the responses proxied by {@link ProxyServlet}.
+ * <p/>
+ * The responses to GET requests without credentials are stored if they have a cacheable status,
+ * are not marked {@code no-store} or {@code private}, do not set cookies and have either an
+ * explicit freshness lifetime, from {@code Cache-Control: s-maxage} or {@code max-age} or from
+ * {@code Expires}, or a validator. Responses varying on request headers are stored once per
+ * combination of the values of those headers.
+ * <p/>
+ * Fresh entries are served without contacting the server, answering the client's own
+ * conditional requests. Stale entries that have an {@code ETag} or a {@code Last-Modified}
+ * date are revalidated with a conditional request, and served again if the server responds
+ * with 304.
+ * <p/>
+ * The entries are kept in a memory tier bounded by {@link #getMaxMemorySize()}; the least
+ * recently used entries evicted from it are moved to a disk tier bounded by {@link #getMaxDiskSize()}
+ * if a {@link #setCacheDirectory(File) cache directory} is configured. The files of the disk tier
+ * are deleted when their entries are evicted, and any left in the cache directory are deleted when
+ * the cache is started or stopped.
+ * <p/>
+ * While a response is being fetched from the server, other requests for the same resource
+ * are suspended and redispatched once the response has been received, so that they can be
+ * served from the cache rather than each being forwarded to the server. They are redispatched
+ * as soon as the response headers show that the response cannot be stored, and at the latest
+ * after {@link #getCollapseTimeout()}. The resources whose responses cannot be stored are
+ * remembered for {@link #getPassTimeout()}, during which their requests are forwarded without
+ * waiting for each other.
+ */
+@ManagedObject("Proxy cache")
+public class ProxyCache extends AbstractLifeCycle
+{
+    private static final Logger LOG = Log.getLogger(ProxyCache.class);
+    private static final String REDISPATCHED_ATTRIBUTE = ProxyCache.class.getName() + ".redispatched";
+    private static final String FILE_PREFIX = "entry-";
+    private static final String FILE_SUFFIX = ".cache";
+    // The number of remembered resources whose responses cannot be stored
+    private static final int MAX_PASSES = 1024;
+    // The headers of the server responses that are not stored, in lower case
+    private static final Set<String> UNSTORED_HEADERS = new HashSet<>(Arrays.asList(
+            "age", "content-length", "transfer-encoding", "connection", "keep-alive", "proxy-connection",
+            "te", "trailer", "upgrade", "proxy-authenticate", "proxy-authorization"));
+
+    private final Object _lock = new Object();
+    private final LinkedHashMap<String, Entry> _memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> _disk = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentMap<String, List<String>> _varies = new ConcurrentHashMap<>();
+    private final Map<String, List<AsyncContext>> _fetches = new HashMap<>();
+    private final ConcurrentMap<String, Long> _passes = new ConcurrentHashMap<>();
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _revalidations = new AtomicLong();
+    private final AtomicLong _collapsed = new AtomicLong();
+    private final AtomicLong _hitBytes = new AtomicLong();
+    private final AtomicLong _missBytes = new AtomicLong();
+    private long _memorySize;
+    private long _diskSize;
+    private long _maxMemorySize = 32 * 1024 * 1024;
+    private long _maxDiskSize = 256 * 1024 * 1024;
+    private int _maxEntrySize = 1024 * 1024;
+    private long _collapseTimeout = 30000;
+    private long _passTimeout = 120000;
+    private File _cacheDirectory;
+
+    @ManagedAttribute("The maximum size in bytes of the entries in memory")
+    public long getMaxMemorySize()
+    {
+        return _maxMemorySize;
+    }
+
+    public void setMaxMemorySize(long maxMemorySize)
+    {
+        _maxMemorySize = maxMemorySize;
+    }
+
+    @ManagedAttribute("The maximum size in bytes of the entries on disk")
+    public long getMaxDiskSize()
+    {
+        return _maxDiskSize;
+    }
+
+    public void setMaxDiskSize(long maxDiskSize)
+    {
+        _maxDiskSize = maxDiskSize;
+    }
+
+    @ManagedAttribute("The maximum size in bytes of the content of an entry")
+    public int getMaxEntrySize()
+    {
+        return _maxEntrySize;
+    }
+
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        _maxEntrySize = maxEntrySize;
+    }
+
+    @ManagedAttribute("The maximum time in ms a request waits for the response to a concurrent request")
+    public long getCollapseTimeout()
+    {
+        return _collapseTimeout;
+    }
+
+    /**
+     * @param collapseTimeout the maximum time in ms a request waits for the response to a concurrent
+     * request for the same resource, before it is forwarded to the server
+     */
+    public void setCollapseTimeout(long collapseTimeout)
+    {
+        _collapseTimeout = collapseTimeout;
+    }
+
+    @ManagedAttribute("The time in ms the requests for a resource that cannot be stored are forwarded without waiting for each other")
+    public long getPassTimeout()
+    {
+        return _passTimeout;
+    }
+
+    /**
+     * @param passTimeout the time in ms during which the requests for a resource whose response
+     * cannot be stored are forwarded to the server without waiting for each other
+     */
+    public void setPassTimeout(long passTimeout)
+    {
+        _passTimeout = passTimeout;
+    }
+
+    public File getCacheDirectory()
+    {
+        return _cacheDirectory;
+    }
+
+    /**
+     * @param cacheDirectory the directory of the disk tier, or null to only cache in memory
+     */
+    public void setCacheDirectory(File cacheDirectory)
+    {
+        _cacheDirectory = cacheDirectory;
+    }
+
+    @ManagedAttribute("The number of requests served from the cache")
+    public long getHits()
+    {
+        return _hits.get();
+    }
+
+    @ManagedAttribute("The number of cacheable requests forwarded to the server")
+    public long getMisses()
+    {
+        return _misses.get();
+    }
+
+    @ManagedAttribute("The ratio of the hits to the cacheable requests")
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    @ManagedAttribute("The number of hits served after the server confirmed that the entry was not modified")
+    public long getRevalidations()
+    {
+        return _revalidations.get();
+    }
+
+    @ManagedAttribute("The number of requests that waited for the response to a concurrent request")
+    public long getCollapsed()
+    {
+        return _collapsed.get();
+    }
+
+    @ManagedAttribute("The number of content bytes served from the cache")
+    public long getHitBytes()
+    {
+        return _hitBytes.get();
+    }
+
+    @ManagedAttribute("The number of content bytes received from the server for cacheable requests")
+    public long getMissBytes()
+    {
+        return _missBytes.get();
+    }
+
+    @ManagedAttribute("The size in bytes of the entries in memory")
+    public long getMemorySize()
+    {
+        synchronized (_lock)
+        {
+            return _memorySize;
+        }
+    }
+
+    @ManagedAttribute("The size in bytes of the entries on disk")
+    public long getDiskSize()
+    {
+        synchronized (_lock)
+        {
+            return _diskSize;
+        }
+    }
+
+    @ManagedAttribute("The number of entries")
+    public int getEntries()
+    {
+        synchronized (_lock)
+        {
+            return _memory.size() + _disk.size();
+        }
+    }
+
+    @ManagedOperation("Resets the statistics")
+    public void resetStatistics()
+    {
+        _hits.set(0);
+        _misses.set(0);
+        _revalidations.set(0);
+        _collapsed.set(0);
+        _hitBytes.set(0);
+        _missBytes.set(0);
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        deleteFiles();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        clear();
+        deleteFiles();
+    }
+
+    /**
+     * Deletes the files of the disk tier left in the cache directory, for example by a previous run.
+     */
+    private void deleteFiles()
+    {
+        File directory = _cacheDirectory;
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files == null)
+            return;
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX) && !file.delete())
+                LOG.debug("Cannot delete {}", file);
+        }
+    }
+
+    @ManagedOperation("Removes all the entries")
+    public void clear()
+    {
+        List<Entry> removed = new ArrayList<>();
+        synchronized (_lock)
+        {
+            removed.addAll(_disk.values());
+            _memory.clear();
+            _disk.clear();
+            _memorySize = 0;
+            _diskSize = 0;
+        }
+        _varies.clear();
+        _passes.clear();
+        for (Entry entry : removed)
+            entry.delete();
+    }
+
+    /**
+     * Serves the request from the cache if it has a fresh entry for it, or suspends the request
+     * if the response is being fetched by a concurrent request.
+     *
+     * @param request the client request
+     * @param response the client response
+     * @return true if the request has been handled, false if it must be forwarded to the server
+     * @throws IOException if the entry cannot be written to the client
+     */
+    public boolean serve(HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        String key = getKey(request);
+        if (key == null)
+            return false;
+
+        Entry entry = get(key);
+        if (entry != null && entry.isFresh(System.currentTimeMillis(), request))
+        {
+            InputStream content = entry.open();
+            if (content != null || !entry.isOnDisk())
+            {
+                _hits.incrementAndGet();
+                write(entry, content, request, response);
+                return true;
+            }
+            remove(key, entry);
+        }
+
+        if (request.getAttribute(REDISPATCHED_ATTRIBUTE) != null || isPass(key))
+            return false;
+
+        synchronized (_fetches)
+        {
+            List<AsyncContext> waiters = _fetches.get(key);
+            if (waiters == null)
+                return false;
+            request.setAttribute(REDISPATCHED_ATTRIBUTE, Boolean.TRUE);
+            AsyncContext asyncContext = request.startAsync();
+            asyncContext.setTimeout(_collapseTimeout);
+            asyncContext.addListener(new Waiter(key, asyncContext));
+            waiters.add(asyncContext);
+        }
+        _collapsed.incrementAndGet();
+        LOG.debug("Waiting for the concurrent fetch of {}", key);
+        return true;
+    }
+
+    /**
+     * Prepares the caching of the response to a request forwarded to the server, adding
+     * the validators of a stale entry to the proxy request.
+     *
+     * @param request the client request
+     * @param proxyRequest the request to the server
+     * @return the capture of the response, or null if the request is not cacheable
+     */
+    public Capture newCapture(HttpServletRequest request, Request proxyRequest)
+    {
+        String key = getKey(request);
+        if (key == null)
+            return null;
+
+        boolean fetcher = false;
+        if (request.getAttribute(REDISPATCHED_ATTRIBUTE) == null && !isPass(key))
+        {
+            synchronized (_fetches)
+            {
+                if (!_fetches.containsKey(key))
+                {
+                    _fetches.put(key, new ArrayList<AsyncContext>());
+                    fetcher = true;
+                }
+            }
+        }
+
+        Entry stale = get(key);
+        if (stale != null && stale.hasValidator() &&
+                request.getHeader(HttpHeader.IF_NONE_MATCH.asString()) == null &&
+                request.getHeader(HttpHeader.IF_MODIFIED_SINCE.asString()) == null)
+        {
+            if (stale._etag != null)
+                proxyRequest.header(HttpHeader.IF_NONE_MATCH, stale._etag);
+            if (stale._lastModified != null)
+                proxyRequest.header(HttpHeader.IF_MODIFIED_SINCE, stale._lastModified);
+        }
+        else
+        {
+            stale = null;
+        }
+
+        _misses.incrementAndGet();
+        return new Capture(key, request, stale, fetcher);
+    }
+
+    /**
+     * @return the key of the request, made of its URL and of the values of the request
+     * headers the responses vary on, or null if the request is not cacheable
+     */
+    private String getKey(HttpServletRequest request)
+    {
+        if (!HttpMethod.GET.is(request.getMethod()))
+            return null;
+        if (request.getHeader(HttpHeader.AUTHORIZATION.asString()) != null)
+            return null;
+        String cacheControl = request.getHeader(HttpHeader.CACHE_CONTROL.asString());
+        if (cacheControl != null && parseCacheControl(cacheControl).containsKey("no-store"))
+            return null;
+
+        StringBuffer url = request.getRequestURL();
+        String query = request.getQueryString();
+        if (query != null)
+            url.append('?').append(query);
+        return getKey(url.toString(), _varies.get(url.toString()), request);
+    }
+
+    private String getKey(String url, List<String> vary, HttpServletRequest request)
+    {
+        if (vary == null || vary.isEmpty())
+            return url;
+        StringBuilder key = new StringBuilder(url);
+        for (String name : vary)
+        {
+            key.append('\n').append(name).append(':');
+            for (Enumeration<String> values = request.getHeaders(name); values.hasMoreElements();)
+                key.append(values.nextElement()).append(',');
+        }
+        return key.toString();
+    }
+
+    private Entry get(String key)
+    {
+        synchronized (_lock)
+        {
+            Entry entry = _memory.get(key);
+            if (entry == null)
+                entry = _disk.get(key);
+            return entry;
+        }
+    }
+
+    private void remove(String key, Entry entry)
+    {
+        synchronized (_lock)
+        {
+            if (_memory.get(key) == entry)
+            {
+                _memory.remove(key);
+                _memorySize -= entry._size;
+            }
+            else if (_disk.get(key) == entry)
+            {
+                _disk.remove(key);
+                _diskSize -= entry._size;
+            }
+            else
+                return;
+        }
+        entry.delete();
+    }
+
+    private void put(Entry entry)
+    {
+        List<Entry> removed = new ArrayList<>();
+        List<Entry> spilled = new ArrayList<>();
+        synchronized (_lock)
+        {
+            Entry old = _memory.remove(entry._key);
+            if (old != null)
+                _memorySize -= old._size;
+            old = _disk.remove(entry._key);
+            if (old != null)
+            {
+                _diskSize -= old._size;
+                removed.add(old);
+            }
+
+            _memory.put(entry._key, entry);
+            _memorySize += entry._size;
+            for (Iterator<Entry> iterator = _memory.values().iterator(); _memorySize > _maxMemorySize && iterator.hasNext();)
+            {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                _memorySize -= eldest._size;
+                spilled.add(eldest);
+            }
+        }
+
+        for (Entry eldest : spilled)
+            spill(eldest, removed);
+
+        for (Entry old : removed)
+            old.delete();
+    }
+
+    /**
+     * Moves an entry evicted from the memory tier to the disk tier, if there is one.
+     */
+    private void spill(Entry spilled, List<Entry> removed)
+    {
+        File directory = _cacheDirectory;
+        if (directory == null || spilled._size > _maxDiskSize)
+            return;
+
+        // Requests being served may still hold the entry in memory,
+        // so a new entry is created for the disk tier
+        Entry entry;
+        try
+        {
+            if (!directory.exists() && !directory.mkdirs())
+                throw new IOException("Cannot create " + directory);
+            File file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, directory);
+            Files.write(file.toPath(), spilled._content);
+            entry = spilled.spill(file);
+        }
+        catch (IOException x)
+        {
+            LOG.warn("Cannot spill " + spilled._key + " to " + directory, x);
+            return;
+        }
+
+        synchronized (_lock)
+        {
+            // A newer entry may have been stored meanwhile
+            if (_memory.containsKey(entry._key) || _disk.containsKey(entry._key))
+            {
+                removed.add(entry);
+                return;
+            }
+            _disk.put(entry._key, entry);
+            _diskSize += entry._size;
+            for (Iterator<Entry> iterator = _disk.values().iterator(); _diskSize > _maxDiskSize && iterator.hasNext();)
+            {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                _diskSize -= eldest._size;
+                removed.add(eldest);
+            }
+        }
+        LOG.debug("Spilled {} to {}", entry._key, entry._file);
+    }
+
+    /**
+     * @return whether the response to the last request for the given key could not be stored,
+     * so that the requests for the key are forwarded without waiting for each other
+     */
+    private boolean isPass(String key)
+    {
+        Long expires = _passes.get(key);
+        if (expires == null)
+            return false;
+        if (expires > System.currentTimeMillis())
+            return true;
+        _passes.remove(key, expires);
+        return false;
+    }
+
+    private void pass(String key)
+    {
+        if (_passes.size() >= MAX_PASSES)
+            _passes.clear();
+        _passes.put(key, System.currentTimeMillis() + _passTimeout);
+    }
+
+    /**
+     * Redispatches the requests waiting for the fetch of the given key.
+     */
+    private void fetched(String key)
+    {
+        List<AsyncContext> waiters;
+        synchronized (_fetches)
+        {
+            waiters = _fetches.remove(key);
+        }
+        if (waiters != null)
+        {
+            for (AsyncContext asyncContext : waiters)
+                asyncContext.dispatch();
+        }
+    }
+
+    private void write(Entry entry, InputStream content, HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        try
+        {
+            long now = System.currentTimeMillis();
+            HttpFields headers = entry._headers;
+            if (entry.isNotModified(request))
+            {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                for (HttpField field : headers)
+                {
+                    switch (field.getName().toLowerCase(Locale.ENGLISH))
+                    {
+                        case "etag":
+                        case "cache-control":
+                        case "expires":
+                        case "vary":
+                        case "content-location":
+                            response.addHeader(field.getName(), field.getValue());
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                response.setHeader(HttpHeader.AGE.asString(), String.valueOf(entry.getAge(now)));
+                return;
+            }
+
+            response.setStatus(entry._status);
+            for (HttpField field : headers)
+                response.addHeader(field.getName(), field.getValue());
+            response.setHeader(HttpHeader.AGE.asString(), String.valueOf(entry.getAge(now)));
+            response.setContentLength(entry._size);
+
+            ServletOutputStream output = response.getOutputStream();
+            if (content == null)
+                output.write(entry._content);
+            else
+                IO.copy(content, output);
+            _hitBytes.addAndGet(entry._size);
+        }
+        finally
+        {
+            if (content != null)
+                content.close();
+        }
+    }
+
+    /**
+     * @return the directives of a Cache-Control value, mapped to their value or to the empty string
+     */
+    private static Map<String, String> parseCacheControl(String value)
+    {
+        Map<String, String> directives = new HashMap<>();
+        for (String directive : value.split(","))
+        {
+            directive = directive.trim();
+            if (directive.length() == 0)
+                continue;
+            int equals = directive.indexOf('=');
+            if (equals < 0)
+                directives.put(directive.toLowerCase(Locale.ENGLISH), "");
+            else
+            {
+                String argument = directive.substring(equals + 1).trim();
+                if (argument.length() > 1 && argument.startsWith("\"") && argument.endsWith("\""))
+                    argument = argument.substring(1, argument.length() - 1);
+                directives.put(directive.substring(0, equals).trim().toLowerCase(Locale.ENGLISH), argument);
+            }
+        }
+        return directives;
+    }
+
+    private static long parseSeconds(String value)
+    {
+        try
+        {
+            return Math.max(0, Long.parseLong(value));
+        }
+        catch (NumberFormatException x)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * The capture of a response from the server, to store it in the cache or,
+     * if the server confirmed that a stale entry was not modified, to serve the entry.
+     */
+    public class Capture
+    {
+        private final String _key;
+        private final HttpServletRequest _request;
+        private final Entry _stale;
+        private boolean _fetcher;
+        private ByteArrayOutputStream _content;
+        private Entry _entry;
+        private boolean _revalidated;
+        private InputStream _revalidatedContent;
+
+        private Capture(String key, HttpServletRequest request, Entry stale, boolean fetcher)
+        {
+            _key = key;
+            _request = request;
+            _stale = stale;
+            _fetcher = fetcher;
+        }
+
+        /**
+         * Called when the response headers are received. If the server responded that the stale
+         * entry was not modified, the entry is refreshed and will be served when the response completes.
+         *
+         * @return true if the response of the server must not be forwarded to the client
+         */
+        public boolean revalidated(Response proxyResponse)
+        {
+            if (_stale == null || proxyResponse.getStatus() != HttpServletResponse.SC_NOT_MODIFIED)
+                return false;
+
+            InputStream content = _stale.open();
+            if (content == null && _stale.isOnDisk())
+                return false;
+
+            _stale.revalidated(proxyResponse.getHeaders(), System.currentTimeMillis());
+            _revalidated = true;
+            _revalidatedContent = content;
+            // The waiters can be served from the refreshed entry
+            release();
+            return true;
+        }
+
+        /**
+         * Called when the response headers have been forwarded to the client, to decide
+         * whether the response can be stored.
+         */
+        public void headers(Response proxyResponse, HttpServletResponse response)
+        {
+            HttpFields headers = proxyResponse.getHeaders();
+            if (!isStorable(proxyResponse.getStatus(), headers))
+            {
+                LOG.debug("Not caching {}: not storable", _key);
+                // Don't make the waiters wait for a response that they cannot be served from
+                if (proxyResponse.getStatus() != HttpServletResponse.SC_NOT_MODIFIED)
+                    pass(_key);
+                release();
+                return;
+            }
+
+            long received = System.currentTimeMillis();
+            HttpFields stored = new HttpFields();
+            for (String name : response.getHeaderNames())
+            {
+                if (UNSTORED_HEADERS.contains(name.toLowerCase(Locale.ENGLISH)))
+                    continue;
+                Collection<String> values = response.getHeaders(name);
+                for (String value : values)
+                    stored.add(name, value);
+            }
+
+            String key = _key;
+            String vary = headers.getStringField(HttpHeader.VARY);
+            if (vary != null)
+            {
+                List<String> names = new ArrayList<>();
+                for (String name : vary.split(","))
+                {
+                    name = name.trim().toLowerCase(Locale.ENGLISH);
+                    if (name.length() > 0)
+                        names.add(name);
+                }
+                Collections.sort(names);
+                String url = key;
+                int newLine = url.indexOf('\n');
+                if (newLine >= 0)
+                    url = url.substring(0, newLine);
+                _varies.put(url, names);
+                key = getKey(url, names, _request);
+            }
+
+            _entry = new Entry(key, proxyResponse.getStatus(), stored, headers, received);
+            _content = new ByteArrayOutputStream();
+        }
+
+        /**
+         * Called for each chunk of the response content, before it is forwarded to the client.
+         */
+        public void content(ByteBuffer content)
+        {
+            _missBytes.addAndGet(content.remaining());
+            if (_content == null)
+                return;
+            if (_content.size() + content.remaining() > _maxEntrySize)
+            {
+                LOG.debug("Not caching {}: too large", _key);
+                _content = null;
+                _entry = null;
+                pass(_key);
+                release();
+                return;
+            }
+            if (content.hasArray())
+            {
+                _content.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+            }
+            else
+            {
+                byte[] bytes = new byte[content.remaining()];
+                content.slice().get(bytes);
+                _content.write(bytes, 0, bytes.length);
+            }
+        }
+
+        /**
+         * Called when the response has been received; stores the response, or writes the
+         * content of the revalidated entry to the client.
+         *
+         * @throws IOException if the revalidated entry cannot be written to the client
+         */
+        public void succeeded(HttpServletResponse response) throws IOException
+        {
+            try
+            {
+                if (_revalidated)
+                {
+                    _hits.incrementAndGet();
+                    _misses.decrementAndGet();
+                    _revalidations.incrementAndGet();
+                    write(_stale, _revalidatedContent, _request, response);
+                }
+                else if (_entry != null)
+                {
+                    _entry.stored(_content.toByteArray());
+                    put(_entry);
+                    _passes.remove(_key);
+                    LOG.debug("Stored {}", _entry);
+                }
+            }
+            finally
+            {
+                release();
+            }
+        }
+
+        /**
+         * Called when the response failed, to discard it.
+         */
+        public void failed()
+        {
+            _content = null;
+            _entry = null;
+            if (_revalidatedContent != null)
+                IO.close(_revalidatedContent);
+            release();
+        }
+
+        /**
+         * Redispatches the requests waiting for this response, once only, so that
+         * the waiters of a later fetch of the same key are not released.
+         */
+        private void release()
+        {
+            if (_fetcher)
+            {
+                _fetcher = false;
+                fetched(_key);
+            }
+        }
+
+        private boolean isStorable(int status, HttpFields headers)
+        {
+            switch (status)
+            {
+                case 200:
+                case 203:
+                case 300:
+                case 301:
+                case 404:
+                case 410:
+                    break;
+                default:
+                    return false;
+            }
+
+            if (headers.containsKey(HttpHeader.SET_COOKIE.asString()) || headers.containsKey(HttpHeader.SET_COOKIE2.asString()))
+                return false;
+
+            String vary = headers.getStringField(HttpHeader.VARY);
+            if (vary != null && vary.contains("*"))
+                return false;
+
+            long length = headers.getLongField(HttpHeader.CONTENT_LENGTH.asString());
+            if (length > _maxEntrySize)
+                return false;
+
+            String cacheControl = headers.getStringField(HttpHeader.CACHE_CONTROL);
+            Map<String, String> directives = cacheControl == null ? new HashMap<String, String>() : parseCacheControl(cacheControl);
+            if (directives.containsKey("no-store") || directives.containsKey("private"))
+                return false;
+
+            return directives.containsKey("s-maxage") ||
+                    directives.containsKey("max-age") ||
+                    headers.containsKey(HttpHeader.EXPIRES.asString()) ||
+                    headers.containsKey(HttpHeader.ETAG.asString()) ||
+                    headers.containsKey(HttpHeader.LAST_MODIFIED.asString());
+        }
+    }
+
+    /**
+     * Forwards a request waiting for a concurrent fetch that did not complete in time.
+     */
+    private class Waiter implements AsyncListener
+    {
+        private final String _key;
+        private final AsyncContext _asyncContext;
+
+        private Waiter(String key, AsyncContext asyncContext)
+        {
+            _key = key;
+            _asyncContext = asyncContext;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException
+        {
+            boolean waiting;
+            synchronized (_fetches)
+            {
+                List<AsyncContext> waiters = _fetches.get(_key);
+                waiting = waiters != null && waiters.remove(_asyncContext);
+            }
+            // Otherwise the fetch completed meanwhile and redispatches the request
+            if (waiting)
+            {
+                LOG.debug("Timed out waiting for the concurrent fetch of {}", _key);
+                _asyncContext.dispatch();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException
+        {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException
+        {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException
+        {
+        }
+    }
+
+    /**
+     * A cached response, with its content in memory or on disk.
+     * <p/>
+     * The content of an entry does not change once it is stored; an entry moved to the
+     * disk tier is replaced by a new entry, so that the requests being served from the
+     * entry in memory can complete.
+     */
+    private static class Entry
+    {
+        private final String _key;
+        private final int _status;
+        private final File _file;
+        private volatile HttpFields _headers;
+        private volatile String _etag;
+        private volatile String _lastModified;
+        private volatile long _received;
+        private volatile long _initialAge;
+        private volatile long _lifetime;
+        private int _size;
+        private byte[] _content;
+
+        private Entry(String key, int status, HttpFields headers, HttpFields serverHeaders, long received)
+        {
+            _key = key;
+            _status = status;
+            _file = null;
+            _headers = headers;
+            refresh(serverHeaders, serverHeaders.getStringField(HttpHeader.AGE), received);
+        }
+
+        private Entry(Entry entry, File file)
+        {
+            _key = entry._key;
+            _status = entry._status;
+            _file = file;
+            _headers = entry._headers;
+            _etag = entry._etag;
+            _lastModified = entry._lastModified;
+            _received = entry._received;
+            _initialAge = entry._initialAge;
+            _lifetime = entry._lifetime;
+            _size = entry._size;
+        }
+
+        /**
+         * Updates the stored headers with the headers of a 304 response of the server,
+         * as per RFC 7234 section 4.3.4, and recomputes the freshness from them.
+         */
+        private synchronized void revalidated(HttpFields notModifiedHeaders, long received)
+        {
+            HttpFields headers = new HttpFields();
+            for (HttpField field : _headers)
+            {
+                if (!notModifiedHeaders.containsKey(field.getName()))
+                    headers.add(field);
+            }
+            for (HttpField field : notModifiedHeaders)
+            {
+                if (!UNSTORED_HEADERS.contains(field.getName().toLowerCase(Locale.ENGLISH)))
+                    headers.add(field);
+            }
+            _headers = headers;
+            refresh(headers, notModifiedHeaders.getStringField(HttpHeader.AGE), received);
+        }
+
+        /**
+         * Updates the validators and the freshness of the entry from the given headers.
+         */
+        private void refresh(HttpFields headers, String ageValue, long received)
+        {
+            String etag = headers.getStringField(HttpHeader.ETAG);
+            if (etag != null)
+                _etag = etag;
+            String lastModified = headers.getStringField(HttpHeader.LAST_MODIFIED);
+            if (lastModified != null)
+                _lastModified = lastModified;
+
+            long date = parseDate(headers.getStringField(HttpHeader.DATE), received);
+            long age = Math.max(0, received - date);
+            if (ageValue != null)
+                age = Math.max(age, TimeUnit.SECONDS.toMillis(parseSeconds(ageValue.trim())));
+
+            long lifetime = 0;
+            String cacheControl = headers.getStringField(HttpHeader.CACHE_CONTROL);
+            Map<String, String> directives = cacheControl == null ? new HashMap<String, String>() : parseCacheControl(cacheControl);
+            if (directives.containsKey("no-cache"))
+                lifetime = 0;
+            else if (directives.containsKey("s-maxage"))
+                lifetime = TimeUnit.SECONDS.toMillis(parseSeconds(directives.get("s-maxage")));
+            else if (directives.containsKey("max-age"))
+                lifetime = TimeUnit.SECONDS.toMillis(parseSeconds(directives.get("max-age")));
+            else
+            {
+                String expires = headers.getStringField(HttpHeader.EXPIRES);
+                if (expires != null)
+                {
+                    long expiresDate = HttpFields.parseDate(expires);
+                    if (expiresDate > 0)
+                        lifetime = expiresDate - date;
+                }
+            }
+
+            _received = received;
+            _initialAge = age;
+            _lifetime = Math.max(0, lifetime);
+        }
+
+        private static long parseDate(String date, long defaultValue)
+        {
+            if (date == null)
+                return defaultValue;
+            long result = HttpFields.parseDate(date);
+            return result < 0 ? defaultValue : result;
+        }
+
+        private void stored(byte[] content)
+        {
+            _content = content;
+            _size = content.length;
+        }
+
+        /**
+         * @return the entry of the disk tier that replaces this entry
+         */
+        private synchronized Entry spill(File file)
+        {
+            return new Entry(this, file);
+        }
+
+        private boolean isOnDisk()
+        {
+            return _file != null;
+        }
+
+        /**
+         * @return a stream of the content of the entry on disk, or null if the content is in memory
+         * or if the file cannot be opened
+         */
+        private InputStream open()
+        {
+            if (_file == null)
+                return null;
+            try
+            {
+                return new FileInputStream(_file);
+            }
+            catch (IOException x)
+            {
+                LOG.ignore(x);
+                return null;
+            }
+        }
+
+        private void delete()
+        {
+            if (_file != null && !_file.delete())
+                LOG.debug("Cannot delete {}", _file);
+        }
+
+        private boolean hasValidator()
+        {
+            return _etag != null || _lastModified != null;
+        }
+
+        /**
+         * @return the current age of the entry in seconds
+         */
+        private long getAge(long now)
+        {
+            return TimeUnit.MILLISECONDS.toSeconds(_initialAge + Math.max(0, now - _received));
+        }
+
+        private boolean isFresh(long now, HttpServletRequest request)
+        {
+            long age = _initialAge + Math.max(0, now - _received);
+            if (age >= _lifetime)
+                return false;
+
+            String pragma = request.getHeader(HttpHeader.PRAGMA.asString());
+            if (pragma != null && pragma.contains("no-cache"))
+                return false;
+
+            String cacheControl = request.getHeader(HttpHeader.CACHE_CONTROL.asString());
+            if (cacheControl != null)
+            {
+                Map<String, String> directives = parseCacheControl(cacheControl);
+                if (directives.containsKey("no-cache"))
+                    return false;
+                String maxAge = directives.get("max-age");
+                if (maxAge != null && age >= TimeUnit.SECONDS.toMillis(parseSeconds(maxAge)))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return whether the client's own conditional headers match this entry
+         */
+        private boolean isNotModified(HttpServletRequest request)
+        {
+            if (_status != HttpServletResponse.SC_OK)
+                return false;
+
+            String ifNoneMatch = request.getHeader(HttpHeader.IF_NONE_MATCH.asString());
+            if (ifNoneMatch != null)
+            {
+                String etag = _etag;
+                if (etag == null)
+                    return false;
+                for (String tag : ifNoneMatch.split(","))
+                {
+                    tag = tag.trim();
+                    if (tag.equals("*") || tag.equals(etag))
+                        return true;
+                }
+                return false;
+            }
+
+            String ifModifiedSince = request.getHeader(HttpHeader.IF_MODIFIED_SINCE.asString());
+            String lastModified = _lastModified;
+            if (ifModifiedSince != null && lastModified != null)
+            {
+                long since = HttpFields.parseDate(ifModifiedSince);
+                long modified = HttpFields.parseDate(lastModified);
+                return since > 0 && modified > 0 && modified <= since;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s,status=%d,size=%d,%s]", getClass().getSimpleName(), hashCode(),
+                    _key, _status, _size, _file == null ? "memory" : _file);
+        }
+    }
+}
@@ -22,22 +22,37 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.ForkInvoker;
 import org.eclipse.jetty.util.log.Logger;
 
+/**
+ * <p>A connection that relays the bytes read from its endpoint to the endpoint of its peer connection.</p>
+ * <p>The bytes available are read until the buffer is full before being written with a single write,
+ * so that small reads are coalesced. When a read fills the buffer, the buffer size is doubled, up to
+ * {@link #getMaxInputBufferSize()}, so that bulk transfers are relayed with fewer and larger writes.
+ * If {@link #isRetainBuffer()} is true, the buffer is kept between reads rather than being released
+ * to the pool and acquired again for each chunk.</p>
+ */
 public abstract class ProxyConnection extends AbstractConnection
 {
     protected static final Logger LOG = ConnectHandler.LOG;
     private final ForkInvoker<Void> invoker = new ProxyForkInvoker();
+    private final AtomicReference<ByteBuffer> retained = new AtomicReference<>();
     private final ByteBufferPool bufferPool;
     private final ConcurrentMap<String, Object> context;
     private Connection connection;
+    private boolean retainBuffer;
+    private int maxInputBufferSize;
+    private int bufferSize;
+    private volatile long bytesIn;
 
     protected ProxyConnection(EndPoint endp, Executor executor, ByteBufferPool bufferPool, ConcurrentMap<String, Object> context)
     {
@@ -66,43 +81,120 @@ public abstract class ProxyConnection extends AbstractConnection
         this.connection = connection;
     }
 
+    /**
+     * @return whether the buffer is kept between reads for the lifetime of the connection
+     */
+    public boolean isRetainBuffer()
+    {
+        return retainBuffer;
+    }
+
+    /**
+     * @param retainBuffer whether the buffer is kept between reads for the lifetime of the connection
+     */
+    public void setRetainBuffer(boolean retainBuffer)
+    {
+        this.retainBuffer = retainBuffer;
+    }
+
+    /**
+     * @return the size the buffer may grow to, or a size not greater than
+     * {@link #getInputBufferSize()} if the buffer does not grow
+     */
+    public int getMaxInputBufferSize()
+    {
+        return maxInputBufferSize;
+    }
+
+    /**
+     * @param maxInputBufferSize the size the buffer may grow to
+     */
+    public void setMaxInputBufferSize(int maxInputBufferSize)
+    {
+        this.maxInputBufferSize = maxInputBufferSize;
+    }
+
+    /**
+     * @return the number of bytes read from this connection's endpoint and written to the peer's
+     */
+    @Override
+    public long getBytesIn()
+    {
+        return bytesIn;
+    }
+
+    /**
+     * @return the number of bytes read by the peer connection and written to this connection's endpoint
+     */
+    @Override
+    public long getBytesOut()
+    {
+        Connection connection = this.connection;
+        return connection == null ? 0 : connection.getBytesIn();
+    }
+
     @Override
     public void onFillable()
     {
-        final ByteBuffer buffer = getByteBufferPool().acquire(getInputBufferSize(), true);
+        final ByteBuffer buffer = acquire();
         try
         {
-            final int filled = read(getEndPoint(), buffer);
-            LOG.debug("{} filled {} bytes", this, filled);
+            int filled = 0;
+            boolean eof = false;
+            while (true)
+            {
+                int read = read(getEndPoint(), buffer);
+                if (read > 0)
+                {
+                    filled += read;
+                    // Coalesce the bytes already available into a single write
+                    if (BufferUtil.space(buffer) > 0)
+                        continue;
+                }
+                else if (read < 0)
+                {
+                    eof = true;
+                }
+                break;
+            }
+            LOG.debug("{} filled {} bytes{}", this, filled, eof ? " and EOF" : "");
+
             if (filled > 0)
             {
+                final int written = filled;
+                final boolean shutdown = eof;
+                final boolean full = BufferUtil.isFull(buffer);
                 write(getConnection().getEndPoint(), buffer, new Callback()
                 {
                     @Override
                     public void succeeded()
                     {
-                        LOG.debug("{} wrote {} bytes", this, filled);
-                        bufferPool.release(buffer);
-                        invoker.invoke(null);
+                        LOG.debug("{} wrote {} bytes", this, written);
+                        bytesIn += written;
+                        release(buffer, full);
+                        if (shutdown)
+                            connection.getEndPoint().shutdownOutput();
+                        else
+                            invoker.invoke(null);
                     }
 
                     @Override
                     public void failed(Throwable x)
                     {
-                        LOG.debug(this + " failed to write " + filled + " bytes", x);
+                        LOG.debug(this + " failed to write " + written + " bytes", x);
                         bufferPool.release(buffer);
                         connection.close();
                     }
                 });
             }
-            else if (filled == 0)
+            else if (!eof)
             {
-                bufferPool.release(buffer);
+                release(buffer, false);
                 fillInterested();
             }
             else
             {
-                bufferPool.release(buffer);
+                release(buffer, false);
                 connection.getEndPoint().shutdownOutput();
             }
         }
@@ -115,6 +207,60 @@ public abstract class ProxyConnection extends AbstractConnection
         }
     }
 
+    private ByteBuffer acquire()
+    {
+        ByteBuffer buffer = retained.getAndSet(null);
+        if (buffer != null)
+            return buffer;
+        if (bufferSize == 0)
+            bufferSize = getInputBufferSize();
+        return bufferPool.acquire(bufferSize, true);
+    }
+
+    /**
+     * Releases the empty buffer to the pool, or retains it for the next read.
+     *
+     * @param buffer the buffer
+     * @param full whether the last read filled the buffer, in which case the next buffer is larger
+     */
+    private void release(ByteBuffer buffer, boolean full)
+    {
+        if (full && bufferSize < maxInputBufferSize)
+        {
+            bufferSize = Math.min(maxInputBufferSize, 2 * Math.max(bufferSize, buffer.capacity()));
+            LOG.debug("{} growing buffer to {} bytes", this, bufferSize);
+            bufferPool.release(buffer);
+            return;
+        }
+
+        if (retainBuffer && getEndPoint().isOpen())
+        {
+            BufferUtil.clear(buffer);
+            if (retained.compareAndSet(null, buffer))
+            {
+                // Do not leak the buffer if the connection has been closed concurrently
+                if (!getEndPoint().isOpen())
+                    releaseRetained();
+                return;
+            }
+        }
+        bufferPool.release(buffer);
+    }
+
+    private void releaseRetained()
+    {
+        ByteBuffer buffer = retained.getAndSet(null);
+        if (buffer != null)
+            bufferPool.release(buffer);
+    }
+
+    @Override
+    public void onClose()
+    {
+        super.onClose();
+        releaseRetained();
+    }
+
     protected abstract int read(EndPoint endPoint, ByteBuffer buffer) throws IOException;
 
     protected abstract void write(EndPoint endPoint, ByteBuffer buffer, Callback callback);
@@ -18,6 +18,7 @@
 
 package org.eclipse.jetty.proxy;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
@@ -33,6 +34,7 @@ import java.util.concurrent.TimeoutException;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.UnavailableException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -47,7 +49,9 @@ import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.HttpCookieStore;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -69,10 +73,13 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
  * <li>viaHost - the name to use in the Via header: Via: http/1.1 &lt;viaHost&gt;</li>
  * <li>whiteList - comma-separated list of allowed proxy hosts</li>
  * <li>blackList - comma-separated list of forbidden proxy hosts</li>
+ * <li>asyncContent - whether the response content is written asynchronously to the client,
+ * see {@link #setAsyncContent(boolean)}</li>
  * </ul>
  * <p/>
  * In addition, see {@link #createHttpClient()} for init parameters used to configure
- * the {@link HttpClient} instance.
+ * the {@link HttpClient} instance, and {@link #createProxyCache()} for init parameters
+ * used to configure the optional {@link ProxyCache}.
  *
  * @see ConnectHandler
  */
@@ -100,7 +107,9 @@ public class ProxyServlet extends HttpServlet
     private String _hostHeader;
     private String _viaHost;
     private HttpClient _client;
+    private ProxyCache _cache;
     private long _timeout;
+    private boolean _asyncContent;
 
     @Override
     public void init() throws ServletException
@@ -115,6 +124,10 @@ public class ProxyServlet extends HttpServlet
         if (_viaHost == null)
             _viaHost = viaHost();
 
+        String asyncContent = config.getInitParameter("asyncContent");
+        if (asyncContent != null)
+            _asyncContent = Boolean.parseBoolean(asyncContent);
+
         try
         {
             _client = createHttpClient();
@@ -122,6 +135,13 @@ public class ProxyServlet extends HttpServlet
             // Put the HttpClient in the context to leverage ContextHandler.MANAGED_ATTRIBUTES
             getServletContext().setAttribute(config.getServletName() + ".HttpClient", _client);
 
+            _cache = createProxyCache();
+            if (_cache != null)
+            {
+                _cache.start();
+                getServletContext().setAttribute(config.getServletName() + ".ProxyCache", _cache);
+            }
+
             String whiteList = config.getInitParameter("whiteList");
             if (whiteList != null)
                 getWhiteListHosts().addAll(parseList(whiteList));
@@ -136,6 +156,19 @@ public class ProxyServlet extends HttpServlet
         }
     }
 
+    protected HttpClient getHttpClient()
+    {
+        return _client;
+    }
+
+    /**
+     * @return the cache of the proxied responses, or null if the responses are not cached
+     */
+    public ProxyCache getProxyCache()
+    {
+        return _cache;
+    }
+
     public long getTimeout()
     {
         return _timeout;
@@ -146,6 +179,27 @@ public class ProxyServlet extends HttpServlet
         this._timeout = timeout;
     }
 
+    public boolean isAsyncContent()
+    {
+        return _asyncContent;
+    }
+
+    /**
+     * <p>Sets whether the response content is forwarded to the client asynchronously.</p>
+     * <p>When true, the content buffers received from the server are written to the client
+     * without being copied and without blocking, and the {@link HttpClient} does not read
+     * further content from the server until they have been written, so that a slow client
+     * neither holds a thread nor causes the content to be buffered in the proxy.</p>
+     * <p>The request content is still read from the client with blocking reads.</p>
+     *
+     * @param asyncContent whether the response content is forwarded asynchronously
+     * @see #onResponseContent(HttpServletRequest, HttpServletResponse, Response, ByteBuffer, Callback)
+     */
+    public void setAsyncContent(boolean asyncContent)
+    {
+        _asyncContent = asyncContent;
+    }
+
     public Set<String> getWhiteListHosts()
     {
         return _whiteList;
@@ -182,6 +236,8 @@ public class ProxyServlet extends HttpServlet
     {
         try
         {
+            if (_cache != null)
+                _cache.stop();
             _client.stop();
         }
         catch (Exception x)
@@ -307,6 +363,69 @@ public class ProxyServlet extends HttpServlet
         return new HttpClient();
     }
 
+    /**
+     * The servlet init parameters that configure the {@link ProxyCache} are:
+     * <table>
+     * <thead>
+     * <tr>
+     * <th>init-param</th>
+     * <th>default-value</th>
+     * <th>description</th>
+     * </tr>
+     * </thead>
+     * <tbody>
+     * <tr>
+     * <td>cacheMaxMemorySize</td>
+     * <td>-</td>
+     * <td>The max size in bytes of the cached entries kept in memory; the responses are cached only
+     * if this parameter is set, see {@link ProxyCache#setMaxMemorySize(long)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheMaxEntrySize</td>
+     * <td>1048576</td>
+     * <td>The max size in bytes of a cached response content, see {@link ProxyCache#setMaxEntrySize(int)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheDirectory</td>
+     * <td>-</td>
+     * <td>The directory where the entries evicted from memory are stored, see {@link ProxyCache#setCacheDirectory(File)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheMaxDiskSize</td>
+     * <td>268435456</td>
+     * <td>The max size in bytes of the cached entries stored on disk, see {@link ProxyCache#setMaxDiskSize(long)}</td>
+     * </tr>
+     * </tbody>
+     * </table>
+     *
+     * @return a {@link ProxyCache} configured from the {@link #getServletConfig() servlet configuration},
+     * or null if the responses must not be cached
+     */
+    protected ProxyCache createProxyCache()
+    {
+        ServletConfig config = getServletConfig();
+
+        String value = config.getInitParameter("cacheMaxMemorySize");
+        if (value == null)
+            return null;
+        ProxyCache cache = new ProxyCache();
+        cache.setMaxMemorySize(Long.parseLong(value));
+
+        value = config.getInitParameter("cacheMaxEntrySize");
+        if (value != null)
+            cache.setMaxEntrySize(Integer.parseInt(value));
+
+        value = config.getInitParameter("cacheDirectory");
+        if (value != null)
+            cache.setCacheDirectory(new File(value));
+
+        value = config.getInitParameter("cacheMaxDiskSize");
+        if (value != null)
+            cache.setMaxDiskSize(Long.parseLong(value));
+
+        return cache;
+    }
+
     private Set<String> parseList(String list)
     {
         Set<String> result = new HashSet<>();
@@ -355,6 +474,13 @@ public class ProxyServlet extends HttpServlet
     {
         final int requestId = getRequestId(request);
 
+        ProxyCache cache = _cache;
+        if (cache != null && cache.serve(request, response))
+        {
+            _log.debug("{} served from cache", requestId);
+            return;
+        }
+
         URI rewrittenURI = rewriteURI(request);
 
         if (_log.isDebugEnabled())
@@ -463,8 +589,10 @@ public class ProxyServlet extends HttpServlet
                     proxyRequest.getHeaders().toString().trim());
         }
 
+        ProxyCache.Capture capture = cache == null ? null : cache.newCapture(request, proxyRequest);
+
         proxyRequest.timeout(getTimeout(), TimeUnit.MILLISECONDS);
-        proxyRequest.send(new ProxyResponseListener(request, response));
+        proxyRequest.send(isAsyncContent() ? new AsyncProxyResponseListener(request, response, capture) : new ProxyResponseListener(request, response, capture));
     }
 
     protected void onResponseHeaders(HttpServletRequest request, HttpServletResponse response, Response proxyResponse)
@@ -490,6 +618,43 @@ public class ProxyServlet extends HttpServlet
         _log.debug("{} proxying content to downstream: {} bytes", getRequestId(request), length);
     }
 
+    /**
+     * Writes the response content to the client when {@link #isAsyncContent()} is true.
+     * <p/>
+     * The content buffer is owned by the {@link HttpClient} and must not be used after the
+     * {@code callback} has been completed; the proxy response is not read further until then.
+     *
+     * @param request the client request
+     * @param response the client response
+     * @param proxyResponse the response from the server
+     * @param content the content to write
+     * @param callback the callback to complete when the content has been written
+     */
+    protected void onResponseContent(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, ByteBuffer content, Callback callback)
+    {
+        int length = content.remaining();
+        try
+        {
+            ServletOutputStream output = response.getOutputStream();
+            if (output instanceof HttpOutput)
+            {
+                ((HttpOutput)output).write(content, callback);
+            }
+            else
+            {
+                byte[] buffer = new byte[length];
+                content.get(buffer);
+                output.write(buffer);
+                callback.succeeded();
+            }
+            _log.debug("{} proxying content to downstream: {} bytes", getRequestId(request), length);
+        }
+        catch (IOException x)
+        {
+            callback.failed(x);
+        }
+    }
+
     protected void onResponseSuccess(HttpServletRequest request, HttpServletResponse response, Response proxyResponse)
     {
         AsyncContext asyncContext = (AsyncContext)request.getAttribute(ASYNC_CONTEXT);
@@ -631,13 +796,15 @@ public class ProxyServlet extends HttpServlet
 
     private class ProxyResponseListener extends Response.Listener.Empty
     {
-        private final HttpServletRequest request;
-        private final HttpServletResponse response;
+        protected final HttpServletRequest request;
+        protected final HttpServletResponse response;
+        protected final ProxyCache.Capture capture;
 
-        public ProxyResponseListener(HttpServletRequest request, HttpServletResponse response)
+        public ProxyResponseListener(HttpServletRequest request, HttpServletResponse response, ProxyCache.Capture capture)
         {
             this.request = request;
             this.response = response;
+            this.capture = capture;
         }
 
         @Override
@@ -649,7 +816,13 @@ public class ProxyServlet extends HttpServlet
         @Override
         public void onHeaders(Response proxyResponse)
         {
+            // A not modified response revalidates the cached entry, that is served instead
+            if (capture != null && capture.revalidated(proxyResponse))
+                return;
+
             onResponseHeaders(request, response, proxyResponse);
+            if (capture != null)
+                capture.headers(proxyResponse, response);
 
             if (_log.isDebugEnabled())
             {
@@ -682,6 +855,9 @@ public class ProxyServlet extends HttpServlet
         @Override
         public void onContent(Response proxyResponse, ByteBuffer content)
         {
+            if (capture != null)
+                capture.content(content);
+
             byte[] buffer;
             int offset;
             int length = content.remaining();
@@ -710,12 +886,25 @@ public class ProxyServlet extends HttpServlet
         @Override
         public void onSuccess(Response proxyResponse)
         {
+            if (capture != null)
+            {
+                try
+                {
+                    capture.succeeded(response);
+                }
+                catch (IOException x)
+                {
+                    _log.debug(x);
+                }
+            }
             onResponseSuccess(request, response, proxyResponse);
         }
 
         @Override
         public void onFailure(Response proxyResponse, Throwable failure)
         {
+            if (capture != null)
+                capture.failed();
             onResponseFailure(request, response, proxyResponse, failure);
         }
 
@@ -725,4 +914,20 @@ public class ProxyServlet extends HttpServlet
             _log.debug("{} proxying complete", getRequestId(request));
         }
     }
+
+    private class AsyncProxyResponseListener extends ProxyResponseListener implements Response.AsyncContentListener
+    {
+        public AsyncProxyResponseListener(HttpServletRequest request, HttpServletResponse response, ProxyCache.Capture capture)
+        {
+            super(request, response, capture);
+        }
+
+        @Override
+        public void onContent(Response proxyResponse, ByteBuffer content, Callback callback)
+        {
+            if (capture != null)
+                capture.content(content);
+            onResponseContent(request, response, proxyResponse, content, callback);
+        }
+    }
 }
@@ -22,6 +22,8 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -48,6 +50,7 @@ public class BalancerServletTest
     private static final String CONTEXT_PATH = "/context";
     private static final String SERVLET_PATH = "/mapping";
 
+    private final Map<String, String> initParameters = new HashMap<>();
     private boolean stickySessions;
     private Server server1;
     private Server server2;
@@ -64,9 +67,12 @@ public class BalancerServletTest
     @After
     public void dispose() throws Exception
     {
-        server1.stop();
-        server2.stop();
-        balancer.stop();
+        if (server1 != null)
+            server1.stop();
+        if (server2 != null)
+            server2.stop();
+        if (balancer != null)
+            balancer.stop();
         client.stop();
     }
 
@@ -83,6 +89,8 @@ public class BalancerServletTest
         balancerServletHolder.setInitParameter("proxyPassReverse", "true");
         balancerServletHolder.setInitParameter("balancerMember." + "node1" + ".proxyTo", "http://localhost:" + getServerPort(server1));
         balancerServletHolder.setInitParameter("balancerMember." + "node2" + ".proxyTo", "http://localhost:" + getServerPort(server2));
+        for (Map.Entry<String, String> initParameter : initParameters.entrySet())
+            balancerServletHolder.setInitParameter(initParameter.getKey(), initParameter.getValue());
 
         balancer = createServer(balancerServletHolder, null);
         balancer.start();
@@ -114,11 +122,15 @@ public class BalancerServletTest
 
     protected byte[] sendRequestToBalancer(String path) throws Exception
     {
-        ContentResponse response = client.newRequest("localhost", getServerPort(balancer))
+        return sendRequest(path).getContent();
+    }
+
+    private ContentResponse sendRequest(String path) throws Exception
+    {
+        return client.newRequest("localhost", getServerPort(balancer))
                 .path(CONTEXT_PATH + SERVLET_PATH + path)
                 .timeout(5, TimeUnit.SECONDS)
                 .send();
-        return response.getContent();
     }
 
     @Test
@@ -161,6 +173,64 @@ public class BalancerServletTest
         Assert.assertEquals("success", msg);
     }
 
+    @Test
+    public void testFailingBalancerMemberIsEjected() throws Exception
+    {
+        stickySessions = false;
+        initParameters.put("maxFailures", "3");
+        startBalancer(CounterServlet.class);
+        server2.stop();
+
+        int failures = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            ContentResponse response = sendRequest("/ejection");
+            if (response.getStatus() != HttpServletResponse.SC_OK)
+                ++failures;
+        }
+        // Only the requests before the ejection fail
+        Assert.assertEquals(3, failures);
+    }
+
+    @Test
+    public void testLeastRequestsBalancer() throws Exception
+    {
+        stickySessions = false;
+        initParameters.put("strategy", "leastRequests");
+        startBalancer(CounterServlet.class);
+        for (int i = 0; i < 10; i++)
+        {
+            byte[] responseBytes = sendRequestToBalancer("/leastRequests");
+            String returnedCounter = readFirstLine(responseBytes);
+            // Without requests in flight the members are selected in turn
+            String expectedCounter = String.valueOf(i / 2);
+            Assert.assertEquals(expectedCounter, returnedCounter);
+        }
+    }
+
+    @Test
+    public void testOnlySuccessfulRequestsUpdateLatency() throws Exception
+    {
+        BalancerServlet.BalancerMember balancerMember = new BalancerServlet.BalancerMember("node", "http://localhost:8080");
+        balancerMember.begin();
+        balancerMember.complete(TimeUnit.MILLISECONDS.toNanos(10), true);
+        Assert.assertEquals(10, balancerMember.getLatency(), 0.001);
+
+        // A connection refused fails immediately, which must not make the member look fast
+        balancerMember.begin();
+        balancerMember.complete(0, false);
+        Assert.assertEquals(10, balancerMember.getLatency(), 0.001);
+        Assert.assertEquals(1, balancerMember.getFailures());
+
+        // A client abort is neither a failure nor a measure of the member latency
+        balancerMember.begin();
+        balancerMember.aborted();
+        Assert.assertEquals(10, balancerMember.getLatency(), 0.001);
+        Assert.assertEquals(1, balancerMember.getFailures());
+        Assert.assertEquals(0, balancerMember.getRequestsInFlight());
+        Assert.assertEquals(3, balancerMember.getRequests());
+    }
+
     private String readFirstLine(byte[] responseBytes) throws IOException
     {
         BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(responseBytes)));
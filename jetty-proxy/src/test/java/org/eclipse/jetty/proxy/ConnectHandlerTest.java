@@ -612,6 +612,52 @@ public class ConnectHandlerTest extends AbstractConnectHandlerTest
         }
     }
 
+    @Test
+    public void testCONNECTAndPOSTWithBigBodyAndGrowingRetainedBuffers() throws Exception
+    {
+        connectHandler.setMaxBufferSize(64 * 1024);
+        connectHandler.setRetainBuffers(true);
+
+        String hostPort = "localhost:" + serverConnector.getLocalPort();
+
+        String request = "" +
+                "CONNECT " + hostPort + " HTTP/1.1\r\n" +
+                "Host: " + hostPort + "\r\n" +
+                "\r\n";
+        try (Socket socket = newSocket())
+        {
+            OutputStream output = socket.getOutputStream();
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            output.write(request.getBytes("UTF-8"));
+            output.flush();
+
+            // Expect 200 OK from the CONNECT request
+            SimpleHttpResponse response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+            Assert.assertEquals(1, connectHandler.getTunnels());
+            Assert.assertEquals(1, connectHandler.getTunnelsTotal());
+
+            StringBuilder body = new StringBuilder();
+            String chunk = "0123456789ABCDEF";
+            for (int i = 0; i < 1024 * 1024; ++i)
+                body.append(chunk);
+
+            request = "" +
+                    "POST /echo HTTP/1.1\r\n" +
+                    "Host: " + hostPort + "\r\n" +
+                    "Content-Length: " + body.length() + "\r\n" +
+                    "\r\n" +
+                    body;
+            output.write(request.getBytes("UTF-8"));
+            output.flush();
+
+            response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+            Assert.assertEquals("POST /echo\r\n" + body, response.getBody());
+        }
+    }
+
     @Test
     public void testCONNECTAndPOSTWithContext() throws Exception
     {
@@ -19,8 +19,10 @@
 package org.eclipse.jetty.proxy;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.ConnectException;
@@ -36,6 +38,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 import javax.servlet.AsyncContext;
 import javax.servlet.AsyncEvent;
@@ -62,6 +65,7 @@ import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.FS;
 import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
 import org.eclipse.jetty.toolchain.test.TestTracker;
 import org.eclipse.jetty.toolchain.test.annotation.Slow;
@@ -420,6 +424,381 @@ public class ProxyServletTest
         Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testProxyWithBigResponseContentWithAsyncContent() throws Exception
+    {
+        ProxyServlet proxyServlet = new ProxyServlet();
+        proxyServlet.setAsyncContent(true);
+        prepareProxy(proxyServlet);
+
+        final byte[] content = new byte[1024 * 1024];
+        for (int i = 0; i < content.length; ++i)
+            content[i] = (byte)('a' + i % 26);
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.getOutputStream().write(content);
+            }
+        });
+
+        Request request = client.newRequest("localhost", serverConnector.getLocalPort()).path("/proxy/test");
+        final CountDownLatch latch = new CountDownLatch(1);
+        request.send(new BufferingResponseListener(2 * content.length)
+        {
+            @Override
+            public void onContent(Response response, ByteBuffer buffer)
+            {
+                try
+                {
+                    // Slow down the reader
+                    TimeUnit.MILLISECONDS.sleep(1);
+                    super.onContent(response, buffer);
+                }
+                catch (InterruptedException x)
+                {
+                    response.abort(x);
+                }
+            }
+
+            @Override
+            public void onComplete(Result result)
+            {
+                Assert.assertFalse(result.isFailed());
+                Assert.assertEquals(200, result.getResponse().getStatus());
+                Assert.assertArrayEquals(content, getContent());
+                latch.countDown();
+            }
+        });
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testProxyCache() throws Exception
+    {
+        prepareProxy(new ProxyServlet()
+        {
+            @Override
+            protected ProxyCache createProxyCache()
+            {
+                return new ProxyCache();
+            }
+        });
+        final AtomicInteger requests = new AtomicInteger();
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                resp.setHeader("Cache-Control", "max-age=60");
+                resp.setHeader("ETag", "\"1\"");
+                resp.getWriter().print("cached" + requests.incrementAndGet());
+            }
+        });
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                    .path("/cached")
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send();
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("cached1", response.getContentAsString());
+        }
+        Assert.assertEquals(1, requests.get());
+
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/cached")
+                .header("If-None-Match", "\"1\"")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        Assert.assertEquals(304, response.getStatus());
+        Assert.assertEquals(1, requests.get());
+
+        ProxyCache cache = proxyServlet.getProxyCache();
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testProxyCacheRevalidationUpdatesStoredHeaders() throws Exception
+    {
+        prepareProxy(new ProxyServlet()
+        {
+            @Override
+            protected ProxyCache createProxyCache()
+            {
+                return new ProxyCache();
+            }
+        });
+        final AtomicInteger requests = new AtomicInteger();
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                requests.incrementAndGet();
+                if ("\"1\"".equals(req.getHeader("If-None-Match")))
+                {
+                    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    resp.setHeader("Cache-Control", "max-age=60");
+                    resp.setHeader("X-Revalidated", "true");
+                    return;
+                }
+                resp.setHeader("Cache-Control", "max-age=0");
+                resp.setHeader("ETag", "\"1\"");
+                resp.getWriter().print("cached");
+            }
+        });
+
+        // Stored stale, then revalidated, then fresh from the headers of the 304
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                    .path("/revalidated")
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send();
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("cached", response.getContentAsString());
+            if (i > 0)
+            {
+                Assert.assertEquals("max-age=60", response.getHeaders().getStringField("Cache-Control"));
+                Assert.assertEquals("true", response.getHeaders().getStringField("X-Revalidated"));
+                Assert.assertEquals("\"1\"", response.getHeaders().getStringField("ETag"));
+            }
+        }
+        Assert.assertEquals(2, requests.get());
+
+        ProxyCache cache = proxyServlet.getProxyCache();
+        Assert.assertEquals(1, cache.getRevalidations());
+        Assert.assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testProxyCacheReleasesWaitersOfUnstorableResponse() throws Exception
+    {
+        prepareProxy(new ProxyServlet()
+        {
+            @Override
+            protected ProxyCache createProxyCache()
+            {
+                return new ProxyCache();
+            }
+        });
+        final CountDownLatch arrived = new CountDownLatch(1);
+        final CountDownLatch headers = new CountDownLatch(1);
+        final CountDownLatch complete = new CountDownLatch(1);
+        final CountDownLatch holding = new CountDownLatch(1);
+        final CountDownLatch unhold = new CountDownLatch(1);
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                resp.setHeader("Cache-Control", "no-store");
+                if (req.getHeader("X-Block") != null)
+                {
+                    arrived.countDown();
+                    await(headers);
+                    resp.getWriter().print("streamed");
+                    resp.flushBuffer();
+                    await(complete);
+                    resp.getWriter().print(" completed");
+                }
+                else if (req.getHeader("X-Hold") != null)
+                {
+                    holding.countDown();
+                    await(unhold);
+                    resp.getWriter().print("held");
+                }
+                else
+                {
+                    resp.getWriter().print("passed");
+                }
+            }
+        });
+        ProxyCache cache = proxyServlet.getProxyCache();
+
+        CompleteListener fetch = new CompleteListener();
+        client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/unstorable")
+                .header("X-Block", "true")
+                .send(fetch);
+        Assert.assertTrue(arrived.await(5, TimeUnit.SECONDS));
+
+        // Collapsed on the fetch, which has not received the response headers yet
+        CompleteListener waiter = new CompleteListener();
+        client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/unstorable")
+                .send(waiter);
+        long start = System.nanoTime();
+        while (cache.getCollapsed() == 0 && TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5)
+            TimeUnit.MILLISECONDS.sleep(10);
+        Assert.assertEquals(1, cache.getCollapsed());
+
+        // The headers show that the response cannot be stored, so the waiter
+        // is forwarded without waiting for the fetch to complete
+        headers.countDown();
+        Assert.assertTrue(waiter.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("passed", waiter.content);
+        Assert.assertEquals(1, fetch.latch.getCount());
+
+        complete.countDown();
+        Assert.assertTrue(fetch.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("streamed completed", fetch.content);
+
+        // The resource is remembered as not storable, so concurrent requests are not collapsed
+        CompleteListener held = new CompleteListener();
+        client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/unstorable")
+                .header("X-Hold", "true")
+                .send(held);
+        Assert.assertTrue(holding.await(5, TimeUnit.SECONDS));
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/unstorable")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        Assert.assertEquals("passed", response.getContentAsString());
+        Assert.assertEquals(1, held.latch.getCount());
+        Assert.assertEquals(1, cache.getCollapsed());
+
+        unhold.countDown();
+        Assert.assertTrue(held.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("held", held.content);
+    }
+
+    @Test
+    public void testProxyCacheCollapsedRequestTimesOut() throws Exception
+    {
+        prepareProxy(new ProxyServlet()
+        {
+            @Override
+            protected ProxyCache createProxyCache()
+            {
+                ProxyCache cache = new ProxyCache();
+                cache.setCollapseTimeout(500);
+                return cache;
+            }
+        });
+        final CountDownLatch arrived = new CountDownLatch(1);
+        final CountDownLatch complete = new CountDownLatch(1);
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                resp.setHeader("Cache-Control", "max-age=60");
+                if (req.getHeader("X-Block") != null)
+                {
+                    arrived.countDown();
+                    await(complete);
+                    resp.getWriter().print("fetched");
+                }
+                else
+                {
+                    resp.getWriter().print("forwarded");
+                }
+            }
+        });
+        ProxyCache cache = proxyServlet.getProxyCache();
+
+        CompleteListener fetch = new CompleteListener();
+        client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/slow")
+                .header("X-Block", "true")
+                .send(fetch);
+        Assert.assertTrue(arrived.await(5, TimeUnit.SECONDS));
+
+        // Waits for the fetch, then gives up and is forwarded
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/slow")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("forwarded", response.getContentAsString());
+        Assert.assertEquals(1, cache.getCollapsed());
+        Assert.assertEquals(1, fetch.latch.getCount());
+
+        complete.countDown();
+        Assert.assertTrue(fetch.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("fetched", fetch.content);
+    }
+
+    private static void await(CountDownLatch latch) throws IOException
+    {
+        try
+        {
+            if (!latch.await(10, TimeUnit.SECONDS))
+                throw new IOException("Timed out");
+        }
+        catch (InterruptedException x)
+        {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static class CompleteListener extends BufferingResponseListener
+    {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile String content;
+
+        @Override
+        public void onComplete(Result result)
+        {
+            if (!result.isFailed())
+                content = getContentAsString();
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testProxyCacheDeletesFilesWhenStopped() throws Exception
+    {
+        final File directory = MavenTestingUtils.getTargetTestingDir("proxy-cache");
+        FS.ensureEmpty(directory);
+        File leftover = new File(directory, "entry-leftover.cache");
+        Assert.assertTrue(leftover.createNewFile());
+
+        prepareProxy(new ProxyServlet()
+        {
+            @Override
+            protected ProxyCache createProxyCache()
+            {
+                ProxyCache cache = new ProxyCache();
+                cache.setCacheDirectory(directory);
+                // Spill every entry to disk
+                cache.setMaxMemorySize(1);
+                return cache;
+            }
+        });
+        Assert.assertFalse(leftover.exists());
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                resp.setHeader("Cache-Control", "max-age=60");
+                resp.getWriter().print("spilled");
+            }
+        });
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                    .path("/spilled" + i)
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send();
+            Assert.assertEquals(200, response.getStatus());
+        }
+        ProxyCache cache = proxyServlet.getProxyCache();
+        Assert.assertTrue(cache.getDiskSize() > 0);
+        Assert.assertTrue(directory.list().length > 0);
+
+        cache.stop();
+        Assert.assertEquals(0, directory.list().length);
+    }
+
     @Test
     public void testProxyWithQueryString() throws Exception
     {
@@ -19,24 +19,55 @@
 package org.eclipse.jetty.server;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
 
 
 /* ------------------------------------------------------------ */
 /**
- * An asynchronously writing NCSA Request Log
+ * An asynchronously writing NCSA Request Log.
+ * <p>
+ * Request entries are formatted by the request threads into a bounded queue, from which
+ * a single writer thread takes them in batches of up to {@link #getBatchSize()} entries
+ * that are written with a single flush of the log.  When the queue is full, entries are
+ * handled according to the {@link OverflowPolicy}.
  */
+@ManagedObject("NCSA standard format request log written by a background thread")
 public class AsyncNCSARequestLog extends NCSARequestLog
 {
     private static final Logger LOG = Log.getLogger(AsyncNCSARequestLog.class);
+
+    public enum OverflowPolicy
+    {
+        /** Wait for the writer thread to make space in the queue */
+        BLOCK,
+        /** Drop the entries that do not fit in the queue */
+        DROP,
+        /** Once the queue is half full, only queue one entry in {@link AsyncNCSARequestLog#getSampleRate()} and drop the others */
+        SAMPLE
+    }
+
     private final BlockingQueue<String> _queue;
+    private final CounterStatistic _depth = new CounterStatistic();
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _sampled = new AtomicLong();
+    private final Object _space = new Object();
     private transient WriterThread _thread;
-    private boolean _warnedFull;
+    private volatile boolean _warnedFull;
+    private OverflowPolicy _overflowPolicy = OverflowPolicy.DROP;
+    private int _sampleRate = 10;
+    private int _batchSize = 256;
 
     public AsyncNCSARequestLog()
     {
@@ -61,6 +92,78 @@ public class AsyncNCSARequestLog extends NCSARequestLog
         _queue=queue;
     }
 
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("policy applied to entries that do not fit in the queue")
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return _overflowPolicy;
+    }
+
+    /* ------------------------------------------------------------ */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+    {
+        _overflowPolicy = overflowPolicy;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("one in how many entries are queued by the SAMPLE policy once the queue is half full")
+    public int getSampleRate()
+    {
+        return _sampleRate;
+    }
+
+    /* ------------------------------------------------------------ */
+    public void setSampleRate(int sampleRate)
+    {
+        if (sampleRate<=0)
+            throw new IllegalArgumentException("sampleRate="+sampleRate);
+        _sampleRate = sampleRate;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("maximum number of entries written with a single flush")
+    public int getBatchSize()
+    {
+        return _batchSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize<=0)
+            throw new IllegalArgumentException("batchSize="+batchSize);
+        _batchSize = batchSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("number of entries waiting to be written")
+    public int getQueueDepth()
+    {
+        return _queue.size();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("maximum number of entries waiting to be written")
+    public long getQueueDepthMax()
+    {
+        return _depth.getMax();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("number of entries dropped because the queue was full")
+    public long getDropped()
+    {
+        return _dropped.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedOperation("reset the request log statistics")
+    public void resetStatistics()
+    {
+        _depth.reset(_queue.size());
+        _dropped.set(0);
+    }
+
     private class WriterThread extends Thread
     {
         WriterThread()
@@ -71,19 +174,16 @@ public class AsyncNCSARequestLog extends NCSARequestLog
         @Override
         public void run()
         {
+            List<String> batch = new ArrayList<>(_batchSize);
             while (isRunning())
             {
                 try
                 {
                     String log = _queue.poll(10,TimeUnit.SECONDS);
                     if (log!=null)
-                        AsyncNCSARequestLog.super.write(log);
-
-                    while(!_queue.isEmpty())
                     {
-                        log=_queue.poll();
-                        if (log!=null)
-                            AsyncNCSARequestLog.super.write(log);
+                        batch.add(log);
+                        writeBatches(batch);
                     }
                 }
                 catch (IOException e)
@@ -94,13 +194,49 @@ public class AsyncNCSARequestLog extends NCSARequestLog
                 {
                     LOG.ignore(e);
                 }
+                finally
+                {
+                    batch.clear();
+                }
             }
         }
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * Take the queued entries and write them in batches.
+     * @param batch a list holding the entries already taken from the queue
+     */
+    private void writeBatches(List<String> batch) throws IOException
+    {
+        while (true)
+        {
+            while (batch.size()<_batchSize)
+            {
+                String log=_queue.poll();
+                if (log==null)
+                    break;
+                batch.add(log);
+            }
+            if (batch.isEmpty())
+                return;
+            _depth.subtract(batch.size());
+            if (_overflowPolicy==OverflowPolicy.BLOCK)
+            {
+                synchronized (_space)
+                {
+                    _space.notifyAll();
+                }
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
     @Override
     protected synchronized void doStart() throws Exception
     {
+        _warnedFull=false;
         super.doStart();
         _thread = new WriterThread();
         _thread.start();
@@ -111,6 +247,15 @@ public class AsyncNCSARequestLog extends NCSARequestLog
     {
         _thread.interrupt();
         _thread.join();
+        // write the entries still queued
+        try
+        {
+            writeBatches(new ArrayList<String>(_batchSize));
+        }
+        catch (IOException e)
+        {
+            LOG.warn(e);
+        }
         super.doStop();
         _thread=null;
     }
@@ -118,12 +263,60 @@ public class AsyncNCSARequestLog extends NCSARequestLog
     @Override
     public void write(String log) throws IOException
     {
-        if (!_queue.offer(log))
+        boolean queued;
+        switch (_overflowPolicy)
         {
-            if (_warnedFull)
+            case BLOCK:
+                queued=put(log);
+                break;
+
+            case SAMPLE:
+                if (_queue.size()>_queue.remainingCapacity() && _sampled.incrementAndGet()%_sampleRate!=0)
+                    queued=false;
+                else
+                    queued=_queue.offer(log);
+                break;
+
+            default:
+                queued=_queue.offer(log);
+                break;
+        }
+
+        if (queued)
+            _depth.increment();
+        else
+        {
+            _dropped.incrementAndGet();
+            if (!_warnedFull)
+            {
+                _warnedFull=true;
                 LOG.warn("Log Queue overflow");
-            _warnedFull=true;
+            }
         }
     }
 
+    /* ------------------------------------------------------------ */
+    private boolean put(String log)
+    {
+        try
+        {
+            while (!_queue.offer(log))
+            {
+                // do not wait for a writer thread that has been stopped
+                if (!isRunning())
+                    return false;
+                synchronized (_space)
+                {
+                    if (_queue.remainingCapacity()==0)
+                        _space.wait(100);
+                }
+            }
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            LOG.ignore(e);
+            return false;
+        }
+    }
 }
@@ -45,6 +45,7 @@ import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.server.HttpChannelState.Next;
 import org.eclipse.jetty.server.handler.ErrorHandler;
 import org.eclipse.jetty.util.BlockingCallback;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.URIUtil;
@@ -64,7 +65,7 @@ import org.eclipse.jetty.util.thread.Scheduler;
  * HttpTransport.completed().
  *
  */
-public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable
+public class HttpChannel<T> implements HttpParser.RequestHandler<T>, HttpParser.BufferedFieldHandler, Runnable
 {
     private static final Logger LOG = Log.getLogger(HttpChannel.class);
     private static final ThreadLocal<HttpChannel<?>> __currentChannel = new ThreadLocal<>();
@@ -166,6 +167,11 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable
         return _endPoint;
     }
 
+    public HttpTransport getHttpTransport()
+    {
+        return _transport;
+    }
+
     public InetSocketAddress getLocalAddress()
     {
         return _endPoint.getLocalAddress();
@@ -519,6 +525,24 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable
         return false;
     }
 
+    @Override
+    public boolean isBufferingHeaderValues()
+    {
+        return _configuration.isBufferedHeaderValues();
+    }
+
+    @Override
+    public boolean parsedHeader(HttpHeader header, String name, ByteBuffer buffer, int offset, int length)
+    {
+        // Headers interpreted by parsedHeader(HttpField) need their value as a String
+        if (header!=HttpHeader.EXPECT && header!=HttpHeader.CONTENT_TYPE)
+        {
+            _request.getHttpFields().add(header,name,buffer,offset,length);
+            return false;
+        }
+        return parsedHeader(new HttpField(header,name,BufferUtil.toString(buffer,offset,length,StringUtil.__ISO_8859_1_CHARSET)));
+    }
+
     @Override
     public boolean parsedHostHeader(String host, int port)
     {
@@ -48,11 +48,13 @@ public class HttpConfiguration
     private int _requestHeaderSize=8*1024;
     private int _responseHeaderSize=8*1024;
     private int _headerCacheSize=512;
+    private int _sharedHeaderCacheSize=0;
     private int _securePort;
     private String _secureScheme = HttpScheme.HTTPS.asString();
     private boolean _sendServerVersion = true; //send Server: header
     private boolean _sendXPoweredBy = false; //send X-Powered-By: header
     private boolean _sendDateHeader = false; //send Date: header
+    private boolean _bufferedHeaderValues = false;
 
     public interface Customizer
     {
@@ -83,6 +85,8 @@ public class HttpConfiguration
         _sendDateHeader=config._sendDateHeader;
         _sendServerVersion=config._sendServerVersion;
         _headerCacheSize=config._headerCacheSize;
+        _sharedHeaderCacheSize=config._sharedHeaderCacheSize;
+        _bufferedHeaderValues=config._bufferedHeaderValues;
     }
     
     /* ------------------------------------------------------------ */
@@ -136,6 +140,12 @@ public class HttpConfiguration
         return _headerCacheSize;
     }
 
+    @ManagedAttribute("The size in bytes of the HTTP header field cache shared by all connections")
+    public int getSharedHeaderCacheSize()
+    {
+        return _sharedHeaderCacheSize;
+    }
+
     @ManagedAttribute("The port to which Integral or Confidential security constraints are redirected")
     public int getSecurePort()
     {
@@ -180,6 +190,26 @@ public class HttpConfiguration
     {
         return _sendDateHeader;
     }
+
+    /* ------------------------------------------------------------ */
+    /** Set whether request header values are kept as bytes.
+     * <p>If true, the values of request headers that are not interpreted by the
+     * server are copied as bytes into the request {@link org.eclipse.jetty.http.HttpFields}
+     * and only converted to Strings if the application asks for them. This reduces
+     * the garbage produced per request for applications, such as proxies, that do
+     * not look at most of the headers they receive.</p>
+     * @param bufferedHeaderValues true if request header values are kept as bytes
+     */
+    public void setBufferedHeaderValues(boolean bufferedHeaderValues)
+    {
+        _bufferedHeaderValues = bufferedHeaderValues;
+    }
+
+    @ManagedAttribute("if true, request header values are kept as bytes until asked for")
+    public boolean isBufferedHeaderValues()
+    {
+        return _bufferedHeaderValues;
+    }
     
     /* ------------------------------------------------------------ */
     /**
@@ -241,6 +271,18 @@ public class HttpConfiguration
         _headerCacheSize = headerCacheSize;
     }
 
+    /* ------------------------------------------------------------ */
+    /** Set the shared header field cache size.
+     * <p>The shared cache learns the header fields frequently received by all the connections
+     * of a connector.  A size of 0 or less, the default, disables the shared cache.</p>
+     * @param sharedHeaderCacheSize The size in bytes of the shared header field cache.
+     * @see org.eclipse.jetty.http.HttpFieldCache
+     */
+    public void setSharedHeaderCacheSize(int sharedHeaderCacheSize)
+    {
+        _sharedHeaderCacheSize = sharedHeaderCacheSize;
+    }
+
     /* ------------------------------------------------------------ */
     /** Set the TCP/IP port used for CONFIDENTIAL and INTEGRAL 
      * redirections.
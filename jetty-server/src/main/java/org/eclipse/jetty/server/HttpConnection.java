@@ -98,6 +98,11 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         LOG.debug("New HTTP Connection {}", this);
     }
 
+    public HttpParser getParser()
+    {
+        return _parser;
+    }
+
     protected HttpParser newHttpParser()
     {
         return new HttpParser(newRequestHandler(), getHttpConfiguration().getRequestHeaderSize());
@@ -20,6 +20,7 @@
 package org.eclipse.jetty.server;
 
 
+import org.eclipse.jetty.http.HttpFieldCache;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
@@ -35,6 +36,7 @@ import org.eclipse.jetty.util.annotation.Name;
 public class HttpConnectionFactory extends AbstractConnectionFactory implements HttpConfiguration.ConnectionFactory
 {
     private final HttpConfiguration _config;
+    private volatile HttpFieldCache _fieldCache;
 
     public HttpConnectionFactory()
     {
@@ -55,10 +57,45 @@ public class HttpConnectionFactory extends AbstractConnectionFactory implements
         return _config;
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The header field cache shared by the connections of this factory, or null
+     * @see HttpConfiguration#getSharedHeaderCacheSize()
+     */
+    public HttpFieldCache getFieldCache()
+    {
+        return _fieldCache;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        int size=_config.getSharedHeaderCacheSize();
+        if (size>0)
+        {
+            _fieldCache=new HttpFieldCache(Math.min(size,Character.MAX_VALUE));
+            addBean(_fieldCache);
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        if (_fieldCache!=null)
+        {
+            removeBean(_fieldCache);
+            _fieldCache=null;
+        }
+    }
+
     @Override
     public Connection newConnection(Connector connector, EndPoint endPoint)
     {
-        return configure(new HttpConnection(_config, connector, endPoint), connector, endPoint);
+        HttpConnection connection=new HttpConnection(_config, connector, endPoint);
+        connection.getParser().setSharedFieldCache(_fieldCache);
+        return configure(connection, connector, endPoint);
     }
 
 }
@@ -22,6 +22,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletOutputStream;
@@ -30,6 +31,7 @@ import javax.servlet.ServletResponse;
 
 import org.eclipse.jetty.http.HttpContent;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.io.ChannelEndPoint;
 import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.util.BlockingCallback;
 import org.eclipse.jetty.util.BufferUtil;
@@ -48,6 +50,8 @@ import org.eclipse.jetty.util.resource.Resource;
  * <p>{@link HttpOutput} can be closed and reopened, to allow requests included
  * via {@link RequestDispatcher#include(ServletRequest, ServletResponse)} to
  * close the stream, to be reopened after the inclusion ends.</p>
+ * <p>Content sent from a {@link FileChannel} over a non encrypted connection is transferred
+ * to the connection without being copied through buffers.</p>
  */
 public class HttpOutput extends ServletOutputStream
 {
@@ -329,7 +333,7 @@ public class HttpOutput extends ServletOutputStream
     public void sendContent(ReadableByteChannel in) throws IOException
     {
         final BlockingCallback callback =_channel.getWriteBlockingCallback();
-        new ReadableByteChannelWritingCB(in,callback).iterate();
+        sendContent(in,callback);
         callback.block();
     }
     
@@ -371,6 +375,62 @@ public class HttpOutput extends ServletOutputStream
         });
     }
 
+    /* ------------------------------------------------------------ */
+    /** Asynchronous write of content.
+     * <p>Unlike {@link #sendContent(ByteBuffer, Callback)}, the content need not be the last
+     * content of the response, so this method may be called again once the callback has
+     * completed. Any content previously aggregated by the blocking write methods is written first.
+     * The content buffer is not copied, so it must not be modified until the callback has completed.
+     * @param content The content to write
+     * @param callback The callback to use to notify success or failure
+     */
+    public void write(final ByteBuffer content, final Callback callback)
+    {
+        if (isClosed())
+        {
+            callback.failed(new EofException("Closed"));
+            return;
+        }
+
+        _written+=content.remaining();
+        final boolean complete=_channel.getResponse().isAllContentWritten(_written);
+        final Callback written = !complete ? callback : new Callback()
+        {
+            @Override
+            public void succeeded()
+            {
+                closed();
+                callback.succeeded();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                callback.failed(x);
+            }
+        };
+
+        if (BufferUtil.hasContent(_aggregate))
+        {
+            _channel.write(_aggregate,false,new Callback()
+            {
+                @Override
+                public void succeeded()
+                {
+                    _channel.write(content,complete,written);
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    callback.failed(x);
+                }
+            });
+        }
+        else
+            _channel.write(content,complete,written);
+    }
+
     /* ------------------------------------------------------------ */
     /** Asynchronous send of content.
      * @param in The content to send
@@ -388,9 +448,54 @@ public class HttpOutput extends ServletOutputStream
      */
     public void sendContent(ReadableByteChannel in, Callback callback)
     {
+        if (in instanceof FileChannel)
+        {
+            FileChannelTransferCB transfer = newFileChannelTransferCB((FileChannel)in,callback);
+            if (transfer!=null)
+            {
+                transfer.start();
+                return;
+            }
+        }
         new ReadableByteChannelWritingCB(in,callback).iterate();
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @return a callback that transfers all the remaining content of the file without copying,
+     * or null if the content cannot be transferred because the connection is not a plain HTTP/1
+     * connection (it is encrypted or the content is framed by another protocol such as SPDY) or the
+     * response is committed, is to a HEAD request or has a content length other than the length of the content.
+     */
+    private FileChannelTransferCB newFileChannelTransferCB(FileChannel file, Callback callback)
+    {
+        try
+        {
+            if (!(_channel.getHttpTransport() instanceof HttpConnection) ||
+                !(_channel.getEndPoint() instanceof ChannelEndPoint) ||
+                _channel.isCommitted() ||
+                BufferUtil.hasContent(_aggregate) ||
+                _channel.getRequest().isHead())
+                return null;
+
+            long position=file.position();
+            long length=file.size()-position;
+            Response response=_channel.getResponse();
+            long contentLength=response.getLongContentLength();
+            if (length<=0 || contentLength>=0 && contentLength!=length)
+                return null;
+            if (contentLength<0)
+                response.setLongContentLength(length);
+
+            return new FileChannelTransferCB(file,position,length,callback);
+        }
+        catch(IOException e)
+        {
+            LOG.ignore(e);
+            return null;
+        }
+    }
+
     /* ------------------------------------------------------------ */
     /** Asynchronous send of content.
      * @param httpContent The content to send
@@ -515,6 +620,77 @@ public class HttpOutput extends ServletOutputStream
         
     }
 
+    /* ------------------------------------------------------------ */
+    /** A callback that commits the response, then transfers the content of a
+     * {@link FileChannel} directly to the {@link ChannelEndPoint} with
+     * {@link ChannelEndPoint#transfer(Callback, FileChannel, long, long)}, then completes
+     * the response. The response must have a content length, so that the
+     * content is neither chunked nor otherwise encoded by the generator.
+     * The file is closed once transferred.
+     */
+    private class FileChannelTransferCB implements Callback
+    {
+        private final FileChannel _file;
+        private final long _position;
+        private final long _length;
+        private final Callback _callback;
+        private int _step;
+
+        private FileChannelTransferCB(FileChannel file, long position, long length, Callback callback)
+        {
+            _file=file;
+            _position=position;
+            _length=length;
+            _callback=callback;
+        }
+
+        private void start()
+        {
+            // Commit the response headers
+            _channel.write(BufferUtil.EMPTY_BUFFER,false,this);
+        }
+
+        @Override
+        public void succeeded()
+        {
+            switch(_step++)
+            {
+                case 0:
+                    ((ChannelEndPoint)_channel.getEndPoint()).transfer(this,_file,_position,_length);
+                    break;
+
+                case 1:
+                    _written+=_length;
+                    _channel.write(BufferUtil.EMPTY_BUFFER,true,this);
+                    break;
+
+                default:
+                    close();
+                    closed();
+                    _callback.succeeded();
+            }
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            close();
+            _callback.failed(x);
+        }
+
+        private void close()
+        {
+            try
+            {
+                _file.close();
+            }
+            catch(IOException e)
+            {
+                LOG.ignore(e);
+            }
+        }
+    }
+
     /* ------------------------------------------------------------ */
     /** An iterating callback that will take content from a 
      * ReadableByteChannel and write it to the {@link HttpChannel}.
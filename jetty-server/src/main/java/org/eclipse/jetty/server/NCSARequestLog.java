@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.List;
 import java.util.TimeZone;
 
 import org.eclipse.jetty.util.RolloverFileOutputStream;
@@ -213,6 +214,28 @@ public class NCSARequestLog extends AbstractNCSARequestLog implements RequestLog
             _writer.flush();
         }
     }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Write several request entries, flushing the log only once.
+     *
+     * @param requestEntries the entries to write
+     * @throws IOException if the entries cannot be written
+     */
+    protected void write(List<String> requestEntries) throws IOException
+    {
+        synchronized(this)
+        {
+            if (_writer==null)
+                return;
+            for (String requestEntry : requestEntries)
+            {
+                _writer.write(requestEntry);
+                _writer.write(StringUtil.__LINE_SEPARATOR);
+            }
+            _writer.flush();
+        }
+    }
     
     /* ------------------------------------------------------------ */
     /**
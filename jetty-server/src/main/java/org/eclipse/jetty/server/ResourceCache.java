@@ -19,6 +19,7 @@
 package org.eclipse.jetty.server;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -28,12 +29,17 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 import org.eclipse.jetty.http.HttpContent;
 import org.eclipse.jetty.http.HttpContent.ResourceAsHttpContent;
+import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.log.Log;
@@ -49,6 +55,8 @@ import org.eclipse.jetty.util.resource.ResourceFactory;
 public class ResourceCache
 {
     private static final Logger LOG = Log.getLogger(ResourceCache.class);
+    private static final Object __GZIP_COMPRESSING = new Object();
+    private static final Object __GZIP_NONE = new Object();
 
     private final ConcurrentMap<String,Content> _cache;
     private final AtomicInteger _cachedSize;
@@ -58,10 +66,15 @@ public class ResourceCache
     private final MimeTypes _mimeTypes;
     private final boolean _etagSupported;
     private final boolean  _useFileMappedBuffer;
+    private volatile SharedContentCache _sharedCache;
+    private final AtomicInteger _gzipCachedSize = new AtomicInteger();
+    private volatile Executor _gzipExecutor;
     
     private int _maxCachedFileSize =4*1024*1024;
     private int _maxCachedFiles=2048;
     private int _maxCacheSize =32*1024*1024;
+    private int _maxGzipCacheSize;
+    private int _minGzipLength =256;
     
     /* ------------------------------------------------------------ */
     /** Constructor.
@@ -136,6 +149,78 @@ public class ResourceCache
         shrinkCache();
     }
 
+    /* ------------------------------------------------------------ */
+    public SharedContentCache getSharedCache()
+    {
+        return _sharedCache;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param sharedCache The server wide cache in which the buffers of the file content
+     * are kept, or null to keep the buffers in this cache. When set, the size of the content
+     * of files is not accounted in the cached size of this cache, which then only limits
+     * the number of cached files.
+     */
+    public void setSharedCache(SharedContentCache sharedCache)
+    {
+        flushCache();
+        _sharedCache = sharedCache;
+    }
+
+    /* ------------------------------------------------------------ */
+    public int getMaxGzipCacheSize()
+    {
+        return _maxGzipCacheSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param maxGzipCacheSize The maximum total size of the gzip variants compressed
+     * and cached for the cached content, or 0 (the default) to not compress content.
+     */
+    public void setMaxGzipCacheSize(int maxGzipCacheSize)
+    {
+        _maxGzipCacheSize = maxGzipCacheSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    public int getGzipCachedSize()
+    {
+        return _gzipCachedSize.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    public int getMinGzipLength()
+    {
+        return _minGzipLength;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param minGzipLength The minimum length of content worth compressing.
+     */
+    public void setMinGzipLength(int minGzipLength)
+    {
+        _minGzipLength = minGzipLength;
+    }
+
+    /* ------------------------------------------------------------ */
+    public Executor getGzipExecutor()
+    {
+        return _gzipExecutor;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param gzipExecutor The executor used to compress content in the background, 
+     * or null to compress content in the thread that first asks for its gzip variant.
+     */
+    public void setGzipExecutor(Executor gzipExecutor)
+    {
+        _gzipExecutor = gzipExecutor;
+    }
+
     /* ------------------------------------------------------------ */
     public boolean isUseFileMappedBuffer()
     {
@@ -208,6 +293,40 @@ public class ResourceCache
         return  (len>0 && len<_maxCachedFileSize && len<_maxCacheSize);
     }
     
+    /* ------------------------------------------------------------ */
+    /**
+     * @param content The cached content
+     * @return True if a gzip variant of the content may be compressed and cached. The default
+     * implementation tests the gzip cache size, the content length and whether the content
+     * type is textual.
+     */
+    protected boolean isGzipCompressible(Content content)
+    {
+        if (_maxGzipCacheSize<=0 || content._length<_minGzipLength || content._length>_maxGzipCacheSize)
+            return false;
+        String type=content.getContentType();
+        if (type==null)
+            return false;
+        return type.startsWith("text/") || type.contains("javascript") || type.contains("json") || type.contains("xml");
+    }
+    
+    /* ------------------------------------------------------------ */
+    private static HttpField[] preEncodeFields(String contentType, String lastModified, String etag)
+    {
+        HttpField[] fields = new HttpField[(contentType==null?0:1)+(lastModified==null?0:1)+(etag==null?0:1)];
+        int i=0;
+        if (contentType!=null)
+        {
+            HttpField field=HttpField.CONTENT_TYPE.get(contentType);
+            fields[i++]=field!=null?field:new HttpField.CachedHttpField(HttpHeader.CONTENT_TYPE,contentType);
+        }
+        if (lastModified!=null)
+            fields[i++]=new HttpField.CachedHttpField(HttpHeader.LAST_MODIFIED,lastModified);
+        if (etag!=null)
+            fields[i++]=new HttpField.CachedHttpField(HttpHeader.ETAG,etag);
+        return fields;
+    }
+
     /* ------------------------------------------------------------ */
     private HttpContent load(String pathInContext, Resource resource)
         throws IOException
@@ -363,13 +482,18 @@ public class ResourceCache
         final int _length;
         final String _key;
         final long _lastModified;
-        final ByteBuffer _lastModifiedBytes;
-        final ByteBuffer _contentType;
+        final String _lastModifiedValue;
+        final String _contentType;
         final String _etag;
+        final HttpField[] _preEncodedFields;
+        final SharedContentCache _shared;
+        final SharedContentCache.Key _sharedKey;
+        final AtomicInteger _cachedLength=new AtomicInteger();
         
         volatile long _lastAccessed;
         AtomicReference<ByteBuffer> _indirectBuffer=new AtomicReference<ByteBuffer>();
         AtomicReference<ByteBuffer> _directBuffer=new AtomicReference<ByteBuffer>();
+        AtomicReference<Object> _gzip=new AtomicReference<Object>();
 
         /* ------------------------------------------------------------ */
         Content(String pathInContext,Resource resource)
@@ -378,17 +502,23 @@ public class ResourceCache
             _resource=resource;
 
             String mimeType = _mimeTypes.getMimeByExtension(_resource.toString());
-            _contentType=(mimeType==null?null:BufferUtil.toBuffer(mimeType));
+            _contentType=mimeType;
             boolean exists=resource.exists();
             _lastModified=exists?resource.lastModified():-1;
-            _lastModifiedBytes=_lastModified<0?null:BufferUtil.toBuffer(HttpFields.formatDate(_lastModified));
+            _lastModifiedValue=_lastModified<0?null:HttpFields.formatDate(_lastModified);
             
             _length=exists?(int)resource.length():0;
-            _cachedSize.addAndGet(_length);
+            _shared=_sharedCache;
+            _sharedKey=_shared==null?null:SharedContentCache.keyOf(resource);
+            // The content of files in the shared cache is accounted there,
+            // unless the shared cache does not take it and it is loaded here
+            if (_sharedKey==null)
+                cachedLocally();
             _cachedFiles.incrementAndGet();
             _lastAccessed=System.currentTimeMillis();
             
             _etag=ResourceCache.this._etagSupported?resource.getWeakETag():null;
+            _preEncodedFields=preEncodeFields(_contentType,_lastModifiedValue,_etag);
         }
 
 
@@ -438,27 +568,147 @@ public class ResourceCache
             return false;
         }
 
+        /* ------------------------------------------------------------ */
+        /** Account the content in the size of this cache, once.
+         */
+        private void cachedLocally()
+        {
+            if (_cachedLength.compareAndSet(0,_length))
+                _cachedSize.addAndGet(_length);
+        }
+
+        /* ------------------------------------------------------------ */
+        /** Stop accounting the content in the size of this cache, once the
+         * shared cache holds all of its buffers.
+         */
+        private void uncachedLocally()
+        {
+            if (_indirectBuffer.get()==null && _directBuffer.get()==null)
+            {
+                int cachedLength=_cachedLength.get();
+                if (cachedLength>0 && _cachedLength.compareAndSet(cachedLength,0))
+                    _cachedSize.addAndGet(-cachedLength);
+            }
+        }
+
         /* ------------------------------------------------------------ */
         protected void invalidate()
         {
             // Invalidate it
-            _cachedSize.addAndGet(-_length);
+            int cachedLength=_cachedLength.getAndSet(-1);
+            if (cachedLength>0)
+                _cachedSize.addAndGet(-cachedLength);
             _cachedFiles.decrementAndGet();
             _resource.close(); 
+
+            Object gzip=_gzip.getAndSet(__GZIP_NONE);
+            if (gzip instanceof GzipContent)
+                _gzipCachedSize.addAndGet(-(int)((GzipContent)gzip).getContentLength());
+        }
+
+        /* ------------------------------------------------------------ */
+        public boolean isGzipCompressible()
+        {
+            return ResourceCache.this.isGzipCompressible(this);
+        }
+
+        /* ------------------------------------------------------------ */
+        /**
+         * @return The gzip variant of this content, or null if it is not compressible or
+         * it is not compressed yet, in which case the compression is started.
+         */
+        @Override
+        public HttpContent getGzipContent()
+        {
+            Object gzip=_gzip.get();
+            if (gzip==null && isGzipCompressible() && _gzipCachedSize.get()+_length<=_maxGzipCacheSize &&
+                _gzip.compareAndSet(null,__GZIP_COMPRESSING))
+            {
+                Runnable compress = new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        compressGzip();
+                    }
+                };
+                Executor executor=_gzipExecutor;
+                if (executor==null)
+                    compress.run();
+                else
+                {
+                    try
+                    {
+                        executor.execute(compress);
+                    }
+                    catch(RejectedExecutionException e)
+                    {
+                        LOG.debug(e);
+                        _gzip.compareAndSet(__GZIP_COMPRESSING,null);
+                    }
+                }
+                gzip=_gzip.get();
+            }
+            return gzip instanceof GzipContent?(GzipContent)gzip:null;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public HttpField[] getPreEncodedFields()
+        {
+            return _preEncodedFields;
+        }
+
+        /* ------------------------------------------------------------ */
+        private void compressGzip()
+        {
+            try
+            {
+                ByteBuffer identity=getIndirectBuffer();
+                if (identity==null)
+                {
+                    _gzip.compareAndSet(__GZIP_COMPRESSING,__GZIP_NONE);
+                    return;
+                }
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream(_length/2);
+                try (GZIPOutputStream out = new GZIPOutputStream(bout))
+                {
+                    BufferUtil.writeTo(identity,out);
+                }
+                byte[] compressed=bout.toByteArray();
+
+                // Only keep a variant that is smaller and fits the budget
+                if (compressed.length>=_length || _gzipCachedSize.addAndGet(compressed.length)>_maxGzipCacheSize)
+                {
+                    if (compressed.length<_length)
+                        _gzipCachedSize.addAndGet(-compressed.length);
+                    _gzip.compareAndSet(__GZIP_COMPRESSING,compressed.length<_length?null:__GZIP_NONE);
+                    return;
+                }
+
+                if (!_gzip.compareAndSet(__GZIP_COMPRESSING,new GzipContent(this,compressed)))
+                    _gzipCachedSize.addAndGet(-compressed.length);
+            }
+            catch(IOException e)
+            {
+                LOG.warn(e);
+                _gzip.compareAndSet(__GZIP_COMPRESSING,__GZIP_NONE);
+            }
         }
 
         /* ------------------------------------------------------------ */
         @Override
         public String getLastModified()
         {
-            return BufferUtil.toString(_lastModifiedBytes);
+            return _lastModifiedValue;
         }
 
         /* ------------------------------------------------------------ */
         @Override
         public String getContentType()
         {
-            return BufferUtil.toString(_contentType);
+            return _contentType;
         }
 
         /* ------------------------------------------------------------ */
@@ -472,6 +722,13 @@ public class ResourceCache
         @Override
         public ByteBuffer getIndirectBuffer()
         {
+            if (_sharedKey!=null)
+            {
+                ByteBuffer shared=_shared.getIndirectBuffer(_sharedKey,_lastModified,_length);
+                if (shared!=null)
+                    return shared.slice();
+            }
+
             ByteBuffer buffer = _indirectBuffer.get();
             if (buffer==null)
             {
@@ -479,11 +736,22 @@ public class ResourceCache
                 
                 if (buffer2==null)
                     LOG.warn("Could not load "+this);
+                else if (_sharedKey!=null && _shared.putIndirectBuffer(_sharedKey,buffer2,_lastModified,_length))
+                    buffer=buffer2;
                 else if (_indirectBuffer.compareAndSet(null,buffer2))
+                {
                     buffer=buffer2;
+                    cachedLocally();
+                }
                 else
                     buffer=_indirectBuffer.get();
             }
+            else if (_sharedKey!=null && _shared.putIndirectBuffer(_sharedKey,buffer,_lastModified,_length))
+            {
+                // Admitted on a later miss, the shared cache now holds the buffer
+                if (_indirectBuffer.compareAndSet(buffer,null))
+                    uncachedLocally();
+            }
             if (buffer==null)
                 return null;
             return buffer.slice();
@@ -494,6 +762,13 @@ public class ResourceCache
         @Override
         public ByteBuffer getDirectBuffer()
         {
+            if (_sharedKey!=null)
+            {
+                ByteBuffer shared=_shared.getDirectBuffer(_sharedKey,_lastModified,_length,_useFileMappedBuffer);
+                if (shared!=null)
+                    return shared.asReadOnlyBuffer();
+            }
+
             ByteBuffer buffer = _directBuffer.get();
             if (buffer==null)
             {
@@ -501,11 +776,22 @@ public class ResourceCache
 
                 if (buffer2==null)
                     LOG.warn("Could not load "+this);
+                else if (_sharedKey!=null && _shared.putDirectBuffer(_sharedKey,buffer2,_lastModified,_length,_useFileMappedBuffer))
+                    buffer=buffer2;
                 else if (_directBuffer.compareAndSet(null,buffer2))
+                {
                     buffer=buffer2;
+                    cachedLocally();
+                }
                 else
                     buffer=_directBuffer.get();
             }
+            else if (_sharedKey!=null && _shared.putDirectBuffer(_sharedKey,buffer,_lastModified,_length,_useFileMappedBuffer))
+            {
+                // Admitted on a later miss, the shared cache now holds the buffer
+                if (_directBuffer.compareAndSet(buffer,null))
+                    uncachedLocally();
+            }
             if (buffer==null)
                 return null;
             return buffer.asReadOnlyBuffer();
@@ -541,7 +827,119 @@ public class ResourceCache
         @Override
         public String toString()
         {
-            return String.format("%s %s %d %s %s",_resource,_resource.exists(),_resource.lastModified(),_contentType,_lastModifiedBytes);
+            return String.format("%s %s %d %s %s",_resource,_resource.exists(),_resource.lastModified(),_contentType,_lastModifiedValue);
         }   
     }
+
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    /** The gzip content encoded variant of a cached Content.
+     */
+    public class GzipContent implements HttpContent
+    {
+        final Content _content;
+        final byte[] _compressed;
+        final String _etag;
+        final HttpField[] _preEncodedFields;
+
+        /* ------------------------------------------------------------ */
+        GzipContent(Content content, byte[] compressed)
+        {
+            _content=content;
+            _compressed=compressed;
+            String etag=content.getETag();
+            _etag=etag==null?null:etag.endsWith("\"")?etag.substring(0,etag.length()-1)+"--gzip\"":etag+"--gzip";
+            _preEncodedFields=preEncodeFields(content._contentType,content._lastModifiedValue,_etag);
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public String getContentType()
+        {
+            return _content.getContentType();
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public String getLastModified()
+        {
+            return _content.getLastModified();
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public ByteBuffer getIndirectBuffer()
+        {
+            return ByteBuffer.wrap(_compressed).asReadOnlyBuffer();
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public ByteBuffer getDirectBuffer()
+        {
+            return null;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public String getETag()
+        {
+            return _etag;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public Resource getResource()
+        {
+            return _content.getResource();
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public long getContentLength()
+        {
+            return _compressed.length;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            return new ByteArrayInputStream(_compressed);
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public ReadableByteChannel getReadableByteChannel() throws IOException
+        {
+            return null;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public void release()
+        {
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public HttpContent getGzipContent()
+        {
+            return null;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public HttpField[] getPreEncodedFields()
+        {
+            return _preEncodedFields;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public String toString()
+        {
+            return String.format("%s gzip %d",_content,_compressed.length);
+        }
+    }
 }
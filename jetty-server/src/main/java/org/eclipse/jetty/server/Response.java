@@ -133,6 +133,19 @@ public class Response implements HttpServletResponse
     public void setHeaders(HttpContent httpContent)
     {
         Response response = _channel.getResponse();
+        HttpField[] preEncoded = httpContent.getPreEncodedFields();
+        if (preEncoded != null)
+        {
+            for (HttpField field : preEncoded)
+            {
+                if (field.getHeader() != HttpHeader.CONTENT_TYPE || !response.getHttpFields().containsKey(HttpHeader.CONTENT_TYPE.asString()))
+                    response.getHttpFields().put(field);
+            }
+            if (httpContent.getContentLength() > 0)
+                response.getHttpFields().putLongField(HttpHeader.CONTENT_LENGTH, httpContent.getContentLength());
+            return;
+        }
+
         String contentType = httpContent.getContentType();
         if (contentType != null && !response.getHttpFields().containsKey(HttpHeader.CONTENT_TYPE.asString()))
             response.getHttpFields().put(HttpHeader.CONTENT_TYPE, contentType);
@@ -28,7 +28,6 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.TimerTask;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -37,8 +36,8 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.http.DateFieldCache;
 import org.eclipse.jetty.http.HttpField;
-import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpGenerator;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
@@ -48,7 +47,6 @@ import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.util.Attributes;
 import org.eclipse.jetty.util.AttributesMap;
-import org.eclipse.jetty.util.DateCache;
 import org.eclipse.jetty.util.Jetty;
 import org.eclipse.jetty.util.MultiException;
 import org.eclipse.jetty.util.URIUtil;
@@ -82,7 +80,6 @@ public class Server extends HandlerWrapper implements Attributes
     private boolean _stopAtShutdown;
     private boolean _dumpAfterStart=false;
     private boolean _dumpBeforeStop=false;
-    private HttpField _dateField;
 
 
     /* ------------------------------------------------------------ */
@@ -267,7 +264,7 @@ public class Server extends HandlerWrapper implements Attributes
     /* ------------------------------------------------------------ */
     public HttpField getDateField()
     {
-        return _dateField;
+        return DateFieldCache.getDateField();
     }
 
     /* ------------------------------------------------------------ */
@@ -283,6 +280,7 @@ public class Server extends HandlerWrapper implements Attributes
 
         LOG.info("jetty-" + getVersion());
         HttpGenerator.setJettyVersion(HttpConfiguration.SERVER_VERSION);
+        DateFieldCache.acquire();
         MultiException mex=new MultiException();
 
         try
@@ -313,24 +311,6 @@ public class Server extends HandlerWrapper implements Attributes
             dumpStdErr();
 
 
-        // use DateCache timer for Date field reformat
-        final HttpFields.DateGenerator date = new HttpFields.DateGenerator();
-        long now=System.currentTimeMillis();
-        long tick=1000*((now/1000)+1)-now;
-        _dateField=new HttpField.CachedHttpField(HttpHeader.DATE,date.formatDate(now));
-        DateCache.getTimer().scheduleAtFixedRate(new TimerTask()
-        {
-            @Override
-            public void run()
-            {
-                long now=System.currentTimeMillis();
-                _dateField=new HttpField.CachedHttpField(HttpHeader.DATE,date.formatDate(now));
-                if (!isRunning())
-                    this.cancel();
-            }
-        },tick,1000);
-
-
         mex.ifExceptionThrow();
     }
 
@@ -416,6 +396,8 @@ public class Server extends HandlerWrapper implements Attributes
         if (getStopAtShutdown())
             ShutdownThread.deregister(this);
 
+        DateFieldCache.release();
+
         mex.ifExceptionThrow();
 
     }
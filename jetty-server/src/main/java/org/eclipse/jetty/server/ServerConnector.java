@@ -364,6 +364,44 @@ public class ServerConnector extends AbstractNetworkConnector
         _acceptQueueSize = acceptQueueSize;
     }
 
+    /**
+     * @return the strategy used by the selectors to run the tasks of selected keys
+     * @see SelectorManager#getSelectStrategy()
+     */
+    @ManagedAttribute("The strategy used by the selectors to run the tasks of selected keys")
+    public SelectorManager.SelectStrategy getSelectStrategy()
+    {
+        return _manager.getSelectStrategy();
+    }
+
+    /**
+     * @param strategy the strategy used by the selectors to run the tasks of selected keys
+     * @see SelectorManager#setSelectStrategy(SelectorManager.SelectStrategy)
+     */
+    public void setSelectStrategy(SelectorManager.SelectStrategy strategy)
+    {
+        _manager.setSelectStrategy(strategy);
+    }
+
+    /**
+     * @return the period in ms of the idle timeout sweeps of the selectors, or 0 if endpoints schedule their own checks
+     * @see SelectorManager#getIdleTimeoutSweepPeriod()
+     */
+    @ManagedAttribute("The period in ms of the idle timeout sweeps, or 0 if endpoints schedule their own checks")
+    public long getIdleTimeoutSweepPeriod()
+    {
+        return _manager.getIdleTimeoutSweepPeriod();
+    }
+
+    /**
+     * @param period the period in ms of the idle timeout sweeps of the selectors, or 0 if endpoints schedule their own checks
+     * @see SelectorManager#setIdleTimeoutSweepPeriod(long)
+     */
+    public void setIdleTimeoutSweepPeriod(long period)
+    {
+        _manager.setIdleTimeoutSweepPeriod(period);
+    }
+
     /**
      * @return whether the server socket reuses addresses
      * @see ServerSocket#getReuseAddress()
@@ -0,0 +1,607 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.resource.Resource;
+
+/* ------------------------------------------------------------ */
+/** A server wide cache of static content buffers.
+ * <p>
+ * The buffers are keyed by the canonical file of a {@link Resource}, so that the
+ * {@link ResourceCache}s of several contexts serving the same files share a single copy
+ * of each indirect, direct or file mapped buffer.  A {@link ResourceCache} uses this cache
+ * once it is set with {@link ResourceCache#setSharedCache(SharedContentCache)}; the
+ * DefaultServlet does so when this cache is a bean of the {@link Server}.  On a miss the
+ * {@link ResourceCache} loads the buffer and offers it to this cache, and holds it itself
+ * if it is not admitted.
+ * <p>
+ * The cache is bounded by its total size in bytes and uses a W-TinyLFU policy: new
+ * entries enter a small LRU window (1% of the size), and entries leaving the window are
+ * only admitted to the main LRU region if they have been accessed more often than the
+ * entries they would evict, as estimated by a compact frequency sketch of all recent
+ * lookups.  A file read once thus cannot evict frequently used files, and every eviction
+ * is done in constant time.
+ * <p>
+ * Hits only reorder the LRU lists if the lock is not contended, so that concurrent hits
+ * never wait for each other.
+ */
+@ManagedObject("Server wide cache of static content")
+public class SharedContentCache
+{
+    private static final Logger LOG = Log.getLogger(SharedContentCache.class);
+
+    private enum Kind
+    {
+        INDIRECT, DIRECT, MAPPED
+    }
+
+    private final ConcurrentMap<String,Node> _nodes = new ConcurrentHashMap<>();
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Node _window = new Node(null,null,0,0);
+    private final Node _main = new Node(null,null,0,0);
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+    private final AtomicLong _rejections = new AtomicLong();
+    private final FrequencySketch _sketch;
+    private long _windowSize; // guarded by _lock
+    private long _mainSize; // guarded by _lock
+    private volatile long _maxCacheSize;
+    private volatile int _maxCachedFileSize = 4*1024*1024;
+
+    public SharedContentCache()
+    {
+        this(256*1024*1024L);
+    }
+
+    public SharedContentCache(@Name("maxCacheSize") long maxCacheSize)
+    {
+        _maxCacheSize=maxCacheSize;
+        // Size the sketch for files of about 8KiB on average
+        _sketch=new FrequencySketch((int)Math.max(1024,Math.min(1<<20,maxCacheSize/8192)));
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("maximum total size of the cached buffers in bytes")
+    public long getMaxCacheSize()
+    {
+        return _maxCacheSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    public void setMaxCacheSize(long maxCacheSize)
+    {
+        _maxCacheSize=maxCacheSize;
+        _lock.lock();
+        try
+        {
+            while (_windowSize>getMaxWindowSize() && _window._next!=_window)
+                evict(_window._next);
+            while (_mainSize>getMaxMainSize() && _main._next!=_main)
+                evict(_main._next);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("maximum size in bytes of a cached file")
+    public int getMaxCachedFileSize()
+    {
+        return _maxCachedFileSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    public void setMaxCachedFileSize(int maxCachedFileSize)
+    {
+        _maxCachedFileSize=maxCachedFileSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("total size of the cached buffers in bytes")
+    public long getCachedSize()
+    {
+        _lock.lock();
+        try
+        {
+            return _windowSize+_mainSize;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("number of cached buffers")
+    public int getCachedBuffers()
+    {
+        return _nodes.size();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("number of lookups that found a cached buffer")
+    public long getHits()
+    {
+        return _hits.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("number of lookups that loaded the buffer from the file")
+    public long getMisses()
+    {
+        return _misses.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("number of cached buffers evicted to make room for others")
+    public long getEvictions()
+    {
+        return _evictions.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("number of loaded buffers not admitted because they were used less than the cached ones")
+    public long getAdmissionRejections()
+    {
+        return _rejections.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedOperation("reset the cache statistics")
+    public void resetStatistics()
+    {
+        _hits.set(0);
+        _misses.set(0);
+        _evictions.set(0);
+        _rejections.set(0);
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedOperation("remove all the cached buffers")
+    public void flushCache()
+    {
+        _lock.lock();
+        try
+        {
+            while (_window._next!=_window)
+                remove(_window._next);
+            while (_main._next!=_main)
+                remove(_main._next);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param resource the resource
+     * @return the key of the resource in this cache, or null if the resource is not a file
+     */
+    public static Key keyOf(Resource resource)
+    {
+        try
+        {
+            File file=resource.getFile();
+            return file==null?null:new Key(file.getCanonicalPath());
+        }
+        catch (IOException e)
+        {
+            LOG.ignore(e);
+            return null;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param key the key of the resource, as returned by {@link #keyOf(Resource)}
+     * @param lastModified the last modified time of the content to serve
+     * @param length the length of the content to serve
+     * @return the cached heap buffer with the content of the resource, or null if it is not cached
+     */
+    public ByteBuffer getIndirectBuffer(Key key, long lastModified, long length)
+    {
+        return getBuffer(Kind.INDIRECT,key,lastModified,length);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param key the key of the resource, as returned by {@link #keyOf(Resource)}
+     * @param buffer the heap buffer with the content of the resource, loaded after a miss
+     * @param lastModified the last modified time of the content
+     * @param length the length of the content
+     * @return true if the buffer is cached, false if it was not admitted and should be held by the caller
+     */
+    public boolean putIndirectBuffer(Key key, ByteBuffer buffer, long lastModified, long length)
+    {
+        return putBuffer(Kind.INDIRECT,key,buffer,lastModified,length);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param key the key of the resource, as returned by {@link #keyOf(Resource)}
+     * @param lastModified the last modified time of the content to serve
+     * @param length the length of the content to serve
+     * @param useFileMappedBuffer whether the buffer maps the file rather than holding a copy of it
+     * @return the cached direct buffer with the content of the resource, or null if it is not cached
+     */
+    public ByteBuffer getDirectBuffer(Key key, long lastModified, long length, boolean useFileMappedBuffer)
+    {
+        return getBuffer(useFileMappedBuffer?Kind.MAPPED:Kind.DIRECT,key,lastModified,length);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param key the key of the resource, as returned by {@link #keyOf(Resource)}
+     * @param buffer the direct buffer with the content of the resource, loaded after a miss
+     * @param lastModified the last modified time of the content
+     * @param length the length of the content
+     * @param useFileMappedBuffer whether the buffer maps the file rather than holding a copy of it
+     * @return true if the buffer is cached, false if it was not admitted and should be held by the caller
+     */
+    public boolean putDirectBuffer(Key key, ByteBuffer buffer, long lastModified, long length, boolean useFileMappedBuffer)
+    {
+        return putBuffer(useFileMappedBuffer?Kind.MAPPED:Kind.DIRECT,key,buffer,lastModified,length);
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean isCacheable(Key key, long length)
+    {
+        return key!=null && length>0 && length<=_maxCachedFileSize && length<=getMaxMainSize();
+    }
+
+    /* ------------------------------------------------------------ */
+    private ByteBuffer getBuffer(Kind kind, Key key, long lastModified, long length)
+    {
+        if (!isCacheable(key,length))
+            return null;
+
+        String k=key._keys[kind.ordinal()];
+        _sketch.increment(k.hashCode());
+
+        Node node=_nodes.get(k);
+        if (node!=null)
+        {
+            if (node._lastModified==lastModified && node._length==length)
+            {
+                _hits.incrementAndGet();
+                touch(node);
+                return node._buffer;
+            }
+
+            // The file has changed
+            _lock.lock();
+            try
+            {
+                if (node._prev!=null)
+                    remove(node);
+            }
+            finally
+            {
+                _lock.unlock();
+            }
+        }
+
+        _misses.incrementAndGet();
+        return null;
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean putBuffer(Kind kind, Key key, ByteBuffer buffer, long lastModified, long length)
+    {
+        if (!isCacheable(key,length))
+            return false;
+
+        String k=key._keys[kind.ordinal()];
+        Node node=new Node(k,buffer,lastModified,length);
+        Node cached=_nodes.putIfAbsent(k,node);
+        if (cached!=null)
+            // Loaded concurrently
+            return cached._lastModified==lastModified && cached._length==length;
+
+        _lock.lock();
+        try
+        {
+            admit(node);
+            return node._prev!=null;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private long getMaxWindowSize()
+    {
+        return _maxCacheSize/100;
+    }
+
+    /* ------------------------------------------------------------ */
+    private long getMaxMainSize()
+    {
+        return _maxCacheSize-getMaxWindowSize();
+    }
+
+    /* ------------------------------------------------------------ */
+    private void touch(Node node)
+    {
+        // Reordering is best effort, hits never wait for the lock
+        if (_lock.tryLock())
+        {
+            try
+            {
+                if (node._prev!=null)
+                {
+                    unlink(node);
+                    link(node._inMain?_main:_window,node);
+                }
+            }
+            finally
+            {
+                _lock.unlock();
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void admit(Node node)
+    {
+        link(_window,node);
+        _windowSize+=node._length;
+
+        // Entries leaving the window compete with the LRU entries of the main region
+        long maxMainSize=getMaxMainSize();
+        while (_windowSize>getMaxWindowSize() && _window._next!=_window)
+        {
+            Node candidate=_window._next;
+            unlink(candidate);
+            _windowSize-=candidate._length;
+
+            // Find the victims before evicting any of them, so that they are
+            // all kept if the candidate is used less than one of them
+            int frequency=_sketch.frequency(candidate._hash);
+            long size=_mainSize+candidate._length;
+            Node last=_main;
+            boolean admitted=true;
+            while (size>maxMainSize)
+            {
+                last=last._next;
+                if (last==_main || frequency<=_sketch.frequency(last._hash))
+                {
+                    admitted=false;
+                    break;
+                }
+                size-=last._length;
+            }
+
+            if (admitted)
+            {
+                while (last!=_main)
+                {
+                    Node victim=_main._next;
+                    evict(victim);
+                    if (victim==last)
+                        break;
+                }
+                candidate._inMain=true;
+                link(_main,candidate);
+                _mainSize+=candidate._length;
+            }
+            else
+            {
+                _nodes.remove(candidate._key,candidate);
+                _rejections.incrementAndGet();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("rejected {}",candidate._key);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void evict(Node node)
+    {
+        remove(node);
+        _evictions.incrementAndGet();
+        if (LOG.isDebugEnabled())
+            LOG.debug("evicted {}",node._key);
+    }
+
+    /* ------------------------------------------------------------ */
+    private void remove(Node node)
+    {
+        unlink(node);
+        if (node._inMain)
+            _mainSize-=node._length;
+        else
+            _windowSize-=node._length;
+        _nodes.remove(node._key,node);
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void link(Node list, Node node)
+    {
+        node._prev=list._prev;
+        node._next=list;
+        list._prev._next=node;
+        list._prev=node;
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void unlink(Node node)
+    {
+        node._prev._next=node._next;
+        node._next._prev=node._prev;
+        node._prev=null;
+        node._next=null;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%d/%d}",getClass().getSimpleName(),hashCode(),getCachedSize(),_maxCacheSize);
+    }
+
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    /** An entry of the cache, linked in the window or the main LRU list.
+     * A list head is a sentinel node linked to itself when empty.
+     */
+    private static class Node
+    {
+        final String _key;
+        final ByteBuffer _buffer;
+        final long _lastModified;
+        final long _length;
+        final int _hash;
+        boolean _inMain;
+        Node _prev; // guarded by _lock, null when not linked
+        Node _next; // guarded by _lock, null when not linked
+
+        Node(String key, ByteBuffer buffer, long lastModified, long length)
+        {
+            _key=key;
+            _buffer=buffer;
+            _lastModified=lastModified;
+            _length=length;
+            _hash=key==null?0:key.hashCode();
+            if (key==null)
+                _prev=_next=this;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    /** The key of a resource in the cache, with the keys of its buffers of each kind
+     * computed once.
+     */
+    public static final class Key
+    {
+        private final String[] _keys;
+
+        private Key(String path)
+        {
+            Kind[] kinds=Kind.values();
+            _keys=new String[kinds.length];
+            for (Kind kind : kinds)
+                _keys[kind.ordinal()]=kind.ordinal()+path;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    /** A count-min sketch of 4 bit counters estimating the recent access frequency of keys.
+     * <p>
+     * Every counter of a key is in a different long word, at a different offset.  The counters
+     * are halved after a number of increments proportional to the width of the sketch, so that
+     * old accesses age out.  Concurrent updates are not synchronized: a lost increment only
+     * makes the estimate slightly less accurate.
+     */
+    private static class FrequencySketch
+    {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] _table;
+        private final int _mask;
+        private final int _sampleSize;
+        private int _additions;
+
+        FrequencySketch(int width)
+        {
+            int size=Integer.highestOneBit(width-1)<<1;
+            _table=new long[size];
+            _mask=size-1;
+            _sampleSize=10*size;
+        }
+
+        void increment(int hash)
+        {
+            int h=spread(hash);
+            int start=(h&3)<<2;
+            boolean added=false;
+            for (int i=0;i<4;i++)
+            {
+                int index=indexOf(h,i);
+                int offset=(start+i)<<2;
+                long mask=0xfL<<offset;
+                if ((_table[index]&mask)!=mask)
+                {
+                    _table[index]+=1L<<offset;
+                    added=true;
+                }
+            }
+            if (added && ++_additions>=_sampleSize)
+                reset();
+        }
+
+        int frequency(int hash)
+        {
+            int h=spread(hash);
+            int start=(h&3)<<2;
+            int frequency=Integer.MAX_VALUE;
+            for (int i=0;i<4;i++)
+            {
+                int count=(int)((_table[indexOf(h,i)]>>>((start+i)<<2))&0xfL);
+                frequency=Math.min(frequency,count);
+            }
+            return frequency;
+        }
+
+        private void reset()
+        {
+            for (int i=0;i<_table.length;i++)
+                _table[i]=(_table[i]>>>1)&RESET_MASK;
+            _additions/=2;
+        }
+
+        private int indexOf(int h, int i)
+        {
+            long hash=(h+SEEDS[i])*SEEDS[i];
+            hash+=hash>>>32;
+            return (int)hash&_mask;
+        }
+
+        private static int spread(int x)
+        {
+            x=((x>>>16)^x)*0x45d9f3b;
+            x=((x>>>16)^x)*0x45d9f3b;
+            return (x>>>16)^x;
+        }
+    }
+}
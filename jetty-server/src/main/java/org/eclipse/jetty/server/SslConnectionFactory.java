@@ -27,13 +27,37 @@ import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.io.ssl.SslHandshakeExecutor;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
 
+@ManagedObject("SSL Connection Factory")
 public class SslConnectionFactory extends AbstractConnectionFactory
 {
     private final SslContextFactory _sslContextFactory;
     private final String _nextProtocol;
+    private final SampleStatistic _flushRecords = new SampleStatistic();
+    private final CounterStatistic _sessionsResumed = new CounterStatistic();
+    private final CounterStatistic _sessionsCreated = new CounterStatistic();
+    private final SslHandshakeListener _sessionListener = new SslHandshakeListener()
+    {
+        @Override
+        public void handshakeSucceeded(Event event)
+        {
+            if (event.isResumed())
+                _sessionsResumed.increment();
+            else
+                _sessionsCreated.increment();
+        }
+    };
+    private SslHandshakeExecutor _handshakeExecutor;
+    private int _maxFlushRecords = 1;
 
     public SslConnectionFactory()
     {
@@ -58,6 +82,80 @@ public class SslConnectionFactory extends AbstractConnectionFactory
         return _sslContextFactory;
     }
 
+    @ManagedAttribute("maximum number of TLS records coalesced into a single write")
+    public int getMaxFlushRecords()
+    {
+        return _maxFlushRecords;
+    }
+
+    /**
+     * @param maxFlushRecords the maximum number of TLS records wrapped before they are written
+     * @see SslConnection#setMaxFlushRecords(int)
+     */
+    public void setMaxFlushRecords(int maxFlushRecords)
+    {
+        _maxFlushRecords=maxFlushRecords;
+    }
+
+    @ManagedAttribute("number of writes of TLS records")
+    public long getFlushes()
+    {
+        return _flushRecords.getCount();
+    }
+
+    @ManagedAttribute("mean number of TLS records per write")
+    public double getFlushRecordsMean()
+    {
+        return _flushRecords.getMean();
+    }
+
+    @ManagedAttribute("maximum number of TLS records per write")
+    public long getFlushRecordsMax()
+    {
+        return _flushRecords.getMax();
+    }
+
+    @ManagedAttribute("number of TLS handshakes that resumed a cached session")
+    public long getSessionsResumed()
+    {
+        return _sessionsResumed.getTotal();
+    }
+
+    @ManagedAttribute("number of TLS handshakes that created a new session")
+    public long getSessionsCreated()
+    {
+        return _sessionsCreated.getTotal();
+    }
+
+    @ManagedAttribute("number of sessions in the TLS session cache")
+    public int getSessionsCached()
+    {
+        return _sslContextFactory.getSslSessionCount();
+    }
+
+    @ManagedOperation("reset the TLS record and session statistics")
+    public void resetStatistics()
+    {
+        _flushRecords.reset();
+        _sessionsResumed.reset();
+        _sessionsCreated.reset();
+    }
+
+    public SslHandshakeExecutor getHandshakeExecutor()
+    {
+        return _handshakeExecutor;
+    }
+
+    /**
+     * @param handshakeExecutor the executor that runs the TLS handshakes of the connections created
+     * by this factory, or null (the default) to run them with the connector executor.
+     */
+    public void setHandshakeExecutor(SslHandshakeExecutor handshakeExecutor)
+    {
+        updateBean(_handshakeExecutor,handshakeExecutor);
+        _handshakeExecutor=handshakeExecutor;
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -79,6 +177,12 @@ public class SslConnectionFactory extends AbstractConnectionFactory
 
         SslConnection sslConnection = newSslConnection(connector, endPoint, engine);
         sslConnection.setRenegotiationAllowed(_sslContextFactory.isRenegotiationAllowed());
+        sslConnection.setHandshakeExecutor(_handshakeExecutor);
+        sslConnection.setMaxFlushRecords(_maxFlushRecords);
+        sslConnection.setFlushRecordsStatistic(_flushRecords);
+        sslConnection.addHandshakeListener(_sessionListener);
+        for (SslHandshakeListener listener : getBeans(SslHandshakeListener.class))
+            sslConnection.addHandshakeListener(listener);
         configure(sslConnection, connector, endPoint);
 
         ConnectionFactory next = connector.getConnectionFactory(_nextProtocol);
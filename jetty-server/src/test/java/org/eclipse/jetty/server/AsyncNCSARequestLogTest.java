@@ -0,0 +1,238 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AsyncNCSARequestLogTest
+{
+    private TestRequestLog _log;
+
+    @After
+    public void after() throws Exception
+    {
+        _log.release();
+        _log.stop();
+    }
+
+    /**
+     * Starts the log and blocks its writer thread in the write of a first entry.
+     */
+    private void startBlocked(int capacity, AsyncNCSARequestLog.OverflowPolicy policy) throws Exception
+    {
+        _log = new TestRequestLog(capacity);
+        _log.setOverflowPolicy(policy);
+        _log.start();
+        _log.write("blocked");
+        Assert.assertTrue(_log._writing.await(5,TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception
+    {
+        startBlocked(4,AsyncNCSARequestLog.OverflowPolicy.DROP);
+
+        for (int i=0;i<7;i++)
+            _log.write("entry"+i);
+        Assert.assertEquals(4,_log.getQueueDepth());
+        Assert.assertEquals(3,_log.getDropped());
+
+        _log.release();
+        _log.stop();
+        Assert.assertEquals(5,_log.getEntries().size());
+        Assert.assertEquals("entry3",_log.getEntries().get(4));
+        Assert.assertEquals(3,_log.getDropped());
+    }
+
+    @Test
+    public void testBlockWhenFull() throws Exception
+    {
+        startBlocked(4,AsyncNCSARequestLog.OverflowPolicy.BLOCK);
+
+        for (int i=0;i<4;i++)
+            _log.write("entry"+i);
+
+        final CountDownLatch written = new CountDownLatch(1);
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    _log.write("entry4");
+                    written.countDown();
+                }
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+
+        // The request thread waits for space in the queue
+        Assert.assertFalse(written.await(500,TimeUnit.MILLISECONDS));
+
+        _log.release();
+        Assert.assertTrue(written.await(5,TimeUnit.SECONDS));
+        _log.stop();
+        Assert.assertEquals(6,_log.getEntries().size());
+        Assert.assertEquals("entry4",_log.getEntries().get(5));
+        Assert.assertEquals(0,_log.getDropped());
+    }
+
+    @Test
+    public void testSampleWhenHalfFull() throws Exception
+    {
+        startBlocked(8,AsyncNCSARequestLog.OverflowPolicy.SAMPLE);
+        _log.setSampleRate(2);
+
+        for (int i=0;i<20;i++)
+            _log.write("entry"+i);
+
+        // The first 5 entries are queued, then one in 2 until the queue is full
+        Assert.assertEquals(8,_log.getQueueDepth());
+        Assert.assertEquals(12,_log.getDropped());
+
+        _log.release();
+        _log.stop();
+        List<String> entries = _log.getEntries();
+        Assert.assertEquals(9,entries.size());
+        Assert.assertEquals("entry4",entries.get(5));
+        Assert.assertEquals("entry6",entries.get(6));
+        Assert.assertEquals("entry8",entries.get(7));
+        Assert.assertEquals("entry10",entries.get(8));
+    }
+
+    @Test
+    public void testBatchedWrites() throws Exception
+    {
+        startBlocked(1024,AsyncNCSARequestLog.OverflowPolicy.DROP);
+        _log.setBatchSize(4);
+
+        for (int i=0;i<10;i++)
+            _log.write("entry"+i);
+
+        _log.release();
+        _log.stop();
+
+        List<Integer> sizes = new ArrayList<>();
+        for (List<String> batch : _log._batches)
+            sizes.add(batch.size());
+        Assert.assertEquals("[1, 4, 4, 2]",sizes.toString());
+        Assert.assertEquals(11,_log.getEntries().size());
+        Assert.assertEquals("entry9",_log.getEntries().get(10));
+    }
+
+    @Test
+    public void testStopWritesQueuedEntries() throws Exception
+    {
+        startBlocked(1024,AsyncNCSARequestLog.OverflowPolicy.DROP);
+
+        for (int i=0;i<100;i++)
+            _log.write("entry"+i);
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    _log.stop();
+                    stopped.countDown();
+                }
+                catch (Exception e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+
+        // The stop waits for the writer thread
+        Assert.assertFalse(stopped.await(500,TimeUnit.MILLISECONDS));
+
+        _log.release();
+        Assert.assertTrue(stopped.await(5,TimeUnit.SECONDS));
+        Assert.assertEquals(101,_log.getEntries().size());
+        Assert.assertEquals("entry99",_log.getEntries().get(100));
+        Assert.assertEquals(0,_log.getQueueDepth());
+    }
+
+    private static class TestRequestLog extends AsyncNCSARequestLog
+    {
+        private final CountDownLatch _writing = new CountDownLatch(1);
+        private final CountDownLatch _release = new CountDownLatch(1);
+        private final List<List<String>> _batches = new ArrayList<>();
+
+        private TestRequestLog(int capacity)
+        {
+            super(new BlockingArrayQueue<String>(capacity));
+        }
+
+        private void release()
+        {
+            _release.countDown();
+        }
+
+        private synchronized List<String> getEntries()
+        {
+            List<String> entries = new ArrayList<>();
+            for (List<String> batch : _batches)
+                entries.addAll(batch);
+            return entries;
+        }
+
+        @Override
+        protected void write(List<String> requestEntries) throws IOException
+        {
+            _writing.countDown();
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    _release.await();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    // Interrupted by the stop, keep the writer blocked
+                    interrupted = true;
+                }
+            }
+            synchronized (this)
+            {
+                _batches.add(new ArrayList<>(requestEntries));
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
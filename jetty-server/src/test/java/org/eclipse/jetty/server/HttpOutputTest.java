@@ -21,20 +21,34 @@ package org.eclipse.jetty.server;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.http.HttpGenerator.ResponseInfo;
+import org.eclipse.jetty.io.ChannelEndPoint;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.BlockingCallback;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FutureCallback;
 import org.eclipse.jetty.util.resource.Resource;
 import org.hamcrest.Matchers;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -191,6 +205,70 @@ public class HttpOutputTest
         assertThat(response,containsString("\r\n0\r\n"));
     }
     
+    @Test
+    public void testSendFileChannelOverOtherTransport() throws Exception
+    {
+        // A transport other than HTTP/1 (for example SPDY) frames the content itself, so a
+        // file must be sent through the transport even if the endpoint is a ChannelEndPoint
+        Resource big = Resource.newClassPathResource("simple/big.txt");
+        try (ServerSocketChannel acceptor = ServerSocketChannel.open())
+        {
+            acceptor.bind(new InetSocketAddress("localhost",0));
+            try (SocketChannel client = SocketChannel.open(acceptor.getLocalAddress());
+                 SocketChannel server = acceptor.accept();
+                 FileChannel file = new RandomAccessFile(big.getFile(),"r").getChannel())
+            {
+                final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+                HttpChannel<ByteBuffer> channel = new HttpChannel<>(_connector,new HttpConfiguration(),new ChannelEndPoint(_connector.getScheduler(),server),new HttpTransport()
+                {
+                    @Override
+                    public void send(ResponseInfo info, ByteBuffer content, boolean lastContent) throws IOException
+                    {
+                        BlockingCallback callback = new BlockingCallback();
+                        send(info,content,lastContent,callback);
+                        callback.block();
+                    }
+
+                    @Override
+                    public void send(ResponseInfo info, ByteBuffer content, boolean lastContent, Callback callback)
+                    {
+                        try
+                        {
+                            if (content!=null)
+                                BufferUtil.writeTo(content,sent);
+                            callback.succeeded();
+                        }
+                        catch (IOException e)
+                        {
+                            callback.failed(e);
+                        }
+                    }
+
+                    @Override
+                    public void send(ByteBuffer content, boolean lastContent, Callback callback)
+                    {
+                        send(null,content,lastContent,callback);
+                    }
+
+                    @Override
+                    public void completed()
+                    {
+                    }
+                },new ByteBufferHttpInput());
+
+                FutureCallback callback = new FutureCallback();
+                channel.getResponse().getHttpOutput().sendContent(file,callback);
+                callback.get();
+
+                Assert.assertArrayEquals(Files.readAllBytes(big.getFile().toPath()),sent.toByteArray());
+
+                // Nothing was transferred to the connection behind the transport
+                client.configureBlocking(false);
+                Assert.assertEquals(0,client.read(ByteBuffer.allocate(1024)));
+            }
+        }
+    }
+
     static class ContentHandler extends AbstractHandler
     {
         InputStream _contentInputStream;
@@ -19,16 +19,23 @@
 package org.eclipse.jetty.server;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
 
 import org.eclipse.jetty.http.HttpContent;
+import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceCollection;
 import org.junit.Test;
@@ -229,6 +236,182 @@ public class ResourceCacheTest
         cache.flushCache();
     }
 
+    @Test
+    public void testSharedCache() throws Exception
+    {
+        File[] files=new File[3];
+        String[] names=new String[files.length];
+        for (int i=0;i<files.length;i++)
+        {
+            files[i]=File.createTempFile("S-"+i+"-",".txt");
+            files[i].deleteOnExit();
+            names[i]=files[i].getName();
+            FileOutputStream out = new FileOutputStream(files[i]);
+            for (int j=0;j<399;j++)
+                out.write('0'+i);
+            out.write('\n');
+            out.close();
+        }
+        Resource directory=Resource.newResource(files[0].getParentFile().getAbsolutePath());
+
+        SharedContentCache shared=new SharedContentCache(1000);
+        ResourceCache cache1=new ResourceCache(null,directory,new MimeTypes(),false,false);
+        cache1.setSharedCache(shared);
+        ResourceCache cache2=new ResourceCache(null,directory,new MimeTypes(),false,false);
+        cache2.setSharedCache(shared);
+
+        // Both contexts share a single copy of the content
+        HttpContent content1=cache1.lookup(names[0]);
+        HttpContent content2=cache2.lookup(names[0]);
+        assertEquals(400,BufferUtil.length(content1.getIndirectBuffer()));
+        assertEquals(400,BufferUtil.length(content2.getIndirectBuffer()));
+        assertEquals(1,shared.getMisses());
+        assertEquals(1,shared.getHits());
+        assertEquals(400,shared.getCachedSize());
+        assertEquals(0,cache1.getCachedSize());
+        assertEquals(1,cache1.getCachedFiles());
+
+        // A second file that is used often
+        for (int i=0;i<3;i++)
+            cache1.lookup(names[1]).getIndirectBuffer();
+        assertEquals(800,shared.getCachedSize());
+
+        // A file used once does not evict the frequently used ones, and is held by the context cache
+        assertEquals(400,BufferUtil.length(cache1.lookup(names[2]).getIndirectBuffer()));
+        assertEquals(1,shared.getAdmissionRejections());
+        assertEquals(0,shared.getEvictions());
+        assertEquals(800,shared.getCachedSize());
+        assertEquals(400,cache1.getCachedSize());
+
+        // but it is admitted once it is used more than the cached ones
+        for (int i=0;i<4;i++)
+            assertEquals(400,BufferUtil.length(cache1.lookup(names[2]).getIndirectBuffer()));
+        assertEquals(1,shared.getEvictions());
+        assertEquals(800,shared.getCachedSize());
+        assertEquals(0,cache1.getCachedSize());
+
+        shared.flushCache();
+        assertEquals(0,shared.getCachedSize());
+        assertEquals(0,shared.getCachedBuffers());
+
+        // A file too large for the shared cache is held and accounted by the context cache
+        File large=File.createTempFile("S-large-",".txt");
+        large.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(large);
+        for (int j=0;j<2000;j++)
+            out.write('L');
+        out.close();
+        HttpContent content=cache1.lookup(large.getName());
+        assertEquals(0,cache1.getCachedSize());
+        assertEquals(2000,BufferUtil.length(content.getIndirectBuffer()));
+        assertEquals(2000,BufferUtil.length(content.getDirectBuffer()));
+        assertEquals(0,shared.getCachedSize());
+        assertEquals(2000,cache1.getCachedSize());
+
+        cache1.flushCache();
+        assertEquals(0,cache1.getCachedSize());
+    }
+
+    @Test
+    public void testSharedCacheAdmissionEvictsNothingWhenRejected() throws Exception
+    {
+        int[] lengths={300,300,700};
+        File[] files=new File[lengths.length];
+        String[] names=new String[files.length];
+        for (int i=0;i<files.length;i++)
+        {
+            files[i]=File.createTempFile("A-"+i+"-",".txt");
+            files[i].deleteOnExit();
+            names[i]=files[i].getName();
+            FileOutputStream out = new FileOutputStream(files[i]);
+            for (int j=0;j<lengths[i];j++)
+                out.write('0'+i);
+            out.close();
+        }
+        Resource directory=Resource.newResource(files[0].getParentFile().getAbsolutePath());
+
+        SharedContentCache shared=new SharedContentCache(1000);
+        ResourceCache cache=new ResourceCache(null,directory,new MimeTypes(),false,false);
+        cache.setSharedCache(shared);
+
+        // A rarely used file, then a frequently used one
+        cache.lookup(names[0]).getIndirectBuffer();
+        for (int i=0;i<4;i++)
+            cache.lookup(names[1]).getIndirectBuffer();
+        assertEquals(600,shared.getCachedSize());
+
+        // The large file is used more than the first file but less than the second,
+        // which it would also have to evict, so it evicts neither of them
+        for (int i=0;i<2;i++)
+            assertEquals(700,BufferUtil.length(cache.lookup(names[2]).getIndirectBuffer()));
+        assertEquals(2,shared.getAdmissionRejections());
+        assertEquals(0,shared.getEvictions());
+        assertEquals(600,shared.getCachedSize());
+        assertEquals(700,cache.getCachedSize());
+
+        long hits=shared.getHits();
+        cache.lookup(names[0]).getIndirectBuffer();
+        assertEquals(hits+1,shared.getHits());
+    }
+
+    @Test
+    public void testGzipContent() throws Exception
+    {
+        File file=File.createTempFile("GZ-",".txt");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        for (int j=0;j<4000;j++)
+            out.write('a'+j%8);
+        out.close();
+        Resource directory=Resource.newResource(file.getParentFile().getAbsolutePath());
+
+        ResourceCache cache=new ResourceCache(null,directory,new MimeTypes(),false,true);
+
+        // No compression by default
+        ResourceCache.Content content=(ResourceCache.Content)cache.lookup(file.getName());
+        assertFalse(content.isGzipCompressible());
+        assertNull(content.getGzipContent());
+
+        // Compressed inline without an executor
+        cache.setMaxGzipCacheSize(10000);
+        assertTrue(content.isGzipCompressible());
+        HttpContent gzip=content.getGzipContent();
+        assertNotNull(gzip);
+        assertTrue(gzip==content.getGzipContent());
+        assertTrue(gzip.getContentLength()<4000);
+        assertEquals(gzip.getContentLength(),cache.getGzipCachedSize());
+        String etag=content.getETag();
+        assertEquals(etag.substring(0,etag.length()-1)+"--gzip\"",gzip.getETag());
+        assertEquals(content.getContentType(),gzip.getContentType());
+
+        GZIPInputStream in = new GZIPInputStream(gzip.getInputStream());
+        assertEquals(4000,IO.toString(in).length());
+
+        cache.flushCache();
+        assertEquals(0,cache.getGzipCachedSize());
+    }
+
+    @Test
+    public void testPreEncodedFields() throws Exception
+    {
+        Resource directory=Resource.newResource("../jetty-util/src/test/resources/org/eclipse/jetty/util/resource/one/");
+        ResourceCache cache=new ResourceCache(null,directory,new MimeTypes(),false,true);
+
+        HttpContent content=cache.lookup("1.txt");
+        HttpField[] fields=content.getPreEncodedFields();
+        assertEquals(3,fields.length);
+
+        ByteBuffer header=BufferUtil.allocate(1024);
+        BufferUtil.clearToFill(header);
+        for (HttpField field : fields)
+            field.putTo(header);
+        BufferUtil.flipToFlush(header,0);
+
+        assertEquals("Content-Type: text/plain\r\n"+
+            "Last-Modified: "+content.getLastModified()+"\r\n"+
+            "ETag: "+content.getETag()+"\r\n",BufferUtil.toString(header));
+    }
+
     @Test
     public void testNoextension() throws Exception
     {
@@ -155,4 +155,31 @@ public class ResourceHandlerTest
             Assert.assertThat(response,Matchers.endsWith("   400\tThis is a big file\n"));
         }
     }
+
+    @Test
+    public void testHugeTransferred() throws Exception
+    {
+        // Without memory mapping, the file channel is transferred to the connection
+        _resourceHandler.setMinMemoryMappedContentLength(0);
+        try (Socket socket = new Socket("localhost",_connector.getLocalPort());)
+        {
+            for (int i=0;i<2;i++)
+            {
+                socket.getOutputStream().write(("GET /resource/huge.txt HTTP/1.1\r\nHost: localhost\r\n"+(i==0?"":"Connection: close\r\n")+"\r\n").getBytes());
+                socket.getOutputStream().flush();
+            }
+            String response = IO.toString(socket.getInputStream());
+            long length=MavenTestingUtils.getTargetFile("test-classes/simple/huge.txt").length();
+            int second=response.indexOf("HTTP/1.1 200 OK",1);
+            Assert.assertThat(response,Matchers.startsWith("HTTP/1.1 200 OK"));
+            Assert.assertThat(second,Matchers.greaterThan(0));
+            Assert.assertThat(response.substring(0,second),Matchers.containsString("Content-Length: "+length));
+            Assert.assertThat(response.substring(0,second),Matchers.endsWith("   400\tThis is a big file\n"));
+            Assert.assertEquals(length,response.length()-response.indexOf("\r\n\r\n",second)-4);
+        }
+        finally
+        {
+            _resourceHandler.setMinMemoryMappedContentLength(8192);
+        }
+    }
 }
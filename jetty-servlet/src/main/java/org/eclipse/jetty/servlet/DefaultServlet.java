@@ -48,6 +48,8 @@ import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.InclusiveByteRange;
 import org.eclipse.jetty.server.ResourceCache;
 import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.SharedContentCache;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
@@ -115,6 +117,15 @@ import org.eclipse.jetty.util.resource.ResourceFactory;
  *  maxCachedFileSize The maximum size of a file to cache
  *  maxCachedFiles    The maximum number of files to cache
  *
+ *  maxGzipCacheSize  If gzip is true, the maximum total size of the gzip variants
+ *                    of cached textual content that are compressed in the background
+ *                    and cached, for when no matching ".gz" resource exists. 
+ *                    Default is 0, for no compression.
+ *
+ *  sharedCache       If true (the default) and the Server has a SharedContentCache
+ *                    bean, the content of cached files is kept in that server wide
+ *                    cache, shared with the other contexts serving the same files.
+ *
  *  useFileMappedBuffer
  *                    If set to true, it will use mapped file buffer to serve static content
  *                    when using NIO connector. Setting this value to false means that
@@ -259,6 +270,17 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                     _cache.setMaxCachedFileSize(max_cached_file_size);
                 if (max_cached_files>=-1)
                     _cache.setMaxCachedFiles(max_cached_files);
+
+                Server server=_contextHandler.getServer();
+                if (server!=null && getInitBoolean("sharedCache",true))
+                    _cache.setSharedCache(server.getBean(SharedContentCache.class));
+
+                if (_gzip)
+                {
+                    _cache.setMaxGzipCacheSize(getInitInt("maxGzipCacheSize",0));
+                    if (server!=null)
+                        _cache.setGzipExecutor(server.getThreadPool());
+                }
             }
         }
         catch (Exception e)
@@ -453,6 +475,26 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                     content=_cache.lookup(pathInContext);
                     resource=content==null?null:content.getResource();
                 }
+
+                // Can a cached gzip variant be used instead?
+                if (pathInContextGz!=null && content instanceof ResourceCache.Content && ((ResourceCache.Content)content).isGzipCompressible())
+                {
+                    // Tell caches that response may vary by accept-encoding
+                    if (!response.containsHeader(HttpHeader.VARY.asString()))
+                        response.addHeader(HttpHeader.VARY.asString(),HttpHeader.ACCEPT_ENCODING.asString());
+
+                    // Does the client accept gzip?
+                    String accept=request.getHeader(HttpHeader.ACCEPT_ENCODING.asString());
+                    if (accept!=null && accept.indexOf("gzip")>=0)
+                    {
+                        HttpContent gzipContent=content.getGzipContent();
+                        if (gzipContent!=null)
+                        {
+                            content=gzipContent;
+                            gzip=true;
+                        }
+                    }
+                }
             }
 
             if (LOG.isDebugEnabled())
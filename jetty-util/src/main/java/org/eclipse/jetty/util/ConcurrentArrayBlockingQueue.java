@@ -30,6 +30,9 @@ import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Common functionality for a blocking version of {@link ConcurrentArrayQueue}.
+ * <p/>
+ * Producers and consumers only take a lock to wait, or to signal threads that are
+ * known to be waiting, so that offer and poll are lock-free while no thread blocks.
  *
  * @see Unbounded
  * @see Bounded
@@ -39,6 +42,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
 {
     private final Lock _lock = new ReentrantLock();
     private final Condition _consumer = _lock.newCondition();
+    private final AtomicInteger _consumers = new AtomicInteger();
 
     public ConcurrentArrayBlockingQueue(int blockSize)
     {
@@ -67,6 +71,11 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
 
     protected void signalConsumer()
     {
+        // Waiting consumers are counted before they check the size, so
+        // if none are counted here, any that wait will see the new size.
+        if (_consumers.get() == 0)
+            return;
+
         final Lock lock = _lock;
         lock.lock();
         try
@@ -90,6 +99,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
 
             final Lock lock = _lock;
             lock.lockInterruptibly();
+            _consumers.incrementAndGet();
             try
             {
                 if (size() == 0)
@@ -99,6 +109,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
             }
             finally
             {
+                _consumers.decrementAndGet();
                 lock.unlock();
             }
         }
@@ -119,6 +130,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
 
             final Lock lock = _lock;
             lock.lockInterruptibly();
+            _consumers.incrementAndGet();
             try
             {
                 if (size() == 0)
@@ -130,6 +142,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
             }
             finally
             {
+                _consumers.decrementAndGet();
                 lock.unlock();
             }
         }
@@ -242,6 +255,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
         private final AtomicInteger _size = new AtomicInteger();
         private final Lock _lock = new ReentrantLock();
         private final Condition _producer = _lock.newCondition();
+        private final AtomicInteger _producers = new AtomicInteger();
         private final int _capacity;
 
         public Bounded(int capacity)
@@ -327,6 +341,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
             {
                 final Lock lock = _lock;
                 lock.lockInterruptibly();
+                _producers.incrementAndGet();
                 try
                 {
                     if (size() == _capacity)
@@ -334,6 +349,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
                 }
                 finally
                 {
+                    _producers.decrementAndGet();
                     lock.unlock();
                 }
                 if (offer(item))
@@ -351,6 +367,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
             {
                 final Lock lock = _lock;
                 lock.lockInterruptibly();
+                _producers.incrementAndGet();
                 try
                 {
                     if (size() == _capacity)
@@ -362,6 +379,7 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
                 }
                 finally
                 {
+                    _producers.decrementAndGet();
                     lock.unlock();
                 }
                 if (offer(item))
@@ -389,6 +407,9 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
 
         private void signalProducer()
         {
+            if (_producers.get() == 0)
+                return;
+
             final Lock lock = _lock;
             lock.lock();
             try
@@ -403,6 +424,9 @@ public abstract class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQue
 
         private void signalProducers()
         {
+            if (_producers.get() == 0)
+                return;
+
             final Lock lock = _lock;
             lock.lock();
             try
@@ -76,6 +76,7 @@ public class DateCache
     {
         final long _seconds;
         final String _string;
+        volatile ByteBuffer _buffer;
         public Tick(long seconds, String string)
         {
             _seconds = seconds;
@@ -302,16 +303,22 @@ public class DateCache
     }    
 
     /* ------------------------------------------------------------ */
-    private volatile ByteBuffer _buffer;
-    private volatile Object _last;
-    public synchronized ByteBuffer formatBuffer(long date)
+    /** Format a date to a buffer.
+     * @param date the date to format
+     * @return A read only buffer of the formatted date. The bytes of a date
+     * within the cached second are shared rather than formatted again.
+     */
+    public ByteBuffer formatBuffer(long date)
     {
-        String d = format(date);
-        if (d==_last)
-            return _buffer;
-        _last=d;
-        _buffer=BufferUtil.toBuffer(d);
-        
-        return _buffer;
+        Tick tick=_tick;
+        if (tick!=null && date/1000==tick._seconds)
+        {
+            // Racing threads may each create the buffer, but it is then shared
+            ByteBuffer buffer=tick._buffer;
+            if (buffer==null)
+                tick._buffer=buffer=BufferUtil.toBuffer(tick._string).asReadOnlyBuffer();
+            return buffer.duplicate();
+        }
+        return BufferUtil.toBuffer(format(date));
     }
 }
@@ -54,6 +54,7 @@ import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -307,6 +308,23 @@ public class SslContextFactory extends AbstractLifeCycle
             if (LOG.isDebugEnabled())
                 LOG.debug("Enabled Ciphers   {} of {}",Arrays.asList(engine.getEnabledCipherSuites()),Arrays.asList(engine.getSupportedCipherSuites()));
         }
+
+        configureSessionContext(_context.getServerSessionContext());
+        configureSessionContext(_context.getClientSessionContext());
+    }
+
+    /**
+     * Applies the configured session cache size and session timeout, if any, to a session context.
+     * @param sessionContext the session context to configure, may be null
+     */
+    protected void configureSessionContext(SSLSessionContext sessionContext)
+    {
+        if (sessionContext == null)
+            return;
+        if (_sslSessionCacheSize > 0)
+            sessionContext.setSessionCacheSize(_sslSessionCacheSize);
+        if (_sslSessionTimeout > 0)
+            sessionContext.setSessionTimeout(_sslSessionTimeout);
     }
 
     @Override
@@ -1261,6 +1279,17 @@ public class SslContextFactory extends AbstractLifeCycle
         _sslSessionTimeout = sslSessionTimeout;
     }
 
+    /** Get the number of sessions in the server session cache.
+     * @return the number of cached server sessions, or -1 if the factory is not started
+     */
+    public int getSslSessionCount()
+    {
+        SSLContext context = _context;
+        if (context == null || context.getServerSessionContext() == null)
+            return -1;
+        return Collections.list(context.getServerSessionContext().getIds()).size();
+    }
+
 
     public SSLServerSocket newSslServerSocket(String host,int port,int backlog) throws IOException
     {
@@ -0,0 +1,346 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jetty.util.ConcurrentArrayQueue;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * Implementation of {@link Scheduler} based on a hashed timing wheel.
+ * <p />
+ * Tasks are held in a wheel of buckets, each covering one tick of time, so that scheduling
+ * and cancelling a task are O(1) operations that do not take a lock: new tasks and cancelled
+ * tasks are queued in lock-free queues, and moved into or removed from the buckets by the
+ * scheduler thread at each tick.
+ * <p />
+ * Tasks are run by the scheduler thread at most one tick after their delay has expired,
+ * which suits timeouts such as idle timeouts, where the many tasks that are cancelled before
+ * they expire make the O(log n) operations of {@link ScheduledExecutorScheduler} costly.
+ */
+public class HashedWheelScheduler extends AbstractLifeCycle implements Scheduler, Runnable
+{
+    private static final Logger LOG = Log.getLogger(HashedWheelScheduler.class);
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final Queue<WheelTask> _pending = new ConcurrentArrayQueue<>();
+    private final Queue<WheelTask> _cancelled = new ConcurrentArrayQueue<>();
+    private final String _name;
+    private final boolean _daemon;
+    private final long _tickNanos;
+    private final Bucket[] _wheel;
+    private final int _mask;
+    private volatile long _startTime;
+    private volatile Thread _thread;
+
+    public HashedWheelScheduler()
+    {
+        this(null, false);
+    }
+
+    public HashedWheelScheduler(String name, boolean daemon)
+    {
+        this(name, daemon, 50, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * @param name the name of the scheduler thread
+     * @param daemon whether the scheduler thread is a daemon
+     * @param tick the duration of a tick, which is the precision of the scheduler
+     * @param units the units of the tick
+     * @param wheelSize the number of buckets in the wheel, rounded up to a power of 2
+     */
+    public HashedWheelScheduler(String name, boolean daemon, long tick, TimeUnit units, int wheelSize)
+    {
+        if (tick <= 0)
+            throw new IllegalArgumentException("tick must be positive: " + tick);
+        if (wheelSize <= 0 || wheelSize > 1 << 30)
+            throw new IllegalArgumentException("wheelSize out of range: " + wheelSize);
+        _name = name == null ? "Scheduler-" + hashCode() : name;
+        _daemon = daemon;
+        _tickNanos = Math.max(units.toNanos(tick), TimeUnit.MILLISECONDS.toNanos(1));
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize)
+            size <<= 1;
+        _wheel = new Bucket[size];
+        for (int i = 0; i < size; ++i)
+            _wheel[i] = new Bucket();
+        _mask = size - 1;
+    }
+
+    /**
+     * @return the duration of a tick in milliseconds
+     */
+    public long getTickMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_tickNanos);
+    }
+
+    /**
+     * @return the number of buckets in the wheel
+     */
+    public int getWheelSize()
+    {
+        return _wheel.length;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        _startTime = System.nanoTime();
+        Thread thread = new Thread(this, _name);
+        thread.setDaemon(_daemon);
+        _thread = thread;
+        thread.start();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        Thread thread = _thread;
+        _thread = null;
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+            if (thread != Thread.currentThread())
+                thread.join();
+        }
+        _pending.clear();
+        _cancelled.clear();
+        for (Bucket bucket : _wheel)
+            bucket.clear();
+        super.doStop();
+    }
+
+    @Override
+    public Task schedule(Runnable task, long delay, TimeUnit units)
+    {
+        if (_thread == null)
+            throw new RejectedExecutionException(this + " not started");
+        long now = System.nanoTime() - _startTime;
+        long nanos = units.toNanos(Math.max(0, delay));
+        long deadline = nanos > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + nanos;
+        WheelTask result = new WheelTask(task, deadline);
+        _pending.offer(result);
+        return result;
+    }
+
+    @Override
+    public void run()
+    {
+        long tick = 0;
+        while (true)
+        {
+            long now = waitForTick(tick);
+            if (now < 0)
+                break;
+            reclaimCancelled();
+            transferPending(tick);
+            _wheel[(int)(tick & _mask)].expire(now);
+            ++tick;
+        }
+    }
+
+    /**
+     * @param tick the tick to wait for the end of
+     * @return the time since the start of the scheduler, or -1 if the scheduler is stopped
+     */
+    private long waitForTick(long tick)
+    {
+        long end = _tickNanos * (tick + 1);
+        while (true)
+        {
+            if (_thread == null)
+                return -1;
+            long now = System.nanoTime() - _startTime;
+            long wait = end - now;
+            if (wait <= 0)
+                return now;
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    private void reclaimCancelled()
+    {
+        WheelTask task;
+        while ((task = _cancelled.poll()) != null)
+        {
+            if (task._bucket != null)
+                task._bucket.remove(task);
+        }
+    }
+
+    private void transferPending(long tick)
+    {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; ++i)
+        {
+            WheelTask task = _pending.poll();
+            if (task == null)
+                break;
+            if (task.isCancelled())
+                continue;
+            long ticks = task._deadline / _tickNanos;
+            task._rounds = (ticks - tick) / _wheel.length;
+            _wheel[(int)(Math.max(ticks, tick) & _mask)].add(task);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,tick=%dms,wheel=%d}", getClass().getSimpleName(), hashCode(), _name, getTickMillis(), _wheel.length);
+    }
+
+    private class WheelTask implements Task
+    {
+        private final AtomicInteger _state = new AtomicInteger(PENDING);
+        private final Runnable _task;
+        private final long _deadline;
+        private long _rounds;
+        private Bucket _bucket;
+        private WheelTask _prev;
+        private WheelTask _next;
+
+        private WheelTask(Runnable task, long deadline)
+        {
+            _task = task;
+            _deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel()
+        {
+            if (_state.compareAndSet(PENDING, CANCELLED))
+            {
+                _cancelled.offer(this);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isCancelled()
+        {
+            return _state.get() == CANCELLED;
+        }
+
+        private void expire()
+        {
+            if (_state.compareAndSet(PENDING, EXPIRED))
+            {
+                try
+                {
+                    _task.run();
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn("Exception while running " + _task, x);
+                }
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{%d,%s}", getClass().getSimpleName(), hashCode(), _state.get(), _task);
+        }
+    }
+
+    /**
+     * A doubly linked list of tasks, only accessed by the scheduler thread.
+     */
+    private static class Bucket
+    {
+        private WheelTask _head;
+        private WheelTask _tail;
+
+        private void add(WheelTask task)
+        {
+            task._bucket = this;
+            if (_head == null)
+            {
+                _head = _tail = task;
+            }
+            else
+            {
+                _tail._next = task;
+                task._prev = _tail;
+                _tail = task;
+            }
+        }
+
+        private void remove(WheelTask task)
+        {
+            WheelTask next = task._next;
+            if (task._prev != null)
+                task._prev._next = next;
+            if (next != null)
+                next._prev = task._prev;
+            if (task == _head)
+                _head = next;
+            if (task == _tail)
+                _tail = task._prev;
+            task._prev = null;
+            task._next = null;
+            task._bucket = null;
+        }
+
+        private void expire(long now)
+        {
+            WheelTask task = _head;
+            while (task != null)
+            {
+                WheelTask next = task._next;
+                if (task.isCancelled())
+                {
+                    remove(task);
+                }
+                else if (task._rounds <= 0)
+                {
+                    if (task._deadline <= now)
+                    {
+                        remove(task);
+                        task.expire();
+                    }
+                }
+                else
+                {
+                    --task._rounds;
+                }
+                task = next;
+            }
+        }
+
+        private void clear()
+        {
+            while (_head != null)
+                remove(_head);
+        }
+    }
+}
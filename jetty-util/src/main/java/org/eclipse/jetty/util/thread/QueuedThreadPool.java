@@ -24,11 +24,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import org.eclipse.jetty.util.BlockingArrayQueue;
 import org.eclipse.jetty.util.StringUtil;
@@ -44,10 +47,36 @@ import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.ThreadPool.SizedThreadPool;
 
+/**
+ * <p>A thread pool with a queue of jobs.</p>
+ * <p>The queue of jobs may be passed to the constructor. The default is a {@link BlockingArrayQueue},
+ * while a {@link org.eclipse.jetty.util.ConcurrentArrayBlockingQueue.Unbounded} is a lock-free
+ * alternative for pools that are dispatched to by many threads.</p>
+ * <p>If {@link #setReservedThreads(int) reserved threads} are configured, then up to that number of idle
+ * threads wait on their own slot rather than on the queue: they spin for a short while, then park.
+ * A job executed while a thread is reserved is handed directly to that thread,
+ * without touching the queue.</p>
+ * <p>The hand off and queue latency statistics are recorded only if {@link #setStatisticsEnabled(boolean)}
+ * is true.</p>
+ */
 @ManagedObject("A thread pool with no max bound by default")
 public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPool, Dumpable
 {
     private static final Logger LOG = Log.getLogger(QueuedThreadPool.class);
+    private static final Runnable NOOP = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+        }
+    };
+    private static final Runnable WAKEUP = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+        }
+    };
 
     private final AtomicInteger _threadsStarted = new AtomicInteger();
     private final AtomicInteger _threadsIdle = new AtomicInteger();
@@ -55,13 +84,23 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
     private final ConcurrentLinkedQueue<Thread> _threads = new ConcurrentLinkedQueue<>();
     private final Object _joinLock = new Object();
     private final BlockingQueue<Runnable> _jobs;
+    private final ConcurrentLinkedDeque<Reservation> _reserved = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger _reservedCount = new AtomicInteger();
+    private final AtomicLong _handOffs = new AtomicLong();
+    private final AtomicLong _spinHandOffs = new AtomicLong();
+    private final AtomicLong _queuedJobs = new AtomicLong();
+    private final AtomicLong _queueLatencyTotal = new AtomicLong();
+    private final AtomicLong _queueLatencyMax = new AtomicLong();
     private String _name = "qtp" + hashCode();
+    private int _reservedThreads;
+    private int _spins = Runtime.getRuntime().availableProcessors() > 1 ? 256 : 0;
     private int _idleTimeout;
     private int _maxThreads;
     private int _minThreads;
     private int _priority = Thread.NORM_PRIORITY;
     private boolean _daemon = false;
     private boolean _detailedDump = false;
+    private volatile boolean _statisticsEnabled = false;
 
     public QueuedThreadPool()
     {
@@ -118,15 +157,13 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
             jobs.clear();
 
         // Fill job Q with noop jobs to wakeup idle
-        Runnable noop = new Runnable()
-        {
-            @Override
-            public void run()
-            {
-            }
-        };
         for (int i = _threadsStarted.get(); i-- > 0; )
-            jobs.offer(noop);
+            jobs.offer(NOOP);
+
+        // Wakeup reserved threads
+        Reservation reservation;
+        while ((reservation = _reserved.pollFirst()) != null)
+            reservation.offer(NOOP);
 
         // try to jobs complete naturally for half our stop time
         long stopby = System.currentTimeMillis() + timeout / 2;
@@ -241,6 +278,28 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
             startThreads(_minThreads - threads);
     }
 
+    /**
+     * Set the number of idle threads that may be reserved to be handed jobs directly.
+     *
+     * @param reservedThreads the maximum number of reserved threads, or 0 for none.
+     * @see #getReservedThreads
+     */
+    public void setReservedThreads(int reservedThreads)
+    {
+        _reservedThreads = reservedThreads;
+    }
+
+    /**
+     * Set the number of times a reserved thread checks for a job before parking.
+     *
+     * @param spins the number of spins, or 0 to park immediately
+     * @see #getReservedSpins
+     */
+    public void setReservedSpins(int spins)
+    {
+        _spins = spins;
+    }
+
     /**
      * @param name Name of the BoundedThreadPool to use when naming Threads.
      */
@@ -302,6 +361,130 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
         return _minThreads;
     }
 
+    /**
+     * @return the maximum number of idle threads that may be reserved to be handed jobs directly.
+     * @see #setReservedThreads
+     */
+    @ManagedAttribute("maximum number of idle threads reserved to be handed jobs directly")
+    public int getReservedThreads()
+    {
+        return _reservedThreads;
+    }
+
+    /**
+     * @return the number of times a reserved thread checks for a job before parking.
+     * @see #setReservedSpins
+     */
+    @ManagedAttribute("number of times a reserved thread checks for a job before parking")
+    public int getReservedSpins()
+    {
+        return _spins;
+    }
+
+    /**
+     * @return the number of threads currently reserved
+     */
+    @ManagedAttribute("number of idle threads currently reserved")
+    public int getReservedIdleThreads()
+    {
+        return _reservedCount.get();
+    }
+
+    /**
+     * @return the number of jobs handed directly to a reserved thread
+     */
+    @ManagedAttribute("number of jobs handed directly to reserved threads")
+    public long getHandOffs()
+    {
+        return _handOffs.get();
+    }
+
+    /**
+     * @return the number of jobs handed to a reserved thread before it parked
+     */
+    @ManagedAttribute("number of jobs handed to reserved threads while spinning")
+    public long getSpinHandOffs()
+    {
+        return _spinHandOffs.get();
+    }
+
+    /**
+     * @return the number of jobs run from the queue
+     */
+    @ManagedAttribute("number of jobs run from the queue")
+    public long getQueuedJobs()
+    {
+        return _queuedJobs.get();
+    }
+
+    /**
+     * @return the ratio of jobs handed directly to reserved threads to all jobs run
+     */
+    @ManagedAttribute("ratio of jobs handed directly to reserved threads")
+    public double getHandOffRatio()
+    {
+        long handOffs = _handOffs.get();
+        long total = handOffs + _queuedJobs.get();
+        return total == 0 ? 0.0 : (double)handOffs / total;
+    }
+
+    /**
+     * @return the ratio of hand offs received by reserved threads while spinning rather than parked
+     */
+    @ManagedAttribute("ratio of hand offs received by reserved threads while spinning")
+    public double getSpinRatio()
+    {
+        long handOffs = _handOffs.get();
+        return handOffs == 0 ? 0.0 : (double)_spinHandOffs.get() / handOffs;
+    }
+
+    /**
+     * @return the mean time in ns that jobs run from the queue waited in the queue
+     */
+    @ManagedAttribute("mean time in ns jobs waited in the queue")
+    public long getQueueLatencyMean()
+    {
+        long jobs = _queuedJobs.get();
+        return jobs == 0 ? 0 : _queueLatencyTotal.get() / jobs;
+    }
+
+    /**
+     * @return the maximum time in ns that a job run from the queue waited in the queue
+     */
+    @ManagedAttribute("maximum time in ns a job waited in the queue")
+    public long getQueueLatencyMax()
+    {
+        return _queueLatencyMax.get();
+    }
+
+    /**
+     * @return whether the hand off and queue statistics are recorded
+     */
+    @ManagedAttribute("whether the hand off and queue statistics are recorded")
+    public boolean isStatisticsEnabled()
+    {
+        return _statisticsEnabled;
+    }
+
+    /**
+     * @param statisticsEnabled whether the hand off and queue statistics are recorded; when
+     * they are not, the queued jobs are not wrapped to record the time they were queued
+     */
+    public void setStatisticsEnabled(boolean statisticsEnabled)
+    {
+        _statisticsEnabled = statisticsEnabled;
+    }
+
+    @ManagedOperation("reset the hand off and queue statistics")
+    public void resetStatistics()
+    {
+        _handOffs.set(0);
+        _spinHandOffs.set(0);
+        _queuedJobs.set(0);
+        _queueLatencyTotal.set(0);
+        _queueLatencyMax.set(0);
+    }
+
     /**
      * @return The name of the BoundedThreadPool.
      */
@@ -341,11 +524,37 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
         _detailedDump = detailedDump;
     }
 
+    @Deprecated
     @Override
     public boolean dispatch(Runnable job)
     {
         LOG.debug("{} dispatched {}", this, job);
-        return isRunning() && _jobs.offer(job);
+        if (!isRunning())
+            return false;
+
+        // Try to hand the job directly to a reserved thread
+        if (handOff(job))
+            return true;
+
+        if (!_jobs.offer(_statisticsEnabled ? new QueuedJob(job) : job))
+            return false;
+
+        // A thread may have reserved itself after the hand off was tried but
+        // before the job was queued, and missed the job: wake it up to poll
+        // the queue again, as it may otherwise park until its idle timeout.
+        handOff(WAKEUP);
+        return true;
+    }
+
+    private boolean handOff(Runnable job)
+    {
+        Reservation reservation;
+        while ((reservation = _reserved.pollFirst()) != null)
+        {
+            if (reservation.offer(job))
+                return true;
+        }
+        return false;
     }
 
     @Override
@@ -506,9 +715,151 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
 
     private Runnable idleJobPoll() throws InterruptedException
     {
+        if (_reservedThreads > 0)
+        {
+            while (true)
+            {
+                int reserved = _reservedCount.get();
+                if (reserved >= _reservedThreads)
+                    break;
+                if (_reservedCount.compareAndSet(reserved, reserved + 1))
+                {
+                    try
+                    {
+                        return reservedJobPoll();
+                    }
+                    finally
+                    {
+                        _reservedCount.decrementAndGet();
+                    }
+                }
+            }
+        }
         return _jobs.poll(_idleTimeout, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * <p>Waits on a reservation for a job to be handed off, or for a job to be queued
+     * before the reservation is visible.</p>
+     */
+    private Runnable reservedJobPoll() throws InterruptedException
+    {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_idleTimeout);
+        while (true)
+        {
+            Runnable job = reserve(end);
+            if (job != WAKEUP)
+                return job;
+
+            // A job was queued while this thread was reserving itself
+            job = _jobs.poll();
+            if (job != null)
+                return job;
+        }
+    }
+
+    private Runnable reserve(long end) throws InterruptedException
+    {
+        Reservation reservation = new Reservation(Thread.currentThread());
+        _reserved.offerFirst(reservation);
+
+        // A job may have been queued before the reservation was visible
+        Runnable job = _jobs.poll();
+        if (job != null)
+        {
+            if (reservation.cancel())
+            {
+                _reserved.removeFirstOccurrence(reservation);
+                return job;
+            }
+            Runnable handedOff = reservation.take(true);
+            if (handedOff == WAKEUP)
+                return job;
+            // A job was also handed off, so requeue this one and wake
+            // up another reserved thread, that would otherwise park
+            // until its idle timeout without seeing the requeued job
+            if (_jobs.offer(job))
+                handOff(WAKEUP);
+            else
+                runJob(unwrap(job));
+            return handedOff(handedOff, false);
+        }
+
+        for (int i = _spins; i-- > 0; )
+        {
+            job = reservation.take(false);
+            if (job != null)
+                return handedOff(job, true);
+        }
+
+        long nanos = end - System.nanoTime();
+        while (true)
+        {
+            job = reservation.take(false);
+            if (job != null)
+                return handedOff(job, false);
+
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            if (!isRunning() || nanos <= 0)
+            {
+                if (reservation.cancel())
+                {
+                    _reserved.removeFirstOccurrence(reservation);
+                    return null;
+                }
+                return handedOff(reservation.take(true), false);
+            }
+
+            LockSupport.parkNanos(reservation, nanos);
+            nanos = end - System.nanoTime();
+        }
+    }
+
+    /**
+     * <p>Records the hand off statistics of a job handed to a reserved thread</p>
+     *
+     * @param job the job handed off
+     * @param spinning whether the reserved thread was spinning rather than parked
+     * @return the job handed off
+     */
+    private Runnable handedOff(Runnable job, boolean spinning)
+    {
+        if (_statisticsEnabled && job != WAKEUP && job != NOOP)
+        {
+            _handOffs.incrementAndGet();
+            if (spinning)
+                _spinHandOffs.incrementAndGet();
+        }
+        return job;
+    }
+
+    /**
+     * <p>Records the queue statistics of a job taken from the queue</p>
+     *
+     * @param job a job from the queue or handed to a reserved thread
+     * @return the job to run
+     */
+    private Runnable unwrap(Runnable job)
+    {
+        if (job instanceof QueuedJob)
+        {
+            QueuedJob queued = (QueuedJob)job;
+            long latency = System.nanoTime() - queued._queued;
+            _queuedJobs.incrementAndGet();
+            _queueLatencyTotal.addAndGet(latency);
+            while (true)
+            {
+                long max = _queueLatencyMax.get();
+                if (latency <= max || _queueLatencyMax.compareAndSet(max, latency))
+                    break;
+            }
+            return queued._job;
+        }
+        return job;
+    }
+
     private Runnable _runnable = new Runnable()
     {
         @Override
@@ -529,7 +880,7 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
                     // Job loop
                     while (job != null && isRunning())
                     {
-                        runJob(job);
+                        runJob(unwrap(job));
                         job = _jobs.poll();
                     }
 
@@ -617,6 +968,77 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
         throw new UnsupportedOperationException("Use constructor injection");
     }
 
+    /**
+     * A job in the queue, with the time it was queued.
+     */
+    private static class QueuedJob implements Runnable
+    {
+        private final Runnable _job;
+        private final long _queued = System.nanoTime();
+
+        private QueuedJob(Runnable job)
+        {
+            _job = job;
+        }
+
+        @Override
+        public void run()
+        {
+            _job.run();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.valueOf(_job);
+        }
+    }
+
+    /**
+     * The slot of a reserved thread, to which a job may be handed off.
+     */
+    private static class Reservation
+    {
+        private static final Runnable CANCELLED = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        };
+
+        private final AtomicReference<Runnable> _job = new AtomicReference<>();
+        private final Thread _thread;
+
+        private Reservation(Thread thread)
+        {
+            _thread = thread;
+        }
+
+        private boolean offer(Runnable job)
+        {
+            if (_job.compareAndSet(null, job))
+            {
+                LockSupport.unpark(_thread);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean cancel()
+        {
+            return _job.compareAndSet(null, CANCELLED);
+        }
+
+        private Runnable take(boolean handedOff)
+        {
+            Runnable job = _job.get();
+            if (handedOff && job == null)
+                throw new IllegalStateException();
+            return job == CANCELLED ? null : job;
+        }
+    }
+
     /**
      * @param id The thread ID to interrupt.
      * @return true if the thread was found and interrupted.
@@ -0,0 +1,330 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link ThreadPool} that runs each job in a new virtual thread, if the runtime supports them.</p>
+ * <p>Jobs that implement {@link Platform}, such as the select loops of connectors, and jobs
+ * executed when virtual threads are not supported, are run by a platform {@link ThreadPool},
+ * by default a {@link QueuedThreadPool}.</p>
+ * <p>Virtual threads are cheap to block, so blocking servlets may be run without sizing the pool
+ * at thousands of threads. The {@link #getMaxThreads() maximum number of threads} is a soft limit:
+ * jobs are never rejected because of it, but the pool reports being {@link #isLowOnThreads() low on threads}
+ * once that many jobs are running in virtual threads, so that low resources mechanisms still apply.</p>
+ * <p>Select strategies that consume tasks in the selector thread do so in a platform thread,
+ * so the default execute strategy should be used with this pool.</p>
+ */
+@ManagedObject("A pool of virtual threads")
+public class VirtualThreadPool extends ContainerLifeCycle implements ThreadPool
+{
+    private static final Logger LOG = Log.getLogger(VirtualThreadPool.class);
+
+    /**
+     * <p>A marker for jobs that must be run in a platform thread, because they
+     * run for the life of a component or must not be pinned to a carrier thread.</p>
+     */
+    public interface Platform
+    {
+    }
+
+    private final Object _joinLock = new Object();
+    private final Set<Thread> _threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    private final AtomicInteger _running = new AtomicInteger();
+    private final ThreadPool _platform;
+    private String _name = "vtp" + hashCode();
+    private int _maxThreads;
+    private ThreadFactory _factory;
+
+    public VirtualThreadPool()
+    {
+        this(1000);
+    }
+
+    public VirtualThreadPool(@Name("maxThreads") int maxThreads)
+    {
+        this(maxThreads, null);
+    }
+
+    public VirtualThreadPool(@Name("maxThreads") int maxThreads, @Name("platform") ThreadPool platform)
+    {
+        _maxThreads = maxThreads;
+        _platform = platform != null ? platform : new QueuedThreadPool(maxThreads, 8);
+        addBean(_platform);
+        setStopTimeout(5000);
+    }
+
+    /**
+     * @return whether this runtime can create virtual threads
+     */
+    public static boolean isSupported()
+    {
+        return newVirtualThreadFactory("test") != null;
+    }
+
+    /**
+     * <p>Creates a factory of virtual threads by reflection, as they may not be supported
+     * by the runtime, or may only be supported as a preview feature.</p>
+     *
+     * @param name the prefix of the virtual thread names
+     * @return a factory of virtual threads, or null if they are not supported
+     */
+    private static ThreadFactory newVirtualThreadFactory(String name)
+    {
+        try
+        {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            builder = nameMethod.invoke(builder, name + "-", 0L);
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+        }
+        catch (Throwable x)
+        {
+            LOG.ignore(x);
+            return null;
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        _factory = newVirtualThreadFactory(_name);
+        if (_platform instanceof QueuedThreadPool)
+        {
+            QueuedThreadPool platform = (QueuedThreadPool)_platform;
+            if (platform.getName().startsWith("qtp"))
+                platform.setName(_name + "-platform");
+        }
+        if (_factory == null)
+            LOG.info("Virtual threads not supported, using {}", _platform);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+
+        // Wait for the jobs in virtual threads to complete, then interrupt them
+        long stopby = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getStopTimeout());
+        while (_running.get() > 0 && System.nanoTime() < stopby)
+            Thread.sleep(1);
+        for (Thread thread : _threads)
+            thread.interrupt();
+        if (_running.get() > 0)
+            LOG.warn("{} stopped with {} jobs running", this, _running.get());
+
+        _factory = null;
+        synchronized (_joinLock)
+        {
+            _joinLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the platform thread pool
+     */
+    @ManagedAttribute("the platform thread pool")
+    public ThreadPool getPlatformThreadPool()
+    {
+        return _platform;
+    }
+
+    /**
+     * @return whether jobs are run in virtual threads
+     */
+    @ManagedAttribute("whether jobs are run in virtual threads")
+    public boolean isVirtual()
+    {
+        return _factory != null;
+    }
+
+    /**
+     * @return the number of jobs running in virtual threads at which the pool is low on threads
+     */
+    @ManagedAttribute("number of running virtual threads at which the pool is low on threads")
+    public int getMaxThreads()
+    {
+        return _maxThreads;
+    }
+
+    /**
+     * @param maxThreads the number of jobs running in virtual threads at which the pool is low on threads
+     */
+    public void setMaxThreads(int maxThreads)
+    {
+        _maxThreads = maxThreads;
+    }
+
+    /**
+     * @return the number of jobs running in virtual threads
+     */
+    @ManagedAttribute("number of virtual threads")
+    public int getVirtualThreads()
+    {
+        return _running.get();
+    }
+
+    /**
+     * @return the name of this pool
+     */
+    @ManagedAttribute("name of the thread pool")
+    public String getName()
+    {
+        return _name;
+    }
+
+    /**
+     * @param name the name of this pool, used to name its threads
+     */
+    public void setName(String name)
+    {
+        if (isRunning())
+            throw new IllegalStateException("started");
+        _name = name;
+    }
+
+    @Override
+    public void execute(final Runnable job)
+    {
+        if (!isRunning())
+            throw new RejectedExecutionException(String.valueOf(job));
+
+        ThreadFactory factory = _factory;
+        if (factory == null || job instanceof Platform)
+        {
+            _platform.execute(job);
+            return;
+        }
+
+        Thread thread = factory.newThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Thread thread = Thread.currentThread();
+                try
+                {
+                    job.run();
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn(x);
+                }
+                finally
+                {
+                    _threads.remove(thread);
+                    _running.decrementAndGet();
+                }
+            }
+        });
+        _running.incrementAndGet();
+        _threads.add(thread);
+        thread.start();
+    }
+
+    @Override
+    @Deprecated
+    public boolean dispatch(Runnable job)
+    {
+        try
+        {
+            execute(job);
+            return true;
+        }
+        catch (RejectedExecutionException x)
+        {
+            LOG.ignore(x);
+            return false;
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException
+    {
+        synchronized (_joinLock)
+        {
+            while (isRunning())
+                _joinLock.wait();
+        }
+
+        while (isStopping())
+            Thread.sleep(1);
+    }
+
+    @Override
+    @ManagedAttribute("number of threads in pool")
+    public int getThreads()
+    {
+        return _running.get() + _platform.getThreads();
+    }
+
+    @Override
+    @ManagedAttribute("number of idle threads in pool")
+    public int getIdleThreads()
+    {
+        return _platform.getIdleThreads();
+    }
+
+    /**
+     * <p>When virtual threads are supported, the pool is low on threads if the number of jobs
+     * running in virtual threads has reached the {@link #getMaxThreads() maximum}, or if the
+     * platform thread pool is low on threads; otherwise it is low on threads if the platform
+     * thread pool is.</p>
+     *
+     * @return whether the pool is low on threads
+     */
+    @Override
+    @ManagedAttribute("indicates the pool is low on available threads")
+    public boolean isLowOnThreads()
+    {
+        if (_factory != null && _maxThreads > 0 && _running.get() >= _maxThreads)
+            return true;
+        return _platform.isLowOnThreads();
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        dumpBeans(out, indent, Collections.singletonList("virtual threads=" + _running.get()));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s{%s,virtual=%b,v=%d,max=%d,%s}", _name, getState(), isVirtual(), _running.get(), _maxThreads, _platform);
+    }
+}
@@ -0,0 +1,119 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelSchedulerTest
+{
+    private HashedWheelScheduler _scheduler;
+
+    @Before
+    public void before() throws Exception
+    {
+        // A small wheel so that tasks take several rounds
+        _scheduler = new HashedWheelScheduler("wheel", true, 10, TimeUnit.MILLISECONDS, 3);
+        _scheduler.start();
+    }
+
+    @After
+    public void after() throws Exception
+    {
+        _scheduler.stop();
+    }
+
+    @Test
+    public void testWheelSize() throws Exception
+    {
+        Assert.assertEquals(4, _scheduler.getWheelSize());
+        Assert.assertEquals(10, _scheduler.getTickMillis());
+    }
+
+    @Test
+    public void testSeveralRounds() throws Exception
+    {
+        final AtomicLong executed = new AtomicLong();
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        _scheduler.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                executed.set(System.nanoTime());
+                latch.countDown();
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        long delay = TimeUnit.NANOSECONDS.toMillis(executed.get() - start);
+        Assert.assertThat(delay, Matchers.greaterThanOrEqualTo(200L));
+        Assert.assertThat(delay, Matchers.lessThan(1000L));
+    }
+
+    @Test
+    public void testCancelled() throws Exception
+    {
+        final AtomicInteger executed = new AtomicInteger();
+        Runnable task = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                executed.incrementAndGet();
+            }
+        };
+
+        List<Scheduler.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i)
+            tasks.add(_scheduler.schedule(task, 100 + i % 100, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < tasks.size(); i += 2)
+            tasks.get(i).cancel();
+
+        Thread.sleep(500);
+        Assert.assertEquals(500, executed.get());
+        for (Scheduler.Task t : tasks)
+            Assert.assertFalse(t.cancel());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testScheduleWhenStopped() throws Exception
+    {
+        _scheduler.stop();
+        _scheduler.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+    }
+}
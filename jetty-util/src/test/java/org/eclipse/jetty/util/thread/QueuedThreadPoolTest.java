@@ -25,6 +25,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.ConcurrentArrayBlockingQueue;
 import org.eclipse.jetty.toolchain.test.annotation.Slow;
 import org.junit.Assert;
 import org.junit.Test;
@@ -200,6 +202,190 @@ public class QueuedThreadPoolTest
         waitForIdle(tp,2);
     }
 
+    @Test
+    public void testReservedHandOff() throws Exception
+    {
+        QueuedThreadPool tp= new QueuedThreadPool();
+        tp.setMinThreads(4);
+        tp.setMaxThreads(10);
+        tp.setReservedThreads(2);
+        tp.setStatisticsEnabled(true);
+        tp.start();
+        waitForIdle(tp,4);
+        waitForReserved(tp,2);
+
+        for (int i=0;i<100;i++)
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+            tp.dispatch(new Runnable()
+            {
+                public void run()
+                {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(5,TimeUnit.SECONDS));
+            waitForReserved(tp,2);
+        }
+
+        Assert.assertEquals(100,tp.getHandOffs()+tp.getQueuedJobs());
+        assertTrue(tp.getHandOffs()>0);
+        assertTrue(tp.getHandOffRatio()>0.0);
+
+        tp.resetStatistics();
+        Assert.assertEquals(0,tp.getHandOffs());
+        Assert.assertEquals(0,tp.getQueuedJobs());
+
+        tp.stop();
+        Assert.assertEquals(0,tp.getReservedIdleThreads());
+        // The jobs that wake up the threads on stop are not counted
+        Assert.assertEquals(0,tp.getHandOffs());
+    }
+
+    @Test
+    public void testReservedThreadDoesNotMissQueuedJob() throws Exception
+    {
+        QueuedThreadPool tp= new QueuedThreadPool(1,1);
+        tp.setIdleTimeout(3000);
+        tp.setReservedThreads(1);
+        tp.start();
+
+        // Races the dispatch with the only thread reserving itself:
+        // the job must not wait in the queue until the idle timeout
+        for (int i=0;i<1000;i++)
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+            tp.execute(new Runnable()
+            {
+                public void run()
+                {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(1,TimeUnit.SECONDS));
+        }
+
+        tp.stop();
+    }
+
+    @Test
+    public void testReservedThreadWokenForRequeuedJob() throws Exception
+    {
+        final CountDownLatch queuedRun = new CountDownLatch(1);
+        final Runnable queued = new Runnable()
+        {
+            public void run()
+            {
+                queuedRun.countDown();
+            }
+        };
+        final Runnable handedOff = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    // Keeps this thread busy until the requeued job has run
+                    queuedRun.await(10,TimeUnit.SECONDS);
+                }
+                catch(InterruptedException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        };
+
+        final AtomicInteger polls = new AtomicInteger();
+        final QueuedThreadPool[] pool = new QueuedThreadPool[1];
+        BlockingArrayQueue<Runnable> jobs = new BlockingArrayQueue<Runnable>()
+        {
+            @Override
+            public Runnable poll()
+            {
+                // The second poll of the armed thread is the one of its reservation:
+                // queue a job and hand off another one to the new reservation, so
+                // that the polled job collides with the handed off one
+                if (polls.get()>0 && polls.decrementAndGet()==0)
+                {
+                    super.offer(queued);
+                    pool[0].dispatch(handedOff);
+                }
+                return super.poll();
+            }
+        };
+
+        QueuedThreadPool tp= new QueuedThreadPool(2,2,60000,jobs);
+        tp.setIdleTimeout(60000);
+        tp.setReservedThreads(2);
+        pool[0]=tp;
+        tp.start();
+        waitForReserved(tp,2);
+
+        final CountDownLatch armed = new CountDownLatch(1);
+        tp.dispatch(new Runnable()
+        {
+            public void run()
+            {
+                polls.set(2);
+                armed.countDown();
+            }
+        });
+        assertTrue(armed.await(5,TimeUnit.SECONDS));
+
+        // The requeued job is run by the other reserved thread,
+        // rather than after its idle timeout
+        assertTrue(queuedRun.await(5,TimeUnit.SECONDS));
+        tp.stop();
+    }
+
+    @Test
+    public void testStatisticsDisabled() throws Exception
+    {
+        QueuedThreadPool tp= new QueuedThreadPool(10,2);
+        tp.start();
+        waitForIdle(tp,2);
+
+        final CountDownLatch latch = new CountDownLatch(10);
+        for (int i=0;i<10;i++)
+        {
+            tp.execute(new Runnable()
+            {
+                public void run()
+                {
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(5,TimeUnit.SECONDS));
+        Assert.assertEquals(0,tp.getQueuedJobs());
+        Assert.assertEquals(0,tp.getHandOffs());
+        tp.stop();
+    }
+
+    @Test
+    public void testConcurrentQueue() throws Exception
+    {
+        QueuedThreadPool tp= new QueuedThreadPool(10,2,60000,new ConcurrentArrayBlockingQueue.Unbounded<Runnable>());
+        tp.setStatisticsEnabled(true);
+        tp.start();
+        waitForIdle(tp,2);
+
+        final CountDownLatch latch = new CountDownLatch(100);
+        Runnable job = new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        };
+        for (int i=0;i<100;i++)
+            tp.dispatch(job);
+        assertTrue(latch.await(5,TimeUnit.SECONDS));
+        Assert.assertEquals(100,tp.getQueuedJobs());
+        assertTrue(tp.getQueueLatencyMax()>=tp.getQueueLatencyMean());
+        tp.stop();
+    }
+
     @Test
     public void testMaxStopTime() throws Exception
     {
@@ -241,6 +427,23 @@ public class QueuedThreadPoolTest
         Assert.assertEquals(idle, tp.getIdleThreads());
     }
 
+    private void waitForReserved(QueuedThreadPool tp, int reserved)
+    {
+        long now=System.currentTimeMillis();
+        long start=now;
+        while (tp.getReservedIdleThreads()!=reserved && (now-start)<10000)
+        {
+            try
+            {
+                Thread.sleep(1);
+            }
+            catch(InterruptedException e)
+            {}
+            now=System.currentTimeMillis();
+        }
+        Assert.assertEquals(reserved,tp.getReservedIdleThreads());
+    }
+
     private void waitForThreads(QueuedThreadPool tp, int threads)
     {
         long now=System.currentTimeMillis();
@@ -47,7 +47,8 @@ public class SchedulerTest
     {
         Object[][] data = new Object[][]{
             {new TimerScheduler()},
-            {new ScheduledExecutorScheduler()}/*,
+            {new ScheduledExecutorScheduler()},
+            {new HashedWheelScheduler()}/*,
             {new ConcurrentScheduler(0)},
             {new ConcurrentScheduler(1500)},
             {new ConcurrentScheduler(executor,1500)}*/
@@ -0,0 +1,152 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2013 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualThreadPoolTest
+{
+    private QueuedThreadPool _platform;
+    private VirtualThreadPool _pool;
+
+    @Before
+    public void start() throws Exception
+    {
+        _platform = new QueuedThreadPool(10, 2);
+        _platform.setName("platform");
+        _pool = new VirtualThreadPool(2, _platform);
+        _pool.start();
+    }
+
+    @After
+    public void stop() throws Exception
+    {
+        _pool.stop();
+    }
+
+    @Test
+    public void testExecute() throws Exception
+    {
+        assertEquals(VirtualThreadPool.isSupported(), _pool.isVirtual());
+
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        _pool.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                thread.set(Thread.currentThread());
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNotNull(thread.get());
+        // Without virtual threads, jobs are run by the platform pool
+        assertEquals(!_pool.isVirtual(), thread.get().getName().startsWith("platform"));
+    }
+
+    @Test
+    public void testPlatformJob() throws Exception
+    {
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        _pool.execute(new PlatformJob()
+        {
+            @Override
+            public void run()
+            {
+                thread.set(Thread.currentThread());
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(thread.get().getName().startsWith("platform"));
+    }
+
+    @Test
+    public void testLowOnThreads() throws Exception
+    {
+        assertFalse(_pool.isLowOnThreads());
+
+        final CountDownLatch block = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++)
+        {
+            _pool.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    started.countDown();
+                    try
+                    {
+                        block.await();
+                    }
+                    catch (InterruptedException x)
+                    {
+                        x.printStackTrace();
+                    }
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        if (_pool.isVirtual())
+        {
+            assertEquals(2, _pool.getVirtualThreads());
+            assertTrue(_pool.isLowOnThreads());
+        }
+        else
+        {
+            assertEquals(_platform.isLowOnThreads(), _pool.isLowOnThreads());
+        }
+
+        block.countDown();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectWhenStopped() throws Exception
+    {
+        _pool.stop();
+        _pool.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        });
+    }
+
+    private abstract static class PlatformJob implements Runnable, VirtualThreadPool.Platform
+    {
+    }
+}